@@ -0,0 +1,115 @@
+/*
+ * Copyright (C) 2020 Felix Feyertag <felix.feyertag@ndm.ox.ac.uk>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.chembiohub.tpmap.benchmark;
+
+import com.chembiohub.tpmap.dstruct.Protein;
+import com.chembiohub.tpmap.dstruct.Protein1D;
+import com.chembiohub.tpmap.dstruct.Proteome;
+import com.chembiohub.tpmap.normalisation.TPNormalisation;
+import com.chembiohub.tpmap.scoring.TP1dBatchCurveFitter;
+import com.chembiohub.tpmap.scoring.TP1dCurveFitResult;
+import com.chembiohub.tpmap.scoring.TP1dScorer;
+import javafx.collections.FXCollections;
+import javafx.collections.ObservableList;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * TP1DBenchmark
+ *
+ * Curve fitting and melting point calculation of 1D proteins, single threaded as each protein is fitted
+ * independently, and the ranking of all proteins by TP1dScorer. curveFitBatch fits the first attempt of all curves
+ * with TP1dBatchCurveFitter before the remaining attempts are made for each protein, curveFitBatchOnly measures the
+ * batch fit alone.
+ *
+ * @author felixfeyertag
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class TP1DBenchmark {
+
+    @Param({TPBenchmarkData.ATP_1D, TPBenchmarkData.SYNTHETIC_1D})
+    public String dataset;
+
+    @Param({"250", "1000"})
+    public int size;
+
+    @Param({"1", "10"})
+    public int attempts;
+
+    private Proteome<Protein> tppExp;
+    private ObservableList<Protein1D> proteins;
+    private Double[] temps;
+
+    @Setup(Level.Trial)
+    public void importDataset() throws Exception {
+        tppExp = TPBenchmarkData.importDataset(TPBenchmarkData.writeDataset(dataset, size), TPBenchmarkData.getExpType(dataset), TPNormalisation.Normalisation.NONE, attempts, true);
+        proteins = FXCollections.observableArrayList();
+        tppExp.getProteins().forEach(p -> proteins.add((Protein1D) p));
+        temps = new Double[tppExp.getTempLabels().size()];
+        for(int i=0; i<temps.length; i++) {
+            temps[i] = Double.parseDouble(tppExp.getTempLabels().get(i));
+        }
+    }
+
+    @Benchmark
+    public void curveFit(Blackhole blackhole) {
+        for(Protein1D protein : proteins) {
+            protein.updateScores(tppExp.getTempLabels(), tppExp.getConcLabels());
+            blackhole.consume(protein.getMeanTM());
+        }
+    }
+
+    @Benchmark
+    public void curveFitBatch(Blackhole blackhole) {
+        TP1dCurveFitResult[][] firstAttempts = new TP1dBatchCurveFitter(temps, tppExp.getCurveFitMaxIterations()).fit(proteins, false);
+        for(int i=0; i<proteins.size(); i++) {
+            proteins.get(i).updateScores(tppExp.getTempLabels(), tppExp.getConcLabels(), firstAttempts[i]);
+            blackhole.consume(proteins.get(i).getMeanTM());
+        }
+    }
+
+    @Benchmark
+    public void curveFitBatchOnly(Blackhole blackhole) {
+        blackhole.consume(new TP1dBatchCurveFitter(temps, tppExp.getCurveFitMaxIterations()).fit(proteins, false));
+    }
+
+    @Benchmark
+    public void score(Blackhole blackhole) {
+        TP1dScorer scorer = new TP1dScorer(proteins, 80.0);
+        for(Protein1D protein : proteins) {
+            blackhole.consume(scorer.calculateScore(protein));
+        }
+    }
+
+}
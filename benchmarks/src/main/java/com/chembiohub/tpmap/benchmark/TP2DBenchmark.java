@@ -0,0 +1,117 @@
+/*
+ * Copyright (C) 2020 Felix Feyertag <felix.feyertag@ndm.ox.ac.uk>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.chembiohub.tpmap.benchmark;
+
+import com.chembiohub.tpmap.dstruct.Protein;
+import com.chembiohub.tpmap.dstruct.Protein2D;
+import com.chembiohub.tpmap.dstruct.Proteome;
+import com.chembiohub.tpmap.normalisation.TP2DMedianNormalisation;
+import com.chembiohub.tpmap.normalisation.TPNormalisation;
+import com.chembiohub.tpmap.scoring.TP2dDestabilisationScorer;
+import com.chembiohub.tpmap.scoring.TP2dStabilisationScorer;
+import com.chembiohub.tpmap.scoring.TPMeanDifference;
+import com.chembiohub.tpmap.scoring.TPMeanDifference.TPPNoneSelectedException;
+import javafx.collections.FXCollections;
+import javafx.collections.ObservableList;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * TP2DBenchmark
+ *
+ * Normalisation and scoring of 2D datasets: median normalisation, the stabilisation and destabilisation scores of
+ * every protein, renormalisation of the proteome as done from the analysis panes and the mean difference of all
+ * proteins to a selected protein.
+ *
+ * @author felixfeyertag
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class TP2DBenchmark {
+
+    @Param({TPBenchmarkData.ATP_2D, TPBenchmarkData.PANOBINOSTAT_2D, TPBenchmarkData.SYNTHETIC_2D})
+    public String dataset;
+
+    @Param({"1000", "5000", "20000"})
+    public int size;
+
+    private Proteome<Protein> tppExp;
+    private List<Protein> proteins;
+    private ObservableList<Protein2D> proteins2D;
+    private Protein2D selectedProtein;
+
+    @Setup(Level.Trial)
+    public void importDataset() throws Exception {
+        tppExp = TPBenchmarkData.importDataset(TPBenchmarkData.writeDataset(dataset, size), TPBenchmarkData.getExpType(dataset), TPNormalisation.Normalisation.MEDIAN, 0, true);
+        proteins = List.copyOf(tppExp.getProteins());
+        proteins2D = FXCollections.observableArrayList();
+        proteins.forEach(p -> proteins2D.add((Protein2D) p));
+        selectedProtein = proteins2D.get(0);
+    }
+
+    @Setup(Level.Invocation)
+    public void clearMeanDifferences() {
+        proteins2D.forEach(p -> p.getMeanDifferencePropertyList().clear());
+    }
+
+    @Benchmark
+    public void medianNormalisation(Blackhole blackhole) {
+        TP2DMedianNormalisation medianNormalisation = new TP2DMedianNormalisation();
+        medianNormalisation.initMedianNormalisation(proteins);
+        for(Protein protein : proteins) {
+            blackhole.consume(medianNormalisation.normalise(protein));
+        }
+    }
+
+    @Benchmark
+    public void stabilisationScores(Blackhole blackhole) {
+        for(Protein protein : proteins) {
+            Double[][] abundances = protein.getAbundancesConcRatioNormalised();
+            blackhole.consume(TP2dStabilisationScorer.TPP2dStabilisationScorer(abundances, 1.0));
+            blackhole.consume(TP2dDestabilisationScorer.TPP2dDestabilisationScorer(abundances, 1.0));
+        }
+    }
+
+    @Benchmark
+    public List<Protein> normaliseProteome() {
+        return tppExp.normalise(TPNormalisation.Normalisation.MEDIAN);
+    }
+
+    @Benchmark
+    public ObservableList<Protein2D> meanDifference() throws TPPNoneSelectedException {
+        TPMeanDifference.TPPMeanDifference(proteins2D, selectedProtein);
+        return proteins2D;
+    }
+
+}
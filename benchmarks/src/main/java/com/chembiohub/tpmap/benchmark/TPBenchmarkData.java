@@ -0,0 +1,173 @@
+/*
+ * Copyright (C) 2020 Felix Feyertag <felix.feyertag@ndm.ox.ac.uk>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.chembiohub.tpmap.benchmark;
+
+import com.chembiohub.tpmap.dstruct.Protein;
+import com.chembiohub.tpmap.dstruct.Protein1DParameters;
+import com.chembiohub.tpmap.dstruct.Protein2DParameters;
+import com.chembiohub.tpmap.dstruct.ProteinParameters;
+import com.chembiohub.tpmap.dstruct.Proteome;
+import com.chembiohub.tpmap.dstruct.io.GenericFileImporter;
+import com.chembiohub.tpmap.dstruct.io.TPSyntheticDataGenerator;
+import com.chembiohub.tpmap.normalisation.TPNormalisation;
+import javafx.beans.property.SimpleStringProperty;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * TPBenchmarkData
+ *
+ * Input data for the benchmarks. A dataset of a given number of proteins is written to a temporary TPMAP file,
+ * either from one of the bundled datasets, whose rows are repeated with a suffix added to the accession if more
+ * proteins are requested than the dataset contains, or generated by TPSyntheticDataGenerator. The file is imported with
+ * GenericFileImporter as in TPMAP, without the JavaFX user interface.
+ *
+ * The bundled datasets are read from the directory given by the system property tpmap.datasets, by default
+ * ../datasets or datasets relative to the working directory.
+ *
+ * @author felixfeyertag
+ */
+public class TPBenchmarkData {
+
+    public static final String ATP_1D = "ATP.1D";
+    public static final String ATP_2D = "ATP.2D";
+    public static final String PANOBINOSTAT_2D = "Panobinostat.2D";
+    public static final String SYNTHETIC_1D = "Synthetic.1D";
+    public static final String SYNTHETIC_2D = "Synthetic.2D";
+
+    private static final long SEED = 42L;
+
+    private TPBenchmarkData() {
+
+    }
+
+    /**
+     * @param dataset one of the dataset names of this class
+     * @return experiment type of the dataset
+     */
+    public static Proteome.ExpType getExpType(String dataset) {
+        return dataset.contains(".1D") ? Proteome.ExpType.TP1D : Proteome.ExpType.TP2D;
+    }
+
+    /**
+     * Writes a dataset with the requested number of proteins to a temporary file, which is deleted on exit
+     *
+     * @param dataset one of the dataset names of this class
+     * @param size number of proteins
+     * @return TPMAP file
+     * @throws IOException if the bundled dataset cannot be read or the file cannot be written
+     */
+    public static File writeDataset(String dataset, int size) throws IOException {
+        Path path = Files.createTempFile("tpmap-" + dataset + "-" + size + "-", ".tpmap.txt");
+        path.toFile().deleteOnExit();
+        switch(dataset) {
+            case ATP_1D:
+                writeBundled(bundled("ATP", "ATP.1D.tpmap.txt"), path, size);
+                break;
+            case ATP_2D:
+                writeBundled(bundled("ATP", "ATP.2D.tpmap.txt"), path, size);
+                break;
+            case PANOBINOSTAT_2D:
+                writeBundled(bundled("Panobinostat", "Panobinostat.2D.lysate.tpmap.txt"), path, size);
+                break;
+            case SYNTHETIC_1D:
+            case SYNTHETIC_2D:
+                TPSyntheticDataGenerator generator = new TPSyntheticDataGenerator();
+                generator.setExpType(getExpType(dataset));
+                generator.setProteinCount(size);
+                generator.setSeed(SEED);
+                generator.write(path.toFile(), TPSyntheticDataGenerator.Format.TPMAP);
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown dataset " + dataset);
+        }
+        return path.toFile();
+    }
+
+    /**
+     * Imports a TPMAP file as TPMAP does, 1D curves are fitted with the given number of attempts
+     *
+     * @param file TPMAP file
+     * @param expType experiment type
+     * @param normalisation normalisation applied after import
+     * @param curveFitAttempts curve fitting attempts for 1D datasets
+     * @param multithreading score proteins in parallel
+     * @return imported proteome
+     * @throws Exception if the file cannot be read or is not in TPMAP format
+     */
+    public static Proteome<Protein> importDataset(File file, Proteome.ExpType expType, TPNormalisation.Normalisation normalisation, int curveFitAttempts, boolean multithreading) throws Exception {
+        ProteinParameters params = expType == Proteome.ExpType.TP1D ? new Protein1DParameters(curveFitAttempts, 100) : new Protein2DParameters(0);
+        GenericFileImporter importer = new GenericFileImporter(new SimpleStringProperty(file.getAbsolutePath()), null, null, 0.2, 0.8, normalisation, params, multithreading, expType);
+        return importer.importProteome();
+    }
+
+    private static Path bundled(String directory, String fileName) throws IOException {
+        String property = System.getProperty("tpmap.datasets");
+        List<Path> candidates = new ArrayList<>();
+        if(property != null) {
+            candidates.add(Path.of(property));
+        }
+        candidates.add(Path.of("..", "datasets"));
+        candidates.add(Path.of("datasets"));
+        for(Path candidate : candidates) {
+            Path path = candidate.resolve(directory).resolve(fileName);
+            if(Files.isRegularFile(path)) {
+                return path;
+            }
+        }
+        throw new IOException("Dataset " + fileName + " not found, set -Dtpmap.datasets to the TPMAP datasets directory");
+    }
+
+    private static void writeBundled(Path source, Path target, int size) throws IOException {
+        List<String> rows = new ArrayList<>();
+        String header;
+        try(BufferedReader reader = Files.newBufferedReader(source, StandardCharsets.UTF_8)) {
+            header = reader.readLine();
+            String line;
+            while((line = reader.readLine()) != null) {
+                if(!line.trim().isEmpty()) {
+                    rows.add(line);
+                }
+            }
+        }
+        if(header == null || rows.isEmpty()) {
+            throw new IOException("Dataset " + source + " is empty");
+        }
+        try(BufferedWriter writer = Files.newBufferedWriter(target, StandardCharsets.UTF_8)) {
+            writer.write(header);
+            writer.newLine();
+            for(int i=0; i<size; i++) {
+                String row = rows.get(i % rows.size());
+                int copy = i / rows.size();
+                if(copy > 0) {
+                    int tab = row.indexOf('\t');
+                    row = row.substring(0, tab) + "_r" + copy + row.substring(tab);
+                }
+                writer.write(row);
+                writer.newLine();
+            }
+        }
+    }
+
+}
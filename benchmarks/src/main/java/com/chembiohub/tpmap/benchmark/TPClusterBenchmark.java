@@ -0,0 +1,77 @@
+/*
+ * Copyright (C) 2020 Felix Feyertag <felix.feyertag@ndm.ox.ac.uk>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.chembiohub.tpmap.benchmark;
+
+import com.chembiohub.tpmap.analysis.TPClusterAnalysis;
+import com.chembiohub.tpmap.dstruct.Protein;
+import com.chembiohub.tpmap.dstruct.Proteome;
+import com.chembiohub.tpmap.normalisation.TPNormalisation;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * TPClusterBenchmark
+ *
+ * Pairwise distance matrix of the cluster analysis. The cluster analysis writes the matrix to a fixed path, which
+ * usually does not exist, the resulting error is not logged during the benchmark.
+ *
+ * @author felixfeyertag
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class TPClusterBenchmark {
+
+    @Param({TPBenchmarkData.ATP_2D, TPBenchmarkData.SYNTHETIC_2D})
+    public String dataset;
+
+    @Param({"250", "1000"})
+    public int size;
+
+    // held so that the logger level is not lost when the logger is garbage collected
+    private static final Logger clusterLogger = Logger.getLogger(TPClusterAnalysis.class.getName());
+
+    private Proteome<Protein> tppExp;
+
+    @Setup(Level.Trial)
+    public void importDataset() throws Exception {
+        clusterLogger.setLevel(java.util.logging.Level.OFF);
+        tppExp = TPBenchmarkData.importDataset(TPBenchmarkData.writeDataset(dataset, size), TPBenchmarkData.getExpType(dataset), TPNormalisation.Normalisation.MEDIAN, 0, true);
+    }
+
+    @Benchmark
+    public Proteome<Protein> clusterAnalysis() {
+        new TPClusterAnalysis().analyseProtein(tppExp);
+        return tppExp;
+    }
+
+}
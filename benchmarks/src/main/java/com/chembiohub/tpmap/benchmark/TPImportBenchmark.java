@@ -0,0 +1,70 @@
+/*
+ * Copyright (C) 2020 Felix Feyertag <felix.feyertag@ndm.ox.ac.uk>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.chembiohub.tpmap.benchmark;
+
+import com.chembiohub.tpmap.dstruct.Protein;
+import com.chembiohub.tpmap.dstruct.Proteome;
+import com.chembiohub.tpmap.normalisation.TPNormalisation;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * TPImportBenchmark
+ *
+ * Parsing and scoring of 2D TPMAP files by GenericFileImporter, without normalisation.
+ *
+ * @author felixfeyertag
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class TPImportBenchmark {
+
+    @Param({TPBenchmarkData.ATP_2D, TPBenchmarkData.PANOBINOSTAT_2D, TPBenchmarkData.SYNTHETIC_2D})
+    public String dataset;
+
+    @Param({"1000", "5000", "20000"})
+    public int size;
+
+    private File file;
+
+    @Setup(Level.Trial)
+    public void writeDataset() throws Exception {
+        file = TPBenchmarkData.writeDataset(dataset, size);
+    }
+
+    @Benchmark
+    public Proteome<Protein> importDataset() throws Exception {
+        return TPBenchmarkData.importDataset(file, TPBenchmarkData.getExpType(dataset), TPNormalisation.Normalisation.NONE, 0, true);
+    }
+
+}
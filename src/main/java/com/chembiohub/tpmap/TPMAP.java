@@ -15,8 +15,29 @@
  */
 package com.chembiohub.tpmap;
 
+import com.chembiohub.tpmap.diagnostics.TPDiagnostics;
+import com.chembiohub.tpmap.dstruct.Protein;
+import com.chembiohub.tpmap.dstruct.Protein1DParameters;
+import com.chembiohub.tpmap.dstruct.Protein2DParameters;
+import com.chembiohub.tpmap.dstruct.Proteome;
+import com.chembiohub.tpmap.dstruct.io.ColumnarExportWizard;
+import com.chembiohub.tpmap.dstruct.io.GenericFileImporter;
+import com.chembiohub.tpmap.normalisation.TPNormalisation;
+import javafx.beans.property.SimpleStringProperty;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.text.ParseException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
 /**
- * The TPMAP class launches a TPMAPApplication instance.
+ * The TPMAP class launches a TPMAPApplication instance, or imports files without user interface if started with
+ * --headless. A Flight Recorder recording is started if --jfr is given.
  *
  * @author felixfeyertag
  */
@@ -24,8 +45,137 @@ public class TPMAP {
 
     public static void main(String[] args) {
 
+        for(String arg : args) {
+            if(arg.startsWith("--jfr=")) {
+                try {
+                    TPDiagnostics.startRecording(new File(arg.substring(6)));
+                }
+                catch (IOException | ParseException e) {
+                    System.err.println("Unable to start flight recording: " + e);
+                }
+            }
+        }
+
+        if(Arrays.asList(args).contains("--headless")) {
+            System.exit(runHeadless(args));
+        }
+
         TPMAPApplication.main(args);
 
     }
-}
 
+    /**
+     * Imports the files given with --TP1D and --TP2D with the default import settings and writes the timings of the
+     * import and analysis stages as JSON to the file given with --diagnostics, or to standard output. If --arrow is
+     * given, each imported proteome is exported in the columnar Arrow format, to the files in the order of the 1D and
+     * then the 2D files.
+     *
+     * @param args command line arguments
+     * @return exit status
+     */
+    private static int runHeadless(String[] args) {
+
+        String tp1d = null;
+        String tp2d = null;
+        String diagnostics = null;
+        String arrow = null;
+        int bootstrap = 0;
+        int fitPatience = Protein1DParameters.DEFAULT_PATIENCE;
+        Protein1DParameters.FitBackend fitBackend = Protein1DParameters.FitBackend.SINGLE;
+        boolean sharedFit = false;
+
+        for(String arg : args) {
+            if(arg.startsWith("--TP1D=")) {
+                tp1d = arg.substring(7);
+            }
+            else if(arg.startsWith("--TP2D=")) {
+                tp2d = arg.substring(7);
+            }
+            else if(arg.startsWith("--diagnostics=")) {
+                diagnostics = arg.substring(14);
+            }
+            else if(arg.startsWith("--arrow=")) {
+                arrow = arg.substring(8);
+            }
+            else if(arg.startsWith("--bootstrap=")) {
+                try {
+                    bootstrap = Integer.parseInt(arg.substring(12));
+                }
+                catch (NumberFormatException e) {
+                    System.err.println("Invalid bootstrap iterations: " + arg.substring(12));
+                    return 1;
+                }
+            }
+            else if(arg.startsWith("--fitPatience=")) {
+                try {
+                    fitPatience = Integer.parseInt(arg.substring(14));
+                }
+                catch (NumberFormatException e) {
+                    System.err.println("Invalid curve fit patience: " + arg.substring(14));
+                    return 1;
+                }
+            }
+            else if(arg.startsWith("--fitBackend=")) {
+                try {
+                    fitBackend = Protein1DParameters.FitBackend.valueOf(arg.substring(13).toUpperCase(Locale.ROOT));
+                }
+                catch (IllegalArgumentException e) {
+                    System.err.println("Invalid curve fit backend: " + arg.substring(13));
+                    return 1;
+                }
+            }
+            else if(arg.equals("--sharedFit")) {
+                sharedFit = true;
+            }
+        }
+
+        if(tp1d == null && tp2d == null) {
+            System.err.println("No files given, use --TP1D=<FILE> or --TP2D=<FILE>");
+            return 1;
+        }
+
+        List<String> arrowFiles = arrow == null ? Collections.emptyList() : Arrays.asList(arrow.split(","));
+        int imports = (tp1d == null ? 0 : tp1d.split(",").length) + (tp2d == null ? 0 : tp2d.split(",").length);
+        if(arrow != null && arrowFiles.size() != imports) {
+            System.err.println("Expected " + imports + " Arrow files, one for each imported file, got " + arrowFiles.size());
+            return 1;
+        }
+        int exported = 0;
+
+        try {
+            if(tp1d != null) {
+                for(String file : tp1d.split(",")) {
+                    GenericFileImporter importer = new GenericFileImporter(new SimpleStringProperty(file), null, null, 0.2, 0.8, TPNormalisation.Normalisation.NONE, new Protein1DParameters(10, 10000, fitPatience, Protein1DParameters.DEFAULT_TOLERANCE, fitBackend, sharedFit), true, Proteome.ExpType.TP1D);
+                    Proteome<Protein> proteome = importer.importProteome();
+                    System.err.println(file + ": " + proteome.getProteins().size() + " proteins");
+                    if(arrow != null) {
+                        ColumnarExportWizard.export(proteome, new File(arrowFiles.get(exported++)));
+                    }
+                }
+            }
+            if(tp2d != null) {
+                for(String file : tp2d.split(",")) {
+                    GenericFileImporter importer = new GenericFileImporter(new SimpleStringProperty(file), null, null, 0.2, 0.8, TPNormalisation.Normalisation.MEDIAN, new Protein2DParameters(bootstrap), true, Proteome.ExpType.TP2D);
+                    Proteome<Protein> proteome = importer.importProteome();
+                    System.err.println(file + ": " + proteome.getProteins().size() + " proteins");
+                    if(arrow != null) {
+                        ColumnarExportWizard.export(proteome, new File(arrowFiles.get(exported++)));
+                    }
+                }
+            }
+
+            if(diagnostics != null) {
+                TPDiagnostics.writeJson(new File(diagnostics));
+            }
+            else {
+                TPDiagnostics.writeJson(new OutputStreamWriter(System.out, StandardCharsets.UTF_8));
+            }
+        }
+        catch (Exception e) {
+            System.err.println("Import failed: " + e);
+            return 1;
+        }
+
+        return 0;
+    }
+}
@@ -15,10 +15,14 @@
  */
 package com.chembiohub.tpmap;
 
+import com.chembiohub.tpmap.analysis.TPStringAnalysis;
+import com.chembiohub.tpmap.analysis.TPStringClient;
 import com.chembiohub.tpmap.doc.TPDocTab;
+import com.chembiohub.tpmap.dstruct.Protein1DParameters;
 import com.chembiohub.tpmap.dstruct.Proteome;
 import com.chembiohub.tpmap.ui.TP1DUserInterface;
 import com.chembiohub.tpmap.ui.TP2DUserInterface;
+import com.chembiohub.tpmap.ui.TPDiagnosticsTab;
 import com.chembiohub.tpmap.ui.TPUserInterface;
 import javafx.application.Application;
 import javafx.beans.property.SimpleStringProperty;
@@ -31,6 +35,7 @@ import javafx.scene.control.Tab;
 import javafx.scene.control.TabPane;
 import javafx.scene.image.Image;
 import javafx.scene.layout.BorderPane;
+import javafx.scene.layout.HBox;
 import javafx.scene.layout.Pane;
 import javafx.scene.paint.Color;
 import javafx.scene.text.*;
@@ -69,11 +74,24 @@ public class TPMAPApplication extends Application {
                 System.out.println("  --help|-h                       This help message");
                 System.out.println("  --TP1D=<FILE>[,<FILE>,...]      Load a 1D TPMAP formatted file on startup, multiple files can be specified separated by a comma (,)");
                 System.out.println("  --TP2D=<FILE>[,<FILE>,...]      Load a 2D TPMAP formatted file on startup, multiple files can be specified separated by a comma (,)");
+                System.out.println("  --STRING=<URL|DIR>              Use a local STRING server, or a directory of STRING flat files (<taxid>.protein.aliases.*.txt, <taxid>.protein.links.*.txt), for String networks");
+                System.out.println("  --headless                      Import the files given with --TP1D and --TP2D without user interface and print import and analysis timings as JSON");
+                System.out.println("  --diagnostics=<FILE>            Write import and analysis timings as JSON to FILE instead of standard output (headless mode)");
+                System.out.println("  --arrow=<FILE>[,<FILE>,...]     Export each imported file in the columnar Arrow format, one FILE per file given with --TP1D and then --TP2D (headless mode)");
+                System.out.println("  --bootstrap=<N>                 Run a bootstrap analysis with N iterations for 2D files (headless mode)");
+                System.out.println("  --fitPatience=<K>               Stop fitting a 1D curve after K consecutive attempts without improvement, 0 to make all attempts (headless mode, default " + Protein1DParameters.DEFAULT_PATIENCE + ")");
+                System.out.println("  --fitBackend=<single|batch>     Fit 1D curves one by one, or fit the first attempt of all curves in blocks (headless mode)");
+                System.out.println("  --sharedFit                     Compare a 1D curve shared by all replicates with a curve per condition by an F-test (headless mode)");
+                System.out.println("  --jfr=<FILE>                    Record TP-MAP, sampling, allocation and GC events with Java Flight Recorder and write the recording to FILE on exit");
                 System.out.println();
                 System.exit(0);
             }
         }
 
+        if(getParameters().getNamed().get("STRING") != null) {
+            TPStringAnalysis.setStringClient(TPStringClient.fromLocation(getParameters().getNamed().get("STRING")));
+        }
+
         BorderPane root = new BorderPane();
 
         Scene scene = new Scene(root, 300, 250);
@@ -170,7 +188,19 @@ public class TPMAPApplication extends Application {
             }
         });
 
-        topPane.setLeft(importButton);
+        Button diagnosticsButton = new Button();
+        diagnosticsButton.setText("Diagnostics");
+        diagnosticsButton.setOnAction((ActionEvent event) -> {
+            if(diagnosticsTab == null || !tpTabPane.getTabs().contains(diagnosticsTab.getDiagnosticsTab())) {
+                diagnosticsTab = new TPDiagnosticsTab(stage);
+                tpTabPane.getTabs().add(diagnosticsTab.getDiagnosticsTab());
+            }
+            tpTabPane.getSelectionModel().select(diagnosticsTab.getDiagnosticsTab());
+        });
+
+        HBox buttonBox = new HBox(10, importButton, diagnosticsButton);
+
+        topPane.setLeft(buttonBox);
         topPane.setRight(t);
 
         if(getParameters().getNamed().get("TP1D") != null) {
@@ -196,5 +226,6 @@ public class TPMAPApplication extends Application {
     }
 
     private TabPane tpTabPane;
+    private TPDiagnosticsTab diagnosticsTab;
 }
 
@@ -0,0 +1,185 @@
+/*
+ * Copyright (C) 2020 Felix Feyertag <felix.feyertag@ndm.ox.ac.uk>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.chembiohub.tpmap.analysis;
+
+import com.chembiohub.tpmap.dstruct.Proteome;
+import javafx.beans.value.ChangeListener;
+import javafx.concurrent.Task;
+import javafx.scene.control.Alert;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * TPAnalysisTask
+ *
+ * Background task for analyses started from the analysis panes. The calculation in compute() runs on a bounded
+ * executor shared by all analyses, while holding the analysis lock of the proteome so that two analyses never
+ * recalculate the same proteome at once. Progress reported through the progress property of the proteome is
+ * forwarded to the task progress, and cancelling the task sets the cancelled flag of the proteome, which the
+ * normalisation and scoring loops check, so long recalculations stop early.
+ *
+ * Analyses that only read a snapshot of the proteome taken on the JavaFX application thread, e.g. of the selected
+ * proteins, can be created as non-exclusive tasks, which neither take the analysis lock nor cancel the proteome.
+ *
+ * Results must not be written to the protein list or any other state observed by the user interface from
+ * compute(). Instead compute() returns the result, which is passed to apply() on the JavaFX application thread once
+ * the task has succeeded, so that the result is swapped in at once. apply() is not called if the task was cancelled
+ * or failed, failures are logged and shown in an alert. Recalculations of the proteome therefore compute into a
+ * result, e.g. Proteome.calculateNormalisation, which apply() publishes, e.g. with Proteome.applyNormalisation, so
+ * that a cancelled or failed recalculation leaves the proteins, their scores and the thresholds as they were.
+ *
+ * @author felixfeyertag
+ */
+public abstract class TPAnalysisTask<V> extends Task<V> {
+
+    private static final int THREADS = 2;
+    private static final int QUEUE_SIZE = 16;
+
+    private static final ThreadPoolExecutor executor;
+
+    static {
+        AtomicInteger threadCount = new AtomicInteger(0);
+        executor = new ThreadPoolExecutor(THREADS, THREADS, 30, TimeUnit.SECONDS, new ArrayBlockingQueue<>(QUEUE_SIZE), r -> {
+            Thread thread = new Thread(r, "TPAnalysisTask-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    private final Proteome<?> tppExp;
+    private final String title;
+    private final boolean exclusive;
+    private volatile boolean running = false;
+
+    /**
+     * @param tppExp proteome the analysis reads or recalculates
+     * @param title name of the analysis, used as task title and in error messages
+     */
+    protected TPAnalysisTask(Proteome<?> tppExp, String title) {
+        this(tppExp, title, true);
+    }
+
+    /**
+     * @param tppExp proteome the analysis reads or recalculates
+     * @param title name of the analysis, used as task title and in error messages
+     * @param exclusive hold the analysis lock of the proteome while running
+     */
+    protected TPAnalysisTask(Proteome<?> tppExp, String title, boolean exclusive) {
+        this.tppExp = tppExp;
+        this.title = title;
+        this.exclusive = exclusive;
+        updateTitle(title);
+    }
+
+    /**
+     * Runs the analysis on a background thread
+     *
+     * @return result passed to apply
+     * @throws Exception exceptions fail the task
+     */
+    protected abstract V compute() throws Exception;
+
+    /**
+     * Applies the result of compute on the JavaFX application thread
+     *
+     * @param result result of compute
+     */
+    protected abstract void apply(V result);
+
+    /**
+     * Submits the task to the analysis executor
+     *
+     * @return true if the task was queued, false if too many analyses are waiting
+     */
+    public boolean submit() {
+        try {
+            executor.execute(this);
+            return true;
+        }
+        catch (RejectedExecutionException e) {
+            Logger.getLogger(TPAnalysisTask.class.getName()).log(Level.WARNING, "Analysis queue full, " + title + " not started", e);
+            Alert alert = new Alert(Alert.AlertType.WARNING);
+            alert.initOwner(tppExp.getParentStage());
+            alert.setHeaderText("Unable to start " + title);
+            alert.setContentText("Too many analyses are running, please wait for them to finish or cancel them.");
+            alert.show();
+            return false;
+        }
+    }
+
+    @Override
+    protected final V call() throws Exception {
+
+        if(!exclusive) {
+            updateMessage(title);
+            return isCancelled() ? null : compute();
+        }
+
+        ReentrantLock analysisLock = tppExp.getAnalysisLock();
+        analysisLock.lockInterruptibly();
+
+        ChangeListener<Number> progressListener = (observable, oldValue, newValue) -> updateProgress(newValue.doubleValue(), 1.0);
+
+        try {
+            if(isCancelled()) {
+                return null;
+            }
+            updateMessage(title);
+            tppExp.setIsCancelled(false);
+            running = true;
+            tppExp.progressProperty().addListener(progressListener);
+            return compute();
+        }
+        finally {
+            tppExp.progressProperty().removeListener(progressListener);
+            running = false;
+            analysisLock.unlock();
+        }
+    }
+
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        if(running) {
+            tppExp.setIsCancelled(true);
+        }
+        return super.cancel(mayInterruptIfRunning);
+    }
+
+    @Override
+    protected void succeeded() {
+        apply(getValue());
+    }
+
+    @Override
+    protected void failed() {
+        Throwable ex = getException();
+        Logger.getLogger(TPAnalysisTask.class.getName()).log(Level.SEVERE, title, ex);
+        Alert alert = new Alert(Alert.AlertType.ERROR);
+        alert.initOwner(tppExp.getParentStage());
+        alert.setHeaderText("Unable to run " + title);
+        alert.setContentText(ex.getMessage());
+        alert.show();
+    }
+
+}
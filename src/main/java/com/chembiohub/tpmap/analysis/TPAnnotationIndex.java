@@ -0,0 +1,278 @@
+/*
+ * Copyright (C) 2020 Felix Feyertag <felix.feyertag@ndm.ox.ac.uk>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.chembiohub.tpmap.analysis;
+
+import com.chembiohub.tpmap.dstruct.Protein;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * TPAnnotationIndex
+ *
+ * Set collection loaded from local annotation files or CORUM, used for offline functional enrichment and set enrichment
+ * analyses. Two formats are supported:
+ *
+ * - GMT: one set per line, name, description and member identifiers separated by tabs
+ * - GAF: GO annotation file, the term ID (column 5) is used as set name and both the object ID (column 2) and
+ *        symbol (column 3) as members. Annotations with a NOT qualifier are skipped.
+ *
+ * Member identifiers are interned into a dictionary so that each set is stored as an int array. Indexes are
+ * cached by file, so a file is only parsed once per session.
+ *
+ * @author felixfeyertag
+ */
+public class TPAnnotationIndex {
+
+    private static final Map<String,TPAnnotationIndex> loaded = new ConcurrentHashMap<>();
+
+    private final String source;
+    private final String[] setIds;
+    private final String[] setNames;
+    private final int[][] setMembers;
+    private final String[] identifiers;
+
+    private TPAnnotationIndex(String source, String[] setIds, String[] setNames, int[][] setMembers, String[] identifiers) {
+        this.source = source;
+        this.setIds = setIds;
+        this.setNames = setNames;
+        this.setMembers = setMembers;
+        this.identifiers = identifiers;
+    }
+
+    /**
+     * Load an annotation file, or return the cached index if the file has been loaded before and not modified.
+     *
+     * @param file GMT or GAF file, optionally gzip compressed
+     * @return annotation index
+     * @throws IOException if the file cannot be read
+     */
+    public static TPAnnotationIndex load(File file) throws IOException {
+        String key = file.getAbsolutePath() + "@" + file.lastModified();
+        TPAnnotationIndex index = loaded.get(key);
+        if(index == null) {
+            String name = file.getName().toLowerCase().replaceFirst("\\.gz$", "");
+            if(name.endsWith(".gaf")) {
+                index = readGaf(file);
+            }
+            else {
+                index = readGmt(file);
+            }
+            loaded.put(key, index);
+        }
+        return index;
+    }
+
+    /**
+     * CORUM complexes as a set collection, members are UniProt accessions.
+     *
+     * @param corumAnalysis loaded CORUM complexes
+     * @return annotation index
+     */
+    public static TPAnnotationIndex fromCorum(TPCorumAnalysis corumAnalysis) {
+        Builder builder = new Builder();
+        corumAnalysis.getAllComplexes().values().forEach(complex -> {
+            for(String member : complex[5].split(";")) {
+                builder.add(complex[0], complex[1], member);
+            }
+        });
+        return builder.build("CORUM");
+    }
+
+    private static BufferedReader open(File file) throws IOException {
+        InputStream is = new FileInputStream(file);
+        if(file.getName().endsWith(".gz")) {
+            is = new GZIPInputStream(is, 1 << 16);
+        }
+        return new BufferedReader(new InputStreamReader(is, StandardCharsets.UTF_8), 1 << 16);
+    }
+
+    private static TPAnnotationIndex readGmt(File file) throws IOException {
+        Builder builder = new Builder();
+        try (BufferedReader br = open(file)) {
+            String l;
+            while ((l = br.readLine()) != null) {
+                String[] lineVals = l.split("\t");
+                if(lineVals.length < 3 || l.startsWith("#")) {
+                    continue;
+                }
+                for(int i=2; i<lineVals.length; i++) {
+                    if(!lineVals[i].isEmpty()) {
+                        builder.add(lineVals[0], lineVals[1], lineVals[i]);
+                    }
+                }
+            }
+        }
+        return builder.build(file.getName());
+    }
+
+    private static TPAnnotationIndex readGaf(File file) throws IOException {
+        Builder builder = new Builder();
+        try (BufferedReader br = open(file)) {
+            String l;
+            while ((l = br.readLine()) != null) {
+                if(l.startsWith("!")) {
+                    continue;
+                }
+                String[] lineVals = l.split("\t");
+                if(lineVals.length < 9 || lineVals[3].contains("NOT")) {
+                    continue;
+                }
+                String aspect;
+                switch(lineVals[8]) {
+                    case "P": aspect = "Biological Process"; break;
+                    case "F": aspect = "Molecular Function"; break;
+                    case "C": aspect = "Cellular Component"; break;
+                    default: aspect = lineVals[8];
+                }
+                builder.add(lineVals[4], aspect, lineVals[1]);
+                builder.add(lineVals[4], aspect, lineVals[2]);
+            }
+        }
+        return builder.build(file.getName());
+    }
+
+    /**
+     * Resolve each set to the indices of the proteins it contains. Proteins are matched on accession (without
+     * isoform suffix) and gene name.
+     *
+     * @param proteins background proteins
+     * @return for each set, sorted distinct indices into proteins
+     */
+    public int[][] mapToProteins(List<? extends Protein> proteins) {
+
+        Map<String,Integer> identifierIndex = new HashMap<>(identifiers.length * 2);
+        for(int i=0; i<identifiers.length; i++) {
+            identifierIndex.put(identifiers[i], i);
+        }
+
+        // a protein can match an identifier through its accession and gene name, keep both
+        int[] identifierToProtein = new int[identifiers.length];
+        int[] identifierToProteinAlt = new int[identifiers.length];
+        Arrays.fill(identifierToProtein, -1);
+        Arrays.fill(identifierToProteinAlt, -1);
+        for(int p=0; p<proteins.size(); p++) {
+            Protein protein = proteins.get(p);
+            Integer accession = identifierIndex.get(protein.getAccession().replaceAll("-.*$", ""));
+            if(accession != null && identifierToProtein[accession] < 0) {
+                identifierToProtein[accession] = p;
+            }
+            Integer gene = protein.getGeneName() == null ? null : identifierIndex.get(protein.getGeneName());
+            if(gene != null && identifierToProteinAlt[gene] < 0) {
+                identifierToProteinAlt[gene] = p;
+            }
+        }
+
+        int[][] mapped = new int[setMembers.length][];
+        int[] buffer = new int[identifiers.length * 2];
+        for(int s=0; s<setMembers.length; s++) {
+            int n = 0;
+            for(int m : setMembers[s]) {
+                if(identifierToProtein[m] >= 0) {
+                    buffer[n++] = identifierToProtein[m];
+                }
+                if(identifierToProteinAlt[m] >= 0) {
+                    buffer[n++] = identifierToProteinAlt[m];
+                }
+            }
+            Arrays.sort(buffer, 0, n);
+            int distinct = 0;
+            for(int i=0; i<n; i++) {
+                if(distinct == 0 || buffer[distinct - 1] != buffer[i]) {
+                    buffer[distinct++] = buffer[i];
+                }
+            }
+            mapped[s] = Arrays.copyOf(buffer, distinct);
+        }
+        return mapped;
+    }
+
+    public String getSource() {
+        return source;
+    }
+
+    public int size() {
+        return setIds.length;
+    }
+
+    public String getSetId(int set) {
+        return setIds[set];
+    }
+
+    public String getSetName(int set) {
+        return setNames[set];
+    }
+
+    private static class Builder {
+
+        private final Map<String,Integer> identifiers = new HashMap<>();
+        private final List<String> identifierList = new ArrayList<>();
+        private final Map<String,Integer> sets = new LinkedHashMap<>();
+        private final List<String> setNames = new ArrayList<>();
+        private final List<int[]> members = new ArrayList<>();
+        private int[] memberCounts = new int[16];
+
+        void add(String setId, String setName, String identifier) {
+            Integer set = sets.get(setId);
+            if(set == null) {
+                set = sets.size();
+                sets.put(setId, set);
+                setNames.add(setName);
+                members.add(new int[4]);
+                if(set == memberCounts.length) {
+                    memberCounts = Arrays.copyOf(memberCounts, set * 2);
+                }
+            }
+            Integer id = identifiers.get(identifier);
+            if(id == null) {
+                id = identifierList.size();
+                identifiers.put(identifier, id);
+                identifierList.add(identifier);
+            }
+            int count = memberCounts[set];
+            int[] m = members.get(set);
+            if(count == m.length) {
+                m = Arrays.copyOf(m, count * 2);
+                members.set(set, m);
+            }
+            m[count] = id;
+            memberCounts[set] = count + 1;
+        }
+
+        TPAnnotationIndex build(String source) {
+            int[][] setMembers = new int[members.size()][];
+            for(int s=0; s<setMembers.length; s++) {
+                setMembers[s] = Arrays.stream(members.get(s), 0, memberCounts[s]).distinct().toArray();
+            }
+            return new TPAnnotationIndex(source, sets.keySet().toArray(new String[0]), setNames.toArray(new String[0]),
+                    setMembers, identifierList.toArray(new String[0]));
+        }
+    }
+
+}
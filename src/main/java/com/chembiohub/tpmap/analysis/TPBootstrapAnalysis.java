@@ -16,6 +16,9 @@
  */
 package com.chembiohub.tpmap.analysis;
 
+import com.chembiohub.tpmap.diagnostics.TPBootstrapBatchEvent;
+import com.chembiohub.tpmap.diagnostics.TPDiagnostics;
+import com.chembiohub.tpmap.diagnostics.TPStageTimer;
 import com.chembiohub.tpmap.dstruct.Protein;
 import com.chembiohub.tpmap.dstruct.Proteome;
 import com.chembiohub.tpmap.scoring.TP2dDestabilisationScorer;
@@ -31,7 +34,9 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.util.*;
 import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.BooleanSupplier;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 import java.util.stream.Stream;
 import java.util.stream.StreamSupport;
 
@@ -47,6 +52,8 @@ import java.util.stream.StreamSupport;
  */
 public class TPBootstrapAnalysis {
     
+    private static final int BATCH_SIZE = 10000;
+
     private final int iterations;
 
     private List<DoubleProperty> scores;
@@ -59,20 +66,45 @@ public class TPBootstrapAnalysis {
     }
     
     public void runBootstrapAnalysis(Proteome<Protein> exp) {
+        runBootstrapAnalysis(exp, () -> false);
+    }
+
+    /**
+     * @param exp 2D experiment
+     * @param cancelled checked before every iteration, once it returns true the remaining iterations are skipped and
+     *                  the analysis must not be used
+     */
+    public void runBootstrapAnalysis(Proteome<Protein> exp, BooleanSupplier cancelled) {
+
+        TPStageTimer bootstrapTimer = TPDiagnostics.startProcess("bootstrap");
 
         int x = exp.getProteins().get(0).getAbundances().length;
         int y = exp.getProteins().get(0).getAbundances()[0].length;
         
         int count = exp.getProteins().size();
 
-        ThreadLocalRandom ngr = ThreadLocalRandom.current();
-
         scores = Collections.synchronizedList(Stream.generate(SimpleDoubleProperty::new).limit(iterations).collect(Collectors.toList()));
 
         stats = new SynchronizedSummaryStatistics();
 
-        try (Stream<DoubleProperty> nsStream = StreamSupport.stream(() -> scores.spliterator(), Spliterator.CONCURRENT, exp.getMultithreading())) {
-            nsStream.forEach((DoubleProperty d) -> {
+        // Iterations are run in batches, each of which is recorded as a Flight Recorder event
+        int batches = (iterations + BATCH_SIZE - 1) / BATCH_SIZE;
+
+        IntStream batchStream = IntStream.range(0, batches);
+        if(exp.getMultithreading()) {
+            batchStream = batchStream.parallel();
+        }
+
+        batchStream.forEach((int batch) -> {
+            TPBootstrapBatchEvent batchEvent = new TPBootstrapBatchEvent();
+            batchEvent.begin();
+            ThreadLocalRandom ngr = ThreadLocalRandom.current();
+            int first = batch * BATCH_SIZE;
+            int last = Math.min(first + BATCH_SIZE, iterations);
+            for (int i=first; i<last; i++) {
+                if(cancelled.getAsBoolean()) {
+                    return;
+                }
                 Double[][] fcMatrix = new Double[x][y];
                 for (int j=0; j<x; j++) {
                     for (int k=0; k<y; k++) {
@@ -87,8 +119,14 @@ public class TPBootstrapAnalysis {
 
                 stats.addValue(score);
 
-                d.setValue(score);
-            });
+                scores.get(i).setValue(score);
+            }
+            batchEvent.record(batch, last - first);
+        });
+
+        if(cancelled.getAsBoolean()) {
+            bootstrapTimer.close();
+            return;
         }
 
         boolean bootstrapDistribution = false;
@@ -115,10 +153,15 @@ public class TPBootstrapAnalysis {
 
         scores.sort(Comparator.comparing(DoubleExpression::getValue));
 
+        bootstrapTimer.addItems(iterations);
+        bootstrapTimer.close();
+
     }
 
     public void setBootstrapPVals(Proteome<Protein> exp) {
 
+        TPStageTimer pValueTimer = TPDiagnostics.startProcess("bootstrap.pValues");
+
         min.setValue(1.0);
 
         try(Stream<Protein> proteinStream = StreamSupport.stream(() -> exp.getProteins().spliterator(), Spliterator.ORDERED, exp.getMultithreading())) {
@@ -132,6 +175,10 @@ public class TPBootstrapAnalysis {
         }
 
         exp.setMinPVal(min.getValue());
+        exp.dataChanged();
+
+        pValueTimer.addItems(exp.getProteins().size());
+        pValueTimer.close();
 
     }
 
@@ -0,0 +1,156 @@
+/*
+ * Copyright (C) 2020 Felix Feyertag <felix.feyertag@ndm.ox.ac.uk>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.chembiohub.tpmap.analysis;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * TPCachingStringClient
+ *
+ * Wraps a TPStringClient with a per-taxon on-disk cache of accession to STRING identifier mappings, so that only
+ * accessions not seen before are sent to the underlying client. Accessions without a STRING identifier are only
+ * remembered for the lifetime of the application and are not written to the cache file, so that they are looked up
+ * again in a later session, e.g. after a STRING update. Network URLs are memoised for the lifetime of the
+ * application.
+ *
+ * @author felixfeyertag
+ */
+public class TPCachingStringClient implements TPStringClient {
+
+    private static final String NO_MATCH = "-";
+
+    private final TPStringClient client;
+    private final Path cacheDirectory;
+    private final Map<String,Map<String,String>> idCache;
+    private final Map<String,String> networkCache;
+
+    public TPCachingStringClient(TPStringClient client, Path cacheDirectory) {
+        this.client = client;
+        this.cacheDirectory = cacheDirectory;
+        this.idCache = new ConcurrentHashMap<>();
+        this.networkCache = new ConcurrentHashMap<>();
+    }
+
+    @Override
+    public synchronized Map<String,String> getStringIds(List<String> accessions, String taxId) throws IOException {
+
+        Map<String,String> taxonCache = idCache.computeIfAbsent(taxId, this::readCache);
+
+        Set<String> missingSet = new LinkedHashSet<>();
+        for(String accession : accessions) {
+            if(!taxonCache.containsKey(accession)) {
+                missingSet.add(accession);
+            }
+        }
+        List<String> missing = new ArrayList<>(missingSet);
+
+        if(!missing.isEmpty()) {
+            Map<String,String> fetched = client.getStringIds(missing, taxId);
+            Map<String,String> newEntries = new HashMap<>();
+            for(String accession : missing) {
+                String id = fetched.get(accession);
+                if(id != null) {
+                    newEntries.put(accession, id);
+                }
+                taxonCache.put(accession, id == null ? NO_MATCH : id);
+            }
+            if(!newEntries.isEmpty()) {
+                writeCache(taxId, newEntries);
+            }
+        }
+
+        Map<String,String> stringIds = new HashMap<>();
+        for(String accession : accessions) {
+            String id = taxonCache.get(accession);
+            if(id != null && !id.equals(NO_MATCH)) {
+                stringIds.put(accession, id);
+            }
+        }
+        return stringIds;
+    }
+
+    @Override
+    public String getNetworkUrl(List<String> stringIds, List<String> colours, String taxId) throws IOException {
+        String key = taxId + "\t" + String.join(" ", stringIds) + "\t" + (colours == null ? "" : String.join(" ", colours));
+        String url = networkCache.get(key);
+        if(url == null) {
+            url = client.getNetworkUrl(stringIds, colours, taxId);
+            networkCache.put(key, url);
+        }
+        return url;
+    }
+
+    @Override
+    public List<String> getWhitelist() {
+        return client.getWhitelist();
+    }
+
+    private Path cacheFile(String taxId) {
+        return cacheDirectory.resolve(taxId + ".string_ids.tsv");
+    }
+
+    private Map<String,String> readCache(String taxId) {
+        Map<String,String> cache = new HashMap<>();
+        Path f = cacheFile(taxId);
+        if(Files.exists(f)) {
+            try (BufferedReader br = Files.newBufferedReader(f, StandardCharsets.UTF_8)) {
+                br.lines().forEach(line -> {
+                    String[] lineVals = line.split("\t");
+                    // misses written by earlier versions are ignored so that they are looked up again
+                    if(lineVals.length == 2 && !lineVals[1].equals(NO_MATCH)) {
+                        cache.put(lineVals[0], lineVals[1]);
+                    }
+                });
+            } catch (IOException ex) {
+                Logger.getLogger(TPCachingStringClient.class.getName()).log(Level.WARNING, "Unable to read STRING identifier cache " + f, ex);
+            }
+        }
+        return cache;
+    }
+
+    private void writeCache(String taxId, Map<String,String> entries) {
+        Path f = cacheFile(taxId);
+        try {
+            Files.createDirectories(cacheDirectory);
+            try (BufferedWriter bw = Files.newBufferedWriter(f, StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+                for(Map.Entry<String,String> e : entries.entrySet()) {
+                    bw.write(e.getKey());
+                    bw.write("\t");
+                    bw.write(e.getValue());
+                    bw.newLine();
+                }
+            }
+        } catch (IOException ex) {
+            Logger.getLogger(TPCachingStringClient.class.getName()).log(Level.WARNING, "Unable to write STRING identifier cache " + f, ex);
+        }
+    }
+
+}
@@ -21,6 +21,7 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
+import java.util.function.BooleanSupplier;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -52,8 +53,9 @@ public class TPClusterAnalysis {
     /**
      *
      * @param exp Thermal profiling experiment
+     * @param cancelled checked before the distances of every protein, once it returns true the analysis stops
      */
-    public void analyseProtein(Proteome exp)  {
+    public void analyseProtein(Proteome exp, BooleanSupplier cancelled)  {
         try {
             //RConnection c = new RConnection();
             
@@ -70,6 +72,9 @@ public class TPClusterAnalysis {
             //Integer counter = 0;
             
             for (int i=0;i<proteins.size();i++) {
+                if(cancelled.getAsBoolean()) {
+                    return;
+                }
                 Protein2D p1 = (Protein2D)proteins.get(i);
                 accessions[i] = p1.getAccession();
                 for (int j=0;j<proteins.size();j++) {
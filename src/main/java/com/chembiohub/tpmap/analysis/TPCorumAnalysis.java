@@ -16,27 +16,36 @@
 package com.chembiohub.tpmap.analysis;
 
 import com.chembiohub.tpmap.dstruct.Protein;
+import com.chembiohub.tpmap.dstruct.Proteome;
+import com.chembiohub.tpmap.dstruct.TPSelectionModel;
 
 import java.io.BufferedReader;
 import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import com.chembiohub.tpmap.dstruct.io.FileExportWizard;
 import javafx.beans.Observable;
-import javafx.beans.property.BooleanProperty;
-import javafx.beans.property.IntegerProperty;
-import javafx.beans.property.SimpleIntegerProperty;
+import javafx.beans.property.Property;
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
 import javafx.scene.Scene;
 import javafx.scene.control.Button;
 import javafx.scene.control.CheckBox;
-import javafx.scene.control.Label;
 import javafx.scene.control.SelectionMode;
+import javafx.scene.control.TableColumn;
+import javafx.scene.control.TableView;
 import javafx.scene.control.TextField;
+import javafx.scene.control.cell.PropertyValueFactory;
+import javafx.scene.control.TreeCell;
 import javafx.scene.control.TreeItem;
 import javafx.scene.control.TreeView;
 import javafx.scene.layout.BorderPane;
@@ -49,7 +58,7 @@ import javafx.stage.Stage;
  * Performs Corum analysis, this loads all Corum complexes located in allComplexes.txt and identifies the
  * protein complexes that selected proteins are part of. It displays a tree showing all protein complexes,
  * when a protein complex is selected it updates the main table to only display proteins within the protein
- * complex.
+ * complex. Complex enrichment statistics over the whole proteome are computed by {@link TPCorumEnrichment}.
  *
  * @author felixfeyertag
  */
@@ -96,98 +105,44 @@ public class TPCorumAnalysis {
         
     }
     
-    public void runCorumAnalysis(ObservableList<Protein> proteins, Stage parentStage, TextField filterTextField) {
-        
-        ObservableList<BooleanProperty> selections = FXCollections.observableArrayList();
-        
-        final TreeItem<HBox> rootItem = new TreeItem<> (new HBox(new Label("CORUM Protein Complexes")));
-        rootItem.setExpanded(true);
-        
+    public void runCorumAnalysis(TPSelectionModel<? extends Protein> selectionModel, Stage parentStage, TextField filterTextField) {
+
         final Map<String,Protein> allProteins = new HashMap<>();
-        proteins.forEach(p -> { 
+        selectionModel.getProteins().forEach(p -> {
             String accession = p.getAccession();
             accession = accession.replaceAll("-.*$", "");
             allProteins.put(accession, p);
         });
-        
-        final ObservableList<String> proteinComplexMembers = FXCollections.observableArrayList();
-        
-        proteins.forEach((Protein p) -> {
-            String accession = p.getAccession();
-            accession = accession.replaceAll("-.*$","");
-            if(p.getSelected() && proteinMapAll.containsKey(accession)) {
-                for(String acc : proteinMapAll.get(accession)) {
-                    String[] complex = allComplexes.get(acc);
-                    String proteinComplex = complex[0] + " " + complex[1];
-                    String[] complexProteins = complex[5].split(";");
-                    
-                    TreeItem<HBox> proteinComplexItem;
-                    HBox proteinComplexItemHBox = new HBox();
-                    Label proteinComplexItemLabel = new Label(proteinComplex);
-                    proteinComplexItemHBox.getChildren().add(/*proteinComplexItemCheckBox,*/proteinComplexItemLabel);
-                    proteinComplexItem = new TreeItem<>(proteinComplexItemHBox);
-                    proteinComplexItem.setExpanded(false);
-                    
-                    for(String cp : complexProteins) {
-
-                        String proteinLabel = cp;
-
-                        if(allProteins.containsKey(cp) && !allProteins.get(cp).getGeneName().isEmpty()) {
-                            proteinLabel += " - " + allProteins.get(cp).getGeneName();
-                        }
-
-                        TreeItem<HBox> proteinItem;
-                        HBox proteinItemHBox = new HBox();
-                        CheckBox proteinItemCheckBox = new CheckBox(proteinLabel);
-                        proteinItemHBox.getChildren().addAll(proteinItemCheckBox);
-                        proteinItem = new TreeItem<>(proteinItemHBox);
-                        
-                        if(allProteins.containsKey(cp)) {
-
-                            Protein protein = allProteins.get(cp);
-
-                            proteinItemCheckBox.selectedProperty().bindBidirectional(protein.selectedProperty());
-
-                            if(!protein.getAccession().isEmpty()) {
-                                proteinItem.getChildren().add(new TreeItem<>(new HBox(new Label("Accession: " + protein.getAccession()))));
-                            }
-                            if(!protein.getGeneName().isEmpty()) {
-                                proteinItem.getChildren().add(new TreeItem<>(new HBox(new Label("Gene name: " + protein.getGeneName()))));
-                            }
-                            if(!protein.getDescription().isEmpty()) {
-                                proteinItem.getChildren().add(new TreeItem<>(new HBox(new Label("Description: " + protein.getDescription()))));
-                            }
-                            if(!protein.getScore().isNaN()) {
-                                proteinItem.getChildren().add(new TreeItem<>(new HBox(new Label("Score: " + protein.getScore()))));
-                            }
-                            proteinItem.setExpanded(false);
-                        }
-                        else {
-                            proteinItemCheckBox.setDisable(true);
-                        }
 
-                        proteinComplexItem.getChildren().add(proteinItem);
-
-                    }
-                    rootItem.getChildren().add(proteinComplexItem);
+        final Set<String> complexIds = new LinkedHashSet<>();
 
-                }
+        selectionModel.getSelectedProteins().forEach((Protein p) -> {
+            String accession = p.getAccession();
+            accession = accession.replaceAll("-.*$","");
+            if(proteinMapAll.containsKey(accession)) {
+                complexIds.addAll(proteinMapAll.get(accession));
             }
         });
-        
-        
-        
-        final TreeView<HBox> treeView = new TreeView(rootItem);
+
+        final CorumTreeItem rootItem = new CorumTreeItem(CorumTreeNode.label("CORUM Protein Complexes"), allProteins);
+        complexIds.forEach(id -> rootItem.getChildren().add(new CorumTreeItem(CorumTreeNode.complex(allComplexes.get(id)), allProteins)));
+        rootItem.setExpanded(true);
+
+        final TreeView<CorumTreeNode> treeView = new TreeView<>(rootItem);
+        treeView.setCellFactory(tv -> new CorumTreeCell(selectionModel));
         treeView.getSelectionModel().setSelectionMode(SelectionMode.MULTIPLE);
-        
+
         treeView.getSelectionModel().selectedItemProperty().addListener( (Observable p) -> {
 
-            ObservableList<TreeItem<HBox>> selectedItems = treeView.getSelectionModel().getSelectedItems();
+            ObservableList<TreeItem<CorumTreeNode>> selectedItems = treeView.getSelectionModel().getSelectedItems();
 
             StringBuilder filterText = new StringBuilder();
 
-            for(TreeItem<HBox> protein : selectedItems) {
-                String acc = findAccessions(selectedItems.get(0));
+            for(TreeItem<CorumTreeNode> item : selectedItems) {
+                if(item == null) {
+                    continue;
+                }
+                String acc = findAccessions(item.getValue(), allProteins);
                 if(!acc.isEmpty()) {
                     if(filterText.length() > 0) {
                         filterText.append("|");
@@ -198,73 +153,82 @@ public class TPCorumAnalysis {
 
             filterTextField.setText(filterText.toString());
         });
-        
-        Button selectComplexes = new Button("Select all complex members");
-
-        selectComplexes.setOnAction( e -> proteins.forEach(p -> {
-            String accession = p.getAccession();
-            accession = accession.replaceAll("-.*$", "");
-            if(proteinComplexMembers.contains(accession)) {
-                p.setSelected(true);
-            }
-        }));
 
         Button exportButton = new Button("Export CORUM complexes");
         exportButton.setOnAction(evt -> {
 
-            System.out.println(rootItem.getChildren().size());
-
             final StringBuilder exportString = new StringBuilder();
 
             exportString.append("Protein Complex\tSelected Protein Count\tIn Dataset Protein Count\tAll Protein Count\t" +
                     "Selected Proteins\tUnselected Proteins\tProteins Not In Dataset\n");
 
-            rootItem.getChildren().forEach(complex -> {
+            complexIds.forEach(id -> {
 
-                Label complexLabel = (Label) complex.getValue().getChildren().get(0);
+                String[] complex = allComplexes.get(id);
 
                 final StringBuilder selectedProteins = new StringBuilder();
                 final StringBuilder unselectedProteins = new StringBuilder();
                 final StringBuilder proteinsNotInDataset = new StringBuilder();
 
-                final IntegerProperty selectedProteinCount = new SimpleIntegerProperty(0);
-                final IntegerProperty allProteinCount = new SimpleIntegerProperty(0);
-                final IntegerProperty inDatasetProteinCount = new SimpleIntegerProperty(0);
-
-                complex.getChildren().forEach(protein -> {
-                    CheckBox proteinCheckBox = (CheckBox) protein.getValue().getChildren().get(0);
-                    if(proteinCheckBox.isSelected()) {
-                        selectedProteins.append(proteinCheckBox.getText() + ";");
-                        allProteinCount.set(allProteinCount.get()+1);
-                        selectedProteinCount.set(selectedProteinCount.get()+1);
-                        inDatasetProteinCount.set(inDatasetProteinCount.get()+1);
+                int selectedProteinCount = 0;
+                int allProteinCount = 0;
+                int inDatasetProteinCount = 0;
+
+                for(String cp : complex[5].split(";")) {
+                    Protein protein = allProteins.get(cp);
+                    String proteinLabel = proteinLabel(cp, protein);
+                    allProteinCount++;
+                    if(protein == null) {
+                        proteinsNotInDataset.append(proteinLabel).append(";");
+                        continue;
                     }
-                    else if(!proteinCheckBox.isDisabled()) {
-                        unselectedProteins.append(proteinCheckBox.getText() + ";");
-                        allProteinCount.set(allProteinCount.get()+1);
-                        inDatasetProteinCount.set(inDatasetProteinCount.get()+1);
+                    inDatasetProteinCount++;
+                    if(protein.getSelected()) {
+                        selectedProteins.append(proteinLabel).append(";");
+                        selectedProteinCount++;
                     }
                     else {
-                        proteinsNotInDataset.append(proteinCheckBox.getText() + ";");
-                        allProteinCount.set(allProteinCount.get()+1);
+                        unselectedProteins.append(proteinLabel).append(";");
                     }
-                });
+                }
 
-                exportString.append(complexLabel.getText() + "\t" + selectedProteinCount.getValue() + "\t" +
-                        inDatasetProteinCount.getValue() + "\t" + allProteinCount.getValue() + "\t" +
-                        selectedProteins.toString() + "\t" + unselectedProteins.toString() + "\t" +
-                        proteinsNotInDataset.toString() + "\n");
+                exportString.append(complex[0]).append(" ").append(complex[1]).append("\t")
+                        .append(selectedProteinCount).append("\t").append(inDatasetProteinCount).append("\t")
+                        .append(allProteinCount).append("\t").append(selectedProteins).append("\t")
+                        .append(unselectedProteins).append("\t").append(proteinsNotInDataset).append("\n");
 
             });
 
             FileExportWizard exporter = new FileExportWizard(exportString.toString(), parentStage, false, 0);
 
         });
-        
+
+        Button selectMembersButton = new Button("Select complex members");
+        selectMembersButton.setOnAction(evt -> {
+            List<Protein> members = new ArrayList<>();
+            for(TreeItem<CorumTreeNode> item : treeView.getSelectionModel().getSelectedItems()) {
+                if(item == null) {
+                    continue;
+                }
+                CorumTreeNode node = item.getValue();
+                if(node.kind == CorumTreeNode.Kind.COMPLEX) {
+                    for(String cp : node.complex[5].split(";")) {
+                        if(allProteins.containsKey(cp)) {
+                            members.add(allProteins.get(cp));
+                        }
+                    }
+                }
+                else if(node.kind == CorumTreeNode.Kind.PROTEIN && node.protein != null) {
+                    members.add(node.protein);
+                }
+            }
+            selectionModel.setSelected(members, true);
+        });
+
         BorderPane root = new BorderPane();
         treeView.setPrefHeight(Integer.MAX_VALUE);
         root.setCenter(treeView);
-        root.setBottom(exportButton);
+        root.setBottom(new HBox(exportButton, selectMembersButton));
         Stage primaryStage = new Stage();
 
         primaryStage.setOnCloseRequest(evt -> filterTextField.clear());
@@ -275,30 +239,319 @@ public class TPCorumAnalysis {
         
     }
 
-    private static String findAccessions(TreeItem<HBox> selectedItem) {
+    /**
+     * @return all CORUM complexes keyed by complex ID, values are the tab separated fields of allComplexes.txt
+     */
+    public Map<String,String[]> getAllComplexes() {
+        return Collections.unmodifiableMap(allComplexes);
+    }
+
+    /**
+     * Create a task that computes enrichment of all CORUM complexes for the current selection and protein scores in
+     * the background, and displays the results in a table sorted by significance. Selecting a row filters the main
+     * table to the complex members.
+     *
+     * @param tppExp proteome
+     * @param filterTextField filter field of the protein table
+     * @return analysis task
+     */
+    public TPAnalysisTask<List<TPCorumEnrichment.ComplexEnrichment>> runCorumEnrichment(Proteome<? extends Protein> tppExp, TextField filterTextField) {
+
+        final TPSelectionModel<? extends Protein> selectionModel = tppExp.getSelectionModel();
+        final List<? extends Protein> proteins = selectionModel.getProteins();
+        final BitSet selection = selectionModel.getSelectedIndices();
+        final boolean multithreading = tppExp.getMultithreading();
+
+        return new TPAnalysisTask<List<TPCorumEnrichment.ComplexEnrichment>>(tppExp, "CORUM complex enrichment", false) {
+            @Override
+            protected List<TPCorumEnrichment.ComplexEnrichment> compute() {
+                return new TPCorumEnrichment(TPCorumAnalysis.this).runEnrichment(proteins, selection, multithreading);
+            }
 
-        if (selectedItem.isLeaf()) {
-            if (selectedItem.getValue().getChildren().get(0) instanceof Label) {
-                String labelText = ((Label) selectedItem.getValue().getChildren().get(0)).getText();
-                if(labelText.startsWith("Accession: ")) {
-                    return labelText.replaceFirst("Accession: ", "");
+            @Override
+            protected void apply(List<TPCorumEnrichment.ComplexEnrichment> results) {
+                showCorumEnrichment(results, proteins, selectionModel, tppExp.getParentStage(), filterTextField);
+            }
+        };
+    }
+
+    private void showCorumEnrichment(List<TPCorumEnrichment.ComplexEnrichment> results, List<? extends Protein> proteins,
+                                     TPSelectionModel<? extends Protein> selectionModel, Stage parentStage, TextField filterTextField) {
+
+        final TableView<TPCorumEnrichment.ComplexEnrichment> table = new TableView<>(FXCollections.observableArrayList(results));
+
+        TableColumn<TPCorumEnrichment.ComplexEnrichment,String> idCol = new TableColumn<>("Complex ID");
+        idCol.setCellValueFactory(new PropertyValueFactory<>("complexId"));
+        TableColumn<TPCorumEnrichment.ComplexEnrichment,String> nameCol = new TableColumn<>("Protein Complex");
+        nameCol.setCellValueFactory(new PropertyValueFactory<>("complexName"));
+        nameCol.setPrefWidth(250);
+        TableColumn<TPCorumEnrichment.ComplexEnrichment,Integer> sizeCol = new TableColumn<>("Size");
+        sizeCol.setCellValueFactory(new PropertyValueFactory<>("complexSize"));
+        TableColumn<TPCorumEnrichment.ComplexEnrichment,Integer> inDatasetCol = new TableColumn<>("In Dataset");
+        inDatasetCol.setCellValueFactory(new PropertyValueFactory<>("inDataset"));
+        TableColumn<TPCorumEnrichment.ComplexEnrichment,Integer> selectedCol = new TableColumn<>("Selected");
+        selectedCol.setCellValueFactory(new PropertyValueFactory<>("selected"));
+        TableColumn<TPCorumEnrichment.ComplexEnrichment,Double> hyperPCol = new TableColumn<>("Selection P");
+        hyperPCol.setCellValueFactory(new PropertyValueFactory<>("hypergeometricPValue"));
+        hyperPCol.setCellFactory(c -> new TPPValueTableCell<>());
+        TableColumn<TPCorumEnrichment.ComplexEnrichment,Double> hyperQCol = new TableColumn<>("Selection Q");
+        hyperQCol.setCellValueFactory(new PropertyValueFactory<>("hypergeometricQValue"));
+        hyperQCol.setCellFactory(c -> new TPPValueTableCell<>());
+        TableColumn<TPCorumEnrichment.ComplexEnrichment,Double> rankZCol = new TableColumn<>("Score Z");
+        rankZCol.setCellValueFactory(new PropertyValueFactory<>("rankZ"));
+        rankZCol.setCellFactory(c -> new TPNumberTableCell<>());
+        TableColumn<TPCorumEnrichment.ComplexEnrichment,Double> rankPCol = new TableColumn<>("Score P");
+        rankPCol.setCellValueFactory(new PropertyValueFactory<>("rankPValue"));
+        rankPCol.setCellFactory(c -> new TPPValueTableCell<>());
+        TableColumn<TPCorumEnrichment.ComplexEnrichment,Double> rankQCol = new TableColumn<>("Score Q");
+        rankQCol.setCellValueFactory(new PropertyValueFactory<>("rankQValue"));
+        rankQCol.setCellFactory(c -> new TPPValueTableCell<>());
+
+        table.getColumns().addAll(idCol, nameCol, sizeCol, inDatasetCol, selectedCol, hyperPCol, hyperQCol,
+                rankZCol, rankPCol, rankQCol);
+
+        table.getSelectionModel().selectedItemProperty().addListener((obs, oldVal, newVal) -> {
+            if(newVal == null) {
+                return;
+            }
+            StringBuilder filterText = new StringBuilder();
+            for(int i : newVal.getMemberIndices()) {
+                if(filterText.length() > 0) {
+                    filterText.append("|");
                 }
+                filterText.append(proteins.get(i).getAccession());
             }
+            filterTextField.setText(filterText.toString());
+        });
+
+        Button exportButton = new Button("Export CORUM enrichment");
+        exportButton.setOnAction(evt -> {
+
+            final StringBuilder exportString = new StringBuilder();
+
+            exportString.append("Complex ID\tProtein Complex\tSize\tIn Dataset\tSelected\tSelection P\tSelection Q\t" +
+                    "Score Z\tScore P\tScore Q\n");
+
+            table.getItems().forEach(r -> exportString.append(r.getComplexId()).append("\t")
+                    .append(r.getComplexName()).append("\t").append(r.getComplexSize()).append("\t")
+                    .append(r.getInDataset()).append("\t").append(r.getSelected()).append("\t")
+                    .append(r.getHypergeometricPValue()).append("\t").append(r.getHypergeometricQValue()).append("\t")
+                    .append(r.getRankZ()).append("\t").append(r.getRankPValue()).append("\t")
+                    .append(r.getRankQValue()).append("\n"));
+
+            FileExportWizard exporter = new FileExportWizard(exportString.toString(), parentStage, false, 0);
+
+        });
+
+        Button selectMembersButton = new Button("Select complex members");
+        selectMembersButton.setOnAction(evt -> {
+            TPCorumEnrichment.ComplexEnrichment selected = table.getSelectionModel().getSelectedItem();
+            if(selected == null) {
+                return;
+            }
+            List<Protein> members = new ArrayList<>();
+            for(int i : selected.getMemberIndices()) {
+                members.add(proteins.get(i));
+            }
+            selectionModel.setSelected(members, true);
+        });
+
+        BorderPane root = new BorderPane();
+        root.setCenter(table);
+        root.setBottom(new HBox(exportButton, selectMembersButton));
+        Stage enrichmentStage = new Stage();
+        enrichmentStage.setTitle("CORUM Complex Enrichment");
+
+        enrichmentStage.setOnCloseRequest(evt -> filterTextField.clear());
+
+        enrichmentStage.initOwner(parentStage);
+        enrichmentStage.setScene(new Scene(root, 900,480));
+        enrichmentStage.show();
+
+    }
+
+    private static String proteinLabel(String accession, Protein protein) {
+        if(protein != null && !protein.getGeneName().isEmpty()) {
+            return accession + " - " + protein.getGeneName();
         }
-        else {
-            StringBuilder retVal = new StringBuilder();
-            for(TreeItem<HBox> c : selectedItem.getChildren()) {
-                String acc = findAccessions(c);
-                if(retVal.length() == 0) {
-                    retVal = new StringBuilder(acc);
+        return accession;
+    }
+
+    private static String findAccessions(CorumTreeNode node, Map<String,Protein> allProteins) {
+
+        switch(node.kind) {
+            case PROTEIN:
+                return node.protein == null ? "" : node.protein.getAccession();
+            case COMPLEX:
+                StringBuilder retVal = new StringBuilder();
+                for(String cp : node.complex[5].split(";")) {
+                    Protein protein = allProteins.get(cp);
+                    if(protein != null) {
+                        if(retVal.length() > 0) {
+                            retVal.append("|");
+                        }
+                        retVal.append(protein.getAccession());
+                    }
                 }
-                else if (!acc.isEmpty()) {
-                    retVal.append("|").append(acc);
+                return retVal.toString();
+            default:
+                return "";
+        }
+    }
+
+    /**
+     * Value of a node in the CORUM tree. Nodes hold references to the underlying complex and protein rather than
+     * to UI controls, so that controls are only created by the cells currently on screen.
+     */
+    private static final class CorumTreeNode {
+
+        private enum Kind { LABEL, COMPLEX, PROTEIN, DETAIL }
+
+        private final Kind kind;
+        private final String text;
+        private final String[] complex;
+        private final Protein protein;
+
+        private CorumTreeNode(Kind kind, String text, String[] complex, Protein protein) {
+            this.kind = kind;
+            this.text = text;
+            this.complex = complex;
+            this.protein = protein;
+        }
+
+        static CorumTreeNode label(String text) {
+            return new CorumTreeNode(Kind.LABEL, text, null, null);
+        }
+
+        static CorumTreeNode complex(String[] complex) {
+            return new CorumTreeNode(Kind.COMPLEX, complex[0] + " " + complex[1], complex, null);
+        }
+
+        static CorumTreeNode protein(String accession, Protein protein) {
+            return new CorumTreeNode(Kind.PROTEIN, proteinLabel(accession, protein), null, protein);
+        }
+
+        static CorumTreeNode detail(String text) {
+            return new CorumTreeNode(Kind.DETAIL, text, null, null);
+        }
+
+        @Override
+        public String toString() {
+            return text;
+        }
+    }
+
+    /**
+     * Tree item that creates its children the first time they are requested, i.e. when the item is expanded.
+     */
+    private static final class CorumTreeItem extends TreeItem<CorumTreeNode> {
+
+        private final Map<String,Protein> allProteins;
+        private boolean childrenLoaded;
+
+        CorumTreeItem(CorumTreeNode node, Map<String,Protein> allProteins) {
+            super(node);
+            this.allProteins = allProteins;
+            this.childrenLoaded = node.kind == CorumTreeNode.Kind.LABEL;
+        }
+
+        @Override
+        public boolean isLeaf() {
+            CorumTreeNode node = getValue();
+            switch(node.kind) {
+                case COMPLEX:
+                    return false;
+                case PROTEIN:
+                    return node.protein == null;
+                case DETAIL:
+                    return true;
+                default:
+                    return super.isLeaf();
+            }
+        }
+
+        @Override
+        public ObservableList<TreeItem<CorumTreeNode>> getChildren() {
+            if(!childrenLoaded) {
+                childrenLoaded = true;
+                super.getChildren().setAll(createChildren());
+            }
+            return super.getChildren();
+        }
+
+        private List<TreeItem<CorumTreeNode>> createChildren() {
+            List<TreeItem<CorumTreeNode>> children = new ArrayList<>();
+            CorumTreeNode node = getValue();
+            if(node.kind == CorumTreeNode.Kind.COMPLEX) {
+                for(String cp : node.complex[5].split(";")) {
+                    children.add(new CorumTreeItem(CorumTreeNode.protein(cp, allProteins.get(cp)), allProteins));
+                }
+            }
+            else if(node.kind == CorumTreeNode.Kind.PROTEIN && node.protein != null) {
+                Protein protein = node.protein;
+                if(!protein.getAccession().isEmpty()) {
+                    children.add(new TreeItem<>(CorumTreeNode.detail("Accession: " + protein.getAccession())));
+                }
+                if(!protein.getGeneName().isEmpty()) {
+                    children.add(new TreeItem<>(CorumTreeNode.detail("Gene name: " + protein.getGeneName())));
+                }
+                if(!protein.getDescription().isEmpty()) {
+                    children.add(new TreeItem<>(CorumTreeNode.detail("Description: " + protein.getDescription())));
                 }
+                if(!protein.getScore().isNaN()) {
+                    children.add(new TreeItem<>(CorumTreeNode.detail("Score: " + protein.getScore())));
+                }
+            }
+            return children;
+        }
+    }
+
+    /**
+     * Tree cell rendering protein nodes as check boxes. The check box is bound to the selection model property of
+     * the displayed protein only while the cell shows it.
+     */
+    private static final class CorumTreeCell extends TreeCell<CorumTreeNode> {
+
+        private final TPSelectionModel<? extends Protein> selectionModel;
+        private final CheckBox checkBox = new CheckBox();
+        private Property<Boolean> boundProperty;
+
+        CorumTreeCell(TPSelectionModel<? extends Protein> selectionModel) {
+            this.selectionModel = selectionModel;
+        }
+
+        @Override
+        protected void updateItem(CorumTreeNode item, boolean empty) {
+            super.updateItem(item, empty);
+
+            if(boundProperty != null) {
+                checkBox.selectedProperty().unbindBidirectional(boundProperty);
+                boundProperty = null;
+            }
+
+            if(empty || item == null) {
+                setText(null);
+                setGraphic(null);
+            }
+            else if(item.kind == CorumTreeNode.Kind.PROTEIN) {
+                checkBox.setText(item.text);
+                if(item.protein != null) {
+                    checkBox.setDisable(false);
+                    boundProperty = selectionModel.selectedProperty(item.protein);
+                    checkBox.selectedProperty().bindBidirectional(boundProperty);
+                }
+                else {
+                    checkBox.setSelected(false);
+                    checkBox.setDisable(true);
+                }
+                setText(null);
+                setGraphic(checkBox);
+            }
+            else {
+                setText(item.text);
+                setGraphic(null);
             }
-            return retVal.toString();
         }
-        return "";
     }
     
 }
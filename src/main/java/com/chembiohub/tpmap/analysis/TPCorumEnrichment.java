@@ -0,0 +1,332 @@
+/*
+ * Copyright (C) 2020 Felix Feyertag <felix.feyertag@ndm.ox.ac.uk>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.chembiohub.tpmap.analysis;
+
+import com.chembiohub.tpmap.dstruct.Protein;
+import org.apache.commons.math3.special.Erf;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * TPCorumEnrichment
+ *
+ * Computes enrichment statistics for every CORUM protein complex against the whole proteome. Complex membership
+ * is resolved once into arrays of protein indices, after which two tests are evaluated per complex: a
+ * hypergeometric (one-sided Fisher's exact) test for over-representation of selected proteins, and a
+ * Mann-Whitney rank test of complex member scores against all other scored proteins. P-values of both tests are
+ * adjusted for multiple testing using the Benjamini-Hochberg procedure.
+ *
+ * @author felixfeyertag
+ */
+public class TPCorumEnrichment {
+
+    private final Map<String,String[]> allComplexes;
+
+    public TPCorumEnrichment(TPCorumAnalysis corumAnalysis) {
+        this.allComplexes = corumAnalysis.getAllComplexes();
+    }
+
+    /**
+     * Run the enrichment over all complexes with at least two members in the dataset.
+     *
+     * @param proteins proteins in the experiment, used as the background
+     * @param selection indices of the selected proteins
+     * @param multithreading evaluate complexes in parallel
+     * @return results sorted by hypergeometric p-value, then by rank test p-value
+     */
+    public List<ComplexEnrichment> runEnrichment(List<? extends Protein> proteins, BitSet selection, boolean multithreading) {
+
+        final int proteinCount = proteins.size();
+
+        final Map<String,Integer> proteinIndex = new HashMap<>(proteinCount * 2);
+        final BitSet selected = selection.get(0, proteinCount);
+        final double[] scores = new double[proteinCount];
+        final int totalSelected = selected.cardinality();
+
+        for(int i=0; i<proteinCount; i++) {
+            Protein p = proteins.get(i);
+            proteinIndex.putIfAbsent(p.getAccession().replaceAll("-.*$", ""), i);
+            Double score = p.getScore();
+            scores[i] = score == null ? Double.NaN : score;
+        }
+
+        final double[] ranks = rank(scores);
+        final int rankedCount = (int) Arrays.stream(ranks).filter(r -> !Double.isNaN(r)).count();
+        final double ties = tieSum(ranks);
+        final double[] logFactorial = logFactorial(proteinCount);
+
+        final String[][] complexes = allComplexes.values().toArray(new String[0][]);
+        final int[][] members = new int[complexes.length][];
+        for(int c=0; c<complexes.length; c++) {
+            members[c] = Arrays.stream(complexes[c][5].split(";"))
+                    .map(proteinIndex::get)
+                    .filter(i -> i != null)
+                    .mapToInt(Integer::intValue)
+                    .distinct()
+                    .toArray();
+        }
+
+        IntStream complexStream = IntStream.range(0, complexes.length);
+        if(multithreading) {
+            complexStream = complexStream.parallel();
+        }
+
+        List<ComplexEnrichment> results = complexStream
+                .filter(c -> members[c].length > 1)
+                .mapToObj(c -> {
+                    int[] m = members[c];
+                    int selectedMembers = 0;
+                    int rankedMembers = 0;
+                    double rankSum = 0.0;
+                    for(int i : m) {
+                        if(selected.get(i)) {
+                            selectedMembers++;
+                        }
+                        if(!Double.isNaN(ranks[i])) {
+                            rankedMembers++;
+                            rankSum += ranks[i];
+                        }
+                    }
+                    double hyperP = hypergeometricUpperTail(logFactorial, proteinCount, totalSelected, m.length, selectedMembers);
+                    double rankZ = mannWhitneyZ(rankSum, rankedMembers, rankedCount, ties);
+                    double rankP = Double.isNaN(rankZ) ? Double.NaN : Erf.erfc(Math.abs(rankZ) / Math.sqrt(2.0));
+                    return new ComplexEnrichment(complexes[c][0], complexes[c][1], complexes[c][5].split(";").length,
+                            m.length, selectedMembers, hyperP, rankZ, rankP, m);
+                })
+                .collect(Collectors.toCollection(ArrayList::new));
+
+        double[] hyperQ = benjaminiHochberg(results.stream().mapToDouble(ComplexEnrichment::getHypergeometricPValue).toArray());
+        double[] rankQ = benjaminiHochberg(results.stream().mapToDouble(ComplexEnrichment::getRankPValue).toArray());
+        for(int i=0; i<results.size(); i++) {
+            results.get(i).hypergeometricQValue = hyperQ[i];
+            results.get(i).rankQValue = rankQ[i];
+        }
+
+        results.sort(Comparator.comparingDouble(ComplexEnrichment::getHypergeometricPValue)
+                .thenComparingDouble(r -> Double.isNaN(r.getRankPValue()) ? 1.0 : r.getRankPValue()));
+
+        return results;
+    }
+
+    /**
+     * Rank values in ascending order, assigning tied values their average rank. NaN values are not ranked.
+     */
+    static double[] rank(double[] values) {
+        Integer[] order = IntStream.range(0, values.length)
+                .filter(i -> !Double.isNaN(values[i]))
+                .boxed()
+                .toArray(Integer[]::new);
+        Arrays.sort(order, Comparator.comparingDouble(i -> values[i]));
+
+        double[] ranks = new double[values.length];
+        Arrays.fill(ranks, Double.NaN);
+
+        int i = 0;
+        while(i < order.length) {
+            int j = i;
+            while(j + 1 < order.length && values[order[j + 1]] == values[order[i]]) {
+                j++;
+            }
+            double averageRank = (i + j + 2) / 2.0;
+            for(int k=i; k<=j; k++) {
+                ranks[order[k]] = averageRank;
+            }
+            i = j + 1;
+        }
+        return ranks;
+    }
+
+    /**
+     * Sum of t^3 - t over all groups of t tied values, computed from the ranks returned by rank(), in which tied
+     * values share their average rank. NaN ranks are ignored.
+     */
+    static double tieSum(double[] ranks) {
+        double[] sorted = Arrays.stream(ranks).filter(r -> !Double.isNaN(r)).sorted().toArray();
+        double sum = 0.0;
+        int i = 0;
+        while(i < sorted.length) {
+            int j = i;
+            while(j + 1 < sorted.length && sorted[j + 1] == sorted[i]) {
+                j++;
+            }
+            double t = j - i + 1;
+            sum += t * t * t - t;
+            i = j + 1;
+        }
+        return sum;
+    }
+
+    static double[] logFactorial(int n) {
+        double[] lf = new double[n + 1];
+        for(int i=1; i<=n; i++) {
+            lf[i] = lf[i - 1] + Math.log(i);
+        }
+        return lf;
+    }
+
+    private static double logChoose(double[] lf, int n, int k) {
+        return lf[n] - lf[k] - lf[n - k];
+    }
+
+    /**
+     * P(X >= k) where X is hypergeometric with population N, K successes and n draws.
+     */
+    static double hypergeometricUpperTail(double[] lf, int N, int K, int n, int k) {
+        if(k <= 0) {
+            return 1.0;
+        }
+        int upper = Math.min(n, K);
+        if(k > upper) {
+            return 0.0;
+        }
+        double logTotal = logChoose(lf, N, n);
+        double p = 0.0;
+        for(int x=k; x<=upper; x++) {
+            if(n - x > N - K) {
+                continue;
+            }
+            p += Math.exp(logChoose(lf, K, x) + logChoose(lf, N - K, n - x) - logTotal);
+        }
+        return Math.min(1.0, p);
+    }
+
+    /**
+     * Normal approximation z statistic of the Mann-Whitney U test for m members out of n ranked values. Positive
+     * values indicate members rank higher than the remaining proteins. Proteins with equal scores are common, e.g.
+     * scores of 0, so the variance is corrected for ties using the tie sum of the ranks, see tieSum.
+     */
+    static double mannWhitneyZ(double rankSum, int m, int n, double tieSum) {
+        if(m < 1 || m >= n) {
+            return Double.NaN;
+        }
+        double u = rankSum - m * (m + 1) / 2.0;
+        double mean = m * (double) (n - m) / 2.0;
+        double variance = m * (double) (n - m) / 12.0 * ((n + 1) - tieSum / (n * (double) (n - 1)));
+        if(!(variance > 0)) {
+            return Double.NaN;
+        }
+        return (u - mean) / Math.sqrt(variance);
+    }
+
+    /**
+     * Benjamini-Hochberg adjusted p-values. NaN p-values are left as NaN and do not count towards the number of
+     * tests.
+     */
+    static double[] benjaminiHochberg(double[] pValues) {
+        Integer[] order = IntStream.range(0, pValues.length)
+                .filter(i -> !Double.isNaN(pValues[i]))
+                .boxed()
+                .toArray(Integer[]::new);
+        Arrays.sort(order, Comparator.comparingDouble(i -> pValues[i]));
+
+        double[] qValues = new double[pValues.length];
+        Arrays.fill(qValues, Double.NaN);
+
+        int m = order.length;
+        double running = 1.0;
+        for(int i=m-1; i>=0; i--) {
+            running = Math.min(running, pValues[order[i]] * m / (i + 1));
+            qValues[order[i]] = running;
+        }
+        return qValues;
+    }
+
+    /**
+     * Enrichment result for a single CORUM complex
+     */
+    public static class ComplexEnrichment {
+
+        private final String complexId;
+        private final String complexName;
+        private final int complexSize;
+        private final int inDataset;
+        private final int selected;
+        private final double hypergeometricPValue;
+        private double hypergeometricQValue;
+        private final double rankZ;
+        private final double rankPValue;
+        private double rankQValue;
+        private final int[] memberIndices;
+
+        ComplexEnrichment(String complexId, String complexName, int complexSize, int inDataset, int selected,
+                          double hypergeometricPValue, double rankZ, double rankPValue, int[] memberIndices) {
+            this.complexId = complexId;
+            this.complexName = complexName;
+            this.complexSize = complexSize;
+            this.inDataset = inDataset;
+            this.selected = selected;
+            this.hypergeometricPValue = hypergeometricPValue;
+            this.rankZ = rankZ;
+            this.rankPValue = rankPValue;
+            this.memberIndices = memberIndices;
+        }
+
+        public String getComplexId() {
+            return complexId;
+        }
+
+        public String getComplexName() {
+            return complexName;
+        }
+
+        public int getComplexSize() {
+            return complexSize;
+        }
+
+        public int getInDataset() {
+            return inDataset;
+        }
+
+        public int getSelected() {
+            return selected;
+        }
+
+        public double getHypergeometricPValue() {
+            return hypergeometricPValue;
+        }
+
+        public double getHypergeometricQValue() {
+            return hypergeometricQValue;
+        }
+
+        public double getRankZ() {
+            return rankZ;
+        }
+
+        public double getRankPValue() {
+            return rankPValue;
+        }
+
+        public double getRankQValue() {
+            return rankQValue;
+        }
+
+        /**
+         * @return indices of complex members within the protein list the enrichment was run on
+         */
+        public int[] getMemberIndices() {
+            return memberIndices;
+        }
+    }
+}
@@ -0,0 +1,289 @@
+/*
+ * Copyright (C) 2020 Felix Feyertag <felix.feyertag@ndm.ox.ac.uk>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.chembiohub.tpmap.analysis;
+
+import com.chembiohub.tpmap.dstruct.Protein;
+import com.chembiohub.tpmap.dstruct.Proteome;
+import com.chembiohub.tpmap.dstruct.TPSelectionModel;
+import com.chembiohub.tpmap.dstruct.io.FileExportWizard;
+import javafx.collections.FXCollections;
+import javafx.scene.control.Alert;
+import javafx.scene.control.Button;
+import javafx.scene.control.Tab;
+import javafx.scene.control.TabPane;
+import javafx.scene.control.TableColumn;
+import javafx.scene.control.TableView;
+import javafx.scene.control.cell.PropertyValueFactory;
+import javafx.scene.layout.BorderPane;
+import javafx.scene.layout.HBox;
+import javafx.stage.FileChooser;
+import javafx.stage.Stage;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * TPFunctionalEnrichment
+ *
+ * Offline functional enrichment of selected proteins against local GO (GAF) or pathway (GMT) annotation files.
+ * The selection is held as a bitset over the experiment proteins, and every annotation term is tested for
+ * over-representation of selected proteins with a hypergeometric test, using all proteins in the experiment as
+ * background. P-values are adjusted using the Benjamini-Hochberg procedure.
+ *
+ * @author felixfeyertag
+ */
+public class TPFunctionalEnrichment {
+
+    private static final int MIN_TERM_SIZE = 2;
+
+    private static File lastDirectory;
+
+    public TPFunctionalEnrichment() {
+
+    }
+
+    /**
+     * Test every term of an annotation index for over-representation of selected proteins.
+     *
+     * @param index annotation terms
+     * @param proteins experiment proteins, used as background
+     * @param selection indices of the selected proteins
+     * @param multithreading evaluate terms in parallel
+     * @return terms with at least one selected protein, sorted by p-value
+     */
+    public List<TermEnrichment> runEnrichment(TPAnnotationIndex index, List<? extends Protein> proteins, BitSet selection, boolean multithreading) {
+
+        final int proteinCount = proteins.size();
+        final long[] selected = Arrays.copyOf(selection.toLongArray(), (proteinCount + 63) >>> 6);
+        final int totalSelected = selection.get(0, proteinCount).cardinality();
+
+        final int[][] members = index.mapToProteins(proteins);
+        final double[] logFactorial = TPCorumEnrichment.logFactorial(proteinCount);
+
+        IntStream termStream = IntStream.range(0, members.length);
+        if(multithreading) {
+            termStream = termStream.parallel();
+        }
+
+        List<TermEnrichment> tested = termStream
+                .filter(t -> members[t].length >= MIN_TERM_SIZE)
+                .mapToObj(t -> {
+                    int[] m = members[t];
+                    int overlap = 0;
+                    for(int i : m) {
+                        overlap += (int) (selected[i >>> 6] >>> i) & 1;
+                    }
+                    double p = TPCorumEnrichment.hypergeometricUpperTail(logFactorial, proteinCount, totalSelected, m.length, overlap);
+                    return new TermEnrichment(index.getSetId(t), index.getSetName(t), m.length, overlap, totalSelected,
+                            proteinCount, p, m);
+                })
+                .collect(Collectors.toCollection(ArrayList::new));
+
+        double[] q = TPCorumEnrichment.benjaminiHochberg(tested.stream().mapToDouble(TermEnrichment::getPValue).toArray());
+        for(int i=0; i<tested.size(); i++) {
+            tested.get(i).fdr = q[i];
+        }
+
+        return tested.stream()
+                .filter(r -> r.getSelected() > 0)
+                .sorted(Comparator.comparingDouble(TermEnrichment::getPValue))
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Ask for a GAF or GMT file and create a task that computes the enrichment of the selected proteins in the
+     * background and displays the results in a new tab.
+     *
+     * @param tppExp proteome
+     * @return analysis task, or null if no proteins are selected or no file was chosen
+     */
+    public TPAnalysisTask<List<TermEnrichment>> localFunctionalEnrichment(Proteome<? extends Protein> tppExp) {
+
+        final TPSelectionModel<? extends Protein> selectionModel = tppExp.getSelectionModel();
+        final Stage primaryStage = tppExp.getParentStage();
+        final TabPane tpTabPane = tppExp.getTabPane();
+
+        if(selectionModel.isEmpty()) {
+            Alert noProteinsSelectedAlert = new Alert(Alert.AlertType.ERROR);
+            noProteinsSelectedAlert.initOwner(primaryStage);
+            noProteinsSelectedAlert.setTitle("No Proteins Selected");
+            noProteinsSelectedAlert.setHeaderText("No Proteins Selected. Please select proteins for functional enrichment using the checkboxes.");
+            noProteinsSelectedAlert.showAndWait();
+            return null;
+        }
+
+        FileChooser fileChooser = new FileChooser();
+        fileChooser.setTitle("Open annotation file");
+        fileChooser.getExtensionFilters().addAll(
+                new FileChooser.ExtensionFilter("Annotation files", "*.gaf", "*.gaf.gz", "*.gmt", "*.gmt.gz"),
+                new FileChooser.ExtensionFilter("All files", "*.*"));
+        if(lastDirectory != null && lastDirectory.isDirectory()) {
+            fileChooser.setInitialDirectory(lastDirectory);
+        }
+
+        File annotationFile = fileChooser.showOpenDialog(primaryStage);
+
+        if(annotationFile == null) {
+            return null;
+        }
+
+        lastDirectory = annotationFile.getParentFile();
+
+        final List<? extends Protein> proteins = selectionModel.getProteins();
+        final BitSet selection = selectionModel.getSelectedIndices();
+        final boolean multithreading = tppExp.getMultithreading();
+
+        return new TPAnalysisTask<List<TermEnrichment>>(tppExp, "functional enrichment", false) {
+            @Override
+            protected List<TermEnrichment> compute() throws IOException {
+                return runEnrichment(TPAnnotationIndex.load(annotationFile), proteins, selection, multithreading);
+            }
+
+            @Override
+            protected void apply(List<TermEnrichment> results) {
+                Tab enrichmentTab = new Tab("Functional Enrichment (" + annotationFile.getName() + ")");
+                enrichmentTab.setContent(resultPane(results, proteins, selection, primaryStage));
+                tpTabPane.getTabs().add(enrichmentTab);
+                tpTabPane.getSelectionModel().select(enrichmentTab);
+            }
+        };
+    }
+
+    private BorderPane resultPane(List<TermEnrichment> results, List<? extends Protein> proteins, BitSet selection, Stage primaryStage) {
+
+        TableView<TermEnrichment> table = new TableView<>(FXCollections.observableArrayList(results));
+
+        TableColumn<TermEnrichment,String> idCol = new TableColumn<>("Term");
+        idCol.setCellValueFactory(new PropertyValueFactory<>("termId"));
+        TableColumn<TermEnrichment,String> nameCol = new TableColumn<>("Description");
+        nameCol.setCellValueFactory(new PropertyValueFactory<>("termName"));
+        nameCol.setPrefWidth(300);
+        TableColumn<TermEnrichment,Integer> selectedCol = new TableColumn<>("Selected");
+        selectedCol.setCellValueFactory(new PropertyValueFactory<>("selected"));
+        TableColumn<TermEnrichment,Integer> backgroundCol = new TableColumn<>("Background");
+        backgroundCol.setCellValueFactory(new PropertyValueFactory<>("background"));
+        TableColumn<TermEnrichment,Double> foldCol = new TableColumn<>("Fold Enrichment");
+        foldCol.setCellValueFactory(new PropertyValueFactory<>("foldEnrichment"));
+        foldCol.setCellFactory(c -> new TPNumberTableCell<>());
+        TableColumn<TermEnrichment,Double> pCol = new TableColumn<>("P Value");
+        pCol.setCellValueFactory(new PropertyValueFactory<>("pValue"));
+        pCol.setCellFactory(c -> new TPPValueTableCell<>());
+        TableColumn<TermEnrichment,Double> fdrCol = new TableColumn<>("FDR");
+        fdrCol.setCellValueFactory(new PropertyValueFactory<>("fdr"));
+        fdrCol.setCellFactory(c -> new TPPValueTableCell<>());
+        TableColumn<TermEnrichment,String> proteinsCol = new TableColumn<>("Selected Proteins");
+        proteinsCol.setCellValueFactory(new PropertyValueFactory<>("selectedProteins"));
+        proteinsCol.setPrefWidth(300);
+
+        results.forEach(r -> r.describeSelected(proteins, selection));
+
+        table.getColumns().addAll(idCol, nameCol, selectedCol, backgroundCol, foldCol, pCol, fdrCol, proteinsCol);
+
+        Button saveButton = new Button("Save Table");
+        saveButton.setOnAction(event -> {
+            StringBuilder exportString = new StringBuilder("Term\tDescription\tSelected\tBackground\tFold Enrichment\tP Value\tFDR\tSelected Proteins\n");
+            results.forEach(r -> exportString.append(r.getTermId()).append("\t").append(r.getTermName()).append("\t")
+                    .append(r.getSelected()).append("\t").append(r.getBackground()).append("\t")
+                    .append(r.getFoldEnrichment()).append("\t").append(r.getPValue()).append("\t")
+                    .append(r.getFdr()).append("\t").append(r.getSelectedProteins()).append("\n"));
+            FileExportWizard exporter = new FileExportWizard(exportString.toString(), primaryStage, false, -1);
+        });
+
+        BorderPane pane = new BorderPane();
+        pane.setTop(new HBox(saveButton));
+        pane.setCenter(table);
+        return pane;
+    }
+
+    /**
+     * Over-representation result for a single annotation term
+     */
+    public static class TermEnrichment {
+
+        private final String termId;
+        private final String termName;
+        private final int background;
+        private final int selected;
+        private final double foldEnrichment;
+        private final double pValue;
+        private double fdr;
+        private final int[] memberIndices;
+        private String selectedProteins = "";
+
+        TermEnrichment(String termId, String termName, int background, int selected, int totalSelected, int total,
+                       double pValue, int[] memberIndices) {
+            this.termId = termId;
+            this.termName = termName;
+            this.background = background;
+            this.selected = selected;
+            this.foldEnrichment = totalSelected == 0 ? Double.NaN : (selected / (double) totalSelected) / (background / (double) total);
+            this.pValue = pValue;
+            this.memberIndices = memberIndices;
+        }
+
+        void describeSelected(List<? extends Protein> proteins, BitSet selection) {
+            selectedProteins = IntStream.of(memberIndices)
+                    .filter(selection::get)
+                    .mapToObj(proteins::get)
+                    .map(p -> p.getGeneName() == null || p.getGeneName().isEmpty() ? p.getAccession() : p.getGeneName())
+                    .collect(Collectors.joining(";"));
+        }
+
+        public String getTermId() {
+            return termId;
+        }
+
+        public String getTermName() {
+            return termName;
+        }
+
+        public int getBackground() {
+            return background;
+        }
+
+        public int getSelected() {
+            return selected;
+        }
+
+        public double getFoldEnrichment() {
+            return foldEnrichment;
+        }
+
+        public double getPValue() {
+            return pValue;
+        }
+
+        public double getFdr() {
+            return fdr;
+        }
+
+        public String getSelectedProteins() {
+            return selectedProteins;
+        }
+
+        public int[] getMemberIndices() {
+            return memberIndices;
+        }
+    }
+
+}
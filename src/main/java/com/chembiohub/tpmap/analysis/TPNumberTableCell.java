@@ -0,0 +1,44 @@
+/*
+ * Copyright (C) 2020 Felix Feyertag <felix.feyertag@ndm.ox.ac.uk>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.chembiohub.tpmap.analysis;
+
+import javafx.scene.control.TableCell;
+
+import java.text.DecimalFormat;
+
+/**
+ * TPNumberTableCell
+ *
+ * Table cell for statistics of the enrichment result tables, e.g. enrichment scores, fold enrichments and z
+ * statistics, shown with four decimals. NaN values are shown as empty cells.
+ *
+ * @author felixfeyertag
+ */
+class TPNumberTableCell<S> extends TableCell<S,Double> {
+
+    private static final DecimalFormat DECIMAL = new DecimalFormat("0.0000");
+
+    @Override
+    protected void updateItem(Double item, boolean empty) {
+        super.updateItem(item, empty);
+        if(empty || item == null || item.isNaN()) {
+            setText("");
+        }
+        else {
+            setText(DECIMAL.format(item));
+        }
+    }
+}
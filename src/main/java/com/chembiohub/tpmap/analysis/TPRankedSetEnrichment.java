@@ -0,0 +1,514 @@
+/*
+ * Copyright (C) 2020 Felix Feyertag <felix.feyertag@ndm.ox.ac.uk>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.chembiohub.tpmap.analysis;
+
+import com.chembiohub.tpmap.dstruct.Protein;
+import com.chembiohub.tpmap.dstruct.Protein1D;
+import com.chembiohub.tpmap.dstruct.Proteome;
+import com.chembiohub.tpmap.dstruct.io.FileExportWizard;
+import javafx.application.Platform;
+import javafx.collections.FXCollections;
+import javafx.scene.control.Alert;
+import javafx.scene.control.Button;
+import javafx.scene.control.ButtonType;
+import javafx.scene.control.ComboBox;
+import javafx.scene.control.Dialog;
+import javafx.scene.control.Label;
+import javafx.scene.control.Tab;
+import javafx.scene.control.TabPane;
+import javafx.scene.control.TableColumn;
+import javafx.scene.control.TableView;
+import javafx.scene.control.TextField;
+import javafx.scene.control.cell.PropertyValueFactory;
+import javafx.scene.layout.BorderPane;
+import javafx.scene.layout.HBox;
+import javafx.scene.layout.VBox;
+import javafx.stage.FileChooser;
+import javafx.stage.Stage;
+import javafx.util.Pair;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.SplittableRandom;
+import java.util.function.BooleanSupplier;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * TPRankedSetEnrichment
+ *
+ * Pre-ranked set enrichment analysis (GSEA) over the continuous TP-MAP ranking. Proteins are ranked by score
+ * (2D experiments) or mean Tm shift (1D experiments), and for every set a weighted running-sum enrichment score is
+ * computed. Significance is estimated by comparing each enrichment score with those of random sets of the same
+ * size, enrichment scores are normalised by the mean null enrichment score of the same sign and p-values are
+ * adjusted using the Benjamini-Hochberg procedure.
+ *
+ * @author felixfeyertag
+ */
+public class TPRankedSetEnrichment {
+
+    private static final int MIN_SET_SIZE = 3;
+    private static final int MAX_SET_SIZE = 500;
+    private static final long SEED = 123;
+
+    private static File lastDirectory;
+
+    public TPRankedSetEnrichment() {
+
+    }
+
+    /**
+     * Ranking value of a protein, mean Tm shift for 1D experiments and score otherwise.
+     */
+    static double rankingValue(Protein p) {
+        Double value = p instanceof Protein1D ? ((Protein1D) p).getMeanTM() : p.getScore();
+        return value == null ? Double.NaN : value;
+    }
+
+    /**
+     * Run the enrichment for every set in an index.
+     *
+     * @param index set collection
+     * @param proteins experiment proteins
+     * @param permutations number of random sets used per set to estimate significance
+     * @param multithreading evaluate sets in parallel
+     * @param cancelled checked between permutations and between sets, once it returns true the enrichment stops
+     * @return results sorted by p-value, then by absolute normalised enrichment score, or an empty list if cancelled
+     */
+    public List<SetEnrichment> runEnrichment(TPAnnotationIndex index, List<? extends Protein> proteins, int permutations,
+                                             boolean multithreading, BooleanSupplier cancelled) {
+
+        final int proteinCount = proteins.size();
+
+        // positions of ranked proteins, in descending order of ranking value
+        final double[] values = new double[proteinCount];
+        for(int i=0; i<proteinCount; i++) {
+            values[i] = rankingValue(proteins.get(i));
+        }
+        final int[] order = IntStream.range(0, proteinCount)
+                .filter(i -> !Double.isNaN(values[i]))
+                .boxed()
+                .sorted(Comparator.comparingDouble((Integer i) -> values[i]).reversed())
+                .mapToInt(Integer::intValue)
+                .toArray();
+        final int n = order.length;
+        final double[] weights = new double[n];
+        final int[] position = new int[proteinCount];
+        Arrays.fill(position, -1);
+        for(int r=0; r<n; r++) {
+            weights[r] = Math.abs(values[order[r]]);
+            position[order[r]] = r;
+        }
+
+        final int[][] members = index.mapToProteins(proteins);
+        final int[][] hitPositions = new int[members.length][];
+        for(int s=0; s<members.length; s++) {
+            int[] hits = Arrays.stream(members[s]).map(i -> position[i]).filter(r -> r >= 0).sorted().toArray();
+            hitPositions[s] = hits.length < MIN_SET_SIZE || hits.length > MAX_SET_SIZE || hits.length >= n ? null : hits;
+        }
+
+        // the null distribution only depends on set size, so it is computed once for each size
+        final int[] sizes = Arrays.stream(hitPositions).filter(h -> h != null).mapToInt(h -> h.length).distinct().toArray();
+        final NullDistribution[] nullDistributions = new NullDistribution[MAX_SET_SIZE + 1];
+
+        IntStream sizeStream = IntStream.of(sizes);
+        if(multithreading) {
+            sizeStream = sizeStream.parallel();
+        }
+        sizeStream.forEach(k -> nullDistributions[k] = new NullDistribution(k, permutations, weights, n, cancelled));
+
+        if(cancelled.getAsBoolean()) {
+            return Collections.emptyList();
+        }
+
+        IntStream setStream = IntStream.range(0, members.length);
+        if(multithreading) {
+            setStream = setStream.parallel();
+        }
+
+        List<SetEnrichment> results = setStream
+                .filter(s -> hitPositions[s] != null && !cancelled.getAsBoolean())
+                .mapToObj(s -> {
+                    int[] hits = hitPositions[s];
+                    double[] es = enrichmentScore(hits, hits.length, weights, n);
+                    NullDistribution nullDistribution = nullDistributions[hits.length];
+
+                    double nes = nullDistribution.normalise(es[0]);
+                    double p = nullDistribution.pValue(es[0]);
+
+                    int peak = (int) es[1];
+                    String leadingEdge = Arrays.stream(hits)
+                            .filter(r -> es[0] >= 0 ? r <= peak : r >= peak)
+                            .mapToObj(r -> proteins.get(order[r]))
+                            .map(pr -> pr.getGeneName() == null || pr.getGeneName().isEmpty() ? pr.getAccession() : pr.getGeneName())
+                            .collect(Collectors.joining(";"));
+
+                    return new SetEnrichment(index.getSetId(s), index.getSetName(s), hits.length, es[0], nes, p, leadingEdge);
+                })
+                .collect(Collectors.toCollection(ArrayList::new));
+
+        if(cancelled.getAsBoolean()) {
+            return Collections.emptyList();
+        }
+
+        double[] q = TPCorumEnrichment.benjaminiHochberg(results.stream().mapToDouble(SetEnrichment::getPValue).toArray());
+        for(int i=0; i<results.size(); i++) {
+            results.get(i).fdr = q[i];
+        }
+
+        results.sort(Comparator.comparingDouble(SetEnrichment::getPValue)
+                .thenComparing(Comparator.comparingDouble((SetEnrichment r) -> Double.isNaN(r.getNes()) ? 0.0 : Math.abs(r.getNes())).reversed()));
+
+        return results;
+    }
+
+    /**
+     * Enrichment scores of random sets of a given size, split by sign and sorted by magnitude.
+     */
+    static final class NullDistribution {
+
+        final double[] positive;
+        final double[] negative;
+        final double positiveMean;
+        final double negativeMean;
+
+        NullDistribution(int size, int permutations, double[] weights, int n, BooleanSupplier cancelled) {
+            SplittableRandom random = new SplittableRandom(SEED + size);
+            int[] sample = new int[size];
+            boolean[] taken = new boolean[n];
+            double[] scores = new double[permutations];
+            int positiveCount = 0;
+            for(int perm=0; perm<permutations; perm++) {
+                if(cancelled.getAsBoolean()) {
+                    // the truncated distribution is discarded by runEnrichment
+                    scores = Arrays.copyOf(scores, perm);
+                    permutations = perm;
+                    break;
+                }
+                randomPositions(random, n, sample, taken);
+                scores[perm] = enrichmentScore(sample, size, weights, n)[0];
+                if(scores[perm] >= 0) {
+                    positiveCount++;
+                }
+            }
+            positive = new double[positiveCount];
+            negative = new double[permutations - positiveCount];
+            int p = 0;
+            int q = 0;
+            for(double score : scores) {
+                if(score >= 0) {
+                    positive[p++] = score;
+                }
+                else {
+                    negative[q++] = -score;
+                }
+            }
+            Arrays.sort(positive);
+            Arrays.sort(negative);
+            positiveMean = positive.length == 0 ? Double.NaN : Arrays.stream(positive).sum() / positive.length;
+            negativeMean = negative.length == 0 ? Double.NaN : Arrays.stream(negative).sum() / negative.length;
+        }
+
+        double normalise(double es) {
+            double mean = es >= 0 ? positiveMean : negativeMean;
+            return mean == 0.0 ? Double.NaN : es / mean;
+        }
+
+        /**
+         * Fraction of null scores of the same sign that are at least as extreme, with a pseudocount.
+         */
+        double pValue(double es) {
+            double[] nullScores = es >= 0 ? positive : negative;
+            double magnitude = Math.abs(es);
+            int i = Arrays.binarySearch(nullScores, magnitude);
+            if(i < 0) {
+                i = -i - 1;
+            }
+            else {
+                while(i > 0 && nullScores[i - 1] == magnitude) {
+                    i--;
+                }
+            }
+            return (nullScores.length - i + 1.0) / (nullScores.length + 1.0);
+        }
+    }
+
+    /**
+     * Weighted (p=1) running-sum enrichment score. Hits must be sorted ascending rank positions.
+     *
+     * @return {enrichment score, rank position at which the maximum deviation occurs}
+     */
+    static double[] enrichmentScore(int[] hits, int hitCount, double[] weights, int n) {
+        double hitWeight = 0.0;
+        for(int i=0; i<hitCount; i++) {
+            hitWeight += weights[hits[i]];
+        }
+        boolean unweighted = hitWeight == 0.0;
+        if(unweighted) {
+            hitWeight = hitCount;
+        }
+        double missStep = 1.0 / (n - hitCount);
+
+        double running = 0.0;
+        double max = 0.0;
+        double min = 0.0;
+        int maxPos = 0;
+        int minPos = n - 1;
+        int previous = -1;
+        for(int i=0; i<hitCount; i++) {
+            int r = hits[i];
+            running -= (r - previous - 1) * missStep;
+            if(running < min) {
+                min = running;
+                minPos = r;
+            }
+            running += (unweighted ? 1.0 : weights[r]) / hitWeight;
+            if(running > max) {
+                max = running;
+                maxPos = r;
+            }
+            previous = r;
+        }
+        return max >= -min ? new double[] { max, maxPos } : new double[] { min, minPos };
+    }
+
+    /**
+     * Draw sample.length distinct positions from [0, n) into sample, sorted ascending.
+     */
+    private static void randomPositions(SplittableRandom random, int n, int[] sample, boolean[] taken) {
+        int k = 0;
+        while(k < sample.length) {
+            int r = random.nextInt(n);
+            if(!taken[r]) {
+                taken[r] = true;
+                sample[k++] = r;
+            }
+        }
+        for(int r : sample) {
+            taken[r] = false;
+        }
+        Arrays.sort(sample);
+    }
+
+    /**
+     * Ask for a set collection and number of permutations, and create a task that computes the enrichment of all
+     * proteins in the background and displays the results in a new tab.
+     *
+     * @param tppExp proteome
+     * @return analysis task, or null if the dialog was cancelled
+     */
+    public TPAnalysisTask<List<SetEnrichment>> rankedSetEnrichment(Proteome<? extends Protein> tppExp) {
+
+        final List<? extends Protein> proteins = new ArrayList<>(tppExp.getProteins());
+        final boolean multithreading = tppExp.getMultithreading();
+        final Stage primaryStage = tppExp.getParentStage();
+        final TabPane tpTabPane = tppExp.getTabPane();
+
+        final String corum = "CORUM protein complexes";
+        final String annotationFile = "Annotation file (GAF/GMT)...";
+
+        Dialog<Pair<String,Integer>> optionsDialog = new Dialog<>();
+        optionsDialog.initOwner(primaryStage);
+        optionsDialog.setTitle("Set Enrichment");
+        optionsDialog.setHeaderText("Pre-ranked set enrichment of " + proteins.size() + " proteins.");
+        optionsDialog.getDialogPane().getButtonTypes().addAll(ButtonType.OK, ButtonType.CANCEL);
+
+        ComboBox<String> setComboBox = new ComboBox<>(FXCollections.observableArrayList(corum, annotationFile));
+        setComboBox.setValue(corum);
+        TextField permutationsTextField = new TextField("1000");
+
+        VBox optionsBox = new VBox();
+        optionsBox.setSpacing(10);
+        optionsBox.getChildren().addAll(new Label("Sets:"), setComboBox, new Label("Permutations:"), permutationsTextField,
+                new Label("Proteins are ranked by " + (proteins.stream().anyMatch(p -> p instanceof Protein1D) ? "mean Tm shift." : "score.")));
+        optionsDialog.getDialogPane().setContent(optionsBox);
+
+        Platform.runLater(setComboBox::requestFocus);
+
+        optionsDialog.setResultConverter(button -> {
+            if(button == ButtonType.OK) {
+                try {
+                    return new Pair<>(setComboBox.getValue(), Integer.parseInt(permutationsTextField.getText().trim()));
+                } catch (NumberFormatException ex) {
+                    return new Pair<>(setComboBox.getValue(), -1);
+                }
+            }
+            return null;
+        });
+
+        Optional<Pair<String,Integer>> options = optionsDialog.showAndWait();
+
+        if(!options.isPresent()) {
+            return null;
+        }
+
+        final int permutations = options.get().getValue();
+
+        if(permutations < 1) {
+            Alert alert = new Alert(Alert.AlertType.ERROR);
+            alert.initOwner(primaryStage);
+            alert.setHeaderText("Invalid number of permutations");
+            alert.showAndWait();
+            return null;
+        }
+
+        final File setFile;
+
+        if(options.get().getKey().equals(annotationFile)) {
+            FileChooser fileChooser = new FileChooser();
+            fileChooser.setTitle("Open annotation file");
+            fileChooser.getExtensionFilters().addAll(
+                    new FileChooser.ExtensionFilter("Annotation files", "*.gaf", "*.gaf.gz", "*.gmt", "*.gmt.gz"),
+                    new FileChooser.ExtensionFilter("All files", "*.*"));
+            if(lastDirectory != null && lastDirectory.isDirectory()) {
+                fileChooser.setInitialDirectory(lastDirectory);
+            }
+            setFile = fileChooser.showOpenDialog(primaryStage);
+            if(setFile == null) {
+                return null;
+            }
+            lastDirectory = setFile.getParentFile();
+        }
+        else {
+            setFile = null;
+        }
+
+        return new TPAnalysisTask<List<SetEnrichment>>(tppExp, "set enrichment", false) {
+            @Override
+            protected List<SetEnrichment> compute() throws IOException {
+                TPAnnotationIndex index = setFile == null ? TPAnnotationIndex.fromCorum(new TPCorumAnalysis()) : TPAnnotationIndex.load(setFile);
+                return runEnrichment(index, proteins, permutations, multithreading, this::isCancelled);
+            }
+
+            @Override
+            protected void apply(List<SetEnrichment> results) {
+                Tab enrichmentTab = new Tab("Set Enrichment (" + (setFile == null ? "CORUM" : setFile.getName()) + ")");
+                enrichmentTab.setContent(resultPane(results, primaryStage));
+                tpTabPane.getTabs().add(enrichmentTab);
+                tpTabPane.getSelectionModel().select(enrichmentTab);
+            }
+        };
+    }
+
+    private BorderPane resultPane(List<SetEnrichment> results, Stage primaryStage) {
+
+        TableView<SetEnrichment> table = new TableView<>(FXCollections.observableArrayList(results));
+
+        TableColumn<SetEnrichment,String> idCol = new TableColumn<>("Set");
+        idCol.setCellValueFactory(new PropertyValueFactory<>("setId"));
+        TableColumn<SetEnrichment,String> nameCol = new TableColumn<>("Description");
+        nameCol.setCellValueFactory(new PropertyValueFactory<>("setName"));
+        nameCol.setPrefWidth(300);
+        TableColumn<SetEnrichment,Integer> sizeCol = new TableColumn<>("Size");
+        sizeCol.setCellValueFactory(new PropertyValueFactory<>("size"));
+        TableColumn<SetEnrichment,Double> esCol = new TableColumn<>("ES");
+        esCol.setCellValueFactory(new PropertyValueFactory<>("es"));
+        esCol.setCellFactory(c -> new TPNumberTableCell<>());
+        TableColumn<SetEnrichment,Double> nesCol = new TableColumn<>("NES");
+        nesCol.setCellValueFactory(new PropertyValueFactory<>("nes"));
+        nesCol.setCellFactory(c -> new TPNumberTableCell<>());
+        TableColumn<SetEnrichment,Double> pCol = new TableColumn<>("P Value");
+        pCol.setCellValueFactory(new PropertyValueFactory<>("pValue"));
+        pCol.setCellFactory(c -> new TPPValueTableCell<>());
+        TableColumn<SetEnrichment,Double> fdrCol = new TableColumn<>("FDR");
+        fdrCol.setCellValueFactory(new PropertyValueFactory<>("fdr"));
+        fdrCol.setCellFactory(c -> new TPPValueTableCell<>());
+        TableColumn<SetEnrichment,String> leadingEdgeCol = new TableColumn<>("Leading Edge");
+        leadingEdgeCol.setCellValueFactory(new PropertyValueFactory<>("leadingEdge"));
+        leadingEdgeCol.setPrefWidth(300);
+
+        table.getColumns().addAll(idCol, nameCol, sizeCol, esCol, nesCol, pCol, fdrCol, leadingEdgeCol);
+
+        Button saveButton = new Button("Save Table");
+        saveButton.setOnAction(event -> {
+            StringBuilder exportString = new StringBuilder("Set\tDescription\tSize\tES\tNES\tP Value\tFDR\tLeading Edge\n");
+            results.forEach(r -> exportString.append(r.getSetId()).append("\t").append(r.getSetName()).append("\t")
+                    .append(r.getSize()).append("\t").append(r.getEs()).append("\t").append(r.getNes()).append("\t")
+                    .append(r.getPValue()).append("\t").append(r.getFdr()).append("\t").append(r.getLeadingEdge())
+                    .append("\n"));
+            FileExportWizard exporter = new FileExportWizard(exportString.toString(), primaryStage, false, -1);
+        });
+
+        BorderPane pane = new BorderPane();
+        pane.setTop(new HBox(saveButton));
+        pane.setCenter(table);
+        return pane;
+    }
+
+    /**
+     * Enrichment result for a single set
+     */
+    public static class SetEnrichment {
+
+        private final String setId;
+        private final String setName;
+        private final int size;
+        private final double es;
+        private final double nes;
+        private final double pValue;
+        private double fdr;
+        private final String leadingEdge;
+
+        SetEnrichment(String setId, String setName, int size, double es, double nes, double pValue, String leadingEdge) {
+            this.setId = setId;
+            this.setName = setName;
+            this.size = size;
+            this.es = es;
+            this.nes = nes;
+            this.pValue = pValue;
+            this.leadingEdge = leadingEdge;
+        }
+
+        public String getSetId() {
+            return setId;
+        }
+
+        public String getSetName() {
+            return setName;
+        }
+
+        public int getSize() {
+            return size;
+        }
+
+        public double getEs() {
+            return es;
+        }
+
+        public double getNes() {
+            return nes;
+        }
+
+        public double getPValue() {
+            return pValue;
+        }
+
+        public double getFdr() {
+            return fdr;
+        }
+
+        public String getLeadingEdge() {
+            return leadingEdge;
+        }
+    }
+
+}
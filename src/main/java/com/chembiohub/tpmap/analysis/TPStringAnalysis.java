@@ -25,8 +25,6 @@ import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.net.URI;
 import java.net.URISyntaxException;
-import java.net.URL;
-import java.net.URLConnection;
 import java.util.*;
 import java.util.List;
 import java.util.logging.Level;
@@ -34,9 +32,13 @@ import java.util.logging.Logger;
 
 import com.chembiohub.tpmap.dstruct.Protein1D;
 import com.chembiohub.tpmap.dstruct.Protein2D;
+import com.chembiohub.tpmap.dstruct.Proteome;
+import com.chembiohub.tpmap.dstruct.TPSelectionModel;
 import com.chembiohub.tpmap.dstruct.io.FileExportWizard;
 import com.chembiohub.tpmap.ui.TPWebView;
 import javafx.application.Platform;
+import javafx.concurrent.Task;
+import javafx.geometry.Pos;
 import javafx.beans.property.IntegerProperty;
 import javafx.beans.property.SimpleIntegerProperty;
 import javafx.beans.property.SimpleStringProperty;
@@ -54,17 +56,15 @@ import javafx.stage.Stage;
 import javafx.util.Pair;
 import org.apache.http.HttpEntity;
 import org.apache.http.HttpResponse;
-import org.apache.http.NameValuePair;
 import org.apache.http.client.HttpClient;
-import org.apache.http.client.entity.UrlEncodedFormEntity;
 import org.apache.http.client.methods.HttpPost;
 import org.apache.http.impl.client.HttpClients;
-import org.apache.http.message.BasicNameValuePair;
 
 /**
  * TPStringAnalysis
  *
  * Performs a String PPI and enrichment analysis by uploading selected proteins to the string-db.org server.
+ * Identifier mapping and network creation go through a TPStringClient and run in a background task.
  *
  * - Network analysis
  *        Nodes can be highlighted in the network to show stabilised (positive score) and destabilised (negative score)
@@ -76,21 +76,59 @@ public class TPStringAnalysis {
 
     private static final String speciesPath = "/com/chembiohub/tpmap/analysis/analysispane/species.v10.5.txt";
 
+    private static TPStringClient stringClient = TPStringClient.fromLocation(null);
+
+    private static List<String[]> speciesList;
+
     public TPStringAnalysis() {
 
     }
 
     /**
+     * Set the client used to map identifiers and create networks for all subsequent String analyses.
      *
-     * @param proteins List of proteins
+     * @param client STRING client
+     */
+    public static void setStringClient(TPStringClient client) {
+        stringClient = client;
+    }
+
+    /**
+     * Core species from species.v10.5.txt, read once and shared between species selector dialogs.
+     *
+     * @return list of {taxid, species name}
+     * @throws IOException if the species list cannot be read
+     */
+    private static synchronized List<String[]> getSpeciesList() throws IOException {
+        if(speciesList == null) {
+            List<String[]> species = new ArrayList<>();
+            try (BufferedReader br = new BufferedReader(new InputStreamReader(TPStringAnalysis.class.getResource(speciesPath).openStream()))) {
+                br.lines().forEach((String line) -> {
+                    if(line.startsWith("#")) {
+                        return;
+                    }
+                    String[] taxonomyLine = line.split("\t");
+                    if(!taxonomyLine[1].equals("core")) {
+                        return;
+                    }
+                    species.add(new String[] { taxonomyLine[0], taxonomyLine[3] });
+                });
+            }
+            speciesList = Collections.unmodifiableList(species);
+        }
+        return speciesList;
+    }
+
+    /**
+     *
+     * @param selection Selection model of the proteome
      * @param species Species identifier
      * @param primaryStage Parent stage
      * @param tpTabPane Pane on which to open new string tab
      */
-    public void stringNetworkImage(ObservableList<? extends Protein> proteins, StringProperty species, Stage primaryStage, TabPane tpTabPane) {
+    public void stringNetworkImage(TPSelectionModel<? extends Protein> selection, StringProperty species, Stage primaryStage, TabPane tpTabPane) {
 
-        IntegerProperty selectedProteins = new SimpleIntegerProperty((int)
-            proteins.stream().filter(Protein::getSelected).count());
+        IntegerProperty selectedProteins = new SimpleIntegerProperty(selection.getSelectedCount());
 
         if(selectedProteins.getValue()==0) {
             Alert noProteinsSelectedAlert = new Alert(Alert.AlertType.ERROR);
@@ -112,125 +150,117 @@ public class TPStringAnalysis {
 
         result.ifPresent(stringAnalysis -> {
 
-            try {
+            final String taxId = stringAnalysis.getKey();
+            final boolean highlight = stringAnalysis.getValue();
 
-                List<String> idList = new ArrayList<>();
-                List<String> colorList = new ArrayList<>();
+            List<String> idList = new ArrayList<>();
+            List<String> colorList = new ArrayList<>();
 
-                proteins.stream().filter(Protein::getSelected).peek((p) -> idList.add(p.getAccession().replaceAll("[-;].*$", ""))).forEachOrdered((p) -> {
-                    if(p instanceof Protein1D) {
-                        if (((Protein1D) p).getMeanTM() < -0.00) {
-                            colorList.add("#FF0000 ");
-                        } else if (((Protein1D) p).getMeanTM() > 0.00) {
-                            colorList.add("#00FF00 ");
-                        } else {
-                            colorList.add("#FFFFFF ");
-                        }
-                    }
-                    else {
-                        if (p.getScore() < -0.00) {
-                            colorList.add("#FF0000 ");
-                        } else if (p.getScore() > 0.00) {
-                            colorList.add("#00FF00 ");
-                        } else {
-                            colorList.add("#FFFFFF ");
-                        }
+            selection.getSelectedProteins().stream().peek((p) -> idList.add(p.getAccession().replaceAll("[-;].*$", ""))).forEachOrdered((p) -> {
+                if(p instanceof Protein1D) {
+                    if (((Protein1D) p).getMeanTM() < -0.00) {
+                        colorList.add("#FF0000 ");
+                    } else if (((Protein1D) p).getMeanTM() > 0.00) {
+                        colorList.add("#00FF00 ");
+                    } else {
+                        colorList.add("#FFFFFF ");
                     }
-                });
-
-                URL stringInput = new URL("https://string-db.org/api/tsv/get_string_ids?identifiers=".concat(String.join("%0D", idList)));
-
-                Logger.getLogger(TPMAP.class.getName()).log(Level.INFO, stringInput.toString());
-
-                URLConnection connection = stringInput.openConnection();
-                List<String> stringIdList;
-                List<String> stringColorList;
-                String l;
-                try (BufferedReader in = new BufferedReader(new InputStreamReader(connection.getInputStream()))) {
-                    stringIdList = new ArrayList<>();
-                    stringColorList = new ArrayList<>();
-                    boolean header = true;
-                    while ((l = in.readLine()) != null) {
-                        if (!header) {
-                            String[] lineVals = l.split("\t");
-                            if (lineVals.length>=3 && lineVals[2].equals(stringAnalysis.getKey())) {
-                                stringIdList.add(lineVals[1]);
-                                stringColorList.add(colorList.get(Integer.valueOf(lineVals[0])));
-                            }
-                        } else {
-                            header = false;
-                        }
+                }
+                else {
+                    if (p.getScore() < -0.00) {
+                        colorList.add("#FF0000 ");
+                    } else if (p.getScore() > 0.00) {
+                        colorList.add("#00FF00 ");
+                    } else {
+                        colorList.add("#FFFFFF ");
                     }
                 }
+            });
 
+            final TPStringClient client = stringClient;
 
-                List<NameValuePair> params = new ArrayList<>();
+            Task<String> networkTask = new Task<String>() {
+                @Override
+                protected String call() throws Exception {
 
-                String stringIds = String.join(" ", stringIdList);
-                String stringColors = String.join(" ", stringColorList);
+                    updateProgress(0, 2);
+                    updateMessage("Mapping " + idList.size() + " identifiers to STRING");
 
-                HttpPost payloadpost = new HttpPost("https://version11.string-db.org/newstring_cgi/webservices/post_payload.pl");
+                    Map<String,String> stringIdMap = client.getStringIds(idList, taxId);
 
-                params.add(new BasicNameValuePair("species", stringAnalysis.getKey()));
-                params.add(new BasicNameValuePair("identifiers", stringIds));
+                    Set<String> stringIdSet = new HashSet<>();
+                    List<String> stringIdList = new ArrayList<>();
+                    List<String> stringColorList = new ArrayList<>();
+                    for(int i=0; i<idList.size(); i++) {
+                        String stringId = stringIdMap.get(idList.get(i));
+                        if(stringId != null && stringIdSet.add(stringId)) {
+                            stringIdList.add(stringId);
+                            stringColorList.add(colorList.get(i));
+                        }
+                    }
 
-                if(stringAnalysis.getValue()) {
-                    params.add(new BasicNameValuePair("colors", stringColors));
-                }
+                    if(stringIdList.isEmpty()) {
+                        throw new IOException("None of the selected proteins could be mapped to STRING identifiers for taxonomy " + taxId);
+                    }
 
-                payloadpost.setEntity(new UrlEncodedFormEntity(params, "UTF-8"));
+                    if(isCancelled()) {
+                        return null;
+                    }
 
-                HttpClient httpclient = HttpClients.createDefault();
+                    updateProgress(1, 2);
+                    updateMessage("Creating network of " + stringIdList.size() + " proteins");
 
-                Logger.getLogger(TPMAP.class.getName()).log(Level.INFO, payloadpost.toString());
+                    String stringUrl = client.getNetworkUrl(stringIdList, highlight ? stringColorList : null, taxId);
 
-                HttpResponse response = httpclient.execute(payloadpost);
+                    updateProgress(2, 2);
 
-                HttpEntity entity = response.getEntity();
+                    return stringUrl;
+                }
+            };
 
-                StringBuilder payload_id = new StringBuilder();
+            Tab stringTab = new Tab("String Network");
 
-                if (entity != null) {
-                    try (InputStream is = entity.getContent()) {
-                        BufferedReader br = new BufferedReader(new InputStreamReader(is));
+            ProgressIndicator progressIndicator = new ProgressIndicator();
+            progressIndicator.progressProperty().bind(networkTask.progressProperty());
+            Label progressLabel = new Label();
+            progressLabel.textProperty().bind(networkTask.messageProperty());
+            VBox progressBox = new VBox(progressIndicator, progressLabel);
+            progressBox.setSpacing(10);
+            progressBox.setAlignment(Pos.CENTER);
+            stringTab.setContent(progressBox);
+            stringTab.setOnClosed(evt -> networkTask.cancel(true));
 
-                        while ((l = br.readLine()) != null) {
-                            payload_id.append(l);
-                        }
-                    }
-                }
+            tpTabPane.getTabs().add(stringTab);
+            tpTabPane.getSelectionModel().select(stringTab);
 
-                String stringUrl = "";
+            networkTask.setOnSucceeded(evt -> {
 
-                if (stringIdList.size()==1) {
-                    stringUrl = "https://version11.string-db.org/cgi/network.pl?network_flavor=evidence&species="
-                            + stringAnalysis.getKey() + "&internal_payload_id=" + payload_id + "&identifier="
-                            + stringIdList.get(0);
-                } else {
-                    stringUrl = "https://version11.string-db.org/cgi/network.pl?network_flavor=evidence&limit=0&species="
-                            + stringAnalysis.getKey() + "&internal_payload_id=" + payload_id + "&identifiers="
-                            + String.join("%0D", stringIdList);
-                }
+                String stringUrl = networkTask.getValue();
 
                 Logger.getLogger(TPMAP.class.getName()).log(Level.INFO, stringUrl);
 
                 TPWebView tpWebView = new TPWebView(stringUrl);
-                tpWebView.addToWhitelist("https://version11.string-db.org");
-                tpWebView.addToWhitelist("https://www.string-db.org");
+                client.getWhitelist().forEach(tpWebView::addToWhitelist);
+                tpWebView.addToWhitelist(stringUrl);
 
-                Tab stringTab = new Tab("String Network");
                 stringTab.setContent(tpWebView.createBrowserPane());
+            });
 
-                tpTabPane.getTabs().add(stringTab);
-                tpTabPane.getSelectionModel().select(stringTab);
-
-            } catch (Exception ex) {
+            networkTask.setOnFailed(evt -> {
+                tpTabPane.getTabs().remove(stringTab);
+                Throwable ex = networkTask.getException();
                 Alert stringAlert = new Alert(Alert.AlertType.ERROR);
+                stringAlert.initOwner(primaryStage);
                 stringAlert.setHeaderText("Unable to load String Network");
                 stringAlert.setContentText(ex.getMessage());
-                stringAlert.showAndWait();
+                stringAlert.show();
                 Logger.getLogger(TPStringAnalysis.class.getName()).log(Level.SEVERE, null, ex);
-            }
+            });
+
+            Thread networkThread = new Thread(networkTask);
+            networkThread.setDaemon(true);
+            networkThread.start();
+
         });
     }
 
@@ -240,18 +270,11 @@ public class TPStringAnalysis {
 
         StringProperty selectedTaxId = new SimpleStringProperty();
 
-        try (BufferedReader br = new BufferedReader(new InputStreamReader(getClass().getResource(speciesPath).openStream()))) {
-            br.lines().forEach((String line) -> {
-                if(line.startsWith("#")) {
-                    return;
-                }
-                String[] taxonomyLine = line.split("\t");
-                if(!taxonomyLine[1].equals("core")) {
-                    return;
-                }
-                String t = taxonomyLine[3] + " (taxid:" + taxonomyLine[0] + ")";
+        try {
+            getSpeciesList().forEach(taxonomyLine -> {
+                String t = taxonomyLine[1] + " (taxid:" + taxonomyLine[0] + ")";
                 taxidMap.put(t, taxonomyLine[0]);
-                if(taxonomy!=null && taxonomyLine[3].toLowerCase().equals(taxonomy.toLowerCase())) {
+                if(taxonomy!=null && taxonomyLine[1].toLowerCase().equals(taxonomy.toLowerCase())) {
                     selectedTaxId.set(t);
                 }
             });
@@ -295,10 +318,20 @@ public class TPStringAnalysis {
         return speciesSelectDialog;
     }
 
-    public void stringFunctionalEnrichment(ObservableList<? extends Protein> proteins, Stage primaryStage, TabPane tpTabPane) {
+    /**
+     * Create a task that queries STRING for the functional enrichment of the selected proteins in the background and
+     * displays the enrichment table in a new tab.
+     *
+     * @param tppExp Proteome
+     * @return analysis task, or null if no proteins are selected
+     */
+    public TPAnalysisTask<String[]> stringFunctionalEnrichment(Proteome<? extends Protein> tppExp) {
+
+        final TPSelectionModel<? extends Protein> selection = tppExp.getSelectionModel();
+        final Stage primaryStage = tppExp.getParentStage();
+        final TabPane tpTabPane = tppExp.getTabPane();
 
-        IntegerProperty selectedProteins = new SimpleIntegerProperty((int)
-                proteins.stream().filter(Protein::getSelected).count());
+        IntegerProperty selectedProteins = new SimpleIntegerProperty(selection.getSelectedCount());
 
         if(selectedProteins.getValue()==0) {
             Alert noProteinsSelectedAlert = new Alert(Alert.AlertType.ERROR);
@@ -306,25 +339,43 @@ public class TPStringAnalysis {
             noProteinsSelectedAlert.setTitle("No Proteins Selected");
             noProteinsSelectedAlert.setHeaderText("No Proteins Selected. Please select proteins for String analysis using the checkboxes.");
             noProteinsSelectedAlert.showAndWait();
-            return;
+            return null;
         }
 
         StringBuilder proteinList = new StringBuilder();
         boolean flag = false;
-        for(Protein p : proteins) {
-            if(p.getSelected()) {
-                if(flag) {
-                    proteinList.append("%0d");
-                }
-                else {
-                    flag = true;
-                }
-                proteinList.append(p.getAccession());
+        for(Protein p : selection.getSelectedProteins()) {
+            if(flag) {
+                proteinList.append("%0d");
             }
+            else {
+                flag = true;
+            }
+            proteinList.append(p.getAccession());
         }
 
         final String stringUrl = "https://string-db.org/api/tsv/enrichment?species=9606&identifiers=" + proteinList;
 
+        return new TPAnalysisTask<String[]>(tppExp, "STRING functional enrichment", false) {
+            @Override
+            protected String[] compute() throws IOException {
+                return requestFunctionalEnrichment(stringUrl);
+            }
+
+            @Override
+            protected void apply(String[] enrichment) {
+                showFunctionalEnrichment(stringUrl, enrichment[0], enrichment[1], primaryStage, tpTabPane);
+            }
+        };
+    }
+
+    /**
+     * @param stringUrl STRING enrichment API request
+     * @return enrichment table as tab separated text and as HTML page
+     * @throws IOException if the request fails
+     */
+    private String[] requestFunctionalEnrichment(String stringUrl) throws IOException {
+
         HttpPost stringPost = new HttpPost(stringUrl);
 
         HttpClient httpclient = HttpClients.createDefault();
@@ -344,69 +395,70 @@ public class TPStringAnalysis {
                         "function drawTable() {\n" +
                         "var data = new google.visualization.DataTable();\n");
 
-        try {
-            response = httpclient.execute(stringPost);
+        response = httpclient.execute(stringPost);
 
-            HttpEntity entity = response.getEntity();
+        HttpEntity entity = response.getEntity();
 
-            String l;
+        String l;
 
-            if (entity != null) {
-                try (InputStream is = entity.getContent()) {
-                    BufferedReader br = new BufferedReader(new InputStreamReader(is));
+        if (entity != null) {
+            try (InputStream is = entity.getContent()) {
+                BufferedReader br = new BufferedReader(new InputStreamReader(is));
 
-                    boolean head = true;
-                    boolean first = true;
-                    List<Integer> numberCols = new Vector<>();
+                boolean head = true;
+                boolean first = true;
+                List<Integer> numberCols = new Vector<>();
 
-                    while ((l = br.readLine()) != null) {
-                        enrichmentTable.append(l).append("\n");
-                        if(head) {
-                            head = false;
-                            String[] header = l.split("\t");
-                            for(int i=0; i<header.length; i++) {
-                                if(header[i].startsWith("number") || header[i].startsWith("p_value") || header[i].startsWith("fdr")) {
-                                    enrichmentTableHTML.append("data.addColumn('number', '").append(header[i]).append("');\n");
-                                    numberCols.add(i);
-                                }
-                                else {
-                                    enrichmentTableHTML.append("data.addColumn('string', '").append(header[i]).append("');\n");
-                                }
-                            }
-                            enrichmentTableHTML.append("data.addRows([\n");
-                        }
-                        else {
-                            if(first) { first = false; }
-                            else { enrichmentTableHTML.append(",\n"); }
-                            String[] columns = l.split("\t");
-                            if(numberCols.contains(0)) {
-                                enrichmentTableHTML.append("[ ").append(columns[0].replaceAll("'", "").replaceAll("_", " "));
+                while ((l = br.readLine()) != null) {
+                    enrichmentTable.append(l).append("\n");
+                    if(head) {
+                        head = false;
+                        String[] header = l.split("\t");
+                        for(int i=0; i<header.length; i++) {
+                            if(header[i].startsWith("number") || header[i].startsWith("p_value") || header[i].startsWith("fdr")) {
+                                enrichmentTableHTML.append("data.addColumn('number', '").append(header[i]).append("');\n");
+                                numberCols.add(i);
                             }
                             else {
-                                enrichmentTableHTML.append("[ '").append(columns[0].replaceAll("'", "")).append("'");
+                                enrichmentTableHTML.append("data.addColumn('string', '").append(header[i]).append("');\n");
                             }
-                            if(columns.length > 0) {
-                                for(int i=1; i<columns.length; i++) {
-                                    if(numberCols.contains(i)) {
-                                        enrichmentTableHTML.append(", ").append(columns[i].replaceAll("'", ""));
-                                    }
-                                    else {
-                                        enrichmentTableHTML.append(", '").append(columns[i].replaceAll("'", "")).append("'");
-                                    }
+                        }
+                        enrichmentTableHTML.append("data.addRows([\n");
+                    }
+                    else {
+                        if(first) { first = false; }
+                        else { enrichmentTableHTML.append(",\n"); }
+                        String[] columns = l.split("\t");
+                        if(numberCols.contains(0)) {
+                            enrichmentTableHTML.append("[ ").append(columns[0].replaceAll("'", "").replaceAll("_", " "));
+                        }
+                        else {
+                            enrichmentTableHTML.append("[ '").append(columns[0].replaceAll("'", "")).append("'");
+                        }
+                        if(columns.length > 0) {
+                            for(int i=1; i<columns.length; i++) {
+                                if(numberCols.contains(i)) {
+                                    enrichmentTableHTML.append(", ").append(columns[i].replaceAll("'", ""));
+                                }
+                                else {
+                                    enrichmentTableHTML.append(", '").append(columns[i].replaceAll("'", "")).append("'");
                                 }
                             }
-                            enrichmentTableHTML.append(" ]");
                         }
+                        enrichmentTableHTML.append(" ]");
                     }
-                    enrichmentTableHTML.append("]);\n" + "var table = new google.visualization.Table(document.getElementById('table_div'));\n" + "table.draw(data, {showRowNumber: true, width: '100%', height: '100%'}); }\n");
                 }
+                enrichmentTableHTML.append("]);\n" + "var table = new google.visualization.Table(document.getElementById('table_div'));\n" + "table.draw(data, {showRowNumber: true, width: '100%', height: '100%'}); }\n");
             }
-        } catch (IOException e) {
-            e.printStackTrace();
         }
 
         enrichmentTableHTML.append("</script>\n" + "</head>\n" + "<body><div id=\"table_div\"> </div></body>\n" + "</html>\n");
 
+        return new String[] { enrichmentTable.toString(), enrichmentTableHTML.toString() };
+    }
+
+    private void showFunctionalEnrichment(String stringUrl, String enrichmentTableExport, String enrichmentTableHTML, Stage primaryStage, TabPane tpTabPane) {
+
         Tab stringTab = new Tab("Functional Enrichment");
 
         BorderPane stringTabContent = new BorderPane();
@@ -419,7 +471,7 @@ public class TPStringAnalysis {
 
         WebView webView = new WebView();
 
-        webView.getEngine().loadContent(enrichmentTableHTML.toString());
+        webView.getEngine().loadContent(enrichmentTableHTML);
 
         stringTabContent.setCenter(webView);
 
@@ -449,8 +501,6 @@ public class TPStringAnalysis {
             }
         });
 
-        final String enrichmentTableExport = enrichmentTable.toString();
-
         saveButton.setOnAction( event -> {
             FileExportWizard exporter = new FileExportWizard(enrichmentTableExport, primaryStage, false, -1);
         });
@@ -0,0 +1,87 @@
+/*
+ * Copyright (C) 2020 Felix Feyertag <felix.feyertag@ndm.ox.ac.uk>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.chembiohub.tpmap.analysis;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * TPStringClient
+ *
+ * Source of STRING identifier mappings and network views used by TPStringAnalysis. The default client talks to
+ * string-db.org through an on-disk identifier cache; a local stand-in server or a directory of STRING flat files
+ * can be used instead by passing --STRING=&lt;URL|DIR&gt; on the command line.
+ *
+ * @author felixfeyertag
+ */
+public interface TPStringClient {
+
+    /**
+     * Map UniProt accessions to STRING identifiers.
+     *
+     * @param accessions UniProt accessions
+     * @param taxId NCBI taxonomy identifier
+     * @return map of accession to STRING identifier, accessions without a match are not included
+     * @throws IOException if the identifier source cannot be read
+     */
+    Map<String,String> getStringIds(List<String> accessions, String taxId) throws IOException;
+
+    /**
+     * Create a network view of STRING identifiers.
+     *
+     * @param stringIds STRING identifiers
+     * @param colours node colours in the same order as stringIds, or null for no highlighting
+     * @param taxId NCBI taxonomy identifier
+     * @return URL to be loaded in a TPWebView
+     * @throws IOException if the network cannot be created
+     */
+    String getNetworkUrl(List<String> stringIds, List<String> colours, String taxId) throws IOException;
+
+    /**
+     * @return URL prefixes that a TPWebView displaying the network should trust
+     */
+    List<String> getWhitelist();
+
+    /**
+     * Create a client for a location given on the command line. URLs refer to a STRING server (or a local stand-in
+     * implementing the same API), anything else is treated as a directory of STRING flat files.
+     *
+     * @param location URL or directory, null for string-db.org
+     * @return caching client for the location
+     */
+    static TPStringClient fromLocation(String location) {
+        TPStringClient client;
+        if(location == null || location.isEmpty()) {
+            client = new TPStringRestClient();
+        }
+        else if(location.startsWith("http://") || location.startsWith("https://")) {
+            client = new TPStringRestClient(location);
+        }
+        else {
+            client = new TPStringFlatFileClient(new File(location));
+        }
+        return new TPCachingStringClient(client, defaultCacheDirectory());
+    }
+
+    static Path defaultCacheDirectory() {
+        return Paths.get(System.getProperty("user.home"), ".tpmap", "string");
+    }
+
+}
@@ -0,0 +1,182 @@
+/*
+ * Copyright (C) 2020 Felix Feyertag <felix.feyertag@ndm.ox.ac.uk>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.chembiohub.tpmap.analysis;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * TPStringFlatFileClient
+ *
+ * Offline STRING client reading the flat files distributed by string-db.org from a local directory:
+ *
+ * - &lt;taxid&gt;.protein.aliases.&lt;version&gt;.txt[.gz]   STRING identifier to alias (UniProt accession) mapping
+ * - &lt;taxid&gt;.protein.links.&lt;version&gt;.txt[.gz]     protein pairs and combined scores
+ *
+ * Networks are rendered as a self-contained SVG page containing the interactions between the requested proteins
+ * with a combined score of at least 400 (medium confidence).
+ *
+ * @author felixfeyertag
+ */
+public class TPStringFlatFileClient implements TPStringClient {
+
+    private static final int MIN_COMBINED_SCORE = 400;
+
+    private final File directory;
+
+    public TPStringFlatFileClient(File directory) {
+        this.directory = directory;
+    }
+
+    @Override
+    public Map<String,String> getStringIds(List<String> accessions, String taxId) throws IOException {
+
+        Set<String> queries = new HashSet<>(accessions);
+        Map<String,String> stringIds = new HashMap<>();
+
+        try (BufferedReader br = open(taxId, "protein.aliases")) {
+            String l;
+            while ((l = br.readLine()) != null) {
+                if(l.startsWith("#")) {
+                    continue;
+                }
+                String[] lineVals = l.split("\t");
+                if(lineVals.length >= 2 && queries.contains(lineVals[1])) {
+                    stringIds.putIfAbsent(lineVals[1], lineVals[0]);
+                }
+            }
+        }
+
+        return stringIds;
+    }
+
+    @Override
+    public String getNetworkUrl(List<String> stringIds, List<String> colours, String taxId) throws IOException {
+
+        Map<String,Integer> nodeIndex = new HashMap<>();
+        for(int i=0; i<stringIds.size(); i++) {
+            nodeIndex.putIfAbsent(stringIds.get(i), i);
+        }
+
+        List<int[]> edges = new ArrayList<>();
+
+        try (BufferedReader br = open(taxId, "protein.links")) {
+            String l;
+            boolean header = true;
+            while ((l = br.readLine()) != null) {
+                if(header) {
+                    header = false;
+                    continue;
+                }
+                String[] lineVals = l.split(" ");
+                if(lineVals.length < 3) {
+                    continue;
+                }
+                Integer a = nodeIndex.get(lineVals[0]);
+                Integer b = nodeIndex.get(lineVals[1]);
+                // links files list every pair in both directions
+                if(a != null && b != null && a < b && Integer.parseInt(lineVals[2]) >= MIN_COMBINED_SCORE) {
+                    edges.add(new int[] { a, b, Integer.parseInt(lineVals[2]) });
+                }
+            }
+        }
+
+        Path html = Files.createTempFile("tpmap-string-network", ".html");
+        html.toFile().deleteOnExit();
+        Files.write(html, networkHtml(stringIds, colours, edges).getBytes(StandardCharsets.UTF_8));
+
+        return html.toUri().toString();
+    }
+
+    @Override
+    public List<String> getWhitelist() {
+        return Collections.emptyList();
+    }
+
+    private BufferedReader open(String taxId, String type) throws IOException {
+        File[] candidates = directory.listFiles((dir, name) -> name.startsWith(taxId + "." + type + "."));
+        if(candidates == null || candidates.length == 0) {
+            throw new FileNotFoundException("No STRING " + type + " file for taxonomy " + taxId + " in " + directory);
+        }
+        Arrays.sort(candidates);
+        File f = candidates[candidates.length - 1];
+        InputStream is = new FileInputStream(f);
+        if(f.getName().endsWith(".gz")) {
+            is = new GZIPInputStream(is, 1 << 16);
+        }
+        return new BufferedReader(new InputStreamReader(is, StandardCharsets.UTF_8), 1 << 16);
+    }
+
+    private static String networkHtml(List<String> stringIds, List<String> colours, List<int[]> edges) {
+
+        int n = stringIds.size();
+        double size = Math.max(400, 40 * Math.sqrt(n) * 4);
+        double centre = size / 2;
+        double radius = size / 2 - 60;
+
+        double[] x = new double[n];
+        double[] y = new double[n];
+        for(int i=0; i<n; i++) {
+            double angle = 2 * Math.PI * i / Math.max(1, n);
+            x[i] = centre + radius * Math.cos(angle);
+            y[i] = centre + radius * Math.sin(angle);
+        }
+
+        StringBuilder svg = new StringBuilder();
+        svg.append("<!DOCTYPE html>\n<html>\n<head><title>String Network</title></head>\n<body>\n");
+        svg.append("<p>").append(n).append(" proteins, ").append(edges.size())
+                .append(" interactions (combined score &ge; ").append(MIN_COMBINED_SCORE).append(")</p>\n");
+        svg.append("<svg xmlns=\"http://www.w3.org/2000/svg\" width=\"").append(size).append("\" height=\"")
+                .append(size).append("\">\n");
+
+        for(int[] e : edges) {
+            svg.append("<line x1=\"").append(x[e[0]]).append("\" y1=\"").append(y[e[0]]).append("\" x2=\"")
+                    .append(x[e[1]]).append("\" y2=\"").append(y[e[1]]).append("\" stroke=\"#888888\" stroke-width=\"")
+                    .append(1 + 3 * (e[2] - MIN_COMBINED_SCORE) / 600.0).append("\"/>\n");
+        }
+
+        for(int i=0; i<n; i++) {
+            String colour = colours == null ? "#FFFFFF" : colours.get(i).trim();
+            String label = stringIds.get(i).replaceFirst("^[0-9]+\\.", "");
+            svg.append("<circle cx=\"").append(x[i]).append("\" cy=\"").append(y[i])
+                    .append("\" r=\"10\" stroke=\"#000000\" fill=\"").append(colour).append("\"/>\n");
+            svg.append("<text x=\"").append(x[i] + 12).append("\" y=\"").append(y[i] + 4)
+                    .append("\" font-family=\"Verdana\" font-size=\"10\">").append(label).append("</text>\n");
+        }
+
+        svg.append("</svg>\n</body>\n</html>\n");
+
+        return svg.toString();
+    }
+
+}
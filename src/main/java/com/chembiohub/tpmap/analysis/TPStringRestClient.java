@@ -0,0 +1,167 @@
+/*
+ * Copyright (C) 2020 Felix Feyertag <felix.feyertag@ndm.ox.ac.uk>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.chembiohub.tpmap.analysis;
+
+import com.chembiohub.tpmap.TPMAP;
+import org.apache.http.HttpEntity;
+import org.apache.http.NameValuePair;
+import org.apache.http.client.entity.UrlEncodedFormEntity;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.message.BasicNameValuePair;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * TPStringRestClient
+ *
+ * STRING client using the string-db.org REST API, or a local server implementing the get_string_ids, post_payload
+ * and network.pl endpoints.
+ *
+ * @author felixfeyertag
+ */
+public class TPStringRestClient implements TPStringClient {
+
+    private final String apiUrl;
+    private final String networkUrl;
+
+    public TPStringRestClient() {
+        this.apiUrl = "https://string-db.org/api";
+        this.networkUrl = "https://version11.string-db.org";
+    }
+
+    /**
+     * @param baseUrl base URL of a STRING server, the API is expected at baseUrl/api
+     */
+    public TPStringRestClient(String baseUrl) {
+        String base = baseUrl.replaceFirst("/+$", "");
+        this.apiUrl = base + "/api";
+        this.networkUrl = base;
+    }
+
+    @Override
+    public Map<String,String> getStringIds(List<String> accessions, String taxId) throws IOException {
+
+        Map<String,String> stringIds = new HashMap<>();
+
+        if(accessions.isEmpty()) {
+            return stringIds;
+        }
+
+        List<NameValuePair> params = new ArrayList<>();
+        params.add(new BasicNameValuePair("identifiers", String.join("\r", accessions)));
+        params.add(new BasicNameValuePair("species", taxId));
+
+        HttpPost idPost = new HttpPost(apiUrl + "/tsv/get_string_ids");
+        idPost.setEntity(new UrlEncodedFormEntity(params, "UTF-8"));
+
+        Logger.getLogger(TPMAP.class.getName()).log(Level.INFO, idPost.toString());
+
+        List<String> lines = post(idPost);
+
+        // first line is the header
+        for(String l : lines.subList(Math.min(1, lines.size()), lines.size())) {
+            String[] lineVals = l.split("\t");
+            if (lineVals.length>=3 && lineVals[2].equals(taxId)) {
+                try {
+                    int queryIndex = Integer.parseInt(lineVals[0]);
+                    stringIds.putIfAbsent(accessions.get(queryIndex), lineVals[1]);
+                } catch (NumberFormatException | IndexOutOfBoundsException ex) {
+                    Logger.getLogger(TPStringRestClient.class.getName()).log(Level.WARNING, "Unexpected STRING response: " + l);
+                }
+            }
+        }
+
+        return stringIds;
+    }
+
+    @Override
+    public String getNetworkUrl(List<String> stringIds, List<String> colours, String taxId) throws IOException {
+
+        List<NameValuePair> params = new ArrayList<>();
+
+        HttpPost payloadpost = new HttpPost(networkUrl + "/newstring_cgi/webservices/post_payload.pl");
+
+        params.add(new BasicNameValuePair("species", taxId));
+        params.add(new BasicNameValuePair("identifiers", String.join(" ", stringIds)));
+
+        if(colours != null) {
+            params.add(new BasicNameValuePair("colors", String.join(" ", colours)));
+        }
+
+        payloadpost.setEntity(new UrlEncodedFormEntity(params, "UTF-8"));
+
+        Logger.getLogger(TPMAP.class.getName()).log(Level.INFO, payloadpost.toString());
+
+        String payloadId = String.join("", post(payloadpost));
+
+        if (stringIds.size()==1) {
+            return networkUrl + "/cgi/network.pl?network_flavor=evidence&species="
+                    + taxId + "&internal_payload_id=" + payloadId + "&identifier="
+                    + stringIds.get(0);
+        } else {
+            return networkUrl + "/cgi/network.pl?network_flavor=evidence&limit=0&species="
+                    + taxId + "&internal_payload_id=" + payloadId + "&identifiers="
+                    + String.join("%0D", stringIds);
+        }
+    }
+
+    @Override
+    public List<String> getWhitelist() {
+        return Arrays.asList(networkUrl, "https://www.string-db.org");
+    }
+
+    private List<String> post(HttpPost post) throws IOException {
+
+        List<String> lines = new ArrayList<>();
+
+        try (CloseableHttpClient httpclient = HttpClients.createDefault();
+             CloseableHttpResponse response = httpclient.execute(post)) {
+
+            if(response.getStatusLine().getStatusCode() >= 400) {
+                throw new IOException("STRING server returned " + response.getStatusLine() + " for " + post.getURI());
+            }
+
+            HttpEntity entity = response.getEntity();
+
+            if (entity != null) {
+                try (InputStream is = entity.getContent();
+                     BufferedReader br = new BufferedReader(new InputStreamReader(is, StandardCharsets.UTF_8))) {
+                    String l;
+                    while ((l = br.readLine()) != null) {
+                        lines.add(l);
+                    }
+                }
+            }
+        }
+
+        return lines;
+    }
+
+}
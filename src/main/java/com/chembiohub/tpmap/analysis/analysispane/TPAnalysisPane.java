@@ -15,12 +15,60 @@
  */
 package com.chembiohub.tpmap.analysis.analysispane;
 
+import com.chembiohub.tpmap.analysis.TPAnalysisTask;
+import javafx.scene.control.Button;
+import javafx.scene.control.ProgressBar;
+import javafx.scene.layout.HBox;
 import javafx.scene.layout.Pane;
 
 /**
+ * TPAnalysisPane
+ *
+ * Base class of the analysis panes. Analyses are run as TPAnalysisTasks through runTask, which cancels the previous
+ * analysis of the pane if it is still running and shows the progress of the analysis with a cancel button in the
+ * progress box of the pane.
  *
  * @author felixfeyertag
  */
 abstract class TPAnalysisPane extends Pane {
-    
+
+    private final ProgressBar progressBar = new ProgressBar();
+    private final Button cancelButton = new Button("Cancel");
+    private final HBox progressBox = new HBox(progressBar, cancelButton);
+    private TPAnalysisTask<?> currentTask;
+
+    TPAnalysisPane() {
+        progressBar.setPrefWidth(130);
+        cancelButton.setPrefWidth(70);
+        cancelButton.setOnAction(event -> {
+            if(currentTask != null) {
+                currentTask.cancel(true);
+            }
+        });
+        progressBox.setVisible(false);
+        progressBox.managedProperty().bind(progressBox.visibleProperty());
+    }
+
+    /**
+     * @return progress bar and cancel button of the running analysis, hidden while no analysis runs
+     */
+    HBox getProgressBox() {
+        return progressBox;
+    }
+
+    /**
+     * Cancels the running analysis of this pane, if any, and submits a new one
+     *
+     * @param task analysis to run
+     */
+    void runTask(TPAnalysisTask<?> task) {
+        if(currentTask != null && !currentTask.isDone()) {
+            currentTask.cancel(true);
+        }
+        currentTask = task;
+        progressBar.progressProperty().bind(task.progressProperty());
+        progressBox.visibleProperty().bind(task.runningProperty());
+        task.submit();
+    }
+
 }
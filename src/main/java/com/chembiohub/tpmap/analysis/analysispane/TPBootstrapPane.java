@@ -15,11 +15,13 @@
  */
 package com.chembiohub.tpmap.analysis.analysispane;
 
+import com.chembiohub.tpmap.analysis.TPAnalysisTask;
 import com.chembiohub.tpmap.analysis.TPBootstrapAnalysis;
 import com.chembiohub.tpmap.dstruct.Protein;
 import com.chembiohub.tpmap.dstruct.Proteome;
 import javafx.event.ActionEvent;
 import javafx.scene.control.Button;
+import javafx.scene.layout.VBox;
 
 /**
  * TPBootstrapPane
@@ -47,15 +49,21 @@ final class TPBootstrapPane extends TPAnalysisPane {
 
         bootstrapButton.setPrefWidth(200);
 
-        bootstrapButton.setOnAction((ActionEvent event) -> {
+        bootstrapButton.setOnAction((ActionEvent event) -> runTask(new TPAnalysisTask<TPBootstrapAnalysis>(tppExp, "bootstrap") {
+            @Override
+            protected TPBootstrapAnalysis compute() {
+                TPBootstrapAnalysis bsAnalysis = new TPBootstrapAnalysis(tppExp.getBootstrapIterations());
+                bsAnalysis.runBootstrapAnalysis(tppExp, this::isCancelled);
+                return bsAnalysis;
+            }
 
-            TPBootstrapAnalysis bsAnalysis = new TPBootstrapAnalysis(tppExp.getBootstrapIterations());
-            bsAnalysis.runBootstrapAnalysis(tppExp);
-            bsAnalysis.setBootstrapPVals(tppExp);
-            tppExp.set2dBootstrapAnalysis(bsAnalysis);
+            @Override
+            protected void apply(TPBootstrapAnalysis bsAnalysis) {
+                bsAnalysis.setBootstrapPVals(tppExp);
+                tppExp.set2dBootstrapAnalysis(bsAnalysis);
+            }
+        }));
 
-        });
-
-        this.getChildren().add(bootstrapButton);
+        this.getChildren().add(new VBox(bootstrapButton, getProgressBox()));
     }
 }
@@ -15,10 +15,12 @@
  */
 package com.chembiohub.tpmap.analysis.analysispane;
 
+import com.chembiohub.tpmap.analysis.TPAnalysisTask;
 import com.chembiohub.tpmap.analysis.TPClusterAnalysis;
 import com.chembiohub.tpmap.dstruct.Proteome;
 import javafx.event.ActionEvent;
 import javafx.scene.control.Button;
+import javafx.scene.layout.VBox;
 
 /**
  * TPClusterPane
@@ -41,12 +43,20 @@ final class TPClusterPane extends TPAnalysisPane {
         Button clusterButton = new Button("Cluster Analysis");
         clusterButton.setPrefWidth(200);
         
-        clusterButton.setOnAction((ActionEvent event) -> {
-            TPClusterAnalysis clusterAnalysis = new TPClusterAnalysis();
-            clusterAnalysis.analyseProtein(tppExp);
-        });
+        clusterButton.setOnAction((ActionEvent event) -> runTask(new TPAnalysisTask<Void>(tppExp, "cluster analysis") {
+            @Override
+            protected Void compute() {
+                TPClusterAnalysis clusterAnalysis = new TPClusterAnalysis();
+                clusterAnalysis.analyseProtein(tppExp, this::isCancelled);
+                return null;
+            }
+
+            @Override
+            protected void apply(Void result) {
+            }
+        }));
         
-        this.getChildren().add(clusterButton);
+        this.getChildren().add(new VBox(clusterButton, getProgressBox()));
         
     }
     
@@ -16,27 +16,29 @@
 package com.chembiohub.tpmap.analysis.analysispane;
 
 import com.chembiohub.tpmap.analysis.TPCorumAnalysis;
+import com.chembiohub.tpmap.dstruct.Protein;
 import com.chembiohub.tpmap.dstruct.Proteome;
 import javafx.event.ActionEvent;
 import javafx.scene.control.Button;
 import javafx.scene.control.TextField;
+import javafx.scene.layout.VBox;
 import javafx.stage.Stage;
 
 /**
  * TPCorumAnalysisPane
  *
- * Create a TPAanalysis pane with a button to instantiate Corum analysis
+ * Create a TPAanalysis pane with buttons to instantiate Corum analysis and Corum complex enrichment
  *
  * @author felixfeyertag
  */
 public final class TPCorumAnalysisPane extends TPAnalysisPane {
     
-    private final Proteome tppExp;
+    private final Proteome<? extends Protein> tppExp;
     private final TPCorumAnalysis corumAnalysis;
     private final TextField filterTextField;
     private final Stage parentStage;
     
-    public TPCorumAnalysisPane(Proteome tppExp, TextField filterTextField) {
+    public TPCorumAnalysisPane(Proteome<? extends Protein> tppExp, TextField filterTextField) {
 
         this.tppExp = tppExp;
         this.corumAnalysis = new TPCorumAnalysis();
@@ -52,9 +54,16 @@ public final class TPCorumAnalysisPane extends TPAnalysisPane {
         corumButton.setPrefWidth(200);
 
         
-        corumButton.setOnAction((ActionEvent event) -> corumAnalysis.runCorumAnalysis(tppExp.getProteins(), parentStage, filterTextField));
-        
-        this.getChildren().add(corumButton);
+        corumButton.setOnAction((ActionEvent event) -> corumAnalysis.runCorumAnalysis(tppExp.getSelectionModel(), parentStage, filterTextField));
+
+        Button enrichmentButton = new Button("CORUM Complex Enrichment");
+        enrichmentButton.setPrefWidth(200);
+
+        enrichmentButton.setOnAction((ActionEvent event) -> runTask(corumAnalysis.runCorumEnrichment(tppExp, filterTextField)));
+
+        VBox vBox = new VBox();
+        vBox.getChildren().addAll(corumButton, enrichmentButton, getProgressBox());
+        this.getChildren().add(vBox);
     }
 }
 
@@ -18,7 +18,10 @@ package com.chembiohub.tpmap.analysis.analysispane;
 import com.chembiohub.tpmap.dstruct.Protein1D;
 import com.chembiohub.tpmap.dstruct.Proteome;
 import com.chembiohub.tpmap.dstruct.io.ChartExportWizard;
+import com.chembiohub.tpmap.dstruct.io.ColumnarExportWizard;
 import com.chembiohub.tpmap.dstruct.io.FileExportWizard;
+import com.chembiohub.tpmap.dstruct.io.TPRowWriter;
+import com.chembiohub.tpmap.dstruct.io.TPTsvRowWriter;
 import javafx.event.ActionEvent;
 import javafx.scene.control.Alert;
 import javafx.scene.control.Button;
@@ -28,8 +31,12 @@ import javafx.scene.input.ClipboardContent;
 import javafx.scene.layout.VBox;
 import javafx.stage.Stage;
 
-import java.util.Set;
-import java.util.TreeSet;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 /**
  * TTPPExportPane1D
@@ -63,9 +70,8 @@ public final class TPExportPane1D extends TPAnalysisPane {
         exportChartButton.setPrefWidth(200);
 
         exportButton.setOnAction((ActionEvent evt) -> {
-            String exportText = copySelection(table);
-            if(!exportText.isEmpty()) {
-                FileExportWizard ew = new FileExportWizard(exportText, stage, false, -1);
+            if(table.getItems().stream().anyMatch(Protein1D::getSelected)) {
+                FileExportWizard ew = new FileExportWizard(this::writeSelection, stage, false, -1);
             }
             else {
                 Alert alert = new Alert(Alert.AlertType.ERROR);
@@ -89,113 +95,129 @@ public final class TPExportPane1D extends TPAnalysisPane {
             }
         });
         
+        Button exportColumnarButton = new Button();
+        exportColumnarButton.setText("Export all proteins (Arrow)");
+        exportColumnarButton.setPrefWidth(200);
+        exportColumnarButton.setOnAction( evt -> {
+            ColumnarExportWizard ew = new ColumnarExportWizard(tppExp, stage);
+        });
+
         VBox vBox = new VBox();
-        vBox.getChildren().addAll(exportButton, exportChartButton);
+        vBox.getChildren().addAll(exportButton, exportChartButton, exportColumnarButton);
         this.getChildren().add(vBox);
 
     }
 
 
-    private String copySelection(final TableView<Protein1D> table) {
-        final Set<Integer> rows = new TreeSet<>();
+    private void writeSelection(final TPRowWriter writer) throws IOException {
 
-        //TODO replace StringBuilder with stream to reduce memory load
-        final StringBuilder copyText = new StringBuilder();
+        boolean header = false;
 
-        table.getItems().forEach(protein -> {
+        List<String> repLabels = new ArrayList<>(tppExp.getConcLabels());
+        int[] replicates = Protein1D.getReplicateOrder(repLabels);
+        List<String> tmShiftLabels = Protein1D.getTmShiftLabels(repLabels);
+        boolean sharedCurveFit = tppExp.getSharedCurveFit();
 
-            if(protein.getSelected()) {
+        for(Protein1D protein : table.getItems()) {
 
-                Double[][] abundancesratio = protein.getAbundancesTempRatio();
-
-                if(copyText.toString().isEmpty()) {
-                    copyText.append("Accession\tGene\tOrganism\tDescription\t" +
-                                    "Tm V1\tTm V2\tTm T1\tTm T2\t" +
-                                    "Tm shift (V1T1)\tTm shift (V2T2)\tTm shift (V1V2)\tMean Tm shift\t" +
-                                    "RMSE V1\tRMSE V2\tRMSE T1\tRMSE T2\t" +
-                                    "a T1\tb T1\tplateau T1\t" +
-                                    "a T2\tb T2\tplateau T2\t" +
-                                    "a V1\tb V1\tplateau V1\t" +
-                                    "a V2\tb V2\tplateau V2\t")
-                            .append("Score");
+            if(!protein.getSelected()) {
+                continue;
+            }
 
-                    for(int j=0; j<abundancesratio[0].length; j++) {
-                        copyText.append("\tR" + j + " T1");
-                    }
-                    for(int j=0; j<abundancesratio[1].length; j++) {
-                        copyText.append("\tR" + j + " T2");
-                    }
-                    for(int j=0; j<abundancesratio[2].length; j++) {
-                        copyText.append("\tR" + j + " V1");
-                    }
-                    for(int j=0; j<abundancesratio[3].length; j++) {
-                        copyText.append("\tR" + j + " V2");
-                    }
-                    copyText.append("\n");
+            Double[][] abundancesratio = protein.getAbundancesTempRatio();
 
+            if(!header) {
+                List<String> columns = new ArrayList<>(Arrays.asList("Accession", "Gene", "Organism", "Description"));
+                for(int replicate : replicates) {
+                    columns.add("Tm " + repLabels.get(replicate));
+                }
+                for(String tmShiftLabel : tmShiftLabels) {
+                    columns.add("Tm shift (" + tmShiftLabel + ")");
+                }
+                columns.add("Tm shift (" + Protein1D.getVehicleLabels(repLabels) + ")");
+                columns.add("Mean Tm shift");
+                for(int replicate : replicates) {
+                    columns.add("RMSE " + repLabels.get(replicate));
+                }
+                for(String repLabel : repLabels) {
+                    columns.add("a " + repLabel);
+                    columns.add("b " + repLabel);
+                    columns.add("plateau " + repLabel);
+                }
+                columns.add("Score");
+                if(sharedCurveFit) {
+                    columns.add("Shared fit F");
+                    columns.add("Shared fit p-value");
                 }
 
-                Double[][] curveFitParams = new Double[4][3];
-
-                for(int i=0;i<curveFitParams.length;i++) {
-                    for(int j=0;j<curveFitParams[0].length;j++) {
-                        try {
-                            curveFitParams[i][j] = protein.getCurveFitParams()[i][j];
-                        } catch (ArrayIndexOutOfBoundsException e) {  }
+                for(int i=0; i<repLabels.size(); i++) {
+                    for(int j=0; j<abundancesratio[i].length; j++) {
+                        columns.add("R" + j + " " + repLabels.get(i));
                     }
                 }
 
-                copyText
-
-                        .append(protein.getAccession()    + "\t")
-                        .append(protein.getGeneName()     + "\t")
-                        .append(protein.getOrganismName() + "\t")
-                        .append(protein.getDescription()  + "\t")
-
-                        .append(protein.getTmv1()  + "\t" + protein.getTmv2()   + "\t")
-                        .append(protein.getTmt1()  + "\t" + protein.getTmt2()   + "\t")
-                        .append(protein.getTmVT1() + "\t" + protein.getTmVT2()  + "\t")
-                        .append(protein.getTmVV()  + "\t" + protein.getMeanTM() + "\t")
+                writer.writeHeader(columns);
+                header = true;
+            }
 
-                        .append(protein.getRmsev1() + "\t" + protein.getRmsev2() + "\t")
-                        .append(protein.getRmset1() + "\t" + protein.getRmset2() + "\t")
+            writer.writeString(protein.getAccession());
+            writer.writeString(protein.getGeneName());
+            writer.writeString(protein.getOrganismName());
+            writer.writeString(protein.getDescription());
 
-                        .append(curveFitParams[0][0] + "\t" + curveFitParams[0][1] + "\t" + curveFitParams[0][2] + "\t")
-                        .append(curveFitParams[1][0] + "\t" + curveFitParams[1][1] + "\t" + curveFitParams[1][2] + "\t")
-                        .append(curveFitParams[2][0] + "\t" + curveFitParams[2][1] + "\t" + curveFitParams[2][2] + "\t")
-                        .append(curveFitParams[3][0] + "\t" + curveFitParams[3][1] + "\t" + curveFitParams[3][2] + "\t")
+            for(int replicate : replicates) {
+                writer.writeNumber(protein.getTm(replicate));
+            }
+            for(int pair=0; pair<tmShiftLabels.size(); pair++) {
+                writer.writeNumber(protein.getTmShift(pair));
+            }
+            writer.writeNumber(protein.getTmVV());
+            writer.writeNumber(protein.getMeanTM());
 
-                        .append(protein.getScore());
+            for(int replicate : replicates) {
+                writer.writeNumber(protein.getRmse(replicate));
+            }
 
-                for(int j=0; j<abundancesratio[0].length; j++) {
-                    copyText.append("\t").append(abundancesratio[0][j]);
-                }
-                for(int j=0; j<abundancesratio[1].length; j++) {
-                    copyText.append("\t").append(abundancesratio[1][j]);
-                }
-                for(int j=0; j<abundancesratio[2].length; j++) {
-                    copyText.append("\t").append(abundancesratio[2][j]);
-                }
-                for(int j=0; j<abundancesratio[3].length; j++) {
-                    copyText.append("\t").append(abundancesratio[3][j]);
+            double[][] curveFitParams = protein.getCurveFitParams();
+            for(int i=0; i<repLabels.size(); i++) {
+                for(int j=0; j<3; j++) {
+                    if(curveFitParams != null && i < curveFitParams.length && j < curveFitParams[i].length) {
+                        writer.writeNumber(curveFitParams[i][j]);
+                    }
+                    else {
+                        writer.writeString(null);
+                    }
                 }
+            }
 
-                copyText.append("\n");
+            writer.writeNumber(protein.getScore());
+            if(sharedCurveFit) {
+                writer.writeNumber(protein.getFStatistic());
+                writer.writeNumber(protein.getFPValue());
+            }
 
+            for(Double[] ratios : abundancesratio) {
+                for(Double ratio : ratios) {
+                    writer.writeNumber(ratio);
+                }
             }
-        });
 
-        return copyText.toString();
+            writer.endRow();
+        }
     }
 
-    private void copySelectionToClipboard(final TableView<Protein1D> table) {
+    private void copySelectionToClipboard() {
 
-        String copyText = copySelection(table);
+        StringWriter copyText = new StringWriter();
+        try (TPRowWriter writer = new TPTsvRowWriter(copyText)) {
+            writeSelection(writer);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
         final ClipboardContent clipboardContent = new ClipboardContent();
-        clipboardContent.putString(copyText);
+        clipboardContent.putString(copyText.toString());
         Clipboard.getSystemClipboard().setContent(clipboardContent);
 
     }
 
 }
-
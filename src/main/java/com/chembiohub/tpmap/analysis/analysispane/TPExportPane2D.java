@@ -17,13 +17,17 @@ package com.chembiohub.tpmap.analysis.analysispane;
 
 import com.chembiohub.tpmap.dstruct.Protein2D;
 import com.chembiohub.tpmap.dstruct.Proteome;
+import com.chembiohub.tpmap.dstruct.io.ColumnarExportWizard;
 import com.chembiohub.tpmap.dstruct.io.FileExportWizard;
-import java.util.Set;
-import java.util.TreeSet;
+import com.chembiohub.tpmap.dstruct.io.TPRowWriter;
+import com.chembiohub.tpmap.dstruct.io.TPTsvRowWriter;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
 
 import javafx.beans.property.DoubleProperty;
-import javafx.beans.property.IntegerProperty;
-import javafx.beans.property.SimpleIntegerProperty;
 import javafx.collections.ObservableList;
 import javafx.event.ActionEvent;
 import javafx.geometry.Insets;
@@ -64,9 +68,9 @@ public final class TPExportPane2D extends TPAnalysisPane {
         exportExpandedCheckBox.setSelected(true);
        
         exportButton.setOnAction((ActionEvent evt) -> {
-            String exportText = copySelection(table,exportExpandedCheckBox.isSelected());
-            if(!exportText.isEmpty()) {
-                FileExportWizard ew = new FileExportWizard(exportText, stage, exportExpandedCheckBox.isSelected(), tppExp.getConcLabels().size());
+            final boolean expanded = exportExpandedCheckBox.isSelected();
+            if(table.getItems().stream().anyMatch(Protein2D::getSelected)) {
+                FileExportWizard ew = new FileExportWizard(writer -> writeSelection(writer, expanded), stage, expanded, tppExp.getConcLabels().size());
             }
             else {
                 Alert alert = new Alert(Alert.AlertType.ERROR);
@@ -77,102 +81,101 @@ public final class TPExportPane2D extends TPAnalysisPane {
             }
         });
         
+        Button exportColumnarButton = new Button();
+        exportColumnarButton.setText("Export all proteins (Arrow)");
+        exportColumnarButton.setPrefWidth(200);
+        exportColumnarButton.setOnAction( evt -> {
+            ColumnarExportWizard ew = new ColumnarExportWizard(tppExp, stage);
+        });
+
         VBox vBox = new VBox();
-        vBox.getChildren().addAll(exportButton,exportExpandedCheckBox);
+        vBox.getChildren().addAll(exportButton,exportExpandedCheckBox, exportColumnarButton);
         this.getChildren().add(vBox);
     }
     
     
-    private String copySelection(final TableView<Protein2D> table, final boolean expanded) {
-        final Set<Integer> rows = new TreeSet<>();
+    private void writeSelection(final TPRowWriter writer, final boolean expanded) throws IOException {
 
-        //TODO this would be much more memory efficient with a stream
-        final StringBuilder copyText = new StringBuilder();
-        
-        table.getItems().forEach(protein -> {
-            if(protein.getSelected()) {
-
-                //header
-                if(copyText.toString().isEmpty()) {
-                    if(expanded) {
-                        for (TableColumn tc : table.getColumns()) {
-                            if(!tc.getText().isEmpty()) {
-                                copyText.append(tc.getText() + "\t");
-                            }
-                        }
-
-                        copyText.append("Temperature").append("\t").append(String.join("\t", tppExp.getConcLabels())).append("\n");
-                    }
-                    else {
-                        boolean first=true;
-                        for (TableColumn tc : table.getColumns()) {
-                            if(!tc.getText().isEmpty()) {
-                                if (!first) {
-                                    copyText.append("\t");
-                                } else {
-                                    first = false;
-                                }
-                                copyText.append(tc.getText());
-                            }
-                        }
-                        copyText.append("\n");
-                    }
-                }
+        boolean header = false;
 
+        for(Protein2D protein : table.getItems()) {
 
-                IntegerProperty counter = new SimpleIntegerProperty(0);
-                
+            if(!protein.getSelected()) {
+                continue;
+            }
+
+            if(!header) {
+                List<String> columns = new ArrayList<>();
+                for (TableColumn tc : table.getColumns()) {
+                    if(!tc.getText().isEmpty()) {
+                        columns.add(tc.getText());
+                    }
+                }
                 if(expanded) {
+                    columns.add("Temperature");
+                    columns.addAll(tppExp.getConcLabels());
+                }
+                writer.writeHeader(columns);
+                header = true;
+            }
 
-                    protein.getAbundancesConcRatioNormalisedOL().forEach((ObservableList<Double> ratios) -> { 
-                    
-                        String temp = tppExp.getTempLabels().get(counter.get());
-                        
-                        counter.set(counter.get()+1);
-                        copyText.append(protein.getAccession()).append("\t").append(protein.getGeneName())
-                                .append("\t").append(protein.getOrganismName()).append("\t")
-                                .append(protein.getDescription()).append("\t").append(protein.getScore()).append("\t")
-                                .append(protein.getStabilityScore()).append("\t").append(protein.getDestabilityScore())
-                                .append("\t").append(protein.getMeanFCScore()).append("\t").append(protein.getPValue())
-                                .append("\t").append(protein.getEffect());
+            if(expanded) {
 
-                        protein.getMeanDifferencePropertyList().forEach((DoubleProperty d) -> copyText.append("\t").append(d.getValue()));
+                int counter = 0;
 
-                        copyText.append("\t").append(temp);
+                for(ObservableList<Double> ratios : protein.getAbundancesConcRatioNormalisedOL()) {
 
-                        ratios.forEach((Double ratio) -> copyText.append("\t").append(ratio));
-                        
-                        copyText.append("\n");
-                    });
+                    writeProtein(writer, protein);
+                    writer.writeString(tppExp.getTempLabels().get(counter++));
 
-                    copyText.append("\n");
+                    for(Double ratio : ratios) {
+                        writer.writeNumber(ratio);
+                    }
 
+                    writer.endRow();
                 }
-                else {
 
-                    copyText.append(protein.getAccession()).append("\t").append(protein.getGeneName())
-                            .append("\t").append(protein.getOrganismName()).append("\t")
-                            .append(protein.getDescription()).append("\t").append(protein.getScore()).append("\t")
-                            .append(protein.getStabilityScore()).append("\t").append(protein.getDestabilityScore())
-                            .append("\t").append(protein.getMeanFCScore()).append("\t").append(protein.getPValue())
-                            .append("\t").append(protein.getEffect());
+                writer.endRow();
 
-                    protein.getMeanDifferencePropertyList().forEach((DoubleProperty d) -> copyText.append("\t").append(d.getValue()));
+            }
+            else {
 
-                    copyText.append("\n");
-                }
+                writeProtein(writer, protein);
+                writer.endRow();
 
             }
-        });
-        
-        return copyText.toString();
+        }
     }
-    
-    private void copySelectionToClipboard(final TableView<Protein2D> table, final boolean expanded) {
-        String copyText = copySelection(table,expanded);
+
+    private static void writeProtein(final TPRowWriter writer, final Protein2D protein) throws IOException {
+
+        writer.writeString(protein.getAccession());
+        writer.writeString(protein.getGeneName());
+        writer.writeString(protein.getOrganismName());
+        writer.writeString(protein.getDescription());
+        writer.writeNumber(protein.getScore());
+        writer.writeNumber(protein.getStabilityScore());
+        writer.writeNumber(protein.getDestabilityScore());
+        writer.writeNumber(protein.getMeanFCScore());
+        writer.writeNumber(protein.getPValue());
+        writer.writeString(protein.getEffect());
+
+        for(DoubleProperty d : protein.getMeanDifferencePropertyList()) {
+            writer.writeNumber(d.getValue());
+        }
+    }
+
+    private void copySelectionToClipboard(final boolean expanded) {
+
+        StringWriter copyText = new StringWriter();
+        try (TPRowWriter writer = new TPTsvRowWriter(copyText)) {
+            writeSelection(writer, expanded);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
         final ClipboardContent clipboardContent = new ClipboardContent();
-        clipboardContent.putString(copyText);
+        clipboardContent.putString(copyText.toString());
         Clipboard.getSystemClipboard().setContent(clipboardContent);
     }
-    
+
 }
@@ -15,6 +15,7 @@
  */
 package com.chembiohub.tpmap.analysis.analysispane;
 
+import com.chembiohub.tpmap.analysis.TPAnalysisTask;
 import com.chembiohub.tpmap.dstruct.Protein2D;
 import com.chembiohub.tpmap.dstruct.Proteome;
 import com.chembiohub.tpmap.normalisation.TPNormalisation;
@@ -94,7 +95,7 @@ public final class TPFCPane extends TPAnalysisPane {
         maxFCBox.getChildren().addAll(maxFCSlider);
         Button fcButton = new Button("Recalculate");
         fcButton.setPrefWidth(200);
-        fcBox.getChildren().addAll(fcLabel,normBox,minFCLabel,minFCBox,minFCValLabel,maxFCLabel,maxFCBox,maxFCValLabel,fcButton);
+        fcBox.getChildren().addAll(fcLabel,normBox,minFCLabel,minFCBox,minFCValLabel,maxFCLabel,maxFCBox,maxFCValLabel,fcButton,getProgressBox());
         
         
         minFCSlider.valueProperty().addListener( listener -> {
@@ -114,22 +115,27 @@ public final class TPFCPane extends TPAnalysisPane {
     }
     
     public void run() {
-        if(normCheckBox.isSelected()) {
-            tppExp.setPercentileThresholds(minFCSlider.getValue(), maxFCSlider.getValue());
-            tppExp.setNormalisation(TPNormalisation.Normalisation.MEDIAN);
-            tppExp.updateProteinCount();
-            tppExp.resetPVals();
-            minFCValLabel.setText(String.format(sfStr,minFCSlider.getValue()) + " (FC: " + String.format(sfStr,tppExp.getLowerPercentile(minFCSlider.getValue())) + ")");
-            maxFCValLabel.setText(String.format(sfStr,maxFCSlider.getValue()) + " (FC: " + String.format(sfStr,tppExp.getUpperPercentile(maxFCSlider.getValue())) + ")");
-        }
-        else {
-            tppExp.setPercentileThresholds(minFCSlider.getValue(), maxFCSlider.getValue());
-            tppExp.setNormalisation(TPNormalisation.Normalisation.NONE);
-            tppExp.updateProteinCount();
-            tppExp.resetPVals();
-            minFCValLabel.setText(String.format(sfStr,minFCSlider.getValue()) + " (FC: " + String.format(sfStr,tppExp.getLowerPercentile(minFCSlider.getValue())) + ")");
-            maxFCValLabel.setText(String.format(sfStr,maxFCSlider.getValue()) + " (FC: " + String.format(sfStr,tppExp.getUpperPercentile(maxFCSlider.getValue())) + ")");
-        }
+
+        final double minPercentile = minFCSlider.getValue();
+        final double maxPercentile = maxFCSlider.getValue();
+        final TPNormalisation.Normalisation norm = normCheckBox.isSelected() ? TPNormalisation.Normalisation.MEDIAN : TPNormalisation.Normalisation.NONE;
+        final double scoreTMWeight = tppExp.getScoreTMWeight();
+
+        runTask(new TPAnalysisTask<Proteome.NormalisationResult<Protein2D>>(tppExp, "fold change recalculation") {
+            @Override
+            protected Proteome.NormalisationResult<Protein2D> compute() {
+                return tppExp.calculateNormalisation(norm, minPercentile, maxPercentile, scoreTMWeight);
+            }
+
+            @Override
+            protected void apply(Proteome.NormalisationResult<Protein2D> result) {
+                tppExp.applyNormalisation(result);
+                tppExp.updateProteinCount();
+                tppExp.resetPVals();
+                minFCValLabel.setText(String.format(sfStr,minPercentile) + " (FC: " + String.format(sfStr,tppExp.getLowerPercentile(minPercentile)) + ")");
+                maxFCValLabel.setText(String.format(sfStr,maxPercentile) + " (FC: " + String.format(sfStr,tppExp.getUpperPercentile(maxPercentile)) + ")");
+            }
+        });
     }
     
     public Double getMinFCSliderVal() {
@@ -15,12 +15,15 @@
  */
 package com.chembiohub.tpmap.analysis.analysispane;
 
+import com.chembiohub.tpmap.analysis.TPAnalysisTask;
 import com.chembiohub.tpmap.dstruct.Protein2D;
 import com.chembiohub.tpmap.dstruct.Proteome;
 import com.chembiohub.tpmap.scoring.TPMeanDifference;
 
 import java.text.DecimalFormat;
+import java.util.ArrayList;
 import java.util.Comparator;
+import java.util.List;
 
 import javafx.beans.property.*;
 import javafx.beans.value.ObservableDoubleValue;
@@ -29,6 +32,7 @@ import javafx.collections.ObservableList;
 import javafx.event.ActionEvent;
 import javafx.scene.control.*;
 import javafx.scene.control.cell.PropertyValueFactory;
+import javafx.scene.layout.VBox;
 import javafx.util.Callback;
 
 /**
@@ -40,11 +44,11 @@ import javafx.util.Callback;
  */
 public final class TPMeanDifferencePane extends TPAnalysisPane {
     
-    final private Proteome tppExp;
+    final private Proteome<Protein2D> tppExp;
     final private TableView<Protein2D> table;
     final private IntegerProperty index;
 
-    public TPMeanDifferencePane(Proteome tppExp, TableView<Protein2D> table, TPFCPane fcPane) {
+    public TPMeanDifferencePane(Proteome<Protein2D> tppExp, TableView<Protein2D> table, TPFCPane fcPane) {
         this.tppExp = tppExp;
         this.table = table;
         this.index = new SimpleIntegerProperty(0);
@@ -58,27 +62,39 @@ public final class TPMeanDifferencePane extends TPAnalysisPane {
 
         
         meanButton.setOnAction((ActionEvent event) -> {
-            try {
 
-                Protein2D selectedProtein = table.getItems().get(table.getSelectionModel().getFocusedIndex());
+            int focusedIndex = table.getSelectionModel().getFocusedIndex();
+            final Protein2D selectedProtein = focusedIndex < 0 ? null : table.getItems().get(focusedIndex);
+            final List<Protein2D> proteins;
+            synchronized (tppExp.getProteins()) {
+                proteins = new ArrayList<>(tppExp.getProteins());
+            }
+
+            runTask(new TPAnalysisTask<double[]>(tppExp, "mean difference") {
+                @Override
+                protected double[] compute() throws TPMeanDifference.TPPNoneSelectedException {
+                    return TPMeanDifference.TPPMeanDifference(proteins, selectedProtein);
+                }
 
-                String mdColumnTitle = selectedProtein.getAccession().isEmpty() ? "MD" : "MD (" + selectedProtein.getAccession() + ")";
-                MDTableColumn mdTableColumn = new MDTableColumn(mdColumnTitle, index.getValue());
+                @Override
+                protected void apply(double[] distances) {
+                    int mdIndex = selectedProtein.getMeanDifferencePropertyList().size();
+                    for(int i=0; i<distances.length; i++) {
+                        proteins.get(i).addMeanDifference(distances[i]);
+                    }
 
-                TPMeanDifference.TPPMeanDifference(tppExp.getProteins(), selectedProtein);
-                tppExp.getProteins().sort(Comparator.comparing(Protein2D::getTopMeanDifference));
+                    String mdColumnTitle = selectedProtein.getAccession().isEmpty() ? "MD" : "MD (" + selectedProtein.getAccession() + ")";
+                    MDTableColumn mdTableColumn = new MDTableColumn(mdColumnTitle, mdIndex);
 
-                table.getColumns().add(mdTableColumn);
-                index.set(index.getValue()+1);
+                    tppExp.getProteins().sort(Comparator.comparing(Protein2D::getTopMeanDifference));
 
-            } catch (TPMeanDifference.TPPNoneSelectedException e) {
-                Alert alert = new Alert(Alert.AlertType.ERROR);
-                alert.setContentText("Exception: " + e);
-                alert.showAndWait();
-            }
+                    table.getColumns().add(mdTableColumn);
+                    index.set(mdIndex + 1);
+                }
+            });
         });
 
-        this.getChildren().add(meanButton);
+        this.getChildren().add(new VBox(meanButton, getProgressBox()));
 
     }
 
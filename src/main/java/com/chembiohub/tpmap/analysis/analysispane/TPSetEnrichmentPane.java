@@ -0,0 +1,63 @@
+/*
+ * Copyright (C) 2020 Felix Feyertag <felix.feyertag@ndm.ox.ac.uk>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.chembiohub.tpmap.analysis.analysispane;
+
+import com.chembiohub.tpmap.analysis.TPAnalysisTask;
+import com.chembiohub.tpmap.analysis.TPRankedSetEnrichment;
+import com.chembiohub.tpmap.dstruct.Protein;
+import com.chembiohub.tpmap.dstruct.Proteome;
+import javafx.event.ActionEvent;
+import javafx.scene.control.Button;
+import javafx.scene.layout.VBox;
+
+import java.util.List;
+
+/**
+ * TPSetEnrichmentPane
+ *
+ * Create a button to instantiate pre-ranked set enrichment of all proteins.
+ *
+ * @author felixfeyertag
+ */
+public final class TPSetEnrichmentPane extends TPAnalysisPane {
+
+    final private Proteome<? extends Protein> tppExp;
+
+    public TPSetEnrichmentPane(Proteome<? extends Protein> tppExp) {
+        this.tppExp = tppExp;
+        init();
+    }
+
+    private void init() {
+
+        Button setEnrichmentButton = new Button("Ranked Set Enrichment");
+        setEnrichmentButton.setPrefWidth(200);
+
+        setEnrichmentButton.setOnAction((ActionEvent event) -> {
+            TPRankedSetEnrichment setEnrichment = new TPRankedSetEnrichment();
+            TPAnalysisTask<List<TPRankedSetEnrichment.SetEnrichment>> enrichmentTask = setEnrichment.rankedSetEnrichment(tppExp);
+            if(enrichmentTask != null) {
+                runTask(enrichmentTask);
+            }
+        });
+
+        VBox vBox = new VBox();
+        vBox.getChildren().addAll(setEnrichmentButton, getProgressBox());
+        this.getChildren().add(vBox);
+
+    }
+
+}
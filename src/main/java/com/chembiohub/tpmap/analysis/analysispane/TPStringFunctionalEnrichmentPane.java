@@ -15,16 +15,22 @@
  */
 package com.chembiohub.tpmap.analysis.analysispane;
 
+import com.chembiohub.tpmap.analysis.TPAnalysisTask;
+import com.chembiohub.tpmap.analysis.TPFunctionalEnrichment;
 import com.chembiohub.tpmap.analysis.TPStringAnalysis;
 import com.chembiohub.tpmap.dstruct.Protein;
 import com.chembiohub.tpmap.dstruct.Proteome;
 import javafx.event.ActionEvent;
 import javafx.scene.control.Button;
+import javafx.scene.layout.VBox;
+
+import java.util.List;
 
 /**
  * TPStringFunctionalEnrichmentPane
  *
- * Create a button to instantiate String functional enrichment of selected proteins.
+ * Create buttons to instantiate String functional enrichment of selected proteins, or functional enrichment
+ * against local GO (GAF) or pathway (GMT) annotation files.
  *
  * @author felixfeyertag
  */
@@ -45,10 +51,26 @@ public final class TPStringFunctionalEnrichmentPane extends TPAnalysisPane {
         
         stringFunctionalEnrichmentButton.setOnAction((ActionEvent event) -> {
             TPStringAnalysis stringAnalysis = new TPStringAnalysis();
-            stringAnalysis.stringFunctionalEnrichment(tppExp.getProteins(), tppExp.getParentStage(), tppExp.getTabPane());
+            TPAnalysisTask<String[]> enrichmentTask = stringAnalysis.stringFunctionalEnrichment(tppExp);
+            if(enrichmentTask != null) {
+                runTask(enrichmentTask);
+            }
+        });
+
+        Button localFunctionalEnrichmentButton = new Button("Local Functional Enrichment");
+        localFunctionalEnrichmentButton.setPrefWidth(200);
+
+        localFunctionalEnrichmentButton.setOnAction((ActionEvent event) -> {
+            TPFunctionalEnrichment functionalEnrichment = new TPFunctionalEnrichment();
+            TPAnalysisTask<List<TPFunctionalEnrichment.TermEnrichment>> enrichmentTask = functionalEnrichment.localFunctionalEnrichment(tppExp);
+            if(enrichmentTask != null) {
+                runTask(enrichmentTask);
+            }
         });
 
-        this.getChildren().add(stringFunctionalEnrichmentButton);
+        VBox vBox = new VBox();
+        vBox.getChildren().addAll(stringFunctionalEnrichmentButton, localFunctionalEnrichmentButton, getProgressBox());
+        this.getChildren().add(vBox);
         
     }
     
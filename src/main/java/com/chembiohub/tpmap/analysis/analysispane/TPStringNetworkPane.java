@@ -46,7 +46,7 @@ public final class TPStringNetworkPane extends TPAnalysisPane {
 
         stringNetworkImageButton.setOnAction((ActionEvent event) -> {
             TPStringAnalysis stringAnalysis = new TPStringAnalysis();
-            stringAnalysis.stringNetworkImage(tppExp.getProteins(), new SimpleStringProperty(tppExp.getTaxonomy()), tppExp.getParentStage(), tppExp.getTabPane());
+            stringAnalysis.stringNetworkImage(tppExp.getSelectionModel(), new SimpleStringProperty(tppExp.getTaxonomy()), tppExp.getParentStage(), tppExp.getTabPane());
             //TPStringAnalysis str = new TPStringAnalysis();
         });
         
@@ -15,6 +15,7 @@
  */
 package com.chembiohub.tpmap.analysis.analysispane;
 
+import com.chembiohub.tpmap.analysis.TPAnalysisTask;
 import com.chembiohub.tpmap.dstruct.Protein1D;
 import com.chembiohub.tpmap.dstruct.Proteome;
 import com.chembiohub.tpmap.normalisation.TPNormalisation;
@@ -74,17 +75,30 @@ public final class TPTMPane extends TPAnalysisPane {
 
         tmButton.setOnAction( (ActionEvent event) -> this.run());
 
-        tmBox.getChildren().addAll(tmLabel, tmSlider, tmButton);
+        tmBox.getChildren().addAll(tmLabel, tmSlider, tmButton, getProgressBox());
 
         this.getChildren().add(tmBox);
     }
     
     public void run() {
 
-        int tmVal = (int) tmSlider.getValue();
-        tppExp.setScoreTMWeight(tmVal);
-        tppExp.setNormalisation(tppExp.getNormalisationMethod());
-        tppExp.updateProteinCount();
+        final int tmVal = (int) tmSlider.getValue();
+        final TPNormalisation.Normalisation norm = tppExp.getNormalisationMethod();
+        final double minPercentile = tppExp.getMinPercentileThreshold();
+        final double maxPercentile = tppExp.getMaxPercentileThreshold();
+
+        runTask(new TPAnalysisTask<Proteome.NormalisationResult<Protein1D>>(tppExp, "score recalculation") {
+            @Override
+            protected Proteome.NormalisationResult<Protein1D> compute() {
+                return tppExp.calculateNormalisation(norm, minPercentile, maxPercentile, tmVal);
+            }
+
+            @Override
+            protected void apply(Proteome.NormalisationResult<Protein1D> result) {
+                tppExp.applyNormalisation(result);
+                tppExp.updateProteinCount();
+            }
+        });
 
     }
     
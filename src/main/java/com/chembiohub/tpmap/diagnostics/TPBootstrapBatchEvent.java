@@ -0,0 +1,60 @@
+/*
+ * Copyright (C) 2020 Felix Feyertag <felix.feyertag@ndm.ox.ac.uk>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.chembiohub.tpmap.diagnostics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * TPBootstrapBatchEvent
+ *
+ * Flight Recorder event for a batch of bootstrap iterations, batches are run in parallel.
+ *
+ * @author felixfeyertag
+ */
+@Name("com.chembiohub.tpmap.BootstrapBatch")
+@Label("TPMAP Bootstrap Batch")
+@Category({"TPMAP", "Analysis"})
+@Description("Batch of bootstrap iterations")
+@StackTrace(false)
+public class TPBootstrapBatchEvent extends Event {
+
+    @Label("Batch")
+    int batch;
+
+    @Label("Iterations")
+    int iterations;
+
+    /**
+     * Ends the event and commits it if recording is enabled, fields are only set if the event is committed
+     *
+     * @param batch batch index
+     * @param iterations iterations in the batch
+     */
+    public void record(int batch, int iterations) {
+        end();
+        if(shouldCommit()) {
+            this.batch = batch;
+            this.iterations = iterations;
+            commit();
+        }
+    }
+
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright (C) 2020 Felix Feyertag <felix.feyertag@ndm.ox.ac.uk>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.chembiohub.tpmap.diagnostics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * TPCurveFitEvent
+ *
+ * Flight Recorder event for the melting curve fit of one replicate of a 1D protein, over all fit attempts.
+ *
+ * @author felixfeyertag
+ */
+@Name("com.chembiohub.tpmap.CurveFit")
+@Label("TPMAP Curve Fit")
+@Category({"TPMAP", "Analysis"})
+@Description("Melting curve fit of one replicate of a protein")
+@StackTrace(false)
+public class TPCurveFitEvent extends Event {
+
+    @Label("Accession")
+    String accession;
+
+    @Label("Replicate")
+    String replicate;
+
+    @Label("Attempts")
+    int attempts;
+
+    @Label("Iterations")
+    @Description("Optimizer iterations summed over all attempts")
+    int iterations;
+
+    @Label("RMSE")
+    double rmse;
+
+    @Label("Success")
+    boolean success;
+
+    /**
+     * Ends the event and commits it if recording is enabled, fields are only set if the event is committed
+     *
+     * @param accession protein accession
+     * @param replicate replicate label
+     * @param attempts fit attempts made
+     * @param iterations optimizer iterations summed over all attempts
+     * @param rmse root mean square error of the best fit
+     * @param success true if a curve was fitted
+     */
+    public void record(String accession, String replicate, int attempts, int iterations, double rmse, boolean success) {
+        end();
+        if(shouldCommit()) {
+            this.accession = accession;
+            this.replicate = replicate;
+            this.attempts = attempts;
+            this.iterations = iterations;
+            this.rmse = rmse;
+            this.success = success;
+            commit();
+        }
+    }
+
+}
@@ -0,0 +1,205 @@
+/*
+ * Copyright (C) 2020 Felix Feyertag <felix.feyertag@ndm.ox.ac.uk>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.chembiohub.tpmap.diagnostics;
+
+import com.chembiohub.tpmap.scoring.TP1dCurveFitResult;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * TPCurveFitStatistics
+ *
+ * Accumulated telemetry of 1D melting curve fits: the number of attempts made, the number of attempts that improved
+ * the best fit and the optimizer iterations of each fit are counted in histograms, and failed attempts are counted
+ * by cause. Fits are added concurrently by the threads fitting curves.
+ *
+ * Attempt and improvement histograms have one bucket per count, the last bucket counts fits with MAX_COUNT or more.
+ * The iteration histogram has logarithmic buckets, bucket 0 counts fits without iterations and bucket i fits with
+ * 2^(i-1) to 2^i - 1 iterations.
+ *
+ * @author felixfeyertag
+ */
+public class TPCurveFitStatistics {
+
+    public static final int MAX_COUNT = 32;
+
+    private final LongAdder fits = new LongAdder();
+    private final LongAdder successes = new LongAdder();
+    private final LongAdder attempts = new LongAdder();
+    private final LongAdder improvements = new LongAdder();
+    private final LongAdder iterations = new LongAdder();
+    private final AtomicLongArray attemptsHistogram = new AtomicLongArray(MAX_COUNT + 1);
+    private final AtomicLongArray improvementsHistogram = new AtomicLongArray(MAX_COUNT + 1);
+    private final AtomicLongArray iterationsHistogram = new AtomicLongArray(Integer.SIZE + 1);
+    private final AtomicLongArray failures = new AtomicLongArray(TP1dCurveFitResult.Failure.values().length);
+
+    TPCurveFitStatistics() {
+    }
+
+    /**
+     * Adds a curve fit
+     *
+     * @param result result of the fit
+     */
+    public void record(TP1dCurveFitResult result) {
+        fits.increment();
+        if(result.isSuccess()) {
+            successes.increment();
+        }
+        attempts.add(result.getAttempts());
+        improvements.add(result.getImprovements());
+        iterations.add(result.getIterations());
+        attemptsHistogram.incrementAndGet(Math.min(result.getAttempts(), MAX_COUNT));
+        improvementsHistogram.incrementAndGet(Math.min(result.getImprovements(), MAX_COUNT));
+        iterationsHistogram.incrementAndGet(Integer.SIZE - Integer.numberOfLeadingZeros(Math.max(result.getIterations(), 0)));
+        for(TP1dCurveFitResult.Failure failure : TP1dCurveFitResult.Failure.values()) {
+            int count = result.getFailures(failure);
+            if(count > 0) {
+                failures.addAndGet(failure.ordinal(), count);
+            }
+        }
+    }
+
+    void reset() {
+        fits.reset();
+        successes.reset();
+        attempts.reset();
+        improvements.reset();
+        iterations.reset();
+        for(AtomicLongArray histogram : new AtomicLongArray[] { attemptsHistogram, improvementsHistogram, iterationsHistogram, failures }) {
+            for(int i=0; i<histogram.length(); i++) {
+                histogram.set(i, 0);
+            }
+        }
+    }
+
+    public long getFits() {
+        return fits.sum();
+    }
+
+    /**
+     * @return number of fits for which at least one attempt succeeded
+     */
+    public long getSuccesses() {
+        return successes.sum();
+    }
+
+    /**
+     * @return attempts summed over all fits
+     */
+    public long getAttempts() {
+        return attempts.sum();
+    }
+
+    /**
+     * @return attempts that improved the best fit, summed over all fits
+     */
+    public long getImprovements() {
+        return improvements.sum();
+    }
+
+    /**
+     * @return optimizer iterations summed over all fits
+     */
+    public long getIterations() {
+        return iterations.sum();
+    }
+
+    /**
+     * @param failure cause
+     * @return attempts that failed with the given cause, summed over all fits
+     */
+    public long getFailures(TP1dCurveFitResult.Failure failure) {
+        return failures.get(failure.ordinal());
+    }
+
+    /**
+     * @return number of fits by number of attempts made
+     */
+    public long[] getAttemptsHistogram() {
+        return toArray(attemptsHistogram);
+    }
+
+    /**
+     * @return number of fits by number of attempts that improved the best fit
+     */
+    public long[] getImprovementsHistogram() {
+        return toArray(improvementsHistogram);
+    }
+
+    /**
+     * @return number of fits by logarithmic bucket of optimizer iterations
+     */
+    public long[] getIterationsHistogram() {
+        return toArray(iterationsHistogram);
+    }
+
+    /**
+     * Writes the statistics as a JSON object
+     *
+     * @param writer output
+     * @param indent indentation of the lines following the opening brace
+     * @throws IOException if the output cannot be written
+     */
+    void writeJson(Writer writer, String indent) throws IOException {
+        writer.write("{\n");
+        writer.write(indent + "  \"fits\": " + getFits() + ",\n");
+        writer.write(indent + "  \"successes\": " + getSuccesses() + ",\n");
+        writer.write(indent + "  \"attempts\": " + getAttempts() + ",\n");
+        writer.write(indent + "  \"improvements\": " + getImprovements() + ",\n");
+        writer.write(indent + "  \"iterations\": " + getIterations() + ",\n");
+        writer.write(indent + "  \"failures\": {");
+        TP1dCurveFitResult.Failure[] causes = TP1dCurveFitResult.Failure.values();
+        for(int i=0; i<causes.length; i++) {
+            writer.write((i == 0 ? "" : ", ") + "\"" + causes[i].name() + "\": " + getFailures(causes[i]));
+        }
+        writer.write("},\n");
+        writer.write(indent + "  \"attemptsHistogram\": " + toJson(getAttemptsHistogram()) + ",\n");
+        writer.write(indent + "  \"improvementsHistogram\": " + toJson(getImprovementsHistogram()) + ",\n");
+        writer.write(indent + "  \"iterationsHistogram\": " + toJson(getIterationsHistogram()) + "\n");
+        writer.write(indent + "}");
+    }
+
+    private static long[] toArray(AtomicLongArray histogram) {
+        long[] values = new long[histogram.length()];
+        for(int i=0; i<values.length; i++) {
+            values[i] = histogram.get(i);
+        }
+        return values;
+    }
+
+    /**
+     * Histograms are written without trailing empty buckets
+     */
+    private static String toJson(long[] histogram) {
+        int length = histogram.length;
+        while(length > 0 && histogram[length-1] == 0) {
+            length--;
+        }
+        StringBuilder sb = new StringBuilder("[");
+        for(int i=0; i<length; i++) {
+            if(i > 0) {
+                sb.append(", ");
+            }
+            sb.append(histogram[i]);
+        }
+        return sb.append("]").toString();
+    }
+
+}
@@ -0,0 +1,305 @@
+/*
+ * Copyright (C) 2020 Felix Feyertag <felix.feyertag@ndm.ox.ac.uk>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.chembiohub.tpmap.diagnostics;
+
+import jdk.jfr.Configuration;
+import jdk.jfr.Recording;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.StandardCharsets;
+import java.text.ParseException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * TPDiagnostics
+ *
+ * Records wall time, CPU time, allocated bytes and the number of processed items for each stage of the import and
+ * analysis pipelines, e.g.
+ *
+ *   try (TPStageTimer timer = TPDiagnostics.start("curveFit")) {
+ *       ...
+ *       timer.addItems(curves);
+ *   }
+ *
+ * Stages started with start() measure CPU time and allocations of the calling thread, which is cheap enough for
+ * stages run for every protein. Stages that hand work to other threads, e.g. parallel streams, are started with
+ * startProcess() and measure CPU time and allocations of all threads of the JVM instead, which is only meaningful
+ * while no other stage runs at the same time. Stages may be nested, the statistics of each stage include the time
+ * spent in nested stages. CPU time and allocations are reported as 0 if the JVM does not support measuring them.
+ *
+ * Every run is also emitted as a TPStageEvent to Java Flight Recorder. The statistics are shown in the diagnostics
+ * tab and can be written as JSON with writeJson. If the system property tpmap.diagnostics is set to a file name, the
+ * statistics are written to that file when the JVM exits. Telemetry of 1D curve fits is collected in
+ * TPCurveFitStatistics and written together with the stages.
+ *
+ * startRecording starts a Flight Recorder recording with the settings in tpmap.jfc, which enable all TP-MAP events
+ * together with method and allocation sampling, garbage collection, CPU load and lock contention events.
+ *
+ * @author felixfeyertag
+ */
+public final class TPDiagnostics {
+
+    private static final String JFC = "tpmap.jfc";
+
+    private static final Map<String,TPStageStatistics> stages = new LinkedHashMap<>();
+    private static final TPCurveFitStatistics curveFits = new TPCurveFitStatistics();
+
+    private static final ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+    private static final OperatingSystemMXBean osMXBean = ManagementFactory.getOperatingSystemMXBean();
+    private static final boolean cpuTimeSupported;
+    private static final boolean allocationSupported;
+
+    static {
+        boolean cpuTime = false;
+        try {
+            if(threadMXBean.isCurrentThreadCpuTimeSupported()) {
+                if(!threadMXBean.isThreadCpuTimeEnabled()) {
+                    threadMXBean.setThreadCpuTimeEnabled(true);
+                }
+                cpuTime = true;
+            }
+        }
+        catch (UnsupportedOperationException | SecurityException e) {
+            Logger.getLogger(TPDiagnostics.class.getName()).log(Level.INFO, "Thread CPU time not available", e);
+        }
+        cpuTimeSupported = cpuTime;
+
+        boolean allocation = false;
+        try {
+            if(threadMXBean instanceof com.sun.management.ThreadMXBean) {
+                com.sun.management.ThreadMXBean sunThreadMXBean = (com.sun.management.ThreadMXBean) threadMXBean;
+                if(sunThreadMXBean.isThreadAllocatedMemorySupported()) {
+                    if(!sunThreadMXBean.isThreadAllocatedMemoryEnabled()) {
+                        sunThreadMXBean.setThreadAllocatedMemoryEnabled(true);
+                    }
+                    allocation = true;
+                }
+            }
+        }
+        catch (UnsupportedOperationException | SecurityException e) {
+            Logger.getLogger(TPDiagnostics.class.getName()).log(Level.INFO, "Thread allocation counters not available", e);
+        }
+        allocationSupported = allocation;
+
+        String file = System.getProperty("tpmap.diagnostics");
+        if(file != null && !file.isEmpty()) {
+            writeJsonOnExit(new File(file));
+        }
+    }
+
+    private TPDiagnostics() {
+
+    }
+
+    /**
+     * Starts a run of a stage, measuring the calling thread
+     *
+     * @param stage stage name
+     * @return timer to be closed when the stage finishes
+     */
+    public static TPStageTimer start(String stage) {
+        return new TPStageTimer(getStatistics(stage), false);
+    }
+
+    /**
+     * Starts a run of a stage, measuring all threads
+     *
+     * @param stage stage name
+     * @return timer to be closed when the stage finishes
+     */
+    public static TPStageTimer startProcess(String stage) {
+        return new TPStageTimer(getStatistics(stage), true);
+    }
+
+    private static TPStageStatistics getStatistics(String stage) {
+        synchronized (stages) {
+            return stages.computeIfAbsent(stage, TPStageStatistics::new);
+        }
+    }
+
+    /**
+     * @return statistics of all stages in the order they were first run
+     */
+    public static List<TPStageStatistics> getStages() {
+        synchronized (stages) {
+            return new ArrayList<>(stages.values());
+        }
+    }
+
+    /**
+     * @return telemetry of all 1D curve fits
+     */
+    public static TPCurveFitStatistics getCurveFits() {
+        return curveFits;
+    }
+
+    /**
+     * Clears the statistics of all stages and curve fits
+     */
+    public static void reset() {
+        synchronized (stages) {
+            stages.values().forEach(TPStageStatistics::reset);
+        }
+        curveFits.reset();
+    }
+
+    static long threadCpuTime() {
+        return cpuTimeSupported ? threadMXBean.getCurrentThreadCpuTime() : 0;
+    }
+
+    static long threadAllocatedBytes() {
+        return allocationSupported ? ((com.sun.management.ThreadMXBean) threadMXBean).getThreadAllocatedBytes(Thread.currentThread().getId()) : 0;
+    }
+
+    static long processCpuTime() {
+        if(osMXBean instanceof com.sun.management.OperatingSystemMXBean) {
+            long cpuTime = ((com.sun.management.OperatingSystemMXBean) osMXBean).getProcessCpuTime();
+            return Math.max(cpuTime, 0);
+        }
+        return 0;
+    }
+
+    /**
+     * Allocations of all live threads, allocations of threads that terminated during the stage are not counted
+     */
+    static long processAllocatedBytes() {
+        if(!allocationSupported) {
+            return 0;
+        }
+        long total = 0;
+        for(long allocated : ((com.sun.management.ThreadMXBean) threadMXBean).getThreadAllocatedBytes(threadMXBean.getAllThreadIds())) {
+            if(allocated > 0) {
+                total += allocated;
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Writes the statistics of all stages as a JSON object
+     *
+     * @param writer output, not closed
+     * @throws IOException if the output cannot be written
+     */
+    public static void writeJson(Writer writer) throws IOException {
+        writer.write("{\n");
+        writer.write("  \"timestamp\": \"" + Instant.now() + "\",\n");
+        writer.write("  \"availableProcessors\": " + Runtime.getRuntime().availableProcessors() + ",\n");
+        writer.write("  \"cpuTimeSupported\": " + cpuTimeSupported + ",\n");
+        writer.write("  \"allocationSupported\": " + allocationSupported + ",\n");
+        writer.write("  \"stages\": [");
+        List<TPStageStatistics> statistics = getStages();
+        for(int i=0; i<statistics.size(); i++) {
+            TPStageStatistics s = statistics.get(i);
+            writer.write(i == 0 ? "\n" : ",\n");
+            writer.write("    {\"stage\": \"" + escape(s.getStage()) + "\"");
+            writer.write(", \"calls\": " + s.getCalls());
+            writer.write(", \"items\": " + s.getItems());
+            writer.write(", \"wallTimeNanos\": " + s.getWallTime());
+            writer.write(", \"cpuTimeNanos\": " + s.getCpuTime());
+            writer.write(", \"allocatedBytes\": " + s.getAllocatedBytes());
+            writer.write(", \"itemsPerSecond\": " + String.format(Locale.ROOT, "%.3f", s.getThroughput()));
+            writer.write("}");
+        }
+        writer.write(statistics.isEmpty() ? "],\n" : "\n  ],\n");
+        writer.write("  \"curveFits\": ");
+        curveFits.writeJson(writer, "  ");
+        writer.write("\n}\n");
+        writer.flush();
+    }
+
+    /**
+     * Writes the statistics of all stages as a JSON file
+     *
+     * @param file output file
+     * @throws IOException if the file cannot be written
+     */
+    public static void writeJson(File file) throws IOException {
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8))) {
+            writeJson(writer);
+        }
+    }
+
+    /**
+     * Writes the statistics of all stages as a JSON file when the JVM exits
+     *
+     * @param file output file
+     */
+    public static void writeJsonOnExit(File file) {
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                writeJson(file);
+            }
+            catch (IOException e) {
+                Logger.getLogger(TPDiagnostics.class.getName()).log(Level.SEVERE, "Unable to write diagnostics to " + file, e);
+            }
+        }, "TPDiagnostics"));
+    }
+
+    /**
+     * Starts a Flight Recorder recording with the TP-MAP settings in tpmap.jfc, which is written to file when the
+     * application exits
+     *
+     * @param file recording file
+     * @throws IOException if the settings cannot be read or the file cannot be written
+     * @throws ParseException if the settings are invalid
+     */
+    public static void startRecording(File file) throws IOException, ParseException {
+        Configuration configuration;
+        try (Reader reader = new InputStreamReader(TPDiagnostics.class.getResourceAsStream(JFC), StandardCharsets.UTF_8)) {
+            configuration = Configuration.create(reader);
+        }
+        Recording recording = new Recording(configuration);
+        recording.setName("TP-MAP");
+        recording.setDestination(file.toPath());
+        recording.setDumpOnExit(true);
+        recording.start();
+    }
+
+    private static String escape(String value) {
+        StringBuilder sb = new StringBuilder(value.length());
+        for(char c : value.toCharArray()) {
+            if(c == '"' || c == '\\') {
+                sb.append('\\').append(c);
+            }
+            else if(c < 0x20) {
+                sb.append(String.format(Locale.ROOT, "\\u%04x", (int) c));
+            }
+            else {
+                sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+
+}
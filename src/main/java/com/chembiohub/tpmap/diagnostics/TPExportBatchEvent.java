@@ -0,0 +1,73 @@
+/*
+ * Copyright (C) 2020 Felix Feyertag <felix.feyertag@ndm.ox.ac.uk>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.chembiohub.tpmap.diagnostics;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * TPExportBatchEvent
+ *
+ * Flight Recorder event for a batch of rows written by an export.
+ *
+ * @author felixfeyertag
+ */
+@Name("com.chembiohub.tpmap.ExportBatch")
+@Label("TPMAP Export Batch")
+@Category({"TPMAP", "Export"})
+@Description("Batch of rows written by an export")
+@StackTrace(false)
+public class TPExportBatchEvent extends Event {
+
+    /**
+     * Number of rows per batch for exports without a batch size of their own
+     */
+    public static final int BATCH_ROWS = 1000;
+
+    @Label("Format")
+    String format;
+
+    @Label("Rows")
+    int rows;
+
+    @Label("Bytes")
+    @Description("Bytes written for the batch, or 0 if not known")
+    @DataAmount(DataAmount.BYTES)
+    long bytes;
+
+    /**
+     * Ends the event and commits it if recording is enabled, fields are only set if the event is committed
+     *
+     * @param format export format
+     * @param rows rows in the batch
+     * @param bytes bytes written, or 0 if not known
+     */
+    public void record(String format, int rows, long bytes) {
+        end();
+        if(shouldCommit()) {
+            this.format = format;
+            this.rows = rows;
+            this.bytes = bytes;
+            commit();
+        }
+    }
+
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright (C) 2020 Felix Feyertag <felix.feyertag@ndm.ox.ac.uk>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.chembiohub.tpmap.diagnostics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * TPImportChunkEvent
+ *
+ * Flight Recorder event for a chunk of rows parsed from an imported file, the event duration is the time spent
+ * parsing the chunk and creating its proteins.
+ *
+ * @author felixfeyertag
+ */
+@Name("com.chembiohub.tpmap.ImportChunk")
+@Label("TPMAP Import Chunk")
+@Category({"TPMAP", "Import"})
+@Description("Chunk of rows parsed from an imported file")
+@StackTrace(false)
+public class TPImportChunkEvent extends Event {
+
+    /**
+     * Number of rows per chunk
+     */
+    public static final int CHUNK_ROWS = 1000;
+
+    @Label("File")
+    String file;
+
+    @Label("First Row")
+    long firstRow;
+
+    @Label("Rows")
+    int rows;
+
+    /**
+     * Ends the event and commits it if recording is enabled, fields are only set if the event is committed
+     *
+     * @param file imported file
+     * @param firstRow index of the first data row of the chunk
+     * @param rows rows in the chunk
+     */
+    public void record(String file, long firstRow, int rows) {
+        end();
+        if(shouldCommit()) {
+            this.file = file;
+            this.firstRow = firstRow;
+            this.rows = rows;
+            commit();
+        }
+    }
+
+}
@@ -0,0 +1,66 @@
+/*
+ * Copyright (C) 2020 Felix Feyertag <felix.feyertag@ndm.ox.ac.uk>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.chembiohub.tpmap.diagnostics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * TPNormalisationPassEvent
+ *
+ * Flight Recorder event for a pass over all proteins of a proteome while normalising and scoring it, e.g. the
+ * median calculation, the normalisation of each protein or the scoring of each protein.
+ *
+ * @author felixfeyertag
+ */
+@Name("com.chembiohub.tpmap.NormalisationPass")
+@Label("TPMAP Normalisation Pass")
+@Category({"TPMAP", "Analysis"})
+@Description("Pass over all proteins while normalising and scoring a proteome")
+@StackTrace(false)
+public class TPNormalisationPassEvent extends Event {
+
+    @Label("Normalisation")
+    String normalisation;
+
+    @Label("Pass")
+    String pass;
+
+    @Label("Proteins")
+    int proteins;
+
+    /**
+     * Ends the event and commits it if recording is enabled, fields are only set if the event is committed
+     *
+     * @param normalisation normalisation method
+     * @param pass name of the pass
+     * @param proteins proteins processed
+     */
+    public void record(String normalisation, String pass, int proteins) {
+        end();
+        if(shouldCommit()) {
+            this.normalisation = normalisation;
+            this.pass = pass;
+            this.proteins = proteins;
+            commit();
+        }
+    }
+
+}
@@ -0,0 +1,60 @@
+/*
+ * Copyright (C) 2020 Felix Feyertag <felix.feyertag@ndm.ox.ac.uk>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.chembiohub.tpmap.diagnostics;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * TPStageEvent
+ *
+ * Flight Recorder event emitted for every run of an instrumented pipeline stage. The event duration is the wall time
+ * of the stage.
+ *
+ * @author felixfeyertag
+ */
+@Name("com.chembiohub.tpmap.Stage")
+@Label("TPMAP Stage")
+@Category({"TPMAP", "Pipeline"})
+@Description("Run of an import or analysis pipeline stage")
+@StackTrace(false)
+class TPStageEvent extends Event {
+
+    @Label("Stage")
+    String stage;
+
+    @Label("Items")
+    long items;
+
+    @Label("CPU Time")
+    @Timespan(Timespan.NANOSECONDS)
+    long cpuTime;
+
+    @Label("Allocated")
+    @DataAmount(DataAmount.BYTES)
+    long allocated;
+
+    @Label("Process Scope")
+    @Description("CPU time and allocations of all threads instead of the thread running the stage")
+    boolean processScope;
+
+}
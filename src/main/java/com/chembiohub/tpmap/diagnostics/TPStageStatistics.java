@@ -0,0 +1,98 @@
+/*
+ * Copyright (C) 2020 Felix Feyertag <felix.feyertag@ndm.ox.ac.uk>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.chembiohub.tpmap.diagnostics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * TPStageStatistics
+ *
+ * Accumulated measurements of all runs of a pipeline stage. Measurements are added concurrently by the threads
+ * running the stage.
+ *
+ * @author felixfeyertag
+ */
+public class TPStageStatistics {
+
+    private final String stage;
+    private final LongAdder calls = new LongAdder();
+    private final LongAdder items = new LongAdder();
+    private final LongAdder wallTime = new LongAdder();
+    private final LongAdder cpuTime = new LongAdder();
+    private final LongAdder allocatedBytes = new LongAdder();
+
+    TPStageStatistics(String stage) {
+        this.stage = stage;
+    }
+
+    void record(long items, long wallTime, long cpuTime, long allocatedBytes) {
+        this.calls.increment();
+        this.items.add(items);
+        this.wallTime.add(wallTime);
+        this.cpuTime.add(cpuTime);
+        this.allocatedBytes.add(allocatedBytes);
+    }
+
+    void reset() {
+        calls.reset();
+        items.reset();
+        wallTime.reset();
+        cpuTime.reset();
+        allocatedBytes.reset();
+    }
+
+    public String getStage() {
+        return stage;
+    }
+
+    public long getCalls() {
+        return calls.sum();
+    }
+
+    public long getItems() {
+        return items.sum();
+    }
+
+    /**
+     * @return wall time in nanoseconds, summed over all runs
+     */
+    public long getWallTime() {
+        return wallTime.sum();
+    }
+
+    /**
+     * @return CPU time in nanoseconds, summed over all runs, or 0 if not supported by the JVM
+     */
+    public long getCpuTime() {
+        return cpuTime.sum();
+    }
+
+    /**
+     * @return allocated bytes, summed over all runs, or 0 if not supported by the JVM
+     */
+    public long getAllocatedBytes() {
+        return allocatedBytes.sum();
+    }
+
+    /**
+     * @return items per second of wall time
+     */
+    public double getThroughput() {
+        long wall = getWallTime();
+        return wall > 0 ? getItems() * 1e9 / wall : 0.0;
+    }
+
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright (C) 2020 Felix Feyertag <felix.feyertag@ndm.ox.ac.uk>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.chembiohub.tpmap.diagnostics;
+
+/**
+ * TPStageTimer
+ *
+ * Measures a single run of a pipeline stage, from creation by TPDiagnostics until close. Items processed by the run
+ * are counted with addItems, for the throughput of the stage.
+ *
+ * @author felixfeyertag
+ */
+public class TPStageTimer implements AutoCloseable {
+
+    private final TPStageStatistics statistics;
+    private final boolean processScope;
+    private final TPStageEvent event;
+    private final long wallTime0;
+    private final long cpuTime0;
+    private final long allocated0;
+    private long items = 0;
+    private boolean closed = false;
+
+    TPStageTimer(TPStageStatistics statistics, boolean processScope) {
+        this.statistics = statistics;
+        this.processScope = processScope;
+        this.event = new TPStageEvent();
+        this.event.begin();
+        this.cpuTime0 = processScope ? TPDiagnostics.processCpuTime() : TPDiagnostics.threadCpuTime();
+        this.allocated0 = processScope ? TPDiagnostics.processAllocatedBytes() : TPDiagnostics.threadAllocatedBytes();
+        this.wallTime0 = System.nanoTime();
+    }
+
+    /**
+     * @param count number of items processed
+     */
+    public void addItems(long count) {
+        items += count;
+    }
+
+    /**
+     * Records the run, further calls have no effect
+     */
+    @Override
+    public void close() {
+        if(closed) {
+            return;
+        }
+        closed = true;
+
+        long wallTime = System.nanoTime() - wallTime0;
+        long cpuTime = Math.max(0, (processScope ? TPDiagnostics.processCpuTime() : TPDiagnostics.threadCpuTime()) - cpuTime0);
+        long allocated = Math.max(0, (processScope ? TPDiagnostics.processAllocatedBytes() : TPDiagnostics.threadAllocatedBytes()) - allocated0);
+
+        statistics.record(items, wallTime, cpuTime, allocated);
+
+        event.end();
+        if(event.shouldCommit()) {
+            event.stage = statistics.getStage();
+            event.items = items;
+            event.cpuTime = cpuTime;
+            event.allocated = allocated;
+            event.processScope = processScope;
+            event.commit();
+        }
+    }
+
+}
@@ -15,15 +15,23 @@
  */
 package com.chembiohub.tpmap.dstruct;
 
+import com.chembiohub.tpmap.diagnostics.TPCurveFitEvent;
+import com.chembiohub.tpmap.diagnostics.TPDiagnostics;
 import com.chembiohub.tpmap.normalisation.TPNoNormalisation;
 import com.chembiohub.tpmap.normalisation.TPNormalisation;
+import com.chembiohub.tpmap.scoring.TP1dCurveEstimator;
+import com.chembiohub.tpmap.scoring.TP1dCurveFitResult;
+import com.chembiohub.tpmap.scoring.TP1dCurveFitter;
 import com.chembiohub.tpmap.scoring.TP1dDenaturationFunction;
+import com.chembiohub.tpmap.scoring.TP1dDenaturationKernel;
+import com.chembiohub.tpmap.scoring.TP1dSharedCurveFitResult;
 import javafx.beans.property.*;
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
-import org.apache.commons.math3.analysis.ParametricUnivariateFunction;
-import org.apache.commons.math3.fitting.SimpleCurveFitter;
-import org.apache.commons.math3.fitting.WeightedObservedPoint;
+import org.apache.commons.math3.exception.ConvergenceException;
+import org.apache.commons.math3.exception.TooManyEvaluationsException;
+import org.apache.commons.math3.exception.TooManyIterationsException;
+import org.apache.commons.math3.fitting.leastsquares.LeastSquaresOptimizer;
 import org.apache.commons.math3.util.FastMath;
 import org.jfree.chart.ChartFactory;
 import org.jfree.chart.JFreeChart;
@@ -44,16 +52,25 @@ import java.util.Random;
  * The Protein1D class defines an individual protein, including it's accession, name,
  * organism name, description.
  *
- * This class also holds 2x2 matrices for each Replicate x TMT for:
+ * This class also holds matrices for each Replicate x TMT for:
  *  - Absolute values
  *  - Relative values
  *  - Relative values normalised
  *
+ * Replicates are vehicle replicates if their label starts with V, e.g. V1, V2, V3, and treatment replicates
+ * otherwise. Curve fit parameters, Tm and RMSE are stored for each replicate, indexed by the position of the replicate
+ * label, Tm shifts for each pair of a vehicle and a treatment replicate, and the replication of the curves for each
+ * condition.
+ *
  *  TP-MAP scores and P-values are stored for the protein.
  *
  * @author felixfeyertag
  */
 public class Protein1D implements Protein {
+
+    public static final int VEHICLE = 0;
+    public static final int TREATMENT = 1;
+
     private String accession;
     private String description;
 
@@ -83,27 +100,31 @@ public class Protein1D implements Protein {
 
     private final IntegerProperty attempts;
     private final IntegerProperty maxIterations;
+    private final IntegerProperty patience;
+    private final DoubleProperty tolerance;
 
     private double[][] curveFitParams;
 
-    //TODO: abstract V1 V2 T1 T2 to allow an arbitrary number of replicates
-    private final DoubleProperty tmv1Property;
-    private final DoubleProperty tmv2Property;
-    private final DoubleProperty tmt1Property;
-    private final DoubleProperty tmt2Property;
-    private final DoubleProperty tmVT1Property;
-    private final DoubleProperty tmVT2Property;
-    private final DoubleProperty tmVVProperty;
-    private final DoubleProperty meanTMProperty;
-    private final BooleanProperty curveShiftSameDirectionProperty;
-    private final BooleanProperty deltaVTgtDeltaVVProperty;
-
-    private final DoubleProperty rmsev1Property;
-    private final DoubleProperty rmsev2Property;
-    private final DoubleProperty rmset1Property;
-    private final DoubleProperty rmset2Property;
-    private final DoubleProperty vRepProperty;
-    private final DoubleProperty tRepProperty;
+    private String[] replicateLabels = new String[0];
+    private int[] replicateConditions = new int[0];
+    private int[][] conditionReplicates = new int[][] { new int[0], new int[0] };
+
+    // Indexed by replicate
+    private double[] tm = new double[0];
+    private double[] rmse = new double[0];
+
+    // Indexed by vehicle replicate * treatment replicates + treatment replicate
+    private double[] tmShifts = new double[0];
+
+    // Indexed by condition
+    private double[] replication = new double[] { Double.NaN, Double.NaN };
+
+    private double tmVV = Double.NaN;
+    private double meanTM = Double.NaN;
+    private boolean curveShiftSameDirection;
+    private boolean deltaVTgtDeltaVV;
+
+    private TP1dSharedCurveFitResult sharedCurveFit;
 
     private final DoubleProperty score;
 
@@ -112,26 +133,12 @@ public class Protein1D implements Protein {
      */
     public Protein1D() {
 
-        curveShiftSameDirectionProperty = new SimpleBooleanProperty(this, "curvesfhiftsamedirectionproperty", Boolean.FALSE);
-        deltaVTgtDeltaVVProperty        = new SimpleBooleanProperty(this, "deltavtgtdeltavvproeprty"        , Boolean.FALSE);
-        tmv1Property = new SimpleDoubleProperty(this, "tmv1property", Double.NaN);
-        tmv2Property = new SimpleDoubleProperty(this, "tmv2property", Double.NaN);
-        tmt1Property = new SimpleDoubleProperty(this, "tmt1property", Double.NaN);
-        tmt2Property = new SimpleDoubleProperty(this, "tmt2property", Double.NaN);
-        tmVT1Property  = new SimpleDoubleProperty(this, "tmvt1property" , Double.NaN);
-        tmVT2Property  = new SimpleDoubleProperty(this, "tmvt2property" , Double.NaN);
-        tmVVProperty   = new SimpleDoubleProperty(this, "tmvvproperty"  , Double.NaN);
-        meanTMProperty = new SimpleDoubleProperty(this, "meantmproperty", Double.NaN);
-        rmsev1Property     = new SimpleDoubleProperty(this, "rmsev1property", Double.NaN);
-        rmsev2Property     = new SimpleDoubleProperty(this, "rmsev2property", Double.NaN);
-        rmset1Property     = new SimpleDoubleProperty(this, "rmset1property", Double.NaN);
-        rmset2Property     = new SimpleDoubleProperty(this, "rmset2property", Double.NaN);
-        vRepProperty = new SimpleDoubleProperty(this, "vrepproperty", Double.NaN);
-        tRepProperty = new SimpleDoubleProperty(this, "trepproperty", Double.NaN);
         score = new SimpleDoubleProperty(this, "score", Double.NaN);
 
         attempts = new SimpleIntegerProperty(1);
         maxIterations = new SimpleIntegerProperty(1);
+        patience = new SimpleIntegerProperty(0);
+        tolerance = new SimpleDoubleProperty(0.0);
 
         normalisationMethod = TPNormalisation.Normalisation.NONE;
         abundancesOL = FXCollections.synchronizedObservableList(FXCollections.observableArrayList());
@@ -154,18 +161,11 @@ public class Protein1D implements Protein {
         double t1 = temperatures[0];
         double t2 = temperatures[temperatures.length-1];
 
-        if(curveFitParams[0]!=null) {
-            tmt1Property.set(calculateTM(curveFitParams[0], t1, t2));
-        }
-        if(curveFitParams[1]!=null) {
-            tmt2Property.set(calculateTM(curveFitParams[1], t1, t2));
-        }
-        if(curveFitParams[2]!=null) {
-            tmv1Property.set(calculateTM(curveFitParams[2], t1, t2));
-        }
-        if(curveFitParams[3]!=null) {
-            tmv2Property.set(calculateTM(curveFitParams[3], t1, t2));
+        double[] tm = new double[curveFitParams.length];
+        for(int i=0; i<tm.length; i++) {
+            tm[i] = calculateTM(curveFitParams[i], t1, t2);
         }
+        this.tm = tm;
 
         calculateTMShifts();
         calculateReplication();
@@ -220,173 +220,271 @@ public class Protein1D implements Protein {
 
     }
 
-    private static Double calculateRMSE(Double[] temps, Double[] values, double[] fitParams) {
+    private static double calculateRMSE(TP1dDenaturationKernel kernel, double[] values, double[] fitParams) {
 
-        assert temps.length == values.length;
+        assert kernel.size() == values.length;
 
         if(fitParams==null || fitParams.length!=3) {
             return Double.NaN;
         }
 
-        TP1dDenaturationFunction c = new TP1dDenaturationFunction(fitParams[0],fitParams[1],fitParams[2]);
-
-        double sumResidual = 0.0;
-        int countResidual = 0;
-
-        for(int i=0; i<values.length; i++) {
-            if(Double.isFinite(values[i])&&Double.isFinite(temps[i])) {
-                countResidual += 1;
-                sumResidual += FastMath.pow(values[i] - c.value(temps[i]),2);
-            }
-        }
-
-        if(countResidual==1) {
-            return Double.NaN;
-        }
-
-
-
-        return FastMath.sqrt( sumResidual / (countResidual-1.0) );
+        return kernel.rmse(fitParams, values);
     }
 
     /**
      * Fit a TP1dDenaturationFunction curve.
      *
-     * @param temps temperatures (x values)
-     * @param values relative abundance (y values)
+     * The first attempt starts from parameters estimated from the data by TP1dCurveEstimator. If it converges to a
+     * melting curve with a transition in the measured temperature range, the curve is returned without further
+     * attempts. Otherwise, or if the curve has no transition from which parameters can be estimated, attempts are
+     * restarted from random start points and the curve with the best RMSE is chosen. If patience is greater than 0, no
+     * further attempts are made once the best fit is a melting curve and patience consecutive attempts have not
+     * improved its RMSE by more than tolerance. As long as the best fit is a flat curve, all attempts are made.
+     *
+     * If the curve was already fitted from the estimated parameters by TP1dBatchCurveFitter, its result is taken as
+     * the first attempt.
+     *
+     * @param kernel curve on the temperatures of the experiment (x values)
+     * @param values relative abundance (y values), NaN for missing values
      * @param maxAttempts attempts to fit a curve, curve with the best RMSE fit is chosen
      * @param maxIterations maximum number of iterations for the curve fit optimization algorithm
-     * @return double[5] with estimates for params a, b, p, and final two parameters for RMSE estimates
+     * @param patience consecutive attempts without improvement after which fitting stops, 0 to make all attempts
+     * @param tolerance minimum decrease of the RMSE counted as improvement
+     * @param firstAttempt result of the batch fit from the estimated parameters, or null to fit them here
+     * @return best fit with estimates for params a, b, p and the RMSE, and the attempts, improvements, iterations
+     *         and failures of the fit
      */
-    private static double[] curveFitter(Double[] temps, Double[] values, int maxAttempts, int maxIterations) {
+    private static TP1dCurveFitResult curveFitter(TP1dDenaturationKernel kernel, double[] values, int maxAttempts, int maxIterations, int patience, double tolerance, TP1dCurveFitResult firstAttempt) {
 
         if(maxAttempts==0 || maxIterations==0) {
-            return new double[0];
+            return new TP1dCurveFitResult(new double[0], Double.NaN, 0, 0);
         }
 
-        assert 0==temps.length-values.length;
-
-        for(int i=values.length-1; i>=0; i--) {
-
-            if(values[i].isNaN()) {
-                Double[] tempVals = new Double[values.length-1];
-                Double[] tempTemps = new Double[temps.length-1];
-                for(int j=0; j<tempVals.length; j++) {
-
-                    if(j<i) {
-                        tempVals[j] = values[j];
-                        tempTemps[j] = temps[j];
-                    }
-                    else {
-                        tempVals[j] = values[j+1];
-                        tempTemps[j] = temps[j+1];
-                    }
-                }
-
-                values = tempVals;
-                temps = tempTemps;
+        assert kernel.size() == values.length;
+
+        // Missing values are left out, the curve is fitted on the temperatures of the remaining values
+        kernel = kernel.select(values);
+        double[] temps = new double[kernel.size()];
+        double[] presentValues = new double[kernel.size()];
+        for(int i=0, j=0; i<values.length; i++) {
+            if(!Double.isNaN(values[i])) {
+                temps[j] = kernel.getTemp(j);
+                presentValues[j] = values[i];
+                j++;
             }
         }
+        values = presentValues;
+
+        // A curve with three parameters cannot be fitted to fewer than three points
+        if(values.length<3) {
+            return new TP1dCurveFitResult(new double[0], Double.NaN, 0, 0);
+        }
 
         double a = 3000d;
         double b = 50d;
         double plateau = 0d;
 
-        double[] estimates = new double[] { a, b, plateau };
-
-        List<WeightedObservedPoint> weightedObservedPoints = new ArrayList<>();
-
-        for(int i=0;i<temps.length;i++) {
-            weightedObservedPoints.add(new WeightedObservedPoint(1.0,temps[i],values[i]));
+        double[] estimates = TP1dCurveEstimator.estimate(temps, values, values.length);
+        boolean estimated = estimates != null;
+        if(estimated) {
+            plateau = estimates[2];
+        }
+        else {
+            estimates = new double[] { a, b, plateau };
         }
 
-        ParametricUnivariateFunction curve = new TP1dDenaturationFunction.Parametric();
-        SimpleCurveFitter curveFitter = SimpleCurveFitter.create(curve, estimates);
-        curveFitter = curveFitter.withMaxIterations(maxIterations);
+        double minTemp = Double.POSITIVE_INFINITY;
+        double maxTemp = Double.NEGATIVE_INFINITY;
+        for(double temp : temps) {
+            minTemp = FastMath.min(minTemp, temp);
+            maxTemp = FastMath.max(maxTemp, temp);
+        }
 
         int attempts = 0;
+        int improvements = 0;
+        int withoutImprovement = 0;
+        int iterations = 0;
+        int[] failures = new int[TP1dCurveFitResult.Failure.values().length];
 
         double[] bestFit = new double[] {};
         double bestRMSE = -1;
+        boolean bestIsTransition = false;
 
         Random rng = new Random(123);
 
         while(attempts<maxAttempts) {
+
+            TP1dCurveFitResult.Failure failure = null;
+            boolean improved = false;
+
             try {
-                double[] fitParams = curveFitter.fit(weightedObservedPoints);
-                if(fitParams[1]<0) {
-                    throw new Exception();
+                double[] fitParams;
+                if(attempts==0 && estimated && firstAttempt!=null) {
+                    iterations += firstAttempt.getIterations();
+                    fitParams = firstAttempt.getParams();
+                }
+                else {
+                    LeastSquaresOptimizer.Optimum optimum = new TP1dCurveFitter(kernel, estimates, maxIterations).optimize(values);
+                    iterations += optimum.getIterations();
+                    fitParams = optimum.getPoint().toArray();
                 }
 
-                Double rmse = calculateRMSE(temps, values, fitParams);
+                if(fitParams.length!=3) {
+                    failure = firstFailure(firstAttempt);
+                }
+                else if(fitParams[1]<0) {
+                    failure = TP1dCurveFitResult.Failure.NEGATIVE_SLOPE;
+                }
+                else {
+                    double rmse = calculateRMSE(kernel, values, fitParams);
+
+                    // The midpoint of the curve is at a/b, curves without midpoint in the measured temperature range
+                    // are flat, which is where the optimizer stops if it starts far away from the data
+                    double midpoint = fitParams[0] / fitParams[1];
+                    if(!Double.isFinite(rmse)) {
+                        failure = TP1dCurveFitResult.Failure.NOT_FINITE;
+                    }
+                    else if(fitParams[0]<=0 || !(midpoint>=minTemp && midpoint<=maxTemp)) {
+                        failure = TP1dCurveFitResult.Failure.NO_TRANSITION;
+                    }
 
-                if(rmse<bestRMSE || bestRMSE<0) {
-                    bestRMSE = rmse;
-                    bestFit = fitParams;
+                    if(rmse<bestRMSE || bestRMSE<0) {
+                        improved = bestRMSE<0 || bestRMSE-rmse>tolerance;
+                        bestRMSE = rmse;
+                        bestFit = fitParams;
+                        bestIsTransition = failure == null;
+                    }
                 }
+            } catch (TooManyIterationsException e) {
+                iterations += maxIterations;
+                failure = TP1dCurveFitResult.Failure.TOO_MANY_ITERATIONS;
+            } catch (TooManyEvaluationsException e) {
+                failure = TP1dCurveFitResult.Failure.TOO_MANY_EVALUATIONS;
+            } catch (ConvergenceException e) {
+                failure = TP1dCurveFitResult.Failure.CONVERGENCE;
+            } catch (RuntimeException e) {
+                failure = TP1dCurveFitResult.Failure.OTHER;
+            }
+
+            attempts++;
+
+            if(failure != null) {
+                failures[failure.ordinal()]++;
+            }
+            else if(estimated && attempts == 1) {
+                improvements++;
+                break;
+            }
+
+            if(improved) {
+                improvements++;
+                withoutImprovement = 0;
+            }
+            else if(bestIsTransition) {
+                withoutImprovement++;
+                if(patience>0 && withoutImprovement>=patience) {
+                    break;
+                }
+            }
 
+            // Curves that could not be fitted are restarted closer to the default estimates
+            if(failure == null || failure == TP1dCurveFitResult.Failure.NOT_FINITE || failure == TP1dCurveFitResult.Failure.NO_TRANSITION) {
                 a = 1000d + rng.nextGaussian() * 1000;
                 if(a<=0) { a = 0.0001; }
                 b = 100d + rng.nextGaussian() * 100;
                 if(b<=0) { b = 0.0001; }
-
-                estimates = new double[] {a, b, plateau};
-
-                attempts++;
-                curveFitter = SimpleCurveFitter.create(curve,estimates);
-                curveFitter = curveFitter.withMaxIterations(maxIterations);
-            } catch (Exception e) {
-
+            }
+            else {
                 a = 3000d + rng.nextGaussian() * 1000;
                 if(a<=0) { a = 0.0001; }
                 b = 50d + rng.nextGaussian() * 10;
                 if(b<=0) { b = 0.0001; }
-
-                estimates = new double[] {a, b, plateau};
-
-                attempts++;
-                curveFitter = SimpleCurveFitter.create(curve,estimates);
-                curveFitter = curveFitter.withMaxIterations(maxIterations);
             }
-        }
 
-        if(bestFit.length==0) {
-            return bestFit;
+            estimates = new double[] {a, b, plateau};
         }
 
-        return new double[] { bestFit[0], bestFit[1], bestFit[2], bestRMSE };
+        return new TP1dCurveFitResult(bestFit, bestRMSE, attempts, improvements, iterations, failures);
     }
 
     /**
-     * Set thermal melting point shifts
+     * @param fit failed curve fit
+     * @return cause of the first failed attempt
      */
-    private void calculateTMShifts() {
-        tmVT1Property.setValue(tmt1Property.getValue() - tmv1Property.getValue());
-        tmVT2Property.setValue(tmt2Property.getValue() - tmv2Property.getValue());
-        tmVVProperty.setValue(FastMath.abs(tmt1Property.getValue() - tmt2Property.getValue()));
-        meanTMProperty.setValue((tmVT1Property.getValue() + tmVT2Property.getValue()) / 2.0);
-        curveShiftSameDirectionProperty.setValue(tmVT1Property.getValue() > 0.0 && tmVT2Property.getValue() > 0.0 || tmVT1Property.getValue() < 0.0 && tmVT2Property.getValue() < 0.0);
-        deltaVTgtDeltaVVProperty.setValue(tmVT1Property.getValue() > tmVVProperty.getValue() && tmVT2Property.getValue() > tmVVProperty.getValue());
+    private static TP1dCurveFitResult.Failure firstFailure(TP1dCurveFitResult fit) {
+        for(TP1dCurveFitResult.Failure failure : TP1dCurveFitResult.Failure.values()) {
+            if(fit.getFailures(failure)>0) {
+                return failure;
+            }
+        }
+        return TP1dCurveFitResult.Failure.OTHER;
     }
 
     /**
-     * Calculates the mean difference between each of the data points for the V1V2 and T1T2 replicates, a lower value is better
+     * Set thermal melting point shifts between each vehicle and treatment replicate, the mean shift, and the largest
+     * difference between vehicle replicates
      */
-    private void calculateReplication() {
+    private void calculateTMShifts() {
+        int[] vehicles = conditionReplicates[VEHICLE];
+        int[] treatments = conditionReplicates[TREATMENT];
+
+        double[] tmShifts = new double[vehicles.length * treatments.length];
+        double sum = 0.0;
+        boolean positive = tmShifts.length > 0;
+        boolean negative = tmShifts.length > 0;
+        for(int v=0; v<vehicles.length; v++) {
+            for(int t=0; t<treatments.length; t++) {
+                double shift = tm[treatments[t]] - tm[vehicles[v]];
+                tmShifts[v * treatments.length + t] = shift;
+                sum += shift;
+                positive &= shift > 0.0;
+                negative &= shift < 0.0;
+            }
+        }
 
-        double v12Rep = 0.0;
-        double t12Rep = 0.0;
+        double tmVV = vehicles.length > 1 ? 0.0 : Double.NaN;
+        for(int v1=0; v1<vehicles.length; v1++) {
+            for(int v2=v1+1; v2<vehicles.length; v2++) {
+                tmVV = FastMath.max(tmVV, FastMath.abs(tm[vehicles[v1]] - tm[vehicles[v2]]));
+            }
+        }
 
-        for (int i = 0; i < abundancesTempRatio[0].length; i++) {
-            t12Rep += FastMath.abs(FastMath.abs(abundancesTempRatio[0][i]) - FastMath.abs(abundancesTempRatio[1][i]));
+        boolean deltaVTgtDeltaVV = tmShifts.length > 0;
+        for(double shift : tmShifts) {
+            deltaVTgtDeltaVV &= shift > tmVV;
         }
 
-        for (int i = 0; i < abundancesTempRatio[0].length; i++) {
-            v12Rep += FastMath.abs(FastMath.abs(abundancesTempRatio[2][i]) - FastMath.abs(abundancesTempRatio[3][i]));
+        this.tmShifts = tmShifts;
+        this.tmVV = tmVV;
+        this.meanTM = tmShifts.length > 0 ? sum / tmShifts.length : Double.NaN;
+        this.curveShiftSameDirection = positive || negative;
+        this.deltaVTgtDeltaVV = deltaVTgtDeltaVV;
+    }
+
+    /**
+     * Calculates the difference between the data points of the replicates of each condition, summed over the
+     * temperatures and averaged over each pair of replicates, a lower value is better
+     */
+    private void calculateReplication() {
+
+        double[] replication = new double[2];
+
+        for(int condition=0; condition<replication.length; condition++) {
+            int[] replicates = conditionReplicates[condition];
+            double sum = 0.0;
+            int pairs = 0;
+            for(int r1=0; r1<replicates.length; r1++) {
+                for(int r2=r1+1; r2<replicates.length; r2++) {
+                    for(int i=0; i<abundancesTempRatio[0].length; i++) {
+                        sum += FastMath.abs(FastMath.abs(abundancesTempRatio[replicates[r1]][i]) - FastMath.abs(abundancesTempRatio[replicates[r2]][i]));
+                    }
+                    pairs++;
+                }
+            }
+            replication[condition] = pairs > 0 ? sum / pairs : Double.NaN;
         }
 
-        this.vRepProperty.setValue(v12Rep);
-        this.tRepProperty.setValue(t12Rep);
+        this.replication = replication;
     }
 
     public double[][] getCurveFitParams() {
@@ -398,17 +496,33 @@ public class Protein1D implements Protein {
     }
 
     public JFreeChart createChart(ObservableList<String> tempLabels, ObservableList<String> repLabels) {
+        return createChart(tempLabels, repLabels, null);
+    }
+
+    /**
+     * @param tempLabels temperatures
+     * @param repLabels replicates
+     * @param chartKernel curve sampled from the lowest to the highest temperature in steps of
+     *                    TP1dDenaturationKernel.CHART_STEP, shared by all proteins of the experiment, or null to
+     *                    create it here
+     * @return chart of the fitted curves and values of all replicates
+     */
+    public JFreeChart createChart(ObservableList<String> tempLabels, ObservableList<String> repLabels, TP1dDenaturationKernel chartKernel) {
 
         Double[] xvalues = new Double[tempLabels.size()];
         for(int i=0; i<xvalues.length; i++) {
             xvalues[i] = Double.parseDouble(tempLabels.get(i));
         }
+        if(chartKernel == null) {
+            chartKernel = TP1dDenaturationKernel.sampled(xvalues[0], xvalues[xvalues.length-1], TP1dDenaturationKernel.CHART_STEP);
+        }
+        double[] curve = new double[chartKernel.size()];
         Double[][] yvalues = getAbundancesTempRatioNormalised();
         double[][] fitparams = getCurveFitParams();
 
         XYSeriesCollection dataset = new XYSeriesCollection();
 
-        int[] setSeries = new int[] { 0, 0, 0, 0 };
+        int[] setSeries = new int[yvalues.length];
 
         for(int i=0; i<yvalues.length; i++) {
             if(yvalues[i]!=null && fitparams[i].length==3) {
@@ -417,11 +531,9 @@ public class Protein1D implements Protein {
                 assert (3 == fitparams[i].length);
                 XYSeries series1 = new XYSeries("Fit " + i);
 
-                TP1dDenaturationFunction curve = new TP1dDenaturationFunction(fitparams[i][0],fitparams[i][1],fitparams[i][2]);
-
-                for (Double x = xvalues[0]; x < xvalues[xvalues.length-1]; x+=0.2) {
-                    Double y = curve.value(x);
-                    series1.add(x,y);
+                chartKernel.values(fitparams[i], curve);
+                for(int j=0; j<curve.length; j++) {
+                    series1.add(chartKernel.getTemp(j), curve[j]);
                 }
 
                 XYSeries series2 = new XYSeries("Point " + i);
@@ -482,32 +594,18 @@ public class Protein1D implements Protein {
                 renderer.setSeriesLinesVisible (seriesCounter+1,false);
                 renderer.setSeriesShapesVisible(seriesCounter+1,true );
 
-                switch(i) {
-                    case 0:
-                        renderer.setSeriesPaint(seriesCounter, Color.BLUE);
-                        renderer.setSeriesPaint(seriesCounter+1, Color.BLUE);
-                        break;
-                    case 1:
-                        renderer.setSeriesStroke(seriesCounter, new BasicStroke(
-                                1.0f, BasicStroke.CAP_BUTT, BasicStroke.JOIN_MITER,
-                                10.0f, new float[] {1.0f, 2.0f}, 0.0f
-                        ));
-                        renderer.setSeriesPaint(seriesCounter, Color.BLUE);
-                        renderer.setSeriesPaint(seriesCounter+1, Color.BLUE);
-                        break;
-                    case 2:
-                        renderer.setSeriesPaint(seriesCounter, Color.RED);
-                        renderer.setSeriesPaint(seriesCounter+1, Color.RED);
-                        break;
-                    case 3:
-                        renderer.setSeriesStroke(seriesCounter, new BasicStroke(
-                                1.0f, BasicStroke.CAP_BUTT, BasicStroke.JOIN_MITER,
-                                1.0f, new float[] {1.0f, 2.0f}, 0.0f
-                        ));
-                        renderer.setSeriesPaint(seriesCounter, Color.RED);
-                        renderer.setSeriesPaint(seriesCounter+1, Color.RED);
-                        break;
+                // Treatment replicates are drawn in blue, vehicle replicates in red, replicates after the first
+                // replicate of each condition are drawn with dotted lines
+                Color color = getReplicateCondition(i) == TREATMENT ? Color.BLUE : Color.RED;
+                int replicate = replicateIndex(i);
+                if(replicate > 0) {
+                    renderer.setSeriesStroke(seriesCounter, new BasicStroke(
+                            1.0f, BasicStroke.CAP_BUTT, BasicStroke.JOIN_MITER,
+                            10.0f, new float[] {1.0f, 2.0f * replicate}, 0.0f
+                    ));
                 }
+                renderer.setSeriesPaint(seriesCounter, color);
+                renderer.setSeriesPaint(seriesCounter+1, color);
 
                 seriesCounter += 2;
             }
@@ -516,16 +614,7 @@ public class Protein1D implements Protein {
                 renderer.setSeriesLinesVisible (seriesCounter+1,false);
                 renderer.setSeriesShapesVisible(seriesCounter+1,true );
 
-                switch(i) {
-                    case 0:
-                    case 1:
-                        renderer.setSeriesPaint(seriesCounter+1, Color.BLUE);
-                        break;
-                    case 2:
-                    case 3:
-                        renderer.setSeriesPaint(seriesCounter+1, Color.RED);
-                        break;
-                }
+                renderer.setSeriesPaint(seriesCounter+1, getReplicateCondition(i) == TREATMENT ? Color.BLUE : Color.RED);
 
                 seriesCounter += 2;
             }
@@ -536,6 +625,20 @@ public class Protein1D implements Protein {
         return chart;
     }
 
+    /**
+     * @param replicate replicate index
+     * @return position of the replicate among the replicates of its condition
+     */
+    private int replicateIndex(int replicate) {
+        int[] replicates = conditionReplicates[replicateConditions[replicate]];
+        for(int i=0; i<replicates.length; i++) {
+            if(replicates[i] == replicate) {
+                return i;
+            }
+        }
+        return 0;
+    }
+
     public ObservableList<ObservableList<Double>> getAbundancesOL() {
         return abundancesOL;
     }
@@ -594,6 +697,7 @@ public class Protein1D implements Protein {
         for(int i=0; i<tempLabels.size(); i++) {
             this.temperatures[i] = Double.parseDouble(tempLabels.get(i));
         }
+        setReplicates(repLabels);
         if(this.abundances==null) {
 
             this.abundances = abundances;
@@ -618,6 +722,84 @@ public class Protein1D implements Protein {
         return abundances;
     }
 
+    /**
+     * Sets the replicate labels and assigns each replicate to the vehicle or treatment condition
+     *
+     * @param repLabels replicate labels in the order of the replicates
+     */
+    private void setReplicates(List<String> repLabels) {
+        replicateLabels = repLabels.toArray(new String[0]);
+        replicateConditions = new int[replicateLabels.length];
+        int vehicles = 0;
+        for(int i=0; i<replicateLabels.length; i++) {
+            replicateConditions[i] = getCondition(replicateLabels[i]);
+            vehicles += replicateConditions[i] == VEHICLE ? 1 : 0;
+        }
+        conditionReplicates = new int[][] { new int[vehicles], new int[replicateLabels.length - vehicles] };
+        int[] counts = new int[2];
+        for(int i=0; i<replicateLabels.length; i++) {
+            conditionReplicates[replicateConditions[i]][counts[replicateConditions[i]]++] = i;
+        }
+    }
+
+    /**
+     * @param repLabels replicate labels
+     * @return indices of the vehicle replicates followed by the indices of the treatment replicates
+     */
+    public static int[] getReplicateOrder(List<String> repLabels) {
+        int[] order = new int[repLabels.size()];
+        int n = 0;
+        for(int condition : new int[] { VEHICLE, TREATMENT }) {
+            for(int i=0; i<repLabels.size(); i++) {
+                if(getCondition(repLabels.get(i)) == condition) {
+                    order[n++] = i;
+                }
+            }
+        }
+        return order;
+    }
+
+    /**
+     * @param repLabels replicate labels
+     * @return labels of each pair of a vehicle and a treatment replicate, e.g. V1T2, in the order of getTmShift
+     */
+    public static List<String> getTmShiftLabels(List<String> repLabels) {
+        List<String> vehicles = new ArrayList<>();
+        List<String> treatments = new ArrayList<>();
+        for(String repLabel : repLabels) {
+            (getCondition(repLabel) == VEHICLE ? vehicles : treatments).add(repLabel);
+        }
+        List<String> labels = new ArrayList<>();
+        for(String vehicle : vehicles) {
+            for(String treatment : treatments) {
+                labels.add(vehicle + treatment);
+            }
+        }
+        return labels;
+    }
+
+    /**
+     * @param repLabels replicate labels
+     * @return labels of the vehicle replicates, e.g. V1V2, for the largest Tm difference between vehicle replicates
+     */
+    public static String getVehicleLabels(List<String> repLabels) {
+        StringBuilder sb = new StringBuilder();
+        for(String repLabel : repLabels) {
+            if(getCondition(repLabel) == VEHICLE) {
+                sb.append(repLabel);
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * @param repLabel replicate label
+     * @return VEHICLE if the label starts with V, TREATMENT otherwise
+     */
+    public static int getCondition(String repLabel) {
+        return repLabel.startsWith("V") || repLabel.startsWith("v") ? VEHICLE : TREATMENT;
+    }
+
     public void calculateRatios(ObservableList<String> tempLabels, ObservableList<String> repLabels) {
         abundancesTempRatio = new Double[abundances[0].length][abundances.length];
         for(int i=0;i<abundancesTempRatio.length;i++) {
@@ -647,44 +829,65 @@ public class Protein1D implements Protein {
     }
 
     public void updateScores(ObservableList<String> tempLabels,ObservableList<String> repLabels) {
+        updateScores(tempLabels, repLabels, null);
+    }
+
+    /**
+     * Fits melting curves of all replicates and updates the scores
+     *
+     * @param tempLabels temperatures
+     * @param repLabels replicates
+     * @param firstAttempts results of TP1dBatchCurveFitter for each replicate, taken as the first attempt of each
+     *                      curve fit, or null to fit all attempts here
+     */
+    public void updateScores(ObservableList<String> tempLabels,ObservableList<String> repLabels,TP1dCurveFitResult[] firstAttempts) {
 
         Double[] tempLabelArray = new Double[tempLabels.size()];
         for(int i=0;i<tempLabelArray.length;i++) {
             tempLabelArray[i] = Double.parseDouble(tempLabels.get(i));
         }
 
+        updateScores(new TP1dDenaturationKernel(tempLabelArray), repLabels, firstAttempts);
+    }
+
+    /**
+     * Fits melting curves of all replicates and updates the scores
+     *
+     * @param kernel curve on the temperatures of the experiment, shared by all proteins of the experiment
+     * @param repLabels replicates
+     * @param firstAttempts results of TP1dBatchCurveFitter for each replicate, taken as the first attempt of each
+     *                      curve fit, or null to fit all attempts here
+     */
+    public void updateScores(TP1dDenaturationKernel kernel,ObservableList<String> repLabels,TP1dCurveFitResult[] firstAttempts) {
+
+        if(replicateLabels.length != repLabels.size()) {
+            setReplicates(repLabels);
+        }
+
         double[][] curveFitParams   = new double[repLabels.size()][3];
         double[]   curveFitRMSE     = new double[repLabels.size()];
 
-        long total = 0;
-
         for(int i = 0; i < getAbundancesTempRatioOL().size(); i++) {
-            long t0 = System.currentTimeMillis();
-            Double[] abTempRatio = new Double[getAbundancesTempRatioOL().get(0).size()];
+            double[] abTempRatio = new double[getAbundancesTempRatioOL().get(0).size()];
             for(int j=0;j<abTempRatio.length;j++) {
                 abTempRatio[j] = getAbundancesTempRatioOL().get(i).get(j);
             }
 
-            double[] curveFit = curveFitter(tempLabelArray, abTempRatio, attempts.getValue(), maxIterations.getValue());
+            TPCurveFitEvent curveFitEvent = new TPCurveFitEvent();
+            curveFitEvent.begin();
 
-            if(curveFit.length==0) {
-                curveFitParams[i] = curveFit;
-                curveFitRMSE[i] = Double.NaN;
-            }
-            else {
-                curveFitParams[i] = new double[]{curveFit[0], curveFit[1], curveFit[2]};
-                curveFitRMSE[i] = curveFit[3];
-            }
-            long t1 = System.currentTimeMillis()-t0;
-            total += t1;
+            TP1dCurveFitResult curveFit = curveFitter(kernel, abTempRatio, attempts.getValue(), maxIterations.getValue(), patience.getValue(), tolerance.getValue(), firstAttempts==null ? null : firstAttempts[i]);
+            TPDiagnostics.getCurveFits().record(curveFit);
+
+            curveFitParams[i] = curveFit.getParams();
+            curveFitRMSE[i] = curveFit.getRMSE();
+
+            curveFitEvent.record(getAccession(), repLabels.get(i), curveFit.getAttempts(), curveFit.getIterations(), curveFit.getRMSE(), curveFit.isSuccess());
         }
 
         setCurveFitParams(curveFitParams);
 
-        rmsev1Property.setValue(curveFitRMSE[0]);
-        rmsev2Property.setValue(curveFitRMSE[1]);
-        rmset1Property.setValue(curveFitRMSE[2]);
-        rmset2Property.setValue(curveFitRMSE[3]);
+        rmse = curveFitRMSE;
 
         calculateTM();
     }
@@ -797,68 +1000,195 @@ public class Protein1D implements Protein {
         return meanDifferenceProperty;
     }
 
+    /**
+     * @return number of replicates
+     */
+    public int getReplicateCount() {
+        return replicateLabels.length;
+    }
+
+    public String getReplicateLabel(int replicate) {
+        return replicateLabels[replicate];
+    }
+
+    /**
+     * @param replicate replicate index
+     * @return VEHICLE or TREATMENT
+     */
+    public int getReplicateCondition(int replicate) {
+        return replicateConditions[replicate];
+    }
+
+    /**
+     * @param condition VEHICLE or TREATMENT
+     * @return indices of the replicates of the condition, not to be modified
+     */
+    public int[] getReplicates(int condition) {
+        return conditionReplicates[condition];
+    }
+
+    /**
+     * @param replicate replicate index
+     * @return Tm of the replicate, NaN if the curve could not be fitted
+     */
+    public double getTm(int replicate) {
+        return replicate < tm.length ? tm[replicate] : Double.NaN;
+    }
+
+    /**
+     * @param condition VEHICLE or TREATMENT
+     * @param replicate replicate of the condition, starting at 0
+     * @return Tm of the replicate, NaN if the replicate does not exist or the curve could not be fitted
+     */
+    public double getTm(int condition, int replicate) {
+        int[] replicates = conditionReplicates[condition];
+        return replicate < replicates.length ? getTm(replicates[replicate]) : Double.NaN;
+    }
+
+    /**
+     * @param replicate replicate index
+     * @return RMSE of the curve fit of the replicate
+     */
+    public double getRmse(int replicate) {
+        return replicate < rmse.length ? rmse[replicate] : Double.NaN;
+    }
+
+    /**
+     * @param condition VEHICLE or TREATMENT
+     * @param replicate replicate of the condition, starting at 0
+     * @return RMSE of the curve fit of the replicate, NaN if the replicate does not exist
+     */
+    public double getRmse(int condition, int replicate) {
+        int[] replicates = conditionReplicates[condition];
+        return replicate < replicates.length ? getRmse(replicates[replicate]) : Double.NaN;
+    }
+
+    /**
+     * @return number of pairs of a vehicle and a treatment replicate
+     */
+    public int getTmShiftCount() {
+        return conditionReplicates[VEHICLE].length * conditionReplicates[TREATMENT].length;
+    }
+
+    /**
+     * @param pair vehicle replicate * treatment replicates + treatment replicate
+     * @return Tm of the treatment replicate minus Tm of the vehicle replicate
+     */
+    public double getTmShift(int pair) {
+        return pair < tmShifts.length ? tmShifts[pair] : Double.NaN;
+    }
+
+    /**
+     * @param vehicle vehicle replicate, starting at 0
+     * @param treatment treatment replicate, starting at 0
+     * @return Tm of the treatment replicate minus Tm of the vehicle replicate, NaN if either replicate does not exist
+     */
+    public double getTmShift(int vehicle, int treatment) {
+        int treatments = conditionReplicates[TREATMENT].length;
+        if(vehicle >= conditionReplicates[VEHICLE].length || treatment >= treatments) {
+            return Double.NaN;
+        }
+        return getTmShift(vehicle * treatments + treatment);
+    }
+
+    /**
+     * @param condition VEHICLE or TREATMENT
+     * @return mean difference between the data points of the replicates of the condition
+     */
+    public double getReplication(int condition) {
+        return replication[condition];
+    }
+
     public Double getTmv1() {
-        return tmv1Property.getValue();
+        return getTm(VEHICLE, 0);
     }
     public Double getTmv2() {
-        return tmv2Property.getValue();
+        return getTm(VEHICLE, 1);
     }
     public Double getTmt1() {
-        return tmt1Property.getValue();
+        return getTm(TREATMENT, 0);
     }
     public Double getTmt2() {
-        return tmt2Property.getValue();
+        return getTm(TREATMENT, 1);
     }
     public Double getTmVT1() {
-        return tmVT1Property.getValue();
+        return getTmShift(0, 0);
     }
     public Double getTmVT2() {
-        return tmVT2Property.getValue();
+        return getTmShift(1, 1);
     }
     public Double getTmVV() {
-        return tmVVProperty.getValue();
+        return tmVV;
     }
     public Double getMeanTM() {
-        return meanTMProperty.getValue();
+        return meanTM;
     }
     public Boolean getCurveShiftSameDirection() {
-        return curveShiftSameDirectionProperty.getValue();
+        return curveShiftSameDirection;
     }
     public Boolean getDeltaVTgtDeltaVV() {
-        return deltaVTgtDeltaVVProperty.getValue();
+        return deltaVTgtDeltaVV;
     }
 
     public double getRmsemean() {
-        if(rmsev1Property.getValue().isNaN() || rmsev2Property.getValue().isNaN() || rmset1Property.getValue().isNaN() || rmset2Property.getValue().isNaN()) {
+        if(rmse.length == 0) {
             return Double.NaN;
         }
-        else {
-            return (rmsev1Property.getValue() + rmsev2Property.getValue() + rmset1Property.getValue() + rmset2Property.getValue()) / 4.0;
+        double sum = 0.0;
+        for(double r : rmse) {
+            sum += r;
         }
+        return sum / rmse.length;
     }
 
     public double getRmsev1() {
-        return rmsev1Property.get();
+        return getRmse(VEHICLE, 0);
     }
 
     public double getRmsev2() {
-        return rmsev2Property.get();
+        return getRmse(VEHICLE, 1);
     }
 
     public double getRmset1() {
-        return rmset1Property.get();
+        return getRmse(TREATMENT, 0);
     }
 
     public double getRmset2() {
-        return rmset2Property.get();
+        return getRmse(TREATMENT, 1);
     }
 
     public double getVRep() {
-        return vRepProperty.get();
+        return replication[VEHICLE];
     }
 
     public double getTRep() {
-        return tRepProperty.get();
+        return replication[TREATMENT];
+    }
+
+    /**
+     * @param sharedCurveFit comparison of the curve shared by all replicates with the curves of each condition, or
+     *                       null if the models were not fitted
+     */
+    public void setSharedCurveFit(TP1dSharedCurveFitResult sharedCurveFit) {
+        this.sharedCurveFit = sharedCurveFit;
+    }
+
+    public TP1dSharedCurveFitResult getSharedCurveFit() {
+        return sharedCurveFit;
+    }
+
+    /**
+     * @return F-statistic of the shared curve fit, NaN if the models were not fitted
+     */
+    public double getFStatistic() {
+        return sharedCurveFit == null ? Double.NaN : sharedCurveFit.getFStatistic();
+    }
+
+    /**
+     * @return p-value of the F-statistic of the shared curve fit, NaN if the models were not fitted
+     */
+    public double getFPValue() {
+        return sharedCurveFit == null ? Double.NaN : sharedCurveFit.getPValue();
     }
 
     public void setScore(double score) {
@@ -929,5 +1259,28 @@ public class Protein1D implements Protein {
         return maxIterations.getValue();
     }
 
+    /**
+     * @param patience consecutive curve fit attempts without improvement after which fitting stops, 0 to make all
+     *                 attempts
+     */
+    public void setPatience(Integer patience) {
+        this.patience.setValue(patience);
+    }
+
+    /**
+     * @param tolerance minimum decrease of the RMSE counted as improvement of a curve fit
+     */
+    public void setTolerance(Double tolerance) {
+        this.tolerance.setValue(tolerance);
+    }
+
+    public int getPatience() {
+        return patience.getValue();
+    }
+
+    public double getTolerance() {
+        return tolerance.getValue();
+    }
+
 }
 
@@ -15,19 +15,68 @@
  */
 package com.chembiohub.tpmap.dstruct;
 
+/**
+ * Protein1DParameters
+ *
+ * Curve fit parameters for 1D experiments. If patience is greater than 0, curve fitting stops once patience
+ * consecutive attempts have not improved the RMSE of the best fit by more than tolerance, otherwise all attempts are
+ * made.
+ *
+ * With the BATCH backend, the first attempt of all curves is fitted from estimated parameters in blocks by
+ * TP1dBatchCurveFitter before the remaining attempts are made for each curve, with the SINGLE backend all attempts
+ * are made for each curve in turn.
+ *
+ * With sharedFit, a curve shared by all replicates and a curve for each condition are fitted after the replicate
+ * curves by TP1dSharedCurveFitter and compared by an F-test.
+ *
+ * @author felixfeyertag
+ */
 public class Protein1DParameters implements ProteinParameters {
 
+    /**
+     * Curve fitting backends
+     */
+    public enum FitBackend {
+        /** all attempts fitted curve by curve */
+        SINGLE,
+        /** first attempts fitted in blocks of curves by TP1dBatchCurveFitter */
+        BATCH
+    }
+
+    public static final int DEFAULT_PATIENCE = 3;
+    public static final double DEFAULT_TOLERANCE = 1e-4;
+
     private Integer attempts;
     private Integer maxIterations;
+    private Integer patience;
+    private Double tolerance;
+    private FitBackend backend;
+    private Boolean sharedFit;
 
     public Protein1DParameters(Integer attempts, Integer maxIterations) {
+        this(attempts, maxIterations, 0, DEFAULT_TOLERANCE);
+    }
+
+    public Protein1DParameters(Integer attempts, Integer maxIterations, Integer patience, Double tolerance) {
+        this(attempts, maxIterations, patience, tolerance, FitBackend.SINGLE);
+    }
+
+    public Protein1DParameters(Integer attempts, Integer maxIterations, Integer patience, Double tolerance, FitBackend backend) {
+        this(attempts, maxIterations, patience, tolerance, backend, false);
+    }
+
+    public Protein1DParameters(Integer attempts, Integer maxIterations, Integer patience, Double tolerance, FitBackend backend, Boolean sharedFit) {
         this.attempts = attempts;
         this.maxIterations = maxIterations;
+        this.patience = patience;
+        this.tolerance = tolerance;
+        this.backend = backend;
+        this.sharedFit = sharedFit;
     }
 
     @Override
     public Object[] getParams() {
-        return new Object[] { attempts, maxIterations };
+        return new Object[] { attempts, maxIterations, patience, tolerance, backend, sharedFit };
     }
 
     public void setAttempts(Integer attempts) {
@@ -38,6 +87,22 @@ public class Protein1DParameters implements ProteinParameters {
         this.maxIterations = maxIterations;
     }
 
+    public void setPatience(Integer patience) {
+        this.patience = patience;
+    }
+
+    public void setTolerance(Double tolerance) {
+        this.tolerance = tolerance;
+    }
+
+    public void setBackend(FitBackend backend) {
+        this.backend = backend;
+    }
+
+    public void setSharedFit(Boolean sharedFit) {
+        this.sharedFit = sharedFit;
+    }
+
     public Integer getAttempts() {
         return attempts;
     }
@@ -46,4 +111,20 @@ public class Protein1DParameters implements ProteinParameters {
         return maxIterations;
     }
 
+    public Integer getPatience() {
+        return patience;
+    }
+
+    public Double getTolerance() {
+        return tolerance;
+    }
+
+    public FitBackend getBackend() {
+        return backend;
+    }
+
+    public Boolean getSharedFit() {
+        return sharedFit;
+    }
+
 }
@@ -307,15 +307,35 @@ public class Protein2D implements Protein {
     }
     
     public void updateScores(double minThreshold, double maxThreshold) {
-        double meanFC = TPP2dMeanFC(this);
-        meanFCScore.set(meanFC);
-        double stability = TP2dStabilisationScorer.TPP2dStabilisationScorer(this,maxThreshold);
-        double destability = (TP2dDestabilisationScorer.TPP2dDestabilisationScorer(this,minThreshold));
-        setStabilityScore(stability);
-        setDestabilityScore(destability);
-        setScore(stability-destability);
-        meanFCScore.set(TPP2dMeanFC(this));
-        updateEffect(minThreshold, maxThreshold);
+        setScores(calculateScores(abundancesConcRatioNormalised, minThreshold, maxThreshold));
+    }
+
+    /**
+     * calculateScores scores normalised abundance/concentration ratios without changing a protein, so that scores
+     * can be calculated in the background and set with setScores on the JavaFX application thread
+     *
+     * @param ratios normalised abundance/concentration ratios
+     * @param minThreshold lower fold change threshold
+     * @param maxThreshold upper fold change threshold
+     * @return scores
+     */
+    public static Scores calculateScores(Double[][] ratios, double minThreshold, double maxThreshold) {
+        double stability = TP2dStabilisationScorer.TPP2dStabilisationScorer(ratios,maxThreshold);
+        double destability = TP2dDestabilisationScorer.TPP2dDestabilisationScorer(ratios,minThreshold);
+        return new Scores(stability, destability, TPP2dMeanFC(ratios), effect(ratios, stability-destability, minThreshold, maxThreshold));
+    }
+
+    /**
+     * @param scores scores calculated by calculateScores from the normalised ratios of this protein
+     */
+    public void setScores(Scores scores) {
+        setStabilityScore(scores.stability);
+        setDestabilityScore(scores.destability);
+        setScore(scores.getScore());
+        meanFCScore.set(scores.meanFC);
+        if(scores.effect != null) {
+            this.effect.setValue(scores.effect);
+        }
     }
 
     private void setStabilityScore(double score) {
@@ -330,26 +350,25 @@ public class Protein2D implements Protein {
         score.set(value);
     }
 
-    private void updateEffect(double minThreshold, double maxThreshold) {
+    private static String effect(Double[][] ratios, double score, double minThreshold, double maxThreshold) {
         boolean solubilityEffect = false;
-        if(this.getScore() < 0) {
-            for(Double ratio : abundancesConcRatioNormalised[0]) {
+        if(score < 0) {
+            for(Double ratio : ratios[0]) {
                 if(ratio < minThreshold) {
                     solubilityEffect = true;
                 }
             }
-            String effect = solubilityEffect ? "Solubility/Expression" : "Destabilized";
-            this.effect.setValue(effect);
+            return solubilityEffect ? "Solubility/Expression" : "Destabilized";
         }
-        if(this.getScore() > 0) {
-            for(Double ratio : abundancesConcRatioNormalised[0]) {
+        if(score > 0) {
+            for(Double ratio : ratios[0]) {
                 if(ratio > maxThreshold) {
                     solubilityEffect = true;
                 }
             }
-            String effect = solubilityEffect ? "Solubility/Expression" : "Stabilized";
-            this.effect.setValue(effect);
+            return solubilityEffect ? "Solubility/Expression" : "Stabilized";
         }
+        return null;
     }
 
     public String getEffect() {
@@ -457,11 +476,15 @@ public class Protein2D implements Protein {
     }
 
     public Double getMinimum() {
+        return getMinimum(abundancesConcRatioNormalised);
+    }
+
+    static Double getMinimum(Double[][] ratios) {
         Double min = 1.0;
-        for (Double[] abundancesConcRatioNormalised1 : abundancesConcRatioNormalised) {
-            for (int j = 0; j<abundancesConcRatioNormalised[0].length; j++) {
-                if (abundancesConcRatioNormalised1[j] < min) {
-                    min = abundancesConcRatioNormalised1[j];
+        for (Double[] ratios1 : ratios) {
+            for (int j = 0; j<ratios[0].length; j++) {
+                if (ratios1[j] < min) {
+                    min = ratios1[j];
                 }
             }
         }
@@ -469,15 +492,45 @@ public class Protein2D implements Protein {
     }
 
     public Double getMaximum() {
+        return getMaximum(abundancesConcRatioNormalised);
+    }
+
+    static Double getMaximum(Double[][] ratios) {
         Double max = 1.0;
-        for (Double[] abundancesConcRatioNormalised1 : abundancesConcRatioNormalised) {
-            for (int j = 0; j<abundancesConcRatioNormalised[0].length; j++) {
-                if (abundancesConcRatioNormalised1[j] > max) {
-                    max = abundancesConcRatioNormalised1[j];
+        for (Double[] ratios1 : ratios) {
+            for (int j = 0; j<ratios[0].length; j++) {
+                if (ratios1[j] > max) {
+                    max = ratios1[j];
                 }
             }
         }
         return max;
     }
 
+    /**
+     * Scores of a protein for a pair of fold change thresholds
+     */
+    public static final class Scores {
+
+        private final double stability;
+        private final double destability;
+        private final double meanFC;
+        private final String effect;
+
+        private Scores(double stability, double destability, double meanFC, String effect) {
+            this.stability = stability;
+            this.destability = destability;
+            this.meanFC = meanFC;
+            this.effect = effect;
+        }
+
+        public double getScore() {
+            return stability - destability;
+        }
+
+        public double getMeanFC() {
+            return meanFC;
+        }
+    }
+
 }
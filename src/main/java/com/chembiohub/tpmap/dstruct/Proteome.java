@@ -16,21 +16,36 @@
 package com.chembiohub.tpmap.dstruct;
 
 import com.chembiohub.tpmap.analysis.TPBootstrapAnalysis;
+import com.chembiohub.tpmap.diagnostics.TPDiagnostics;
+import com.chembiohub.tpmap.diagnostics.TPNormalisationPassEvent;
+import com.chembiohub.tpmap.diagnostics.TPStageTimer;
 import com.chembiohub.tpmap.dstruct.io.ImportWizard;
 import com.chembiohub.tpmap.normalisation.TP1DMedianNormalisation;
 import com.chembiohub.tpmap.normalisation.TP2DMedianNormalisation;
 import com.chembiohub.tpmap.normalisation.TPNoNormalisation;
 import com.chembiohub.tpmap.normalisation.TPNormalisation;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Spliterator;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.util.stream.IntStream;
 import java.util.stream.Stream;
 import java.util.stream.StreamSupport;
 
+import com.chembiohub.tpmap.scoring.TP1dBatchCurveFitter;
+import com.chembiohub.tpmap.scoring.TP1dCurveFitResult;
+import com.chembiohub.tpmap.scoring.TP1dDenaturationKernel;
 import com.chembiohub.tpmap.scoring.TP1dScorer;
+import com.chembiohub.tpmap.scoring.TP1dSharedCurveFitResult;
+import com.chembiohub.tpmap.scoring.TP1dSharedCurveFitter;
 import javafx.beans.property.*;
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
@@ -61,6 +76,7 @@ public class Proteome<T extends Protein> {
     private final StringProperty fileName;
     private final IntegerProperty proteinCount;
     private final IntegerProperty proteinSelected;
+    private final TPSelectionModel<T> selectionModel;
     private final ObservableList<String> concLabels;
     private final ObservableList<String> tempLabels;
     private final StringProperty taxonomy;
@@ -70,6 +86,7 @@ public class Proteome<T extends Protein> {
     private double maxThreshold = 1.50;
     private double minPercentileThreshold = 0.20;
     private double maxPercentileThreshold = 0.80;
+    private volatile ColourLookupTable colourLookupTable;
 
     // Bootstrap 2D parameters
     private final IntegerProperty bootstrapIterations;
@@ -78,6 +95,14 @@ public class Proteome<T extends Protein> {
     // 1D curve fit parameters
     private final IntegerProperty curveFitAttempts;
     private final IntegerProperty curveFitMaxIterations;
+    private final IntegerProperty curveFitPatience;
+    private final DoubleProperty curveFitTolerance;
+    private Protein1DParameters.FitBackend curveFitBackend = Protein1DParameters.FitBackend.SINGLE;
+    private boolean sharedCurveFit = false;
+
+    // 1D curves on the temperatures of the experiment, created on first use
+    private TP1dDenaturationKernel curveKernel;
+    private TP1dDenaturationKernel chartKernel;
 
     // TP-MAP 1D score TM weight
     private double scoreTMWeight = 70.0;
@@ -93,7 +118,9 @@ public class Proteome<T extends Protein> {
     private final DoubleProperty minPVal = new SimpleDoubleProperty();
 
     private final ReadOnlyDoubleWrapper progress = new ReadOnlyDoubleWrapper();
+    private final ReadOnlyLongWrapper dataVersion = new ReadOnlyLongWrapper(0);
     private final BooleanProperty isCancelled = new SimpleBooleanProperty(false);
+    private final ReentrantLock analysisLock = new ReentrantLock();
 
     private boolean multithreading = true;
 
@@ -114,6 +141,7 @@ public class Proteome<T extends Protein> {
         fileName = new SimpleStringProperty();
         proteinCount = new SimpleIntegerProperty();
         proteinSelected = new SimpleIntegerProperty();
+        selectionModel = new TPSelectionModel<>(proteins, proteinSelected);
 
         tempLabels = FXCollections.synchronizedObservableList(FXCollections.observableArrayList());
         concLabels = FXCollections.synchronizedObservableList(FXCollections.observableArrayList());
@@ -124,6 +152,8 @@ public class Proteome<T extends Protein> {
 
         curveFitAttempts = new SimpleIntegerProperty(0);
         curveFitMaxIterations = new SimpleIntegerProperty(0);
+        curveFitPatience = new SimpleIntegerProperty(0);
+        curveFitTolerance = new SimpleDoubleProperty(0.0);
 
         this.tpTabPane = tpTabPane;
         this.parentStage = parentStage;
@@ -190,6 +220,10 @@ public class Proteome<T extends Protein> {
         return proteinSelected.get();
     }
 
+    public TPSelectionModel<T> getSelectionModel() {
+        return selectionModel;
+    }
+
     public ObservableList<String> getConcLabels() {
         return concLabels;
     }
@@ -236,6 +270,10 @@ public class Proteome<T extends Protein> {
         this.setBootstrapIterations(exp.getBootstrapIterations());
         this.setCurveFitAttempts(exp.getCurveFitAttempts());
         this.setCurveFitMaxIterations(exp.getCurveFitMaxIterations());
+        this.setCurveFitPatience(exp.getCurveFitPatience());
+        this.setCurveFitTolerance(exp.getCurveFitTolerance());
+        this.setCurveFitBackend(exp.getCurveFitBackend());
+        this.setSharedCurveFit(exp.getSharedCurveFit());
         this.set2dBootstrapAnalysis(exp.get2dBootstrapAnalysis());
         this.setMultithreading(exp.getMultithreading());
         this.normalisationMethod = exp.getNormalisationMethod();
@@ -265,10 +303,8 @@ public class Proteome<T extends Protein> {
 
     public void updateProteinCount() {
 
-        int selected = 0;
-        selected = proteins.stream().filter(Protein::getSelected).map((_item) -> 1).reduce(selected, Integer::sum);
         this.proteinCount.set(proteins.size());
-        this.proteinSelected.set(selected);
+        this.proteinSelected.set(selectionModel.getSelectedCount());
         minimums.clear();
         maximums.clear();
 
@@ -284,39 +320,95 @@ public class Proteome<T extends Protein> {
     }
 
 
+    /**
+     * getColour returns the heatmap colour of an abundance ratio, destabilised (orange) below the minimum threshold,
+     * through median (yellow) at a ratio of 1.0, to stabilised (green) above the maximum threshold. Colours are taken
+     * from a lookup table that is rebuilt only when the thresholds change.
+     *
+     * @param abundanceRatio abundance ratio
+     * @return heatmap colour
+     */
     public Color getColour(Double abundanceRatio) {
-        
-        Color destab = Color.color(1.0,0.44313725,0.15686274509);
-        Color median = Color.color(1.0, 0.92156862745, 0.51764705882);
-        Color stab = Color.color(0.5725490196,0.81568627451,0.31372549019);
-
-        Double min = minThreshold - 0.1;
-        Double max = maxThreshold + 0.1;
-        
-        if (abundanceRatio<min) {
-            return destab;
-        }
-        else if (abundanceRatio<1) {
-            double percentage = (abundanceRatio - min) / (1.0 - min);
-            double r = median.getRed() * percentage + destab.getRed() * (1.0-percentage);
-            double g = median.getGreen() * percentage + destab.getGreen() * (1.0-percentage);
-            double b = median.getBlue() * percentage + destab.getBlue() * (1.0-percentage);
-            return Color.color(r, g, b);
+        if(abundanceRatio==null) {
+            return Color.WHITE;
         }
-        else if(abundanceRatio<max) {
-            double percentage = (abundanceRatio - 1.0) / (max - 1.0);
-            double r = stab.getRed() * percentage + median.getRed() * (1.0-percentage);
-            double g = stab.getGreen() * percentage + median.getGreen() * (1.0-percentage);
-            double b = stab.getBlue() * percentage + median.getBlue() * (1.0-percentage);
-            return Color.color(r, g, b);
-        }
-        else if(abundanceRatio!=null) {
-            return stab;
+        ColourLookupTable lut = getColourLookupTable();
+        return lut.colours[lut.index(abundanceRatio)];
+    }
+
+    /**
+     * getColourRGB returns the heatmap colour of an abundance ratio packed as 0xRRGGBB, without allocating a Color
+     *
+     * @param abundanceRatio abundance ratio
+     * @return heatmap colour as packed RGB
+     */
+    public int getColourRGB(double abundanceRatio) {
+        ColourLookupTable lut = getColourLookupTable();
+        return lut.rgb[lut.index(abundanceRatio)];
+    }
+
+    private ColourLookupTable getColourLookupTable() {
+        ColourLookupTable lut = colourLookupTable;
+        if(lut == null || lut.minThreshold != minThreshold || lut.maxThreshold != maxThreshold) {
+            lut = new ColourLookupTable(minThreshold, maxThreshold);
+            colourLookupTable = lut;
         }
-        else {
-            return Color.color(1.0,1.0,1.0);
+        return lut;
+    }
+
+    /**
+     * ColourLookupTable holds the interpolated heatmap colours for a pair of thresholds, COLOUR_STEPS entries between
+     * the minimum and 1.0, COLOUR_STEPS entries between 1.0 and the maximum and a final entry for the stabilised colour
+     */
+    private static final class ColourLookupTable {
+
+        private static final int COLOUR_STEPS = 1024;
+
+        private final double minThreshold;
+        private final double maxThreshold;
+        private final double min;
+        private final double max;
+        private final int[] rgb = new int[2 * COLOUR_STEPS + 1];
+        private final Color[] colours = new Color[2 * COLOUR_STEPS + 1];
+
+        ColourLookupTable(double minThreshold, double maxThreshold) {
+            this.minThreshold = minThreshold;
+            this.maxThreshold = maxThreshold;
+            this.min = minThreshold - 0.1;
+            this.max = maxThreshold + 0.1;
+
+            Color destab = Color.color(1.0,0.44313725,0.15686274509);
+            Color median = Color.color(1.0, 0.92156862745, 0.51764705882);
+            Color stab = Color.color(0.5725490196,0.81568627451,0.31372549019);
+
+            for(int i=0; i<COLOUR_STEPS; i++) {
+                double percentage = (double) i / COLOUR_STEPS;
+                colours[i] = destab.interpolate(median, percentage);
+                colours[COLOUR_STEPS + i] = median.interpolate(stab, percentage);
+            }
+            colours[2 * COLOUR_STEPS] = stab;
+
+            for(int i=0; i<colours.length; i++) {
+                rgb[i] = (int) Math.round(colours[i].getRed() * 255.0) << 16
+                        | (int) Math.round(colours[i].getGreen() * 255.0) << 8
+                        | (int) Math.round(colours[i].getBlue() * 255.0);
+            }
         }
 
+        int index(double abundanceRatio) {
+            if(abundanceRatio < min) {
+                return 0;
+            }
+            else if(abundanceRatio < 1) {
+                return Math.min((int) ((abundanceRatio - min) / (1.0 - min) * COLOUR_STEPS), COLOUR_STEPS - 1);
+            }
+            else if(abundanceRatio < max) {
+                return COLOUR_STEPS + Math.min((int) ((abundanceRatio - 1.0) / (max - 1.0) * COLOUR_STEPS), COLOUR_STEPS - 1);
+            }
+            else {
+                return 2 * COLOUR_STEPS;
+            }
+        }
     }
 
     /**
@@ -326,11 +418,40 @@ public class Proteome<T extends Protein> {
      */
     public void setNormalisation(TPNormalisation.Normalisation norm) {
 
-        normalisationMethod = norm;
-        ObservableList<T> nProteins = FXCollections.synchronizedObservableList(FXCollections.observableArrayList());
+        NormalisationResult<T> result = calculateNormalisation(norm, minPercentileThreshold, maxPercentileThreshold, scoreTMWeight);
+
+        if(!isCancelled.get()) {
+            applyNormalisation(result);
+        }
+
+    }
+
+    /**
+     * calculateNormalisation normalises proteins and calculates scores as setNormalisation, but leaves the proteins
+     * and the proteome unchanged. The normalised ratios, scores, thresholds and protein order are collected in a
+     * NormalisationResult and only published by applyNormalisation, so that analyses running in the background can
+     * swap in the result on the JavaFX application thread, and leave the proteome as it was if they are cancelled.
+     * Progress is reported through the progress property, the calculation stops early if the proteome is cancelled.
+     *
+     * The curves of 1D proteins are fitted on the proteins themselves the first time the proteome is normalised, which
+     * happens by setNormalisation on import, before the proteome is shown.
+     *
+     * @param norm Normalisation type
+     * @param minPercentileThreshold percentile of the protein minimums used as lower 2D fold change threshold
+     * @param maxPercentileThreshold percentile of the protein maximums used as upper 2D fold change threshold
+     * @param scoreTMWeight weight of the thermal shift in 1D scores
+     * @return normalised and rescored proteins, sorted by descending score
+     */
+    public NormalisationResult<T> calculateNormalisation(TPNormalisation.Normalisation norm, double minPercentileThreshold,
+                                                         double maxPercentileThreshold, double scoreTMWeight) {
+
+        NormalisationResult<T> result = new NormalisationResult<>(norm, minPercentileThreshold, maxPercentileThreshold, scoreTMWeight);
         final int proteinCount = proteins.size();
         final AtomicInteger proteinCounter = new AtomicInteger(0);
 
+        TPStageTimer normalisationTimer = TPDiagnostics.startProcess("normalisation");
+        normalisationTimer.addItems(proteinCount);
+
         switch(norm) {
 
             case MEDIAN:
@@ -378,41 +499,13 @@ public class Proteome<T extends Protein> {
                 }
                 else if (t instanceof Protein2D) {
 
-                    // Normalise and place in temporary protein list nProteins0
-                    ObservableList<Protein2D> nProteins0 = FXCollections.synchronizedObservableList(FXCollections.observableArrayList());
                     TP2DMedianNormalisation medianNormalisation = new TP2DMedianNormalisation();
-                    maximums.clear();
-                    minimums.clear();
+                    TPNormalisationPassEvent medianEvent = new TPNormalisationPassEvent();
+                    medianEvent.begin();
                     medianNormalisation.initMedianNormalisation(proteins);
+                    medianEvent.record(norm.name(), "median", proteins.size());
 
-                    proteins.forEach((p) -> {
-                        if(isCancelled.get()) {
-                            return;
-                        }
-                        Protein2D p2 = (Protein2D) medianNormalisation.normalise(p);
-                        maximums.add(p2.getMaximum());
-                        minimums.add(p2.getMinimum());
-                        nProteins0.add(p2);
-                        progress.set(0.5 * proteinCounter.addAndGet(1) / proteinCount);
-                    });
-
-                    Collections.sort(maximums);
-                    Collections.sort(minimums);
-                    this.minThreshold = minimums.get((int) ((minimums.size() - 1) * minPercentileThreshold));
-                    this.maxThreshold = maximums.get((int) ((maximums.size() - 1) * maxPercentileThreshold));
-
-                    // Update scores based on new thresholds
-                    nProteins0.forEach((p) -> {
-                        if(isCancelled.get()) {
-                            return;
-                        }
-                        p.updateScores(this.minThreshold, this.maxThreshold);
-                        progress.set(0.5 + 0.5 * proteinCounter.addAndGet(1) / proteinCount);
-                    });
-
-                    nProteins0.sort(Comparator.comparingDouble(Protein2D::getMeanFCScore).reversed());
-
-                    nProteins0.forEach((p) -> nProteins.add((T)p));
+                    calculate2DScores(result, medianNormalisation::normalisedRatios, proteinCounter);
                 }
                 break;
 
@@ -428,18 +521,32 @@ public class Proteome<T extends Protein> {
 
                     if(calculateCurves) {
 
-                        proteinStream.forEach((p) -> {
-                            if (isCancelled.get()) {
-                                return;
-                            }
-                            if (p != null) {
-                                Protein1D p1 = (Protein1D) noNormalisation.normalise(p);
-                                p1.updateScores(this.getTempLabels(), this.getConcLabels());
-                                nProteins0.add(p1);
-                                progress.set(1.0 * proteinCounter.addAndGet(1) / proteinCount);
-                            }
-                        });
-                        calculateCurves = false;
+                        TPNormalisationPassEvent curveFitEvent = new TPNormalisationPassEvent();
+                        curveFitEvent.begin();
+                        Map<Protein,TP1dCurveFitResult[]> batchFits = batchCurveFits();
+                        TP1dDenaturationKernel kernel = getCurveKernel();
+                        // timed once around the stream, as the curves of different proteins are fitted in parallel
+                        try (TPStageTimer curveFitTimer = TPDiagnostics.startProcess("curveFit")) {
+                            proteinStream.forEach((p) -> {
+                                if (isCancelled.get()) {
+                                    return;
+                                }
+                                if (p != null) {
+                                    TP1dCurveFitResult[] firstAttempts = batchFits.get(p);
+                                    Protein1D p1 = (Protein1D) noNormalisation.normalise(p);
+                                    p1.updateScores(kernel, this.getConcLabels(), firstAttempts);
+                                    nProteins0.add(p1);
+                                    progress.set(1.0 * proteinCounter.addAndGet(1) / proteinCount);
+                                }
+                            });
+                            curveFitTimer.addItems((long) nProteins0.size() * this.getConcLabels().size());
+                        }
+                        curveFitEvent.record(norm.name(), "curveFit", nProteins0.size());
+                        if(isCancelled.get()) {
+                            break;
+                        }
+                        sharedCurveFits(nProteins0);
+                        result.curvesFitted = true;
                     }
                     else {
                         proteinStream.forEach( p -> {
@@ -447,50 +554,36 @@ public class Proteome<T extends Protein> {
                         });
                     }
 
-                    TP1dScorer scorer = new TP1dScorer(nProteins0, scoreTMWeight);
+                    TPNormalisationPassEvent scoreEvent = new TPNormalisationPassEvent();
+                    scoreEvent.begin();
+                    try (TPStageTimer scoringTimer = TPDiagnostics.startProcess("scoring")) {
+                        TP1dScorer scorer = new TP1dScorer(nProteins0, scoreTMWeight);
 
-                    nProteins0.forEach(p -> {
-                        if(isCancelled.get()) {
-                            return;
-                        }
-                        double score = scorer.calculateScore(p);
-                        p.setScore(score);
-                        nProteins.add((T) p);
-                    });
+                        final List<Protein1D> scored = new ArrayList<>(nProteins0);
+                        final double[] scores = new double[scored.size()];
+                        IntStream scoreStream = multithreading ? IntStream.range(0, scores.length).parallel() : IntStream.range(0, scores.length);
+                        scoreStream.forEach(i -> {
+                            if(isCancelled.get()) {
+                                return;
+                            }
+                            scores[i] = scorer.calculateScore(scored.get(i));
+                        });
+
+                        IntStream.range(0, scores.length)
+                                .boxed()
+                                .sorted(Comparator.comparingDouble((Integer i) -> scores[i]).reversed())
+                                .forEach(i -> {
+                                    Protein1D p = scored.get(i);
+                                    double score = scores[i];
+                                    result.proteins.add((T) p);
+                                    result.proteinUpdates.add(() -> p.setScore(score));
+                                });
+                        scoringTimer.addItems(nProteins0.size());
+                    }
+                    scoreEvent.record(norm.name(), "score", nProteins0.size());
                 }
                 else if (t2 instanceof Protein2D) {
-
-                    ObservableList<Protein2D> nProteins0 = FXCollections.synchronizedObservableList(FXCollections.observableArrayList());
-                    maximums.clear();
-                    minimums.clear();
-
-                    proteins.forEach((p) -> {
-                        if(isCancelled.get()) {
-                            return;
-                        }
-                        Protein2D p2 = (Protein2D) noNormalisation.normalise(p);
-                        maximums.add(p2.getMaximum());
-                        minimums.add(p2.getMinimum());
-                        nProteins0.add(p2);
-                        progress.set(0.5 * proteinCounter.addAndGet(1) / proteinCount);
-                    });
-
-                    Collections.sort(maximums);
-                    Collections.sort(minimums);
-                    this.minThreshold = minimums.get((int) ((minimums.size() - 1) * minPercentileThreshold));
-                    this.maxThreshold = maximums.get((int) ((maximums.size() - 1) * maxPercentileThreshold));
-
-                    nProteins0.forEach((p) -> {
-                        if(isCancelled.get()) {
-                            return;
-                        }
-                        p.updateScores(this.minThreshold, this.maxThreshold);
-                        progress.set(0.5 + 0.5 * proteinCounter.addAndGet(1) / proteinCount);
-                    });
-
-                    nProteins0.sort(Comparator.comparingDouble(Protein2D::getMeanFCScore).reversed());
-
-                    nProteins0.forEach((p) -> nProteins.add((T)p));
+                    calculate2DScores(result, Protein2D::getAbundancesConcRatio, proteinCounter);
                 }
                 break;
 
@@ -584,11 +677,168 @@ public class Proteome<T extends Protein> {
             //    break;
         }
 
-        proteins.clear();
-        proteins.addAll(nProteins);
+        normalisationTimer.close();
+
+        return result;
+
+    }
+
+    /**
+     * calculate2DScores normalises the ratios of 2D proteins, sets the fold change thresholds of the result to the
+     * percentiles of the normalised protein minimums and maximums and scores the proteins with these thresholds
+     *
+     * @param result normalisation result to which the proteins are added, sorted by descending score and then by
+     *               descending mean fold change
+     * @param normalisation calculates the normalised abundance/concentration ratios of a protein
+     * @param proteinCounter counter of processed proteins, used to report progress
+     */
+    private void calculate2DScores(NormalisationResult<T> result, Function<Protein2D,Double[][]> normalisation, AtomicInteger proteinCounter) {
+
+        final String norm = result.norm.name();
+        final int proteinCount = proteins.size();
+        final List<Protein2D> nProteins0 = new ArrayList<>();
+        final List<Double[][]> nRatios = new ArrayList<>();
+        final List<Double> nMaximums = new ArrayList<>();
+        final List<Double> nMinimums = new ArrayList<>();
+
+        TPNormalisationPassEvent normaliseEvent = new TPNormalisationPassEvent();
+        normaliseEvent.begin();
+        proteins.forEach((p) -> {
+            if(isCancelled.get()) {
+                return;
+            }
+            Protein2D p2 = (Protein2D) p;
+            Double[][] ratios = normalisation.apply(p2);
+            nProteins0.add(p2);
+            nRatios.add(ratios);
+            nMaximums.add(Protein2D.getMaximum(ratios));
+            nMinimums.add(Protein2D.getMinimum(ratios));
+            progress.set(0.5 * proteinCounter.addAndGet(1) / proteinCount);
+        });
+        normaliseEvent.record(norm, "normalise", nProteins0.size());
+
+        if(isCancelled.get()) {
+            return;
+        }
+
+        Collections.sort(nMaximums);
+        Collections.sort(nMinimums);
+        result.maximums = nMaximums;
+        result.minimums = nMinimums;
+        result.minThreshold = nMinimums.get((int) ((nMinimums.size() - 1) * result.minPercentileThreshold));
+        result.maxThreshold = nMaximums.get((int) ((nMaximums.size() - 1) * result.maxPercentileThreshold));
+
+        // Score based on new thresholds
+        final Protein2D.Scores[] scores = new Protein2D.Scores[nProteins0.size()];
+        TPNormalisationPassEvent scoreEvent = new TPNormalisationPassEvent();
+        scoreEvent.begin();
+        try (TPStageTimer scoringTimer = TPDiagnostics.start("scoring")) {
+            for(int i=0; i<scores.length; i++) {
+                if(isCancelled.get()) {
+                    return;
+                }
+                scores[i] = Protein2D.calculateScores(nRatios.get(i), result.minThreshold, result.maxThreshold);
+                progress.set(0.5 + 0.5 * proteinCounter.addAndGet(1) / proteinCount);
+            }
+            scoringTimer.addItems(nProteins0.size());
+        }
+        scoreEvent.record(norm, "score", nProteins0.size());
+
+        IntStream.range(0, scores.length)
+                .boxed()
+                .sorted(Comparator.comparingDouble((Integer i) -> scores[i].getScore()).reversed()
+                        .thenComparing(Comparator.comparingDouble((Integer i) -> scores[i].getMeanFC()).reversed()))
+                .forEach(i -> {
+                    Protein2D p2 = nProteins0.get(i);
+                    Double[][] ratios = nRatios.get(i);
+                    Protein2D.Scores s = scores[i];
+                    result.proteins.add((T) p2);
+                    result.proteinUpdates.add(() -> {
+                        p2.setAbundancesConcRatioNormalised(ratios);
+                        p2.setScores(s);
+                    });
+                });
+    }
+
+    /**
+     * applyNormalisation publishes a result of calculateNormalisation: the normalised ratios and scores are set on the
+     * proteins, the normalisation method, thresholds and score weight are set on the proteome and the protein list is
+     * replaced by the rescored proteins in a single change. Must be called on the JavaFX application thread once the
+     * proteome is shown.
+     *
+     * @param result normalisation result
+     */
+    public void applyNormalisation(NormalisationResult<T> result) {
+
+        result.proteinUpdates.forEach(Runnable::run);
+
+        normalisationMethod = result.norm;
+        minPercentileThreshold = result.minPercentileThreshold;
+        maxPercentileThreshold = result.maxPercentileThreshold;
+        scoreTMWeight = result.scoreTMWeight;
+        if(result.maximums != null) {
+            maximums.setAll(result.maximums);
+            minimums.setAll(result.minimums);
+            minThreshold = result.minThreshold;
+            maxThreshold = result.maxThreshold;
+        }
+        if(result.curvesFitted) {
+            calculateCurves = false;
+        }
+
+        setProteins(result.proteins);
+    }
 
-        proteins.sort(Comparator.comparingDouble(T::getScore).reversed());
+    /**
+     * NormalisationResult holds the proteins normalised and rescored by calculateNormalisation, with their new
+     * normalised ratios and scores and the thresholds they were scored with, until applyNormalisation publishes them
+     */
+    public static final class NormalisationResult<T extends Protein> {
+
+        private final TPNormalisation.Normalisation norm;
+        private final double minPercentileThreshold;
+        private final double maxPercentileThreshold;
+        private final double scoreTMWeight;
+        private final List<T> proteins = new ArrayList<>();
+        private final List<Runnable> proteinUpdates = new ArrayList<>();
+        private List<Double> maximums;
+        private List<Double> minimums;
+        private double minThreshold;
+        private double maxThreshold;
+        private boolean curvesFitted = false;
+
+        private NormalisationResult(TPNormalisation.Normalisation norm, double minPercentileThreshold,
+                                    double maxPercentileThreshold, double scoreTMWeight) {
+            this.norm = norm;
+            this.minPercentileThreshold = minPercentileThreshold;
+            this.maxPercentileThreshold = maxPercentileThreshold;
+            this.scoreTMWeight = scoreTMWeight;
+        }
+    }
 
+    /**
+     * setProteins replaces the protein list in a single change, e.g. with the result of calculateNormalisation
+     *
+     * @param nProteins new protein list
+     */
+    public void setProteins(List<T> nProteins) {
+        proteins.setAll(nProteins);
+        dataChanged();
+    }
+
+    /**
+     * dataChanged increases the data version after protein values were updated in place, e.g. the bootstrap p-values,
+     * so that results derived from the previous values are recalculated
+     */
+    public void dataChanged() {
+        dataVersion.set(dataVersion.get() + 1);
+    }
+
+    /**
+     * @return version of the protein data, increased whenever the protein list is replaced or protein values change
+     */
+    public ReadOnlyLongProperty dataVersionProperty() {
+        return dataVersion.getReadOnlyProperty();
     }
 
     public TPNormalisation.Normalisation getNormalisationMethod() {
@@ -607,6 +857,46 @@ public class Proteome<T extends Protein> {
         this.tempLabels.clear();
         tempLabels.forEach((tl) -> this.tempLabels.add(tl.toString()));
 
+        clearKernels();
+    }
+
+    /**
+     * @return temperatures of the experiment
+     */
+    public Double[] getTemperatures() {
+        Double[] temps = new Double[getTempLabels().size()];
+        for(int i=0; i<temps.length; i++) {
+            temps[i] = Double.parseDouble(getTempLabels().get(i));
+        }
+        return temps;
+    }
+
+    /**
+     * @return TP1dDenaturationFunction curve on the temperatures of the experiment, used to fit the curves of all
+     *         proteins
+     */
+    public synchronized TP1dDenaturationKernel getCurveKernel() {
+        if(curveKernel == null) {
+            curveKernel = new TP1dDenaturationKernel(getTemperatures());
+        }
+        return curveKernel;
+    }
+
+    /**
+     * @return TP1dDenaturationFunction curve sampled from the lowest to the highest temperature of the experiment in
+     *         steps of TP1dDenaturationKernel.CHART_STEP, used to draw the curves of all proteins
+     */
+    public synchronized TP1dDenaturationKernel getChartKernel() {
+        if(chartKernel == null) {
+            Double[] temps = getTemperatures();
+            chartKernel = TP1dDenaturationKernel.sampled(temps[0], temps[temps.length-1], TP1dDenaturationKernel.CHART_STEP);
+        }
+        return chartKernel;
+    }
+
+    private synchronized void clearKernels() {
+        curveKernel = null;
+        chartKernel = null;
     }
 
     public void setTaxonomy(String taxonomy) {
@@ -627,6 +917,7 @@ public class Proteome<T extends Protein> {
         proteinSelected.set(0);
         concLabels.clear();
         tempLabels.clear();
+        clearKernels();
         normalisation.clear();
         medians = null;
         taxonomy.set("");
@@ -636,11 +927,68 @@ public class Proteome<T extends Protein> {
         bootstrapIterations.set(0);
         curveFitAttempts.set(0);
         curveFitMaxIterations.set(0);
+        curveFitPatience.set(0);
+        curveFitTolerance.set(0.0);
+        curveFitBackend = Protein1DParameters.FitBackend.SINGLE;
+        sharedCurveFit = false;
         multithreading = false;
         normalisationMethod = TPNormalisation.Normalisation.NONE;
 
     }
     
+    /**
+     * Fits the first attempt of all 1D melting curves in blocks with TP1dBatchCurveFitter if the BATCH backend is
+     * selected
+     *
+     * @return first attempts of the replicate curves of each protein, empty for the SINGLE backend
+     */
+    private Map<Protein,TP1dCurveFitResult[]> batchCurveFits() {
+        Map<Protein,TP1dCurveFitResult[]> batchFits = new IdentityHashMap<>();
+        if(curveFitBackend != Protein1DParameters.FitBackend.BATCH || getCurveFitAttempts() == 0 || getCurveFitMaxIterations() == 0) {
+            return batchFits;
+        }
+
+        List<Protein1D> batchProteins = new ArrayList<>();
+        for(T p : proteins) {
+            if(p != null) {
+                batchProteins.add((Protein1D) p);
+            }
+        }
+        Double[] temps = getTemperatures();
+
+        try (TPStageTimer batchTimer = TPDiagnostics.startProcess("curveFit.batch")) {
+            TP1dCurveFitResult[][] fits = new TP1dBatchCurveFitter(temps, getCurveFitMaxIterations()).fit(batchProteins, multithreading);
+            for(int i=0; i<fits.length; i++) {
+                batchFits.put(batchProteins.get(i), fits[i]);
+                batchTimer.addItems(fits[i].length);
+            }
+        }
+        return batchFits;
+    }
+
+    /**
+     * Fits the curve shared by all replicates and the curves of each condition of all 1D proteins with
+     * TP1dSharedCurveFitter if shared curve fitting is selected, starting from the replicate curves already fitted
+     *
+     * @param proteins proteins with fitted replicate curves
+     */
+    private void sharedCurveFits(List<Protein1D> proteins) {
+        if(!sharedCurveFit || getCurveFitMaxIterations() == 0) {
+            return;
+        }
+
+        Double[] temps = getTemperatures();
+
+        try (TPStageTimer sharedTimer = TPDiagnostics.startProcess("curveFit.shared")) {
+            List<Protein1D> sharedProteins = new ArrayList<>(proteins);
+            TP1dSharedCurveFitResult[] fits = new TP1dSharedCurveFitter(temps, getCurveFitMaxIterations()).fit(sharedProteins, multithreading);
+            for(int i=0; i<fits.length; i++) {
+                sharedProteins.get(i).setSharedCurveFit(fits[i]);
+            }
+            sharedTimer.addItems(fits.length);
+        }
+    }
+
     public void setBootstrapIterations(int i) {
         this.bootstrapIterations.set(i);
     }
@@ -665,6 +1013,38 @@ public class Proteome<T extends Protein> {
         return this.curveFitMaxIterations.get();
     }
 
+    public void setCurveFitPatience(int i) {
+        this.curveFitPatience.set(i);
+    }
+
+    public int getCurveFitPatience() {
+        return this.curveFitPatience.get();
+    }
+
+    public void setCurveFitTolerance(double d) {
+        this.curveFitTolerance.set(d);
+    }
+
+    public double getCurveFitTolerance() {
+        return this.curveFitTolerance.get();
+    }
+
+    public void setCurveFitBackend(Protein1DParameters.FitBackend backend) {
+        this.curveFitBackend = backend;
+    }
+
+    public Protein1DParameters.FitBackend getCurveFitBackend() {
+        return this.curveFitBackend;
+    }
+
+    public void setSharedCurveFit(boolean value) {
+        this.sharedCurveFit = value;
+    }
+
+    public boolean getSharedCurveFit() {
+        return this.sharedCurveFit;
+    }
+
     public void setMultithreading(boolean value) {
         multithreading = value;
     }
@@ -693,6 +1073,13 @@ public class Proteome<T extends Protein> {
         this.isCancelled.set(cancelled);
     }
 
+    /**
+     * @return lock held by background analyses while they read or recalculate the proteome
+     */
+    public ReentrantLock getAnalysisLock() {
+        return analysisLock;
+    }
+
     public void set2dBootstrapAnalysis(TPBootstrapAnalysis bootstrapAnalysis) {
         this.bootstrapAnalysis = bootstrapAnalysis;
     }
@@ -0,0 +1,578 @@
+/*
+ * Copyright (C) 2020 Felix Feyertag <felix.feyertag@ndm.ox.ac.uk>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.chembiohub.tpmap.dstruct;
+
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.DoubleBinaryOperator;
+import java.util.function.DoubleUnaryOperator;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.ToDoubleFunction;
+import java.util.stream.IntStream;
+
+/**
+ * TPProteinQuery
+ *
+ * Structured filter query over the columns of a protein table, for example
+ *
+ *   score > 0.3 AND pValue < 0.01 AND effect = Stabilized
+ *   abs(meanTM) > 2 AND rmsev1 < 0.05
+ *   (gene ~ HSP OR description ~ "heat shock") AND NOT selected
+ *
+ * In 1D experiments, the Tm and RMSE of each replicate are available as tm_<replicate> and rmse_<replicate>, and the
+ * Tm shift of each pair of a vehicle and a treatment replicate as tmshift_<vehicle><treatment>, e.g. tm_v3,
+ * rmse_t3 and tmshift_v1t3, with the replicate labels of the experiment in lower case.
+ *
+ * Numeric expressions support the table columns, numbers, + - * /, parentheses and the functions abs, log2, log10
+ * and ln, and are compared with <, <=, >, >=, = and !=. Text columns are compared case insensitively with = and !=
+ * or searched with ~ (contains). Text values may be quoted, unquoted values extend to the next AND, OR or closing
+ * parenthesis. Conditions are combined with AND, OR, NOT and parentheses, && || and ! are accepted as well.
+ *
+ * A query is parsed once into a tree of predicates and numeric functions that read the protein getters directly.
+ * Comparisons with missing (NaN) values are false.
+ *
+ * @author felixfeyertag
+ */
+public final class TPProteinQuery {
+
+    private static final Map<String,ToDoubleFunction<Protein>> numeric1D = new LinkedHashMap<>();
+    private static final Map<String,ToDoubleFunction<Protein>> numeric2D = new LinkedHashMap<>();
+    private static final Map<String,Function<Protein,String>> text = new LinkedHashMap<>();
+    private static final Map<String,Function<Protein,String>> text2D = new LinkedHashMap<>();
+    private static final Map<String,DoubleUnaryOperator> functions = new LinkedHashMap<>();
+
+    static {
+        numeric1D.put("score", of1D(Protein1D::getScore));
+        numeric1D.put("tmv1", of1D(Protein1D::getTmv1));
+        numeric1D.put("tmv2", of1D(Protein1D::getTmv2));
+        numeric1D.put("tmt1", of1D(Protein1D::getTmt1));
+        numeric1D.put("tmt2", of1D(Protein1D::getTmt2));
+        numeric1D.put("tmvt1", of1D(Protein1D::getTmVT1));
+        numeric1D.put("tmvt2", of1D(Protein1D::getTmVT2));
+        numeric1D.put("tmvv", of1D(Protein1D::getTmVV));
+        numeric1D.put("meantm", of1D(Protein1D::getMeanTM));
+        numeric1D.put("rmsev1", of1D(Protein1D::getRmsev1));
+        numeric1D.put("rmsev2", of1D(Protein1D::getRmsev2));
+        numeric1D.put("rmset1", of1D(Protein1D::getRmset1));
+        numeric1D.put("rmset2", of1D(Protein1D::getRmset2));
+        numeric1D.put("rmsemean", of1D(Protein1D::getRmsemean));
+        numeric1D.put("meandifference", of1D(Protein1D::getMeanDifference));
+        numeric1D.put("fstatistic", of1D(Protein1D::getFStatistic));
+        numeric1D.put("fpvalue", of1D(Protein1D::getFPValue));
+
+        numeric2D.put("score", of2D(Protein2D::getScore));
+        numeric2D.put("stabilityscore", of2D(Protein2D::getStabilityScore));
+        numeric2D.put("stabilisationscore", of2D(Protein2D::getStabilityScore));
+        numeric2D.put("destabilityscore", of2D(Protein2D::getDestabilityScore));
+        numeric2D.put("destabilisationscore", of2D(Protein2D::getDestabilityScore));
+        numeric2D.put("meanfc", of2D(Protein2D::getMeanFCScore));
+        numeric2D.put("meanfcscore", of2D(Protein2D::getMeanFCScore));
+        numeric2D.put("pvalue", of2D(Protein2D::getPValue));
+        numeric2D.put("topmeandifference", of2D(Protein2D::getTopMeanDifference));
+
+        text.put("accession", Protein::getAccession);
+        text.put("gene", Protein::getGeneName);
+        text.put("genename", Protein::getGeneName);
+        text.put("organism", Protein::getOrganismName);
+        text.put("description", Protein::getDescription);
+        text2D.put("effect", p -> p instanceof Protein2D ? ((Protein2D) p).getEffect() : null);
+
+        functions.put("abs", Math::abs);
+        functions.put("log2", x -> Math.log(x) / Math.log(2.0));
+        functions.put("log10", Math::log10);
+        functions.put("ln", Math::log);
+    }
+
+    private final String query;
+    private final Predicate<Protein> predicate;
+    private final boolean usesSelection;
+
+    private TPProteinQuery(String query, Predicate<Protein> predicate, boolean usesSelection) {
+        this.query = query;
+        this.predicate = predicate;
+        this.usesSelection = usesSelection;
+    }
+
+    /**
+     * @param text filter text
+     * @return true if the text contains a comparison operator and should be parsed as a query rather than searched
+     */
+    public static boolean isQuery(String text) {
+        return text != null && text.matches("(?s).*[<>=~].*");
+    }
+
+    /**
+     * @param query query text
+     * @param expType experiment type, which determines the available columns
+     * @return compiled query
+     * @throws ParseException if the query is invalid, the error offset points to the offending token
+     */
+    public static TPProteinQuery parse(String query, Proteome.ExpType expType) throws ParseException {
+        return parse(query, expType, new LinkedHashMap<>());
+    }
+
+    /**
+     * @param query query text
+     * @param proteome experiment, which determines the available columns, including the replicate columns of 1D
+     *                 experiments
+     * @return compiled query
+     * @throws ParseException if the query is invalid, the error offset points to the offending token
+     */
+    public static TPProteinQuery parse(String query, Proteome<?> proteome) throws ParseException {
+        Map<String,ToDoubleFunction<Protein>> replicateFields = proteome.getExpType() == Proteome.ExpType.TP1D
+                ? replicateColumns1D(new ArrayList<>(proteome.getConcLabels())) : new LinkedHashMap<>();
+        return parse(query, proteome.getExpType(), replicateFields);
+    }
+
+    private static TPProteinQuery parse(String query, Proteome.ExpType expType, Map<String,ToDoubleFunction<Protein>> replicateFields) throws ParseException {
+        Parser parser = new Parser(query, expType, replicateFields);
+        Predicate<Protein> predicate = parser.parseOr();
+        if(parser.peek().type != TokenType.END) {
+            throw parser.error("Unexpected '" + parser.peek().text + "'");
+        }
+        return new TPProteinQuery(query, predicate, parser.usesSelection);
+    }
+
+    public boolean test(Protein protein) {
+        return predicate.test(protein);
+    }
+
+    /**
+     * @return true if the query depends on the selection state of proteins, which changes independently of the data
+     */
+    public boolean usesSelection() {
+        return usesSelection;
+    }
+
+    public String getQuery() {
+        return query;
+    }
+
+    /**
+     * @param proteins proteins to evaluate, the list is read concurrently
+     * @return indices of matching proteins
+     */
+    public BitSet evaluate(List<? extends Protein> proteins) {
+        BitSet matches = new BitSet(proteins.size());
+        for(int i : IntStream.range(0, proteins.size()).parallel().filter(i -> predicate.test(proteins.get(i))).toArray()) {
+            matches.set(i);
+        }
+        return matches;
+    }
+
+    /**
+     * @param repLabels replicate labels of a 1D experiment
+     * @return Tm and RMSE columns of each replicate and Tm shift columns of each pair of a vehicle and a treatment
+     *         replicate, named as the columns of TP1DUserInterface
+     */
+    private static Map<String,ToDoubleFunction<Protein>> replicateColumns1D(List<String> repLabels) {
+        Map<String,ToDoubleFunction<Protein>> columns = new LinkedHashMap<>();
+        for(int replicate : Protein1D.getReplicateOrder(repLabels)) {
+            String name = columnName(repLabels.get(replicate));
+            columns.put("tm_" + name, of1D(p -> p.getTm(replicate)));
+            columns.put("rmse_" + name, of1D(p -> p.getRmse(replicate)));
+        }
+        List<String> tmShiftLabels = Protein1D.getTmShiftLabels(repLabels);
+        for(int i=0; i<tmShiftLabels.size(); i++) {
+            int pair = i;
+            columns.put("tmshift_" + columnName(tmShiftLabels.get(pair)), of1D(p -> p.getTmShift(pair)));
+        }
+        return columns;
+    }
+
+    /**
+     * @return label in lower case with characters that cannot appear in a column name replaced by _
+     */
+    private static String columnName(String label) {
+        return label.toLowerCase(Locale.ROOT).replaceAll("[^\\p{L}\\p{N}_]", "_");
+    }
+
+    private static ToDoubleFunction<Protein> of1D(Function<Protein1D,Number> getter) {
+        return p -> p instanceof Protein1D ? value(getter.apply((Protein1D) p)) : Double.NaN;
+    }
+
+    private static ToDoubleFunction<Protein> of2D(Function<Protein2D,Number> getter) {
+        return p -> p instanceof Protein2D ? value(getter.apply((Protein2D) p)) : Double.NaN;
+    }
+
+    private static double value(Number number) {
+        return number == null ? Double.NaN : number.doubleValue();
+    }
+
+    private enum TokenType { NUMBER, IDENTIFIER, STRING, OPERATOR, LPAREN, RPAREN, ARITHMETIC, AND, OR, NOT, END }
+
+    private static final class Token {
+        final TokenType type;
+        final String text;
+        final int start;
+        final int end;
+
+        Token(TokenType type, String text, int start, int end) {
+            this.type = type;
+            this.text = text;
+            this.start = start;
+            this.end = end;
+        }
+    }
+
+    private static final class Parser {
+
+        private final String query;
+        private final Map<String,ToDoubleFunction<Protein>> numericFields = new LinkedHashMap<>();
+        private final Map<String,Function<Protein,String>> textFields = new LinkedHashMap<>(text);
+        private final List<Token> tokens;
+        private int position = 0;
+        private boolean usesSelection = false;
+
+        Parser(String query, Proteome.ExpType expType, Map<String,ToDoubleFunction<Protein>> replicateFields) throws ParseException {
+            this.query = query;
+            if(expType == Proteome.ExpType.TP1D) {
+                numericFields.putAll(numeric1D);
+                numericFields.putAll(replicateFields);
+            }
+            else if(expType == Proteome.ExpType.TP2D) {
+                numericFields.putAll(numeric2D);
+                textFields.putAll(text2D);
+            }
+            this.tokens = tokenize(query);
+        }
+
+        Token peek() {
+            return tokens.get(position);
+        }
+
+        Token next() {
+            return tokens.get(position++);
+        }
+
+        ParseException error(String message) {
+            return new ParseException(message, peek().start);
+        }
+
+        Predicate<Protein> parseOr() throws ParseException {
+            Predicate<Protein> left = parseAnd();
+            while(peek().type == TokenType.OR) {
+                next();
+                left = left.or(parseAnd());
+            }
+            return left;
+        }
+
+        Predicate<Protein> parseAnd() throws ParseException {
+            Predicate<Protein> left = parseNot();
+            while(peek().type == TokenType.AND) {
+                next();
+                left = left.and(parseNot());
+            }
+            return left;
+        }
+
+        Predicate<Protein> parseNot() throws ParseException {
+            if(peek().type == TokenType.NOT) {
+                next();
+                return parseNot().negate();
+            }
+            return parsePrimary();
+        }
+
+        Predicate<Protein> parsePrimary() throws ParseException {
+
+            if(peek().type == TokenType.LPAREN) {
+                // a parenthesis opens either a group of conditions or a numeric sub-expression
+                int start = position;
+                try {
+                    next();
+                    Predicate<Protein> group = parseOr();
+                    if(peek().type == TokenType.RPAREN) {
+                        next();
+                        return group;
+                    }
+                }
+                catch (ParseException e) {
+                    // retry as the left hand side of a comparison
+                }
+                position = start;
+            }
+
+            Token token = peek();
+            if(token.type == TokenType.IDENTIFIER) {
+                String name = token.text.toLowerCase(Locale.ROOT);
+                if(name.equals("selected")) {
+                    next();
+                    usesSelection = true;
+                    if(peek().type == TokenType.OPERATOR) {
+                        Token operator = next();
+                        Token value = next();
+                        if(value.type != TokenType.IDENTIFIER || !value.text.matches("(?i)true|false")) {
+                            throw new ParseException("Expected true or false", value.start);
+                        }
+                        boolean expected = Boolean.parseBoolean(value.text.toLowerCase(Locale.ROOT));
+                        if(operator.text.equals("=") || operator.text.equals("==")) {
+                            return p -> p.getSelected() == expected;
+                        }
+                        else if(operator.text.equals("!=")) {
+                            return p -> p.getSelected() != expected;
+                        }
+                        throw new ParseException("Invalid operator for selected", operator.start);
+                    }
+                    return Protein::getSelected;
+                }
+                if(textFields.containsKey(name)) {
+                    next();
+                    return parseTextComparison(textFields.get(name));
+                }
+            }
+
+            ToDoubleFunction<Protein> left = parseSum();
+            Token operator = peek();
+            if(operator.type != TokenType.OPERATOR || operator.text.equals("~")) {
+                throw error("Expected comparison operator");
+            }
+            next();
+            ToDoubleFunction<Protein> right = parseSum();
+            switch(operator.text) {
+                case "<":
+                    return p -> left.applyAsDouble(p) < right.applyAsDouble(p);
+                case "<=":
+                    return p -> left.applyAsDouble(p) <= right.applyAsDouble(p);
+                case ">":
+                    return p -> left.applyAsDouble(p) > right.applyAsDouble(p);
+                case ">=":
+                    return p -> left.applyAsDouble(p) >= right.applyAsDouble(p);
+                case "!=":
+                    return p -> {
+                        double l = left.applyAsDouble(p);
+                        double r = right.applyAsDouble(p);
+                        return !Double.isNaN(l) && !Double.isNaN(r) && l != r;
+                    };
+                default:
+                    return p -> left.applyAsDouble(p) == right.applyAsDouble(p);
+            }
+        }
+
+        Predicate<Protein> parseTextComparison(Function<Protein,String> field) throws ParseException {
+
+            Token operator = next();
+            if(operator.type != TokenType.OPERATOR || operator.text.startsWith("<") || operator.text.startsWith(">")) {
+                throw new ParseException("Expected =, != or ~", operator.start);
+            }
+
+            String value;
+            if(peek().type == TokenType.STRING) {
+                value = next().text;
+            }
+            else {
+                int start = peek().start;
+                int end = start;
+                while(peek().type != TokenType.END && peek().type != TokenType.AND && peek().type != TokenType.OR
+                        && peek().type != TokenType.RPAREN) {
+                    end = next().end;
+                }
+                value = query.substring(start, end).trim();
+                if(value.isEmpty()) {
+                    throw error("Expected value");
+                }
+            }
+
+            String lcValue = value.toLowerCase(Locale.ROOT);
+            switch(operator.text) {
+                case "~":
+                    return p -> {
+                        String s = field.apply(p);
+                        return s != null && s.toLowerCase(Locale.ROOT).contains(lcValue);
+                    };
+                case "!=":
+                    return p -> {
+                        String s = field.apply(p);
+                        return s != null && !s.equalsIgnoreCase(value);
+                    };
+                default:
+                    return p -> {
+                        String s = field.apply(p);
+                        return s != null && s.equalsIgnoreCase(value);
+                    };
+            }
+        }
+
+        ToDoubleFunction<Protein> parseSum() throws ParseException {
+            ToDoubleFunction<Protein> left = parseProduct();
+            while(peek().type == TokenType.ARITHMETIC && (peek().text.equals("+") || peek().text.equals("-"))) {
+                left = combine(left, next().text.equals("+") ? Double::sum : (a, b) -> a - b, parseProduct());
+            }
+            return left;
+        }
+
+        ToDoubleFunction<Protein> parseProduct() throws ParseException {
+            ToDoubleFunction<Protein> left = parseFactor();
+            while(peek().type == TokenType.ARITHMETIC && (peek().text.equals("*") || peek().text.equals("/"))) {
+                left = combine(left, next().text.equals("*") ? (a, b) -> a * b : (a, b) -> a / b, parseFactor());
+            }
+            return left;
+        }
+
+        ToDoubleFunction<Protein> parseFactor() throws ParseException {
+            Token token = next();
+            switch(token.type) {
+                case NUMBER:
+                    double constant = Double.parseDouble(token.text);
+                    return p -> constant;
+                case ARITHMETIC:
+                    if(token.text.equals("-")) {
+                        ToDoubleFunction<Protein> negated = parseFactor();
+                        return p -> -negated.applyAsDouble(p);
+                    }
+                    break;
+                case LPAREN:
+                    ToDoubleFunction<Protein> inner = parseSum();
+                    expect(TokenType.RPAREN, "Expected ')'");
+                    return inner;
+                case IDENTIFIER:
+                    String name = token.text.toLowerCase(Locale.ROOT);
+                    if(functions.containsKey(name) && peek().type == TokenType.LPAREN) {
+                        next();
+                        DoubleUnaryOperator function = functions.get(name);
+                        ToDoubleFunction<Protein> argument = parseSum();
+                        expect(TokenType.RPAREN, "Expected ')'");
+                        return p -> function.applyAsDouble(argument.applyAsDouble(p));
+                    }
+                    ToDoubleFunction<Protein> field = numericFields.get(name);
+                    if(field != null) {
+                        return field;
+                    }
+                    throw new ParseException("Unknown column '" + token.text + "', available columns: "
+                            + String.join(", ", numericFields.keySet()) + ", " + String.join(", ", textFields.keySet())
+                            + ", selected", token.start);
+                default:
+                    break;
+            }
+            throw new ParseException("Unexpected '" + token.text + "'", token.start);
+        }
+
+        void expect(TokenType type, String message) throws ParseException {
+            if(peek().type != type) {
+                throw error(message);
+            }
+            next();
+        }
+
+        static ToDoubleFunction<Protein> combine(ToDoubleFunction<Protein> left, DoubleBinaryOperator operator, ToDoubleFunction<Protein> right) {
+            return p -> operator.applyAsDouble(left.applyAsDouble(p), right.applyAsDouble(p));
+        }
+
+        static List<Token> tokenize(String query) throws ParseException {
+
+            List<Token> tokens = new ArrayList<>();
+            int i = 0;
+
+            while(i < query.length()) {
+                char c = query.charAt(i);
+                int start = i;
+
+                if(Character.isWhitespace(c)) {
+                    i++;
+                }
+                else if(Character.isDigit(c) || (c == '.' && i + 1 < query.length() && Character.isDigit(query.charAt(i + 1)))) {
+                    while(i < query.length() && (Character.isDigit(query.charAt(i)) || query.charAt(i) == '.')) {
+                        i++;
+                    }
+                    if(i < query.length() && (query.charAt(i) == 'e' || query.charAt(i) == 'E')) {
+                        int exponent = i + 1;
+                        if(exponent < query.length() && (query.charAt(exponent) == '-' || query.charAt(exponent) == '+')) {
+                            exponent++;
+                        }
+                        if(exponent < query.length() && Character.isDigit(query.charAt(exponent))) {
+                            i = exponent;
+                            while(i < query.length() && Character.isDigit(query.charAt(i))) {
+                                i++;
+                            }
+                        }
+                    }
+                    String number = query.substring(start, i);
+                    try {
+                        Double.parseDouble(number);
+                    }
+                    catch (NumberFormatException e) {
+                        throw new ParseException("Invalid number '" + number + "'", start);
+                    }
+                    tokens.add(new Token(TokenType.NUMBER, number, start, i));
+                }
+                else if(Character.isLetter(c) || c == '_') {
+                    while(i < query.length() && (Character.isLetterOrDigit(query.charAt(i)) || query.charAt(i) == '_')) {
+                        i++;
+                    }
+                    String word = query.substring(start, i);
+                    TokenType type = TokenType.IDENTIFIER;
+                    if(word.equalsIgnoreCase("and")) {
+                        type = TokenType.AND;
+                    }
+                    else if(word.equalsIgnoreCase("or")) {
+                        type = TokenType.OR;
+                    }
+                    else if(word.equalsIgnoreCase("not")) {
+                        type = TokenType.NOT;
+                    }
+                    tokens.add(new Token(type, word, start, i));
+                }
+                else if(c == '"' || c == '\'') {
+                    int close = query.indexOf(c, i + 1);
+                    if(close < 0) {
+                        throw new ParseException("Unterminated string", start);
+                    }
+                    tokens.add(new Token(TokenType.STRING, query.substring(i + 1, close), start, close + 1));
+                    i = close + 1;
+                }
+                else if(query.startsWith("&&", i)) {
+                    tokens.add(new Token(TokenType.AND, "&&", start, i += 2));
+                }
+                else if(query.startsWith("||", i)) {
+                    tokens.add(new Token(TokenType.OR, "||", start, i += 2));
+                }
+                else if(query.startsWith("<=", i) || query.startsWith(">=", i) || query.startsWith("!=", i) || query.startsWith("==", i)) {
+                    tokens.add(new Token(TokenType.OPERATOR, query.substring(i, i + 2), start, i += 2));
+                }
+                else if(c == '<' || c == '>' || c == '=' || c == '~') {
+                    tokens.add(new Token(TokenType.OPERATOR, String.valueOf(c), start, ++i));
+                }
+                else if(c == '!') {
+                    tokens.add(new Token(TokenType.NOT, "!", start, ++i));
+                }
+                else if(c == '(') {
+                    tokens.add(new Token(TokenType.LPAREN, "(", start, ++i));
+                }
+                else if(c == ')') {
+                    tokens.add(new Token(TokenType.RPAREN, ")", start, ++i));
+                }
+                else if(c == '+' || c == '-' || c == '*' || c == '/') {
+                    tokens.add(new Token(TokenType.ARITHMETIC, String.valueOf(c), start, ++i));
+                }
+                else {
+                    // other characters are only valid inside unquoted text values
+                    tokens.add(new Token(TokenType.IDENTIFIER, String.valueOf(c), start, ++i));
+                }
+            }
+
+            tokens.add(new Token(TokenType.END, "end of query", query.length(), query.length()));
+            return tokens;
+        }
+    }
+
+}
@@ -0,0 +1,232 @@
+/*
+ * Copyright (C) 2020 Felix Feyertag <felix.feyertag@ndm.ox.ac.uk>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.chembiohub.tpmap.dstruct;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+import java.util.stream.IntStream;
+
+/**
+ * TPProteinTextIndex
+ *
+ * Immutable text index over the accession, gene name, organism and description of a list of proteins. Field values
+ * are lowercased once when the index is built, accessions and gene names are kept in a hash map for exact lookups
+ * and every field is split into character trigrams with a sorted posting list of protein indices per trigram.
+ *
+ * Substring queries of three or more characters intersect the posting lists of the query trigrams, starting with
+ * the shortest, and only verify the remaining candidates against the field text. Shorter queries and regular
+ * expressions fall back to scanning the lowercased fields.
+ *
+ * Matches are returned as BitSets of indices into the list of proteins that the index was built from.
+ *
+ * @author felixfeyertag
+ */
+public class TPProteinTextIndex<T extends Protein> {
+
+    private static final int FIELDS = 4;
+    private static final int[] NONE = new int[0];
+
+    private final List<T> proteins;
+    private final String[] fields;
+    private final Map<String,int[]> identifiers;
+    private final Map<Long,int[]> trigrams;
+
+    public TPProteinTextIndex(List<T> proteins) {
+
+        this.proteins = new ArrayList<>(proteins);
+        this.fields = new String[this.proteins.size() * FIELDS];
+
+        Map<String,int[]> identifierLists = new HashMap<>();
+        Map<Long,int[]> trigramLists = new HashMap<>();
+
+        for(int i=0; i<this.proteins.size(); i++) {
+            T protein = this.proteins.get(i);
+            fields[i * FIELDS] = lowerCase(protein.getAccession());
+            fields[i * FIELDS + 1] = lowerCase(protein.getGeneName());
+            fields[i * FIELDS + 2] = lowerCase(protein.getOrganismName());
+            fields[i * FIELDS + 3] = lowerCase(protein.getDescription());
+
+            for(int f=0; f<2; f++) {
+                if(!fields[i * FIELDS + f].isEmpty()) {
+                    add(identifierLists, fields[i * FIELDS + f], i);
+                }
+            }
+
+            for(int f=0; f<FIELDS; f++) {
+                String field = fields[i * FIELDS + f];
+                for(int c=0; c+3<=field.length(); c++) {
+                    add(trigramLists, trigram(field, c), i);
+                }
+            }
+        }
+
+        identifierLists.replaceAll((key, list) -> Arrays.copyOfRange(list, 1, list[0] + 1));
+        trigramLists.replaceAll((key, list) -> Arrays.copyOfRange(list, 1, list[0] + 1));
+
+        this.identifiers = identifierLists;
+        this.trigrams = trigramLists;
+    }
+
+    /**
+     * @return proteins in index order
+     */
+    public List<T> getProteins() {
+        return proteins;
+    }
+
+    public int size() {
+        return proteins.size();
+    }
+
+    /**
+     * @param identifier accession or gene name, case insensitive
+     * @return proteins whose accession or gene name equals the identifier
+     */
+    public BitSet matchIdentifier(String identifier) {
+        BitSet matches = new BitSet(size());
+        for(int i : identifiers.getOrDefault(identifier.toLowerCase(), NONE)) {
+            matches.set(i);
+        }
+        return matches;
+    }
+
+    /**
+     * @param term search term, case insensitive
+     * @return proteins with the term in the accession, gene name, organism or description
+     */
+    public BitSet matchSubstring(String term) {
+
+        String lcTerm = term.toLowerCase();
+        BitSet matches = new BitSet(size());
+
+        if(lcTerm.length() < 3) {
+            for(int i=0; i<size(); i++) {
+                if(containsTerm(i, lcTerm)) {
+                    matches.set(i);
+                }
+            }
+            return matches;
+        }
+
+        List<int[]> postings = new ArrayList<>();
+        for(int c=0; c+3<=lcTerm.length(); c++) {
+            int[] posting = trigrams.get(trigram(lcTerm, c));
+            if(posting == null) {
+                return matches;
+            }
+            postings.add(posting);
+        }
+        postings.sort(Comparator.comparingInt(posting -> posting.length));
+
+        int[] candidates = postings.get(0);
+        for(int p=1; p<postings.size() && candidates.length>0; p++) {
+            candidates = intersect(candidates, postings.get(p));
+        }
+
+        for(int i : candidates) {
+            if(containsTerm(i, lcTerm)) {
+                matches.set(i);
+            }
+        }
+        return matches;
+    }
+
+    /**
+     * @param pattern pattern matched against each lowercased field in full
+     * @return proteins with at least one field matching the pattern
+     */
+    public BitSet matchPattern(Pattern pattern) {
+        BitSet matches = new BitSet(size());
+        int[] found = IntStream.range(0, size()).parallel().filter(i -> {
+            for(int f=0; f<FIELDS; f++) {
+                if(pattern.matcher(fields[i * FIELDS + f]).matches()) {
+                    return true;
+                }
+            }
+            return false;
+        }).toArray();
+        for(int i : found) {
+            matches.set(i);
+        }
+        return matches;
+    }
+
+    private boolean containsTerm(int protein, String lcTerm) {
+        for(int f=0; f<FIELDS; f++) {
+            if(fields[protein * FIELDS + f].contains(lcTerm)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String lowerCase(String value) {
+        return value == null ? "" : value.toLowerCase();
+    }
+
+    private static long trigram(String text, int offset) {
+        return (long) text.charAt(offset) << 32 | (long) text.charAt(offset + 1) << 16 | text.charAt(offset + 2);
+    }
+
+    /**
+     * Appends a protein index to a growable posting list, the first element of which holds the list length.
+     * Consecutive duplicates are skipped as proteins are added in index order.
+     */
+    private static <K> void add(Map<K,int[]> lists, K key, int protein) {
+        int[] list = lists.get(key);
+        if(list == null) {
+            list = new int[4];
+            lists.put(key, list);
+        }
+        else if(list[list[0]] == protein) {
+            return;
+        }
+        else if(list[0] + 1 == list.length) {
+            list = Arrays.copyOf(list, list.length * 2);
+            lists.put(key, list);
+        }
+        list[0]++;
+        list[list[0]] = protein;
+    }
+
+    private static int[] intersect(int[] a, int[] b) {
+        int[] result = new int[Math.min(a.length, b.length)];
+        int n = 0;
+        int i = 0;
+        int j = 0;
+        while(i < a.length && j < b.length) {
+            if(a[i] < b[j]) {
+                i++;
+            }
+            else if(a[i] > b[j]) {
+                j++;
+            }
+            else {
+                result[n++] = a[i];
+                i++;
+                j++;
+            }
+        }
+        return Arrays.copyOf(result, n);
+    }
+
+}
@@ -0,0 +1,321 @@
+/*
+ * Copyright (C) 2020 Felix Feyertag <felix.feyertag@ndm.ox.ac.uk>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.chembiohub.tpmap.dstruct;
+
+import javafx.beans.property.BooleanProperty;
+import javafx.beans.property.IntegerProperty;
+import javafx.beans.property.ReadOnlyLongProperty;
+import javafx.beans.property.ReadOnlyLongWrapper;
+import javafx.beans.property.SimpleBooleanProperty;
+import javafx.beans.value.ChangeListener;
+import javafx.beans.value.WeakChangeListener;
+import javafx.collections.ListChangeListener;
+import javafx.collections.ObservableList;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+
+/**
+ * TPSelectionModel
+ *
+ * Selection state (the checkbox column) of the proteins of a proteome, held as a BitSet over the protein list.
+ *
+ * Bulk operations (select all, clear, invert, select by predicate or by protein collection) compute the new BitSet,
+ * write only the proteins whose state changes back to their selected property, so that table and tree cells stay in
+ * sync, and publish a single change: the selected count of the proteome and the version property are updated once
+ * per operation. Single checkboxes are bound to selectedProperty(protein), which toggles the protein through
+ * setSelected(protein, select) and updates its bit and the count in place, so that the next read does not rebuild
+ * the index. The selected count is kept up to date incrementally and can be read in constant time.
+ *
+ * Index based methods refer to the order of getProteins(), a snapshot of the proteome list that is refreshed when
+ * the list changes. Only changes of the list mark the index for rebuilding.
+ *
+ * @author felixfeyertag
+ */
+public class TPSelectionModel<T extends Protein> {
+
+    private final ObservableList<T> proteins;
+    private final IntegerProperty selectedCountProperty;
+    private final ReadOnlyLongWrapper version = new ReadOnlyLongWrapper(0);
+
+    // index, indexed and selected are guarded by this, selectedCount by countLock, which may be taken while the
+    // protein list is locked and is therefore never held while locking the list
+    private final Map<Protein,Integer> index = new IdentityHashMap<>();
+    private List<T> indexed = Collections.emptyList();
+    private BitSet selected = new BitSet();
+    private volatile boolean stale = true;
+    private final Object countLock = new Object();
+    private int selectedCount = 0;
+
+    /**
+     * @param proteins protein list of the proteome
+     * @param selectedCountProperty property updated with the number of selected proteins
+     */
+    public TPSelectionModel(ObservableList<T> proteins, IntegerProperty selectedCountProperty) {
+        this.proteins = proteins;
+        this.selectedCountProperty = selectedCountProperty;
+
+        proteins.addListener((ListChangeListener<T>) c -> {
+            synchronized (countLock) {
+                while(c.next()) {
+                    for(T protein : c.getRemoved()) {
+                        if(protein.getSelected()) {
+                            selectedCount--;
+                        }
+                    }
+                    for(T protein : c.getAddedSubList()) {
+                        if(protein.getSelected()) {
+                            selectedCount++;
+                        }
+                    }
+                }
+                stale = true;
+            }
+            publish();
+        });
+    }
+
+    /**
+     * Rebuilds the BitSet and protein index from the current protein list, if it changed since the last call
+     */
+    private void ensureIndex() {
+        if(stale) {
+            synchronized (proteins) {
+                indexed = new ArrayList<>(proteins);
+            }
+            index.clear();
+            selected = new BitSet(indexed.size());
+            for(int i=0; i<indexed.size(); i++) {
+                T protein = indexed.get(i);
+                index.put(protein, i);
+                if(protein.getSelected()) {
+                    selected.set(i);
+                }
+            }
+            synchronized (countLock) {
+                selectedCount = selected.cardinality();
+            }
+            stale = false;
+        }
+    }
+
+    private void publish() {
+        int count;
+        synchronized (countLock) {
+            count = selectedCount;
+        }
+        selectedCountProperty.set(count);
+        version.set(version.get() + 1);
+    }
+
+    /**
+     * @return version number incremented once for every change of the selection
+     */
+    public ReadOnlyLongProperty versionProperty() {
+        return version.getReadOnlyProperty();
+    }
+
+    /**
+     * @return number of selected proteins
+     */
+    public int getSelectedCount() {
+        synchronized (countLock) {
+            return selectedCount;
+        }
+    }
+
+    public boolean isEmpty() {
+        return getSelectedCount() == 0;
+    }
+
+    public boolean isSelected(T protein) {
+        return protein.getSelected();
+    }
+
+    /**
+     * @return proteins in index order
+     */
+    public synchronized List<T> getProteins() {
+        ensureIndex();
+        return Collections.unmodifiableList(indexed);
+    }
+
+    /**
+     * @return copy of the selection, indices refer to getProteins()
+     */
+    public synchronized BitSet getSelectedIndices() {
+        ensureIndex();
+        return (BitSet) selected.clone();
+    }
+
+    /**
+     * @return selected proteins in proteome order
+     */
+    public synchronized List<T> getSelectedProteins() {
+        ensureIndex();
+        List<T> selectedProteins = new ArrayList<>(selected.cardinality());
+        for(int i = selected.nextSetBit(0); i >= 0; i = selected.nextSetBit(i + 1)) {
+            selectedProteins.add(indexed.get(i));
+        }
+        return selectedProteins;
+    }
+
+    /**
+     * Selects or deselects a single protein, e.g. from its checkbox, and updates its bit in place
+     *
+     * @param protein protein to select or deselect
+     * @param select true to select the protein, false to deselect it
+     */
+    public void setSelected(Protein protein, boolean select) {
+        synchronized (this) {
+            if(protein.getSelected() == select) {
+                return;
+            }
+            if(!stale) {
+                Integer i = index.get(protein);
+                if(i == null) {
+                    return;
+                }
+                selected.set(i, select);
+            }
+            protein.setSelected(select);
+            synchronized (countLock) {
+                selectedCount += select ? 1 : -1;
+            }
+        }
+        publish();
+    }
+
+    /**
+     * Property for checkbox cells, writing the property selects or deselects the protein through
+     * setSelected(protein, select), and the property follows changes made through the selection model
+     *
+     * @param protein protein shown by the cell
+     * @return selection property of the protein
+     */
+    public BooleanProperty selectedProperty(Protein protein) {
+        return new SelectedProperty(protein);
+    }
+
+    private final class SelectedProperty extends SimpleBooleanProperty {
+
+        private final Protein protein;
+        private final ChangeListener<Number> versionListener = (observable, oldValue, newValue) -> sync();
+
+        private SelectedProperty(Protein protein) {
+            super(protein.getSelected());
+            this.protein = protein;
+            version.addListener(new WeakChangeListener<>(versionListener));
+        }
+
+        private void sync() {
+            super.set(protein.getSelected());
+        }
+
+        @Override
+        public void set(boolean select) {
+            super.set(select);
+            setSelected(protein, select);
+        }
+    }
+
+    public void selectAll() {
+        update((current, size) -> current.set(0, size));
+    }
+
+    public void clearSelection() {
+        update((current, size) -> current.clear());
+    }
+
+    public void invertSelection() {
+        update((current, size) -> current.flip(0, size));
+    }
+
+    /**
+     * @param predicate condition for proteins to select
+     * @param select true to add matching proteins to the selection, false to remove them
+     */
+    public void selectWhere(Predicate<? super T> predicate, boolean select) {
+        update((current, size) -> {
+            for(int i=0; i<size; i++) {
+                if(predicate.test(indexed.get(i))) {
+                    current.set(i, select);
+                }
+            }
+        });
+    }
+
+    /**
+     * @param selection proteins to select or deselect, proteins not in the proteome are ignored
+     * @param select true to add the proteins to the selection, false to remove them
+     */
+    public void setSelected(Collection<? extends Protein> selection, boolean select) {
+        update((current, size) -> {
+            for(Protein protein : selection) {
+                Integer i = index.get(protein);
+                if(i != null) {
+                    current.set(i, select);
+                }
+            }
+        });
+    }
+
+    /**
+     * @param selection new selection, indices refer to getProteins()
+     */
+    public void setSelectedIndices(BitSet selection) {
+        update((current, size) -> {
+            current.clear();
+            current.or(selection);
+        });
+    }
+
+    private interface SelectionUpdate {
+        void apply(BitSet current, int size);
+    }
+
+    private void update(SelectionUpdate selectionUpdate) {
+        synchronized (this) {
+            ensureIndex();
+
+            BitSet next = (BitSet) selected.clone();
+            selectionUpdate.apply(next, indexed.size());
+            if(next.length() > indexed.size()) {
+                next.clear(indexed.size(), next.length());
+            }
+
+            BitSet changed = (BitSet) selected.clone();
+            changed.xor(next);
+
+            for(int i = changed.nextSetBit(0); i >= 0; i = changed.nextSetBit(i + 1)) {
+                indexed.get(i).setSelected(next.get(i));
+            }
+
+            selected = next;
+            synchronized (countLock) {
+                selectedCount = selected.cardinality();
+            }
+        }
+        publish();
+    }
+
+}
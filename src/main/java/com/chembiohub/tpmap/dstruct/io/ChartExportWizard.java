@@ -16,68 +16,140 @@
 package com.chembiohub.tpmap.dstruct.io;
 
 import com.chembiohub.tpmap.dstruct.Protein1D;
+import com.chembiohub.tpmap.scoring.TP1dDenaturationKernel;
+import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
-import javafx.scene.control.Alert;
+import javafx.concurrent.Task;
+import javafx.geometry.Insets;
+import javafx.geometry.Pos;
+import javafx.scene.Scene;
+import javafx.scene.control.*;
+import javafx.scene.layout.BorderPane;
+import javafx.scene.layout.GridPane;
+import javafx.scene.layout.VBox;
 import javafx.stage.FileChooser;
 import javafx.stage.Stage;
+import javafx.stage.StageStyle;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.io.MemoryUsageSetting;
 import org.apache.pdfbox.pdmodel.PDDocument;
 import org.apache.pdfbox.pdmodel.PDPage;
 import org.apache.pdfbox.pdmodel.PDPageContentStream;
 import org.apache.pdfbox.pdmodel.common.PDRectangle;
-import org.apache.pdfbox.pdmodel.graphics.image.LosslessFactory;
+import org.apache.pdfbox.pdmodel.graphics.color.PDDeviceRGB;
 import org.apache.pdfbox.pdmodel.graphics.image.PDImageXObject;
+import org.jfree.chart.JFreeChart;
 
 import java.awt.image.BufferedImage;
 import java.io.*;
+import java.util.ArrayDeque;
+import java.util.Deque;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.BooleanSupplier;
+import java.util.function.IntConsumer;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.util.stream.Collectors;
+import java.util.zip.DeflaterOutputStream;
 
 /**
  * ChartExportWizard
  *
- * Exports charts from a 1D TP analysis to a PDF file.
+ * Exports charts from a 1D TP analysis to a PDF file. Charts are created and rasterised in parallel worker threads,
+ * each JFreeChart instance is only used by the thread that created it until it is handed over to the thread writing
+ * the document. The document is backed by a scratch file, so memory use does not grow with the number of charts.
+ * Charts can be laid out in a grid of several charts per page and can optionally be drawn as vector graphics by
+ * TPMeltCurveRenderer.
  *
  * @author felixfeyertag
  */
 public class ChartExportWizard {
 
+    private static final float PAGE_WIDTH = 800;
+    private static final float PAGE_HEIGHT = 600;
+    private static final int CHART_WIDTH = 640;
+    private static final int CHART_HEIGHT = 480;
+
     public ChartExportWizard(List<Protein1D> proteins, ObservableList<String> tempLabels, ObservableList<String> repLabels, final Stage primaryStage) {
 
+        Dialog<ButtonType> optionsDialog = new Dialog<>();
+        optionsDialog.initOwner(primaryStage);
+        optionsDialog.setTitle("Export Melt Curves");
+        optionsDialog.setHeaderText("Export selected melt curves to PDF");
+        optionsDialog.getDialogPane().getButtonTypes().addAll(ButtonType.OK, ButtonType.CANCEL);
+
+        ComboBox<Integer> perPageCombo = new ComboBox<>(FXCollections.observableArrayList(1, 2, 4, 6, 9, 12));
+        perPageCombo.setValue(1);
+        CheckBox vectorCheckBox = new CheckBox("Vector graphics");
+
+        GridPane optionsGrid = new GridPane();
+        optionsGrid.setHgap(10);
+        optionsGrid.setVgap(10);
+        optionsGrid.add(new Label("Charts per page:"), 0, 0);
+        optionsGrid.add(perPageCombo, 1, 0);
+        optionsGrid.add(vectorCheckBox, 1, 1);
+        optionsDialog.getDialogPane().setContent(optionsGrid);
+
+        if(optionsDialog.showAndWait().filter(b -> b == ButtonType.OK).isEmpty()) {
+            return;
+        }
+
         FileChooser fc = new FileChooser();
         FileChooser.ExtensionFilter fcefpdf = new FileChooser.ExtensionFilter("Portable Document Format (PDF)", "*.pdf");
         fc.getExtensionFilters().addAll(fcefpdf);
-        
-        File f = fc.showSaveDialog(primaryStage);
-        
-        if(f!=null) {
 
-            try {
-
-                PDDocument doc = new PDDocument();
+        File f = fc.showSaveDialog(primaryStage);
 
-                for(Protein1D p : proteins) {
+        if(f!=null) {
 
-                    if(p.getSelected()) {
+            final List<Protein1D> selected = proteins.stream().filter(Protein1D::getSelected).collect(Collectors.toList());
+            final int chartsPerPage = perPageCombo.getValue();
+            final boolean vector = vectorCheckBox.isSelected();
 
-                        PDPage page = new PDPage(new PDRectangle(800, 600));
-                        doc.addPage(page);
+            Task<Void> exportTask = new Task<Void>() {
+                @Override
+                protected Void call() throws Exception {
+                    updateMessage("Exporting 0/" + selected.size());
+                    export(selected, tempLabels, repLabels, f, chartsPerPage, vector, done -> {
+                        updateProgress(done, selected.size());
+                        updateMessage("Exporting " + done + "/" + selected.size());
+                    }, this::isCancelled);
+                    return null;
+                }
+            };
 
-                        BufferedImage image = p.createChart(tempLabels, repLabels).createBufferedImage(640, 480);
+            Stage progressStage = new Stage();
+            progressStage.initStyle(StageStyle.UNDECORATED);
+            progressStage.initOwner(primaryStage);
 
-                        PDImageXObject imageXObject = LosslessFactory.createFromImage(doc, image);
+            ProgressBar progressBar = new ProgressBar();
+            progressBar.setPrefWidth(250);
+            progressBar.progressProperty().bind(exportTask.progressProperty());
+            Label progressLabel = new Label();
+            progressLabel.textProperty().bind(exportTask.messageProperty());
+            Button progressCancelButton = new Button("Cancel");
+            progressCancelButton.setOnAction(evt -> exportTask.cancel(true));
 
-                        try (PDPageContentStream contentStream = new PDPageContentStream(doc, page, PDPageContentStream.AppendMode.APPEND, true, true)) {
-                            contentStream.drawImage(imageXObject, 80, 60, image.getWidth(), image.getHeight());
-                        }
+            BorderPane progressPane = new BorderPane();
+            progressPane.setLeft(progressLabel);
+            progressPane.setRight(progressCancelButton);
+            BorderPane.setAlignment(progressLabel, Pos.CENTER_LEFT);
 
-                    }
-                }
+            VBox progressVBox = new VBox();
+            progressVBox.setSpacing(5);
+            progressVBox.setPadding(new Insets(5,5,5,5));
+            progressVBox.getChildren().addAll(progressBar, progressPane);
+            progressStage.setScene(new Scene(progressVBox));
 
-                doc.save(f);
-                doc.close();
+            exportTask.setOnSucceeded(evt -> progressStage.close());
+            exportTask.setOnCancelled(evt -> progressStage.close());
+            exportTask.setOnFailed(evt -> {
 
-            } catch (IOException ex) {
+                progressStage.close();
 
                 Alert alert = new Alert(Alert.AlertType.ERROR);
                 alert.initOwner(primaryStage);
@@ -85,11 +157,171 @@ public class ChartExportWizard {
                 alert.setHeaderText("File IO Exception");
                 alert.setContentText("Could not write file: " + f.getPath());
 
-                Logger.getLogger(ChartExportWizard.class.getName()).log(Level.SEVERE, null, ex);
+                Logger.getLogger(ChartExportWizard.class.getName()).log(Level.SEVERE, null, exportTask.getException());
 
                 alert.showAndWait();
+            });
+
+            Thread exportThread = new Thread(exportTask);
+            exportThread.setDaemon(true);
+            exportThread.start();
+
+            progressStage.show();
+        }
+    }
+
+    /**
+     * Write melt curves of the given proteins to a PDF file.
+     *
+     * @param proteins proteins to export, one chart each
+     * @param tempLabels temperature labels
+     * @param repLabels replicate labels
+     * @param f output file, removed if the export is cancelled
+     * @param chartsPerPage number of charts in the grid on each page
+     * @param vector draw charts as vector graphics rather than images
+     * @param progress called with the number of charts written
+     * @param cancelled polled between charts, the export stops if it returns true
+     * @throws IOException if the file cannot be written
+     * @throws InterruptedException if interrupted while waiting for a chart
+     */
+    public static void export(List<Protein1D> proteins, List<String> tempLabels, List<String> repLabels, File f,
+                              int chartsPerPage, boolean vector, IntConsumer progress, BooleanSupplier cancelled)
+            throws IOException, InterruptedException {
+
+        final ObservableList<String> temps = FXCollections.observableArrayList(tempLabels);
+        final ObservableList<String> reps = FXCollections.observableArrayList(repLabels);
+
+        // The curves of all charts are sampled at the same temperatures
+        final TP1dDenaturationKernel chartKernel = temps.isEmpty() ? null : TP1dDenaturationKernel.sampled(
+                Double.parseDouble(temps.get(0)), Double.parseDouble(temps.get(temps.size() - 1)), TP1dDenaturationKernel.CHART_STEP);
+
+        final int columns = (int) Math.ceil(Math.sqrt(chartsPerPage));
+        final int rows = (int) Math.ceil(chartsPerPage / (double) columns);
+        final float cellWidth = PAGE_WIDTH / columns;
+        final float cellHeight = PAGE_HEIGHT / rows;
+        final float scale = Math.min((cellWidth - 10) / CHART_WIDTH, (cellHeight - 10) / CHART_HEIGHT);
+        final float chartWidth = chartsPerPage == 1 ? CHART_WIDTH : CHART_WIDTH * scale;
+        final float chartHeight = chartsPerPage == 1 ? CHART_HEIGHT : CHART_HEIGHT * scale;
+
+        final int threads = Math.max(1, Runtime.getRuntime().availableProcessors());
+        final ExecutorService executor = Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "chart-export");
+            t.setDaemon(true);
+            return t;
+        });
+
+        boolean complete = false;
+
+        try (PDDocument doc = new PDDocument(MemoryUsageSetting.setupTempFileOnly())) {
+
+            // charts are written in order, at most two per thread are rendered ahead of the writer
+            Deque<Future<RenderedChart>> pending = new ArrayDeque<>();
+            int submitted = 0;
+            int written = 0;
+
+            PDPage page = null;
+            PDPageContentStream contentStream = null;
+
+            try {
+                while(written < proteins.size()) {
+
+                    while(submitted < proteins.size() && pending.size() < threads * 2) {
+                        final Protein1D protein = proteins.get(submitted++);
+                        pending.add(executor.submit(() -> render(protein, temps, reps, chartKernel, vector)));
+                    }
+
+                    if(cancelled.getAsBoolean()) {
+                        break;
+                    }
+
+                    RenderedChart chart;
+                    try {
+                        chart = pending.poll().get();
+                    } catch (ExecutionException ex) {
+                        throw new IOException("Unable to render chart", ex.getCause());
+                    }
+
+                    int cell = written % chartsPerPage;
+                    if(cell == 0) {
+                        if(contentStream != null) {
+                            contentStream.close();
+                        }
+                        page = new PDPage(new PDRectangle(PAGE_WIDTH, PAGE_HEIGHT));
+                        doc.addPage(page);
+                        contentStream = new PDPageContentStream(doc, page, PDPageContentStream.AppendMode.APPEND, true, true);
+                    }
+
+                    float x = (cell % columns) * cellWidth + (cellWidth - chartWidth) / 2;
+                    float y = PAGE_HEIGHT - (cell / columns + 1) * cellHeight + (cellHeight - chartHeight) / 2;
+
+                    if(chart.curves != null) {
+                        try {
+                            chart.curves.draw(new TPMeltCurveRenderer.PdfSurface(contentStream, x, y + chartHeight, chartWidth / CHART_WIDTH));
+                        } catch (UncheckedIOException ex) {
+                            throw ex.getCause();
+                        }
+                    }
+                    else {
+                        PDImageXObject imageXObject = new PDImageXObject(doc, new ByteArrayInputStream(chart.image),
+                                COSName.FLATE_DECODE, CHART_WIDTH, CHART_HEIGHT, 8, PDDeviceRGB.INSTANCE);
+                        contentStream.drawImage(imageXObject, x, y, chartWidth, chartHeight);
+                    }
+
+                    written++;
+                    progress.accept(written);
+                }
+            } finally {
+                if(contentStream != null) {
+                    contentStream.close();
+                }
+            }
+
+            if(written == proteins.size()) {
+                doc.save(f);
+                complete = true;
+            }
+        } finally {
+            executor.shutdownNow();
+            if(!complete) {
+                f.delete();
             }
         }
     }
-}
 
+    /**
+     * Chart prepared by a worker thread, either melt curves to be drawn as vector graphics or a deflate compressed
+     * RGB raster image.
+     */
+    private static final class RenderedChart {
+        private TPMeltCurveRenderer curves;
+        private byte[] image;
+    }
+
+    private static RenderedChart render(Protein1D protein, ObservableList<String> tempLabels, ObservableList<String> repLabels, TP1dDenaturationKernel chartKernel, boolean vector) throws IOException {
+
+        RenderedChart rendered = new RenderedChart();
+
+        if(vector) {
+            rendered.curves = new TPMeltCurveRenderer(protein, tempLabels, repLabels);
+            return rendered;
+        }
+
+        JFreeChart chart = protein.createChart(tempLabels, repLabels, chartKernel);
+
+        BufferedImage image = chart.createBufferedImage(CHART_WIDTH, CHART_HEIGHT, BufferedImage.TYPE_INT_RGB, null);
+        int[] pixels = image.getRGB(0, 0, CHART_WIDTH, CHART_HEIGHT, null, 0, CHART_WIDTH);
+        byte[] rgb = new byte[pixels.length * 3];
+        for(int i=0; i<pixels.length; i++) {
+            rgb[i * 3] = (byte) (pixels[i] >> 16);
+            rgb[i * 3 + 1] = (byte) (pixels[i] >> 8);
+            rgb[i * 3 + 2] = (byte) pixels[i];
+        }
+
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(rgb.length / 8);
+        try (DeflaterOutputStream dos = new DeflaterOutputStream(compressed)) {
+            dos.write(rgb);
+        }
+        rendered.image = compressed.toByteArray();
+        return rendered;
+    }
+}
@@ -0,0 +1,227 @@
+/*
+ * Copyright (C) 2020 Felix Feyertag <felix.feyertag@ndm.ox.ac.uk>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.chembiohub.tpmap.dstruct.io;
+
+import com.chembiohub.tpmap.dstruct.Protein;
+import com.chembiohub.tpmap.dstruct.Protein1D;
+import com.chembiohub.tpmap.dstruct.Protein2D;
+import com.chembiohub.tpmap.dstruct.Proteome;
+import javafx.scene.control.Alert;
+import javafx.stage.FileChooser;
+import javafx.stage.Stage;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * ColumnarExportWizard
+ *
+ * Exports all proteins of a proteome to an Apache Arrow IPC file, one row per protein. Identifiers are written as
+ * text, scores, p-values, Tm values, curve parameters and the full ratio matrix as 64 bit floating point columns
+ * and the selection state as a boolean column. Values are read from the protein arrays and streamed to the file in
+ * record batches.
+ *
+ * The static export methods do not require a stage and can be used without the user interface.
+ *
+ * @author felixfeyertag
+ */
+public class ColumnarExportWizard {
+
+    public ColumnarExportWizard(Proteome<? extends Protein> proteome, final Stage primaryStage) {
+
+        FileChooser fc = new FileChooser();
+        FileChooser.ExtensionFilter fcefarrow = new FileChooser.ExtensionFilter("Apache Arrow IPC File (*.arrow)", "*.arrow");
+        fc.getExtensionFilters().addAll(fcefarrow);
+
+        File f = fc.showSaveDialog(primaryStage);
+
+        if(f!=null) {
+            try {
+                export(proteome, f);
+            } catch (IOException ex) {
+
+                Alert alert = new Alert(Alert.AlertType.ERROR);
+                alert.initOwner(primaryStage);
+                alert.setTitle("File IO Exception");
+                alert.setHeaderText("File IO Exception");
+                alert.setContentText("Could not write file: " + f.getPath());
+
+                Logger.getLogger(ColumnarExportWizard.class.getName()).log(Level.SEVERE, null, ex);
+
+                alert.showAndWait();
+            }
+        }
+    }
+
+    /**
+     * @param proteome 1D or 2D proteome
+     * @param f output file
+     * @throws IOException if the file cannot be written
+     */
+    public static void export(Proteome<? extends Protein> proteome, File f) throws IOException {
+        export(proteome, new BufferedOutputStream(new FileOutputStream(f), 1 << 16));
+    }
+
+    /**
+     * @param proteome 1D or 2D proteome
+     * @param out output stream, closed once the export is complete
+     * @throws IOException if the stream cannot be written
+     */
+    public static void export(Proteome<? extends Protein> proteome, OutputStream out) throws IOException {
+        List<String> concLabels = new ArrayList<>(proteome.getConcLabels());
+        List<String> tempLabels = new ArrayList<>(proteome.getTempLabels());
+
+        List<String> names = new ArrayList<>(Arrays.asList("Accession", "Gene", "Organism", "Description", "Selected"));
+        List<TPArrowWriter.ColumnType> types = new ArrayList<>(Arrays.asList(TPArrowWriter.ColumnType.UTF8,
+                TPArrowWriter.ColumnType.UTF8, TPArrowWriter.ColumnType.UTF8, TPArrowWriter.ColumnType.UTF8,
+                TPArrowWriter.ColumnType.BOOL));
+
+        if(proteome.getExpType() == Proteome.ExpType.TP1D) {
+            int[] replicates = Protein1D.getReplicateOrder(concLabels);
+            for(int replicate : replicates) {
+                names.add("Tm " + concLabels.get(replicate).toUpperCase());
+            }
+            for(String tmShiftLabel : Protein1D.getTmShiftLabels(concLabels)) {
+                names.add("Tm shift (" + tmShiftLabel.toUpperCase() + ")");
+            }
+            names.add("Tm shift (" + Protein1D.getVehicleLabels(concLabels).toUpperCase() + ")");
+            names.add("Mean Tm shift");
+            for(int replicate : replicates) {
+                names.add("RMSE " + concLabels.get(replicate).toUpperCase());
+            }
+            for(String conc : concLabels) {
+                names.add("a " + conc.toUpperCase());
+                names.add("b " + conc.toUpperCase());
+                names.add("plateau " + conc.toUpperCase());
+            }
+            names.add("Score");
+            if(proteome.getSharedCurveFit()) {
+                names.add("Shared fit F");
+                names.add("Shared fit p-value");
+            }
+            for(String conc : concLabels) {
+                for(String temp : tempLabels) {
+                    names.add("Ratio " + conc.toUpperCase() + " " + temp);
+                }
+            }
+        }
+        else {
+            names.addAll(Arrays.asList("Score", "Stabilisation Score", "Destabilisation Score", "Mean FC Score", "P Value"));
+            names.add("Effect");
+            for(String temp : tempLabels) {
+                for(String conc : concLabels) {
+                    names.add("Ratio " + temp + " " + conc);
+                }
+            }
+        }
+        types.addAll(Collections.nCopies(names.size() - types.size(), TPArrowWriter.ColumnType.FLOAT64));
+        if(proteome.getExpType() != Proteome.ExpType.TP1D) {
+            types.set(names.indexOf("Effect"), TPArrowWriter.ColumnType.UTF8);
+        }
+
+        try (TPArrowWriter writer = new TPArrowWriter(out, types)) {
+            writer.writeHeader(names);
+            for(Protein protein : proteome.getProteins()) {
+                writer.writeString(protein.getAccession());
+                writer.writeString(protein.getGeneName());
+                writer.writeString(protein.getOrganismName());
+                writer.writeString(protein.getDescription());
+                writer.writeBoolean(protein.getSelected());
+                if(protein instanceof Protein1D) {
+                    write1D(writer, (Protein1D) protein, concLabels, tempLabels.size(), proteome.getSharedCurveFit());
+                }
+                else if(protein instanceof Protein2D) {
+                    write2D(writer, (Protein2D) protein, concLabels.size(), tempLabels.size());
+                }
+                writer.endRow();
+            }
+        }
+    }
+
+    private static void write1D(TPArrowWriter writer, Protein1D protein, List<String> concLabels, int temps, boolean sharedCurveFit) throws IOException {
+
+        int concs = concLabels.size();
+        int[] replicates = Protein1D.getReplicateOrder(concLabels);
+
+        for(int replicate : replicates) {
+            writer.writeNumber(protein.getTm(replicate));
+        }
+        for(int pair=0; pair<protein.getTmShiftCount(); pair++) {
+            writer.writeNumber(protein.getTmShift(pair));
+        }
+        writer.writeNumber(protein.getTmVV());
+        writer.writeNumber(protein.getMeanTM());
+
+        for(int replicate : replicates) {
+            writer.writeNumber(protein.getRmse(replicate));
+        }
+
+        double[][] curveFitParams = protein.getCurveFitParams();
+        for(int i=0; i<concs; i++) {
+            for(int j=0; j<3; j++) {
+                if(curveFitParams != null && i < curveFitParams.length && curveFitParams[i] != null && j < curveFitParams[i].length) {
+                    writer.writeNumber(curveFitParams[i][j]);
+                }
+                else {
+                    writer.writeString(null);
+                }
+            }
+        }
+
+        writer.writeNumber(protein.getScore());
+        if(sharedCurveFit) {
+            writer.writeNumber(protein.getFStatistic());
+            writer.writeNumber(protein.getFPValue());
+        }
+
+        writeMatrix(writer, protein.getAbundancesTempRatio(), concs, temps);
+    }
+
+    private static void write2D(TPArrowWriter writer, Protein2D protein, int concs, int temps) throws IOException {
+
+        writer.writeNumber(protein.getScore());
+        writer.writeNumber(protein.getStabilityScore());
+        writer.writeNumber(protein.getDestabilityScore());
+        writer.writeNumber(protein.getMeanFCScore());
+        writer.writeNumber(protein.getPValue());
+        writer.writeString(protein.getEffect());
+
+        writeMatrix(writer, protein.getAbundancesConcRatioNormalised(), temps, concs);
+    }
+
+    private static void writeMatrix(TPArrowWriter writer, Double[][] matrix, int rows, int columns) throws IOException {
+        for(int i=0; i<rows; i++) {
+            for(int j=0; j<columns; j++) {
+                if(matrix != null && i < matrix.length && matrix[i] != null && j < matrix[i].length) {
+                    writer.writeNumber(matrix[i][j]);
+                }
+                else {
+                    writer.writeString(null);
+                }
+            }
+        }
+    }
+
+}
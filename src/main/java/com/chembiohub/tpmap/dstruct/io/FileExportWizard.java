@@ -15,23 +15,23 @@
  */
 package com.chembiohub.tpmap.dstruct.io;
 
+import com.chembiohub.tpmap.diagnostics.TPExportBatchEvent;
+
 import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import javafx.scene.control.Alert;
 import javafx.stage.FileChooser;
 import javafx.stage.Stage;
-import org.apache.poi.ss.usermodel.*;
-import org.apache.poi.ss.util.CellRangeAddress;
-import org.apache.poi.ss.util.CellReference;
-import org.apache.poi.xssf.usermodel.XSSFRow;
-import org.apache.poi.xssf.usermodel.XSSFSheet;
-import org.apache.poi.xssf.usermodel.XSSFWorkbook;
 
 /**
  * FileExportWizard
  *
- * This class will print a string containing contents of a table to a tab-delimited text file or an XLSX file.
+ * This class will write the contents of a table to a tab-delimited text file or an XLSX file. Tables are either
+ * given as tab-delimited text, or as a TPRowSource that streams typed rows directly to the output file.
  * For 2D proteome tables, abundance fold change can optionally be coloured.
  *
  * @author felixfeyertag
@@ -39,95 +39,14 @@ import org.apache.poi.xssf.usermodel.XSSFWorkbook;
 public class FileExportWizard {
 
     public FileExportWizard(String content, final Stage primaryStage, boolean conditionalFormatting2d, int concVals2d) {
-        
-        FileChooser fc = new FileChooser();
-        FileChooser.ExtensionFilter fceftxt = new FileChooser.ExtensionFilter("Tab Delimited Text File (*.txt)", "*.txt");
-        FileChooser.ExtensionFilter fcefxls = new FileChooser.ExtensionFilter("Excel 2007 OOXML File (*.xlsx)", "*.xlsx");
-        fc.getExtensionFilters().addAll(fcefxls, fceftxt);
-        
-        File f = fc.showSaveDialog(primaryStage);
-        
+
+        File f = chooseFile(primaryStage);
+
         if(f!=null) {
 
             try {
-                if (f.getName().toLowerCase().endsWith("xls") || f.getName().toLowerCase().endsWith("xlsx")) {
-                    XSSFWorkbook wb = new XSSFWorkbook();
-                    XSSFSheet sheet = wb.createSheet();
-                    String[] lines = content.split("\n");
-
-                    Font headerFont = wb.createFont();
-                    headerFont.setBold(true);
-
-                    CellStyle numberStyle = wb.createCellStyle();
-                    numberStyle.setDataFormat(wb.createDataFormat().getFormat("0.0000"));
-
-                    CellStyle headerStyle = wb.createCellStyle();
-                    headerStyle.setBorderRight(BorderStyle.THIN);
-                    headerStyle.setRightBorderColor(IndexedColors.BLACK.getIndex());
-                    headerStyle.setBorderTop(BorderStyle.THIN);
-                    headerStyle.setTopBorderColor(IndexedColors.BLACK.getIndex());
-                    headerStyle.setBorderLeft(BorderStyle.THIN);
-                    headerStyle.setLeftBorderColor(IndexedColors.BLACK.getIndex());
-                    headerStyle.setBorderBottom(BorderStyle.THIN);
-                    headerStyle.setBottomBorderColor(IndexedColors.BLACK.getIndex());
-
-                    headerStyle.setAlignment(HorizontalAlignment.CENTER);
-                    headerStyle.setFillForegroundColor(IndexedColors.LIGHT_CORNFLOWER_BLUE.getIndex());
-                    headerStyle.setFillPattern(FillPatternType.SOLID_FOREGROUND);
-                    headerStyle.setFont(headerFont);
-
-
-                    for (int i = 0; i < lines.length; i++) {
-                        XSSFRow row = sheet.createRow(i);
-                        String[] cells = lines[i].split("\t");
-                        for (int j = 0; j < cells.length; j++) {
-                            if (i == 0) {
-                                Cell headerCell = row.createCell(j);
-                                headerCell.setCellValue(cells[j]);
-                                headerCell.setCellStyle(headerStyle);
-                            } else if (j == 0) {
-                                row.createCell(j).setCellValue(cells[j]);
-                            } else {
-                                try {
-                                    if (!Double.isFinite(Double.parseDouble(cells[j]))) {
-                                        throw new NumberFormatException();
-                                    }
-                                    row.createCell(j).setCellValue(Double.parseDouble(cells[j]));
-                                    row.getCell(j).setCellStyle(numberStyle);
-                                } catch (NumberFormatException | NullPointerException e) {
-                                    row.createCell(j).setCellValue(cells[j]);
-                                }
-                            }
-                        }
-                    }
-
-                    if (conditionalFormatting2d && concVals2d>0) {
-
-                        SheetConditionalFormatting sheetCF = sheet.getSheetConditionalFormatting();
-                        ConditionalFormattingRule rule1 = sheetCF.createConditionalFormattingColorScaleRule();
-                        ColorScaleFormatting clrFmt = rule1.getColorScaleFormatting();
-                        clrFmt.getThresholds()[0].setRangeType(ConditionalFormattingThreshold.RangeType.PERCENTILE);
-                        clrFmt.getThresholds()[0].setValue(1d);
-                        clrFmt.getThresholds()[1].setRangeType(ConditionalFormattingThreshold.RangeType.NUMBER);
-                        clrFmt.getThresholds()[1].setValue(1d);
-                        clrFmt.getThresholds()[2].setRangeType(ConditionalFormattingThreshold.RangeType.PERCENTILE);
-                        clrFmt.getThresholds()[2].setValue(99d);
-                        ((ExtendedColor) clrFmt.getColors()[0]).setARGBHex("FFF8696B");
-                        ((ExtendedColor) clrFmt.getColors()[1]).setARGBHex("FFFFEB84");
-                        ((ExtendedColor) clrFmt.getColors()[2]).setARGBHex("FF63BE7B");
-
-                        String xlsColumnStart = CellReference.convertNumToColString(lines[0].split("\t").length-concVals2d);
-                        String xlsColumnEnd = CellReference.convertNumToColString(lines[0].split("\t").length);
-
-                        CellRangeAddress[] regions = {CellRangeAddress.valueOf(xlsColumnStart + "2:" + xlsColumnEnd + lines.length)};
-                        sheetCF.addConditionalFormatting(regions, rule1);
-
-                    }
-
-                    FileOutputStream fos = new FileOutputStream(f.getAbsoluteFile());
-                    wb.write(fos);
-                    fos.close();
-
+                if (isSpreadsheet(f)) {
+                    writeRows(TPRowSource.fromText(content), new TPXlsxRowWriter(f, conditionalFormatting2d, concVals2d), "XLSX");
                 }
                 else {
 
@@ -138,22 +57,137 @@ public class FileExportWizard {
 
                 }
             } catch (IOException ex) {
+                showError(primaryStage, f, ex);
+            }
+        }
+    }
 
-                Alert alert = new Alert(Alert.AlertType.ERROR);
-                alert.initOwner(primaryStage);
-                alert.setTitle("File IO Exception");
-                alert.setHeaderText("File IO Exception");
-                alert.setContentText("Could not write file: " + f.getPath());
+    public FileExportWizard(TPRowSource source, final Stage primaryStage, boolean conditionalFormatting2d, int concVals2d) {
 
-                Logger.getLogger(FileExportWizard.class.getName()).log(Level.SEVERE, null, ex);
+        File f = chooseFile(primaryStage);
 
-                alert.showAndWait();
-            } finally {
-                content = null;
-                System.gc();
+        if(f!=null) {
+            try {
+                export(source, f, conditionalFormatting2d, concVals2d);
+            } catch (IOException ex) {
+                showError(primaryStage, f, ex);
             }
         }
     }
-    
-}
 
+    /**
+     * Write rows to a file, the format is determined by the file extension (.xlsx or tab-delimited text).
+     *
+     * @param source table rows
+     * @param f output file
+     * @param conditionalFormatting2d colour the last concVals2d columns of XLSX output
+     * @param concVals2d number of fold change columns
+     * @throws IOException if the file cannot be written
+     */
+    public static void export(TPRowSource source, File f, boolean conditionalFormatting2d, int concVals2d) throws IOException {
+        if (isSpreadsheet(f)) {
+            writeRows(source, new TPXlsxRowWriter(f, conditionalFormatting2d, concVals2d), "XLSX");
+        }
+        else {
+            writeRows(source, new TPTsvRowWriter(Files.newBufferedWriter(f.toPath(), StandardCharsets.UTF_8)), "TSV");
+        }
+    }
+
+    private static void writeRows(TPRowSource source, TPRowWriter writer, String format) throws IOException {
+        try (TPRowWriter w = new BatchEventRowWriter(writer, format)) {
+            source.writeRows(w);
+        }
+    }
+
+    /**
+     * Passes rows on to a row writer and records a Flight Recorder event for every TPExportBatchEvent.BATCH_ROWS rows
+     */
+    private static class BatchEventRowWriter implements TPRowWriter {
+
+        private final TPRowWriter writer;
+        private final String format;
+        private TPExportBatchEvent batchEvent;
+        private int rows;
+
+        BatchEventRowWriter(TPRowWriter writer, String format) {
+            this.writer = writer;
+            this.format = format;
+            this.batchEvent = new TPExportBatchEvent();
+            this.batchEvent.begin();
+            this.rows = 0;
+        }
+
+        @Override
+        public void writeHeader(List<String> columns) throws IOException {
+            writer.writeHeader(columns);
+        }
+
+        @Override
+        public void writeString(String value) throws IOException {
+            writer.writeString(value);
+        }
+
+        @Override
+        public void writeNumber(double value) throws IOException {
+            writer.writeNumber(value);
+        }
+
+        @Override
+        public void writeNumber(Double value) throws IOException {
+            writer.writeNumber(value);
+        }
+
+        @Override
+        public void endRow() throws IOException {
+            writer.endRow();
+            rows++;
+            if(rows == TPExportBatchEvent.BATCH_ROWS) {
+                batchEvent.record(format, rows, 0);
+                batchEvent = new TPExportBatchEvent();
+                batchEvent.begin();
+                rows = 0;
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                writer.close();
+            }
+            finally {
+                if(rows > 0) {
+                    batchEvent.record(format, rows, 0);
+                }
+            }
+        }
+
+    }
+
+    private static boolean isSpreadsheet(File f) {
+        return f.getName().toLowerCase().endsWith("xls") || f.getName().toLowerCase().endsWith("xlsx");
+    }
+
+    private static File chooseFile(Stage primaryStage) {
+
+        FileChooser fc = new FileChooser();
+        FileChooser.ExtensionFilter fceftxt = new FileChooser.ExtensionFilter("Tab Delimited Text File (*.txt)", "*.txt");
+        FileChooser.ExtensionFilter fcefxls = new FileChooser.ExtensionFilter("Excel 2007 OOXML File (*.xlsx)", "*.xlsx");
+        fc.getExtensionFilters().addAll(fcefxls, fceftxt);
+
+        return fc.showSaveDialog(primaryStage);
+    }
+
+    private static void showError(Stage primaryStage, File f, IOException ex) {
+
+        Alert alert = new Alert(Alert.AlertType.ERROR);
+        alert.initOwner(primaryStage);
+        alert.setTitle("File IO Exception");
+        alert.setHeaderText("File IO Exception");
+        alert.setContentText("Could not write file: " + f.getPath());
+
+        Logger.getLogger(FileExportWizard.class.getName()).log(Level.SEVERE, null, ex);
+
+        alert.showAndWait();
+    }
+
+}
@@ -16,6 +16,9 @@
 package com.chembiohub.tpmap.dstruct.io;
 
 import com.chembiohub.tpmap.analysis.TPBootstrapAnalysis;
+import com.chembiohub.tpmap.diagnostics.TPDiagnostics;
+import com.chembiohub.tpmap.diagnostics.TPImportChunkEvent;
+import com.chembiohub.tpmap.diagnostics.TPStageTimer;
 import com.chembiohub.tpmap.dstruct.*;
 import com.chembiohub.tpmap.normalisation.TPNormalisation;
 import javafx.beans.property.IntegerProperty;
@@ -79,7 +82,7 @@ public class GenericFileImporter extends FileImporter {
         return tppExperiment;
     }
 
-    GenericFileImporter(StringProperty filePath, Stage primaryStage, TabPane tpTabPane, double min, double max, TPNormalisation.Normalisation norm, ProteinParameters params, boolean multithreading, Proteome.ExpType tppExpType) {
+    public GenericFileImporter(StringProperty filePath, Stage primaryStage, TabPane tpTabPane, double min, double max, TPNormalisation.Normalisation norm, ProteinParameters params, boolean multithreading, Proteome.ExpType tppExpType) {
         this.filePath = new SimpleStringProperty(filePath.get());
         this.filePathDisplay = filePath;
         this.min = min;
@@ -99,6 +102,10 @@ public class GenericFileImporter extends FileImporter {
             if (params instanceof Protein1DParameters) {
                 tppExperiment.setCurveFitAttempts(((Protein1DParameters) params).getAttempts());
                 tppExperiment.setCurveFitMaxIterations(((Protein1DParameters) params).getMaxIterations());
+                tppExperiment.setCurveFitPatience(((Protein1DParameters) params).getPatience());
+                tppExperiment.setCurveFitTolerance(((Protein1DParameters) params).getTolerance());
+                tppExperiment.setCurveFitBackend(((Protein1DParameters) params).getBackend());
+                tppExperiment.setSharedCurveFit(((Protein1DParameters) params).getSharedFit());
             }
             if (params instanceof Protein2DParameters) {
                 tppExperiment.setBootstrapIterations(((Protein2DParameters) params).getIterations());
@@ -127,6 +134,10 @@ public class GenericFileImporter extends FileImporter {
                 assert params instanceof Protein1DParameters;
                 tppExperiment.setCurveFitAttempts(((Protein1DParameters)params).getAttempts());
                 tppExperiment.setCurveFitMaxIterations(((Protein1DParameters)params).getMaxIterations());
+                tppExperiment.setCurveFitPatience(((Protein1DParameters)params).getPatience());
+                tppExperiment.setCurveFitTolerance(((Protein1DParameters)params).getTolerance());
+                tppExperiment.setCurveFitBackend(((Protein1DParameters)params).getBackend());
+                tppExperiment.setSharedCurveFit(((Protein1DParameters)params).getSharedFit());
                 break;
             case TP2D:
                 assert params instanceof Protein2DParameters;
@@ -142,340 +153,421 @@ public class GenericFileImporter extends FileImporter {
     public Task<Void> initImport() {
 
         return new Task<Void>() {
-            private void changed(Number newProgress) {
-                updateProgress(newProgress.doubleValue(), 1);
-            }
-
             @Override
             public Void call() throws IOException,InvalidHeaderException {
 
-                IntegerProperty counter = new SimpleIntegerProperty(0);
-                    long numProteins = Files.lines(Paths.get(filePath.get())).count()-1;
+                final Task<Void> task = this;
 
-                    HashMap<String,Integer> index;
-                    ObservableList<String> headers = FXCollections.observableArrayList();
-                    ObservableList<Double> tempVals = FXCollections.observableArrayList();
-                    ObservableList<String> concVals = FXCollections.observableArrayList();
+                runImport(new ImportMonitor() {
+                    @Override
+                    public void progress(double done, double max) {
+                        updateProgress(done, max);
+                    }
 
-                    BufferedReader br = new BufferedReader(new FileReader(filePath.get()));
-                    String[] header = br.readLine().split("\t");
+                    @Override
+                    public void message(String message) {
+                        updateMessage(message);
+                    }
 
-                    index = new HashMap<>();
+                    @Override
+                    public boolean isCancelled() {
+                        return task.isCancelled();
+                    }
+                });
 
+                return null;
+            }
+        };
+    }
 
-                    for(int i=0;i<header.length;i++) {
-                        header[i] = header[i].replaceFirst("^\"","");
-                        header[i] = header[i].replaceFirst("\"$", "");
-                        header[i] = header[i].replaceAll("[ \\t\\n\\x0b\\r\\f]+", "");
-                        header[i] = header[i].toLowerCase();
+    /**
+     * Imports the file on the calling thread. Unlike initImport this does not report progress through a Task and does
+     * not need the JavaFX toolkit, so it can be used for headless runs and benchmarks.
+     *
+     * @return imported proteome
+     * @throws IOException if the file cannot be read
+     * @throws InvalidHeaderException if the column headers are invalid
+     */
+    public Proteome<Protein> importProteome() throws IOException, InvalidHeaderException {
 
-                        if(header[i].equals("accession")) {
-                            index.put("accession",i);
-                        }
-                        else if(header[i].equals("description")) {
-                            index.put("description",i);
-                        }
-                        else if(header[i].startsWith("ref_")) {
-                            if(tppExpType.equals(Proteome.ExpType.PISA)) {
-                                if(header[i].toLowerCase().equals("ref_v1")) {
-
-                                }
-                            }
-
-                            if(tppExpType == Proteome.ExpType.PISA) {
-
-                                String[] hVal = header[i].split("_");
-                                if (hVal.length != 2) {
-                                    throw new InvalidHeaderException("Invalid reference header: " + header[i]);
-                                }
-                                if (!hVal[1].matches("v1|v2|v3|t1|t2|t3|c1|c2|c3|pool")) {
-                                    throw new InvalidHeaderException("Invalid PISA header: " + header[i]);
-                                }
-
-                                index.put(hVal[1], i);
-                                concVals.add(hVal[1]);
-
-                            } else {
-
-                                String[] refVal = header[i].split("_");
-                                if(refVal.length!=3) {
-                                    throw new InvalidHeaderException("Invalid reference header: " + header[i]);
-                                }
-                                Double tempVal = Double.NaN;
-                                try {
-                                    tempVal = Double.parseDouble(refVal[1]);
-                                } catch (NumberFormatException e) {
-                                    throw new InvalidHeaderException("Invalid temperature value: " + tempVal);
-                                } catch (NullPointerException e) {
-                                    throw new InvalidHeaderException("No temperature specified: " + header[i]);
-                                }
-                                String concVal = refVal[2];
-                                if(concVal.isEmpty()) {
-                                    throw new InvalidHeaderException("No concentration specified: " + header[i]);
-                                }
-
-                                if(headers.contains(tempVal + ":" + concVal)) {
-                                    throw new InvalidHeaderException("Too many columns for temperature " + tempVal + " and concentration " + concVal);
-                                }
-
-                                headers.add(tempVal + ":" + concVal);
-                                index.put(tempVal + ":" + concVal, i);
-
-
-                                if(!tempVals.contains(tempVal)) {
-                                    tempVals.add(tempVal);
-                                }
-                                if(!concVals.contains(concVal)) {
-                                    concVals.add(concVal);
-                                }
-                            }
-                        }
-                    }
+        runImport(new ImportMonitor() {
+            @Override
+            public void progress(double done, double max) {
+            }
 
-                    if(tempVals.isEmpty()) {
-                        throw new InvalidHeaderException("Parsing error: Could not identify temperature values");
-                    }
-                    if(concVals.isEmpty()) {
-                        throw new InvalidHeaderException("Parsing error: Could not identify concentration values");
-                    }
+            @Override
+            public void message(String message) {
+            }
 
-                    class ConcComparator implements Comparator<String> {
-                        public int compare(String o1, String o2){
-                            try {
-                                return new BigDecimal(o1).compareTo(new BigDecimal(o2));
-                            } catch (NumberFormatException e) {
-                                return o1.compareTo(o2);
-                            }
-                        }
-                    }
+            @Override
+            public boolean isCancelled() {
+                return false;
+            }
+        });
 
-                    tempVals.sort(Comparator.naturalOrder());
-                    concVals.sort(new ConcComparator());
+        return tppExperiment;
+    }
 
-                    tppExperiment.setFileName(Paths.get(filePathDisplay.get()).getFileName().toString());
+    private interface ImportMonitor {
+        void progress(double done, double max);
+        void message(String message);
+        boolean isCancelled();
+    }
 
-                    int accessionCoordinate = index.get("accession");
-                    int descriptionCoordinate = index.get("description");
+    private void runImport(ImportMonitor monitor) throws IOException, InvalidHeaderException {
 
-                    int[][] abundanceCoordinates = new int[concVals.size()][tempVals.size()];
+        TPStageTimer importTimer = TPDiagnostics.startProcess("import");
+        TPStageTimer parseTimer = TPDiagnostics.start("import.parse");
 
+        IntegerProperty counter = new SimpleIntegerProperty(0);
+            long numProteins = Files.lines(Paths.get(filePath.get())).count()-1;
 
-                    for(int i=0;i<abundanceCoordinates.length;i++) {
-                        for (int j=0;j<abundanceCoordinates[0].length;j++) {
-                            try {
-                                abundanceCoordinates[i][j] = index.get(tempVals.get(j).toString() + ":" + concVals.get(i));
-                            } catch (NullPointerException ex) {
-                                throw new InvalidHeaderException("Unable to load column for temperature " + j + " and concentration " + i + "\n");
-                            }
-                        }
-                    }
+            HashMap<String,Integer> index;
+            ObservableList<String> headers = FXCollections.observableArrayList();
+            ObservableList<Double> tempVals = FXCollections.observableArrayList();
+            ObservableList<String> concVals = FXCollections.observableArrayList();
 
+            BufferedReader br = new BufferedReader(new FileReader(filePath.get()));
+            String[] header = br.readLine().split("\t");
 
-                    int[] referenceCoordinates = new int[tempVals.size()];
-                    for(int i=0;i<referenceCoordinates.length;i++) {
-                        referenceCoordinates[i] = index.get(tempVals.get(i).toString() + ":" + concVals.get(0));
-                    }
+            index = new HashMap<>();
 
-                    tppExperiment.setConcLabels(concVals);
-                    tppExperiment.setTempLabels(tempVals);
 
-                    String line;
+            for(int i=0;i<header.length;i++) {
+                header[i] = header[i].replaceFirst("^\"","");
+                header[i] = header[i].replaceFirst("\"$", "");
+                header[i] = header[i].replaceAll("[ \\t\\n\\x0b\\r\\f]+", "");
+                header[i] = header[i].toLowerCase();
 
-                    while((line = br.readLine()) != null) {
-                        String[] lineVals = line.split("\t");
+                if(header[i].equals("accession")) {
+                    index.put("accession",i);
+                }
+                else if(header[i].equals("description")) {
+                    index.put("description",i);
+                }
+                else if(header[i].startsWith("ref_")) {
+                    if(tppExpType.equals(Proteome.ExpType.PISA)) {
+                        if(header[i].toLowerCase().equals("ref_v1")) {
+
+                        }
+                    }
+
+                    if(tppExpType == Proteome.ExpType.PISA) {
 
-                        if(lineVals.length<accessionCoordinate) {
-                            continue;
+                        String[] hVal = header[i].split("_");
+                        if (hVal.length != 2) {
+                            throw new InvalidHeaderException("Invalid reference header: " + header[i]);
+                        }
+                        if (!hVal[1].matches("v1|v2|v3|t1|t2|t3|c1|c2|c3|pool")) {
+                            throw new InvalidHeaderException("Invalid PISA header: " + header[i]);
                         }
 
-                        String accession = lineVals[accessionCoordinate];
+                        index.put(hVal[1], i);
+                        concVals.add(hVal[1]);
 
-                        if(accession==null) {
-                            continue;
+                    } else {
+
+                        String[] refVal = header[i].split("_");
+                        if(refVal.length!=3) {
+                            throw new InvalidHeaderException("Invalid reference header: " + header[i]);
                         }
-                        String organismName = "";
-                        String organismIdentifier = "";
-                        String geneName = "";
-                        String proteinExistence = "";
-                        String sequenceVersion = "";
-
-                        String description="";
-                        String[] descriptionVals = new String[] { description };
+                        Double tempVal = Double.NaN;
                         try {
-                            lineVals[descriptionCoordinate] = lineVals[descriptionCoordinate].replaceAll("^\"", "");
-                            lineVals[descriptionCoordinate] = lineVals[descriptionCoordinate].replaceAll("\"$", "");
-                            descriptionVals = lineVals[descriptionCoordinate].split("=");
-                            description = descriptionVals[0];
-                        } catch(ArrayIndexOutOfBoundsException e) {
-                            description = "";
+                            tempVal = Double.parseDouble(refVal[1]);
+                        } catch (NumberFormatException e) {
+                            throw new InvalidHeaderException("Invalid temperature value: " + tempVal);
+                        } catch (NullPointerException e) {
+                            throw new InvalidHeaderException("No temperature specified: " + header[i]);
                         }
-                        description = description.replaceAll(" OS$", "");
-                        description = description.replaceAll(" OX$", "");
-                        description = description.replaceAll(" GN$", "");
-                        description = description.replaceAll(" PE$", "");
-                        description = description.replaceAll(" SV$", "");
-                        for(int j=1;j<descriptionVals.length;j++) {
-                            if(descriptionVals[j-1].endsWith(" OS")) {
-                                organismName = descriptionVals[j];
-                                organismName = organismName.replaceAll(" OX$", "");
-                                organismName = organismName.replaceAll(" GN$", "");
-                                organismName = organismName.replaceAll(" PE$", "");
-                                organismName = organismName.replaceAll(" SV$", "");
-                            }
-                            else if (descriptionVals[j-1].endsWith(" OX")) {
-                                organismIdentifier = descriptionVals[j];
-                                organismIdentifier = organismIdentifier.replaceAll(" OS$", "");
-                                organismIdentifier = organismIdentifier.replaceAll(" GN$", "");
-                                organismIdentifier = organismIdentifier.replaceAll(" PE$", "");
-                                organismIdentifier = organismIdentifier.replaceAll(" SV$", "");
-                            }
-                            else if (descriptionVals[j-1].endsWith(" GN")) {
-                                geneName = descriptionVals[j];
-                                geneName = geneName.replaceAll(" OS$", "");
-                                geneName = geneName.replaceAll(" OX$", "");
-                                geneName = geneName.replaceAll(" PE$", "");
-                                geneName = geneName.replaceAll(" SV$", "");
-                            }
-                            else if (descriptionVals[j-1].endsWith(" PE")) {
-                                proteinExistence = descriptionVals[j];
-                                proteinExistence = proteinExistence.replaceAll(" OS$", "");
-                                proteinExistence = proteinExistence.replaceAll(" OX$", "");
-                                proteinExistence = proteinExistence.replaceAll(" GN$", "");
-                                proteinExistence = proteinExistence.replaceAll(" SV$", "");
-                            }
-                            else if (descriptionVals[j-1].endsWith(" SV")) {
-                                sequenceVersion = descriptionVals[j];
-                                sequenceVersion = sequenceVersion.replaceAll(" OS$", "");
-                                sequenceVersion = sequenceVersion.replaceAll(" OX$", "");
-                                sequenceVersion = sequenceVersion.replaceAll(" GN$", "");
-                                sequenceVersion = sequenceVersion.replaceAll(" PE$", "");
-                            }
+                        String concVal = refVal[2];
+                        if(concVal.isEmpty()) {
+                            throw new InvalidHeaderException("No concentration specified: " + header[i]);
                         }
 
+                        if(headers.contains(tempVal + ":" + concVal)) {
+                            throw new InvalidHeaderException("Too many columns for temperature " + tempVal + " and concentration " + concVal);
+                        }
 
-                        Double[][] abundances = new Double[abundanceCoordinates[0].length][abundanceCoordinates.length];
+                        headers.add(tempVal + ":" + concVal);
+                        index.put(tempVal + ":" + concVal, i);
 
-                        Double[] concReference = new Double[abundanceCoordinates[0].length];
-                        Double[] tempReference = new Double[abundanceCoordinates.length];
 
-                        for(int i=0;i<concReference.length;i++) {
-                            concReference[i] = Double.NaN;
-                            try {
-                                concReference[i] = Double.parseDouble(lineVals[referenceCoordinates[i]]);
-                            } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
-                                concReference[i] = Double.NaN;
-                            }
+                        if(!tempVals.contains(tempVal)) {
+                            tempVals.add(tempVal);
                         }
-                        for(int i=0;i<abundances.length;i++) {
-                            for(int j=0;j<abundances[0].length;j++) {
-                                abundances[i][j] = Double.NaN;
-                                try {
-                                    abundances[i][j] = Double.parseDouble(lineVals[index.get(tempVals.get(i).toString() + ":" + concVals.get(j))]);
-                                } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
-                                    abundances[i][j] = Double.NaN;
-                                }
-                                tempReference[j] = abundances[0][j];
-                            }
+                        if(!concVals.contains(concVal)) {
+                            concVals.add(concVal);
                         }
+                    }
+                }
+            }
 
-                        switch(tppExpType) {
-                            case TP1D:
-                                Protein1D protein1d = new Protein1D();
-                                protein1d.setAccession(accession);
-                                protein1d.setDescription(description);
-                                protein1d.setOrganismName(organismName);
-                                protein1d.setOrganismIdentifier(organismIdentifier);
-                                protein1d.setGeneName(geneName);
-                                protein1d.setProteinExistence(proteinExistence);
-                                protein1d.setSequenceVersion(sequenceVersion);
-                                protein1d.setAttempts(tppExperiment.getCurveFitAttempts());
-                                protein1d.setMaxIterations(tppExperiment.getCurveFitMaxIterations());
-                                //protein1d.setConcReference(concReference);
-                                protein1d.setTempReference(tempReference);
-                                protein1d.setAbundances(abundances, tppExperiment.getTempLabels(), tppExperiment.getConcLabels());
-                                protein1d.calculateRatios(tppExperiment.getTempLabels(),tppExperiment.getConcLabels());
-                                protein1d.setNormalisationMethod(norm);
-                                tppExperiment.addProtein(protein1d);
-                                break;
-                            case TP2D:
-                                Protein2D protein2d = new Protein2D();
-                                protein2d.setAccession(accession);
-                                protein2d.setDescription(description);
-                                protein2d.setOrganismName(organismName);
-                                protein2d.setOrganismIdentifier(organismIdentifier);
-                                protein2d.setGeneName(geneName);
-                                protein2d.setProteinExistence(proteinExistence);
-                                protein2d.setSequenceVersion(sequenceVersion);
-                                protein2d.setConcReference(concReference);
-                                protein2d.setTempReference(tempReference);
-                                protein2d.setAbundances(abundances, tppExperiment.getTempLabels(), tppExperiment.getConcLabels());
-                                protein2d.setNormalisationMethod(norm);
-                                //protein2d.calculateRatios(min, max, tppExperiment.getTempLabels(), tppExperiment.getConcLabels());
-                                tppExperiment.addProtein(protein2d);
-                                break;
-                            case PISA:
-                                /*ProteinPISA proteinPisa = new ProteinPISA();
-                                proteinPisa.setAccession(accession);
-                                proteinPisa.setDescription(description);
-                                proteinPisa.setOrganismName(organismName);
-                                proteinPisa.setOrganismIdentifier(organismIdentifier);
-                                proteinPisa.setGeneName(geneName);
-                                proteinPisa.setProteinExistence(geneName);
-                                proteinPisa.setSequenceVersion(sequenceVersion);
-                                proteinPisa.setTempReference(tempReference);
-                                proteinPisa.setAbundances(abundances, tppExperiment.getTempLabels(), tppExperiment.getConcLabels());
-                                proteinPisa.setNormalisationMethod(norm, tppExperiment.getTempLabels(), tppExperiment.getConcLabels());
-                                //proteinPisa.calculateRatios(tppExperiment.getTempLabels(), tppExperiment.getConcLabels());
-                                tppExperiment.addProtein(proteinPisa);*/
-                                break;
-                        }
+            if(tempVals.isEmpty()) {
+                throw new InvalidHeaderException("Parsing error: Could not identify temperature values");
+            }
+            if(concVals.isEmpty()) {
+                throw new InvalidHeaderException("Parsing error: Could not identify concentration values");
+            }
+
+            class ConcComparator implements Comparator<String> {
+                public int compare(String o1, String o2){
+                    try {
+                        return new BigDecimal(o1).compareTo(new BigDecimal(o2));
+                    } catch (NumberFormatException e) {
+                        return o1.compareTo(o2);
+                    }
+                }
+            }
 
-                        counter.set(counter.get()+1);
+            tempVals.sort(Comparator.naturalOrder());
+            concVals.sort(new ConcComparator());
 
-                        updateProgress(counter.get(),numProteins);
+            tppExperiment.setFileName(Paths.get(filePathDisplay.get()).getFileName().toString());
 
-                        updateMessage("Importing... " + counter.get() + "/" + numProteins);
+            int accessionCoordinate = index.get("accession");
+            int descriptionCoordinate = index.get("description");
 
-                        if(isCancelled()) {
-                            br.close();
-                            return null;
-                        }
+            int[][] abundanceCoordinates = new int[concVals.size()][tempVals.size()];
+
+
+            for(int i=0;i<abundanceCoordinates.length;i++) {
+                for (int j=0;j<abundanceCoordinates[0].length;j++) {
+                    try {
+                        abundanceCoordinates[i][j] = index.get(tempVals.get(j).toString() + ":" + concVals.get(i));
+                    } catch (NullPointerException ex) {
+                        throw new InvalidHeaderException("Unable to load column for temperature " + j + " and concentration " + i + "\n");
                     }
+                }
+            }
 
-                    br.close();
 
-                    updateMessage("Processing data...");
+            int[] referenceCoordinates = new int[tempVals.size()];
+            for(int i=0;i<referenceCoordinates.length;i++) {
+                referenceCoordinates[i] = index.get(tempVals.get(i).toString() + ":" + concVals.get(0));
+            }
 
-                    tppExperiment.progressProperty().addListener((obs, oldProgress, newProgress) -> changed(newProgress));
-                    tppExperiment.progressProperty().addListener((obs, oldProgress, newProgress) -> {
-                        if(isCancelled()) {
-                            tppExperiment.getIsCancelled().set(true);
-                        }
-                    });
+            tppExperiment.setConcLabels(concVals);
+            tppExperiment.setTempLabels(tempVals);
 
-                    tppExperiment.updateProteinCount();
-                    tppExperiment.setPercentileThresholds(min, max);
-                    tppExperiment.setNormalisation(norm);
+            String line;
 
+            String fileName = tppExperiment.getFileName().get();
+            TPImportChunkEvent chunkEvent = new TPImportChunkEvent();
+            chunkEvent.begin();
+            int chunkRows = 0;
 
-                    if(tppExpType==Proteome.ExpType.TP2D) {
-                        if (tppExperiment.getBootstrapIterations() > 0) {
+            while((line = br.readLine()) != null) {
+                String[] lineVals = line.split("\t");
 
-                            updateMessage("Running bootstrap...");
+                if(lineVals.length<accessionCoordinate) {
+                    continue;
+                }
+
+                String accession = lineVals[accessionCoordinate];
+
+                if(accession==null) {
+                    continue;
+                }
+                String organismName = "";
+                String organismIdentifier = "";
+                String geneName = "";
+                String proteinExistence = "";
+                String sequenceVersion = "";
+
+                String description="";
+                String[] descriptionVals = new String[] { description };
+                try {
+                    lineVals[descriptionCoordinate] = lineVals[descriptionCoordinate].replaceAll("^\"", "");
+                    lineVals[descriptionCoordinate] = lineVals[descriptionCoordinate].replaceAll("\"$", "");
+                    descriptionVals = lineVals[descriptionCoordinate].split("=");
+                    description = descriptionVals[0];
+                } catch(ArrayIndexOutOfBoundsException e) {
+                    description = "";
+                }
+                description = description.replaceAll(" OS$", "");
+                description = description.replaceAll(" OX$", "");
+                description = description.replaceAll(" GN$", "");
+                description = description.replaceAll(" PE$", "");
+                description = description.replaceAll(" SV$", "");
+                for(int j=1;j<descriptionVals.length;j++) {
+                    if(descriptionVals[j-1].endsWith(" OS")) {
+                        organismName = descriptionVals[j];
+                        organismName = organismName.replaceAll(" OX$", "");
+                        organismName = organismName.replaceAll(" GN$", "");
+                        organismName = organismName.replaceAll(" PE$", "");
+                        organismName = organismName.replaceAll(" SV$", "");
+                    }
+                    else if (descriptionVals[j-1].endsWith(" OX")) {
+                        organismIdentifier = descriptionVals[j];
+                        organismIdentifier = organismIdentifier.replaceAll(" OS$", "");
+                        organismIdentifier = organismIdentifier.replaceAll(" GN$", "");
+                        organismIdentifier = organismIdentifier.replaceAll(" PE$", "");
+                        organismIdentifier = organismIdentifier.replaceAll(" SV$", "");
+                    }
+                    else if (descriptionVals[j-1].endsWith(" GN")) {
+                        geneName = descriptionVals[j];
+                        geneName = geneName.replaceAll(" OS$", "");
+                        geneName = geneName.replaceAll(" OX$", "");
+                        geneName = geneName.replaceAll(" PE$", "");
+                        geneName = geneName.replaceAll(" SV$", "");
+                    }
+                    else if (descriptionVals[j-1].endsWith(" PE")) {
+                        proteinExistence = descriptionVals[j];
+                        proteinExistence = proteinExistence.replaceAll(" OS$", "");
+                        proteinExistence = proteinExistence.replaceAll(" OX$", "");
+                        proteinExistence = proteinExistence.replaceAll(" GN$", "");
+                        proteinExistence = proteinExistence.replaceAll(" SV$", "");
+                    }
+                    else if (descriptionVals[j-1].endsWith(" SV")) {
+                        sequenceVersion = descriptionVals[j];
+                        sequenceVersion = sequenceVersion.replaceAll(" OS$", "");
+                        sequenceVersion = sequenceVersion.replaceAll(" OX$", "");
+                        sequenceVersion = sequenceVersion.replaceAll(" GN$", "");
+                        sequenceVersion = sequenceVersion.replaceAll(" PE$", "");
+                    }
+                }
 
-                            TPBootstrapAnalysis bsAnalysis = new TPBootstrapAnalysis(tppExperiment.getBootstrapIterations());
 
-                            bsAnalysis.runBootstrapAnalysis(tppExperiment);
-                            bsAnalysis.setBootstrapPVals(tppExperiment);
+                Double[][] abundances = new Double[abundanceCoordinates[0].length][abundanceCoordinates.length];
 
-                            tppExperiment.set2dBootstrapAnalysis(bsAnalysis);
+                Double[] concReference = new Double[abundanceCoordinates[0].length];
+                Double[] tempReference = new Double[abundanceCoordinates.length];
 
+                for(int i=0;i<concReference.length;i++) {
+                    concReference[i] = Double.NaN;
+                    try {
+                        concReference[i] = Double.parseDouble(lineVals[referenceCoordinates[i]]);
+                    } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+                        concReference[i] = Double.NaN;
+                    }
+                }
+                for(int i=0;i<abundances.length;i++) {
+                    for(int j=0;j<abundances[0].length;j++) {
+                        abundances[i][j] = Double.NaN;
+                        try {
+                            abundances[i][j] = Double.parseDouble(lineVals[index.get(tempVals.get(i).toString() + ":" + concVals.get(j))]);
+                        } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+                            abundances[i][j] = Double.NaN;
                         }
+                        tempReference[j] = abundances[0][j];
                     }
+                }
 
-                return null;
+                switch(tppExpType) {
+                    case TP1D:
+                        Protein1D protein1d = new Protein1D();
+                        protein1d.setAccession(accession);
+                        protein1d.setDescription(description);
+                        protein1d.setOrganismName(organismName);
+                        protein1d.setOrganismIdentifier(organismIdentifier);
+                        protein1d.setGeneName(geneName);
+                        protein1d.setProteinExistence(proteinExistence);
+                        protein1d.setSequenceVersion(sequenceVersion);
+                        protein1d.setAttempts(tppExperiment.getCurveFitAttempts());
+                        protein1d.setMaxIterations(tppExperiment.getCurveFitMaxIterations());
+                        protein1d.setPatience(tppExperiment.getCurveFitPatience());
+                        protein1d.setTolerance(tppExperiment.getCurveFitTolerance());
+                        //protein1d.setConcReference(concReference);
+                        protein1d.setTempReference(tempReference);
+                        protein1d.setAbundances(abundances, tppExperiment.getTempLabels(), tppExperiment.getConcLabels());
+                        protein1d.calculateRatios(tppExperiment.getTempLabels(),tppExperiment.getConcLabels());
+                        protein1d.setNormalisationMethod(norm);
+                        tppExperiment.addProtein(protein1d);
+                        break;
+                    case TP2D:
+                        Protein2D protein2d = new Protein2D();
+                        protein2d.setAccession(accession);
+                        protein2d.setDescription(description);
+                        protein2d.setOrganismName(organismName);
+                        protein2d.setOrganismIdentifier(organismIdentifier);
+                        protein2d.setGeneName(geneName);
+                        protein2d.setProteinExistence(proteinExistence);
+                        protein2d.setSequenceVersion(sequenceVersion);
+                        protein2d.setConcReference(concReference);
+                        protein2d.setTempReference(tempReference);
+                        protein2d.setAbundances(abundances, tppExperiment.getTempLabels(), tppExperiment.getConcLabels());
+                        protein2d.setNormalisationMethod(norm);
+                        //protein2d.calculateRatios(min, max, tppExperiment.getTempLabels(), tppExperiment.getConcLabels());
+                        tppExperiment.addProtein(protein2d);
+                        break;
+                    case PISA:
+                        /*ProteinPISA proteinPisa = new ProteinPISA();
+                        proteinPisa.setAccession(accession);
+                        proteinPisa.setDescription(description);
+                        proteinPisa.setOrganismName(organismName);
+                        proteinPisa.setOrganismIdentifier(organismIdentifier);
+                        proteinPisa.setGeneName(geneName);
+                        proteinPisa.setProteinExistence(geneName);
+                        proteinPisa.setSequenceVersion(sequenceVersion);
+                        proteinPisa.setTempReference(tempReference);
+                        proteinPisa.setAbundances(abundances, tppExperiment.getTempLabels(), tppExperiment.getConcLabels());
+                        proteinPisa.setNormalisationMethod(norm, tppExperiment.getTempLabels(), tppExperiment.getConcLabels());
+                        //proteinPisa.calculateRatios(tppExperiment.getTempLabels(), tppExperiment.getConcLabels());
+                        tppExperiment.addProtein(proteinPisa);*/
+                        break;
+                }
+
+                counter.set(counter.get()+1);
+
+                if(++chunkRows == TPImportChunkEvent.CHUNK_ROWS) {
+                    chunkEvent.record(fileName, counter.get() - chunkRows, chunkRows);
+                    chunkEvent = new TPImportChunkEvent();
+                    chunkEvent.begin();
+                    chunkRows = 0;
+                }
+
+                monitor.progress(counter.get(), numProteins);
+
+                monitor.message("Importing... " + counter.get() + "/" + numProteins);
+
+                if(monitor.isCancelled()) {
+                    br.close();
+                    parseTimer.close();
+                    importTimer.close();
+                    return;
+                }
             }
-        };
+
+            br.close();
+
+            if(chunkRows > 0) {
+                chunkEvent.record(fileName, counter.get() - chunkRows, chunkRows);
+            }
+
+            parseTimer.addItems(counter.get());
+            parseTimer.close();
+
+            monitor.message("Processing data...");
+
+            tppExperiment.progressProperty().addListener((obs, oldProgress, newProgress) -> monitor.progress(newProgress.doubleValue(), 1));
+            tppExperiment.progressProperty().addListener((obs, oldProgress, newProgress) -> {
+                if(monitor.isCancelled()) {
+                    tppExperiment.getIsCancelled().set(true);
+                }
+            });
+
+            tppExperiment.updateProteinCount();
+            tppExperiment.setPercentileThresholds(min, max);
+            tppExperiment.setNormalisation(norm);
+
+
+            if(tppExpType==Proteome.ExpType.TP2D) {
+                if (tppExperiment.getBootstrapIterations() > 0) {
+
+                    monitor.message("Running bootstrap...");
+
+                    TPBootstrapAnalysis bsAnalysis = new TPBootstrapAnalysis(tppExperiment.getBootstrapIterations());
+
+                    bsAnalysis.runBootstrapAnalysis(tppExperiment);
+                    bsAnalysis.setBootstrapPVals(tppExperiment);
+
+                    tppExperiment.set2dBootstrapAnalysis(bsAnalysis);
+
+                }
+            }
+
+            importTimer.addItems(counter.get());
+            importTimer.close();
     }
 
     protected static String convertXLS(String file) {
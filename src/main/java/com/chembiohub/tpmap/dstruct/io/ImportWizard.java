@@ -90,6 +90,9 @@ public class ImportWizard implements Runnable {
     private TextField bsTextField;
     private CheckBox cfCheckbox;
     private TextField cfattemptsTextField;
+    private TextField cfpatienceTextField;
+    private CheckBox cfbatchCheckbox;
+    private CheckBox cfsharedCheckbox;
     private TextField cfiterationsTextField;
     private CheckBox mtCheckbox;
 
@@ -452,10 +455,20 @@ public class ImportWizard implements Runnable {
         cfCheckbox.setSelected(true);
         Label cfattemptsLabel = new Label("Fit Attempts: ");
         Label cfiterationsLabel = new Label("Max Iterations: ");
+        Label cfpatienceLabel = new Label("Stop After Unimproved Attempts: ");
+        cfpatienceLabel.setTooltip(new Tooltip("Stop fitting a curve once this many consecutive attempts have not improved the fit, 0 to make all attempts"));
         cfattemptsTextField = new TextField();
         cfiterationsTextField = new TextField();
+        cfpatienceTextField = new TextField();
         cfattemptsTextField.setText("10");
         cfiterationsTextField.setText("10000");
+        cfpatienceTextField.setText(String.valueOf(Protein1DParameters.DEFAULT_PATIENCE));
+        cfbatchCheckbox = new CheckBox("Batch Curve Fitting");
+        cfbatchCheckbox.setTooltip(new Tooltip("Fit the first attempt of all curves together in blocks, which is faster for large datasets"));
+        cfbatchCheckbox.setSelected(true);
+        cfsharedCheckbox = new CheckBox("Shared Curve F-Test");
+        cfsharedCheckbox.setTooltip(new Tooltip("Fit a curve shared by all replicates and a curve for each condition, and compare them by an F-test"));
+        cfsharedCheckbox.setSelected(false);
         cfattemptsTextField.textProperty().addListener((ObservableValue<? extends String> observable, String oldValue, String newValue) -> {
             if (!newValue.matches("\\d*")) {
                 cfattemptsTextField.setText(newValue.replaceAll("[^\\d]", ""));
@@ -466,21 +479,35 @@ public class ImportWizard implements Runnable {
                 cfiterationsTextField.setText(newValue.replaceAll("[^\\d]", ""));
             }
         });
+        cfpatienceTextField.textProperty().addListener((ObservableValue<? extends String> observable, String oldValue, String newValue) -> {
+            if (!newValue.matches("\\d*")) {
+                cfpatienceTextField.setText(newValue.replaceAll("[^\\d]", ""));
+            }
+        });
 
         cfattemptsLabel.setPadding(new Insets(5,20,5,20));
         cfiterationsLabel.setPadding(new Insets(5,20,5,20));
+        cfpatienceLabel.setPadding(new Insets(5,20,5,20));
 
         cfCheckbox.setDisable(true);
         cfattemptsLabel.setDisable(true);
         cfiterationsLabel.setDisable(true);
+        cfpatienceLabel.setDisable(true);
         cfattemptsTextField.setDisable(true);
         cfiterationsTextField.setDisable(true);
+        cfpatienceTextField.setDisable(true);
+        cfbatchCheckbox.setDisable(true);
+        cfsharedCheckbox.setDisable(true);
 
         parameterPane.add(cfCheckbox, 1, 2);
         parameterPane.add(cfattemptsLabel, 2, 2);
         parameterPane.add(cfiterationsLabel, 2, 3);
         parameterPane.add(cfattemptsTextField, 3, 2);
         parameterPane.add(cfiterationsTextField, 3, 3);
+        parameterPane.add(cfpatienceLabel, 2, 4);
+        parameterPane.add(cfpatienceTextField, 3, 4);
+        parameterPane.add(cfbatchCheckbox, 2, 5);
+        parameterPane.add(cfsharedCheckbox, 2, 6);
         step1.add(parameterPane,1,row++);
 
         //Multithreading
@@ -513,6 +540,10 @@ public class ImportWizard implements Runnable {
                 cfiterationsLabel.setDisable(false);
                 cfattemptsTextField.setDisable(false);
                 cfiterationsTextField.setDisable(false);
+                cfpatienceLabel.setDisable(false);
+                cfpatienceTextField.setDisable(false);
+                cfbatchCheckbox.setDisable(false);
+                cfsharedCheckbox.setDisable(false);
             }
             else {
                 cfLabel.setDisable(true);
@@ -520,6 +551,10 @@ public class ImportWizard implements Runnable {
                 cfiterationsLabel.setDisable(true);
                 cfattemptsTextField.setDisable(true);
                 cfiterationsTextField.setDisable(true);
+                cfpatienceLabel.setDisable(true);
+                cfpatienceTextField.setDisable(true);
+                cfbatchCheckbox.setDisable(true);
+                cfsharedCheckbox.setDisable(true);
             }
         });
 
@@ -534,6 +569,10 @@ public class ImportWizard implements Runnable {
             cfattemptsTextField.setDisable(false);
             cfiterationsLabel.setDisable(false);
             cfiterationsTextField.setDisable(false);
+            cfpatienceLabel.setDisable(false);
+            cfpatienceTextField.setDisable(false);
+            cfbatchCheckbox.setDisable(false);
+            cfsharedCheckbox.setDisable(false);
             normCombo.setValue(normalisationMethods.get(1));
             normCombo.setDisable(true);
         });
@@ -553,6 +592,10 @@ public class ImportWizard implements Runnable {
             cfattemptsTextField.setDisable(true);
             cfiterationsLabel.setDisable(true);
             cfiterationsTextField.setDisable(true);
+            cfpatienceLabel.setDisable(true);
+            cfpatienceTextField.setDisable(true);
+            cfbatchCheckbox.setDisable(true);
+            cfsharedCheckbox.setDisable(true);
             normCombo.setValue(normalisationMethods.get(0));
             normCombo.setDisable(false);
         });
@@ -625,11 +668,22 @@ public class ImportWizard implements Runnable {
                 }
             }
 
+            int cfPatience = 0;
+            if(cfCheckbox.isSelected()) {
+                try {
+                    cfPatience = Integer.parseInt(cfpatienceTextField.getText());
+                } catch (NumberFormatException ex) {
+                    throw new InvalidFileFormatException("Invalid input for curve fit attempts without improvement: " + cfpatienceTextField.getText());
+                }
+            }
+
             ProteinParameters params = null;
 
             switch (expType) {
                 case TP1D:
-                    params = new Protein1DParameters(cfAttempts, cfIterations);
+                    params = new Protein1DParameters(cfAttempts, cfIterations, cfPatience, Protein1DParameters.DEFAULT_TOLERANCE,
+                            cfbatchCheckbox.isSelected() ? Protein1DParameters.FitBackend.BATCH : Protein1DParameters.FitBackend.SINGLE,
+                            cfsharedCheckbox.isSelected());
                     break;
                 case TP2D:
                     params = new Protein2DParameters(bsReplicates);
@@ -0,0 +1,651 @@
+/*
+ * Copyright (C) 2020 Felix Feyertag <felix.feyertag@ndm.ox.ac.uk>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.chembiohub.tpmap.dstruct.io;
+
+import com.chembiohub.tpmap.diagnostics.TPExportBatchEvent;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * TPArrowWriter
+ *
+ * Writes rows to an Apache Arrow IPC file (format version V5), which can be memory mapped by pyarrow, R arrow,
+ * polars and similar tools without parsing. Columns are typed as UTF8 strings, 64 bit floating point numbers or
+ * booleans and are nullable. Rows are buffered column by column and written as a record batch every BATCH_ROWS
+ * rows, so only one batch is held in memory at a time.
+ *
+ * The Arrow metadata is encoded with a minimal FlatBuffers builder, the writer has no dependencies beyond the JDK.
+ *
+ * @author felixfeyertag
+ */
+public class TPArrowWriter implements TPRowWriter {
+
+    public enum ColumnType { UTF8, FLOAT64, BOOL }
+
+    private static final int BATCH_ROWS = 8192;
+
+    private static final byte[] MAGIC = "ARROW1".getBytes(StandardCharsets.US_ASCII);
+    private static final int CONTINUATION = 0xFFFFFFFF;
+    private static final short METADATA_V5 = 4;
+
+    private static final byte HEADER_SCHEMA = 1;
+    private static final byte HEADER_RECORD_BATCH = 3;
+
+    private static final byte TYPE_FLOATING_POINT = 3;
+    private static final byte TYPE_UTF8 = 5;
+    private static final byte TYPE_BOOL = 6;
+    private static final short PRECISION_DOUBLE = 2;
+
+    private final OutputStream out;
+    private final ColumnType[] types;
+    private final Column[] columns;
+    private final List<long[]> blocks;
+
+    private String[] names;
+    private TPExportBatchEvent batchEvent;
+    private long position;
+    private int rows;
+    private int cellIndex;
+
+    /**
+     * @param out output stream, closed when the writer is closed
+     * @param types column types, the number of columns in the header must match
+     */
+    public TPArrowWriter(OutputStream out, List<ColumnType> types) {
+        this.out = out;
+        this.types = types.toArray(new ColumnType[0]);
+        this.columns = new Column[this.types.length];
+        for(int i=0; i<columns.length; i++) {
+            switch(this.types[i]) {
+                case UTF8: columns[i] = new Utf8Column(); break;
+                case FLOAT64: columns[i] = new Float64Column(); break;
+                default: columns[i] = new BoolColumn();
+            }
+        }
+        this.blocks = new ArrayList<>();
+        this.position = 0;
+        this.rows = 0;
+        this.cellIndex = 0;
+        this.batchEvent = new TPExportBatchEvent();
+        this.batchEvent.begin();
+    }
+
+    @Override
+    public void writeHeader(List<String> columnNames) throws IOException {
+        if(names != null) {
+            throw new IllegalStateException("Header has already been written");
+        }
+        if(columnNames.size() != types.length) {
+            throw new IllegalArgumentException("Expected " + types.length + " column names, got " + columnNames.size());
+        }
+        names = columnNames.toArray(new String[0]);
+
+        write(MAGIC);
+        write(new byte[2]);
+
+        FlatBuilder fb = new FlatBuilder();
+        int schema = schema(fb);
+        writeMessage(fb, HEADER_SCHEMA, schema, 0);
+    }
+
+    @Override
+    public void writeString(String value) throws IOException {
+        Column column = nextColumn();
+        if(value == null) {
+            column.appendNull();
+        }
+        else if(column instanceof Utf8Column) {
+            ((Utf8Column) column).append(value);
+        }
+        else if(column instanceof BoolColumn) {
+            ((BoolColumn) column).append(Boolean.parseBoolean(value));
+        }
+        else {
+            throw new IllegalArgumentException("Column " + (cellIndex - 1) + " is numeric, got text: " + value);
+        }
+    }
+
+    @Override
+    public void writeNumber(double value) throws IOException {
+        Column column = nextColumn();
+        if(column instanceof Float64Column) {
+            ((Float64Column) column).append(value);
+        }
+        else if(column instanceof Utf8Column) {
+            ((Utf8Column) column).append(Double.toString(value));
+        }
+        else {
+            ((BoolColumn) column).append(value != 0.0);
+        }
+    }
+
+    /**
+     * Append a boolean cell to the current row.
+     *
+     * @param value cell value
+     * @throws IOException if the output cannot be written
+     */
+    public void writeBoolean(boolean value) throws IOException {
+        Column column = nextColumn();
+        if(column instanceof BoolColumn) {
+            ((BoolColumn) column).append(value);
+        }
+        else if(column instanceof Utf8Column) {
+            ((Utf8Column) column).append(Boolean.toString(value));
+        }
+        else {
+            ((Float64Column) column).append(value ? 1.0 : 0.0);
+        }
+    }
+
+    @Override
+    public void endRow() throws IOException {
+        if(names == null) {
+            throw new IllegalStateException("Header must be written before rows");
+        }
+        while(cellIndex < columns.length) {
+            columns[cellIndex++].appendNull();
+        }
+        cellIndex = 0;
+        rows++;
+        if(rows == BATCH_ROWS) {
+            writeRecordBatch();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            if(names == null) {
+                List<String> generated = new ArrayList<>();
+                for(int i=0; i<types.length; i++) {
+                    generated.add("f" + i);
+                }
+                writeHeader(generated);
+            }
+            if(cellIndex > 0) {
+                endRow();
+            }
+            if(rows > 0) {
+                writeRecordBatch();
+            }
+
+            writeInt(CONTINUATION);
+            writeInt(0);
+
+            FlatBuilder fb = new FlatBuilder();
+            int schema = schema(fb);
+            fb.startVector(24, 0, 8);
+            int dictionaries = fb.endVector(0);
+            fb.startVector(24, blocks.size(), 8);
+            for(int i=blocks.size()-1; i>=0; i--) {
+                long[] block = blocks.get(i);
+                fb.prep(8, 24);
+                fb.putLong(block[2]);
+                fb.pad(4);
+                fb.putInt((int) block[1]);
+                fb.putLong(block[0]);
+            }
+            int recordBatches = fb.endVector(blocks.size());
+
+            fb.startTable(4);
+            fb.addOffsetField(1, schema);
+            fb.addOffsetField(2, dictionaries);
+            fb.addOffsetField(3, recordBatches);
+            fb.addShortField(0, METADATA_V5);
+            byte[] footer = fb.finish(fb.endTable());
+
+            write(footer);
+            writeInt(footer.length);
+            write(MAGIC);
+        } finally {
+            out.close();
+        }
+    }
+
+    private Column nextColumn() {
+        if(cellIndex >= columns.length) {
+            throw new IllegalStateException("Row has more than " + columns.length + " cells");
+        }
+        return columns[cellIndex++];
+    }
+
+    private int schema(FlatBuilder fb) {
+        int[] fields = new int[types.length];
+        for(int i=0; i<types.length; i++) {
+            int name = fb.createString(names[i]);
+            int type;
+            byte typeType;
+            switch(types[i]) {
+                case FLOAT64:
+                    fb.startTable(1);
+                    fb.addShortField(0, PRECISION_DOUBLE);
+                    type = fb.endTable();
+                    typeType = TYPE_FLOATING_POINT;
+                    break;
+                case UTF8:
+                    fb.startTable(0);
+                    type = fb.endTable();
+                    typeType = TYPE_UTF8;
+                    break;
+                default:
+                    fb.startTable(0);
+                    type = fb.endTable();
+                    typeType = TYPE_BOOL;
+            }
+            fb.startVector(4, 0, 4);
+            int children = fb.endVector(0);
+
+            fb.startTable(7);
+            fb.addOffsetField(0, name);
+            fb.addOffsetField(3, type);
+            fb.addOffsetField(5, children);
+            fb.addByteField(1, (byte) 1);
+            fb.addByteField(2, typeType);
+            fields[i] = fb.endTable();
+        }
+        int fieldVector = fb.createOffsetVector(fields);
+
+        fb.startTable(4);
+        fb.addOffsetField(1, fieldVector);
+        fb.addShortField(0, (short) 0);
+        return fb.endTable();
+    }
+
+    private void writeRecordBatch() throws IOException {
+
+        List<long[]> buffers = new ArrayList<>();
+        long bodyLength = 0;
+        for(Column column : columns) {
+            for(int length : column.bufferLengths(rows)) {
+                buffers.add(new long[]{bodyLength, length});
+                bodyLength += align8(length);
+            }
+        }
+
+        FlatBuilder fb = new FlatBuilder();
+        fb.startVector(16, columns.length, 8);
+        for(int i=columns.length-1; i>=0; i--) {
+            fb.prep(8, 16);
+            fb.putLong(columns[i].nullCount);
+            fb.putLong(rows);
+        }
+        int nodes = fb.endVector(columns.length);
+        fb.startVector(16, buffers.size(), 8);
+        for(int i=buffers.size()-1; i>=0; i--) {
+            fb.prep(8, 16);
+            fb.putLong(buffers.get(i)[1]);
+            fb.putLong(buffers.get(i)[0]);
+        }
+        int bufferVector = fb.endVector(buffers.size());
+
+        fb.startTable(4);
+        fb.addLongField(0, rows);
+        fb.addOffsetField(1, nodes);
+        fb.addOffsetField(2, bufferVector);
+        int recordBatch = fb.endTable();
+
+        long offset = position;
+        int metadataLength = writeMessage(fb, HEADER_RECORD_BATCH, recordBatch, bodyLength);
+
+        for(Column column : columns) {
+            column.writeBuffers(rows);
+            column.reset();
+        }
+
+        blocks.add(new long[]{offset, metadataLength, bodyLength});
+        batchEvent.record("Arrow", rows, position - offset);
+        batchEvent = new TPExportBatchEvent();
+        batchEvent.begin();
+        rows = 0;
+    }
+
+    /**
+     * Write an encapsulated message: continuation marker, metadata length, metadata padded to 8 bytes.
+     *
+     * @return length of the message metadata including prefix and padding
+     */
+    private int writeMessage(FlatBuilder fb, byte headerType, int header, long bodyLength) throws IOException {
+        fb.startTable(5);
+        fb.addLongField(3, bodyLength);
+        fb.addOffsetField(2, header);
+        fb.addShortField(0, METADATA_V5);
+        fb.addByteField(1, headerType);
+        byte[] message = fb.finish(fb.endTable());
+
+        int padded = align8(message.length);
+        writeInt(CONTINUATION);
+        writeInt(padded);
+        write(message);
+        write(new byte[padded - message.length]);
+        return 8 + padded;
+    }
+
+    private static int align8(int length) {
+        return (length + 7) & ~7;
+    }
+
+    private void write(byte[] bytes) throws IOException {
+        write(bytes, bytes.length);
+    }
+
+    private void write(byte[] bytes, int length) throws IOException {
+        out.write(bytes, 0, length);
+        position += length;
+    }
+
+    private void writePadded(byte[] bytes, int length) throws IOException {
+        write(bytes, length);
+        int padding = align8(length) - length;
+        if(padding > 0) {
+            write(new byte[padding]);
+        }
+    }
+
+    private void writeInt(int value) throws IOException {
+        write(ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN).putInt(value).array());
+    }
+
+    /**
+     * Column values of the current record batch with a validity bitmap
+     */
+    private abstract class Column {
+
+        byte[] validity = new byte[BATCH_ROWS / 8];
+        int nullCount;
+
+        void appendNull() {
+            nullCount++;
+            appendValue(false);
+        }
+
+        void appendValid() {
+            validity[rows >> 3] |= 1 << (rows & 7);
+        }
+
+        void reset() {
+            Arrays.fill(validity, (byte) 0);
+            nullCount = 0;
+        }
+
+        int validityLength(int length) {
+            return nullCount == 0 ? 0 : (length + 7) / 8;
+        }
+
+        void writeValidity(int length) throws IOException {
+            if(nullCount > 0) {
+                writePadded(validity, (length + 7) / 8);
+            }
+        }
+
+        abstract void appendValue(boolean valid);
+
+        abstract int[] bufferLengths(int length);
+
+        abstract void writeBuffers(int length) throws IOException;
+    }
+
+    private class Float64Column extends Column {
+
+        private final ByteBuffer values = ByteBuffer.allocate(BATCH_ROWS * 8).order(ByteOrder.LITTLE_ENDIAN);
+
+        void append(double value) {
+            appendValid();
+            values.putDouble(rows * 8, value);
+        }
+
+        @Override
+        void appendValue(boolean valid) {
+            values.putDouble(rows * 8, 0.0);
+        }
+
+        @Override
+        int[] bufferLengths(int length) {
+            return new int[]{validityLength(length), length * 8};
+        }
+
+        @Override
+        void writeBuffers(int length) throws IOException {
+            writeValidity(length);
+            writePadded(values.array(), length * 8);
+        }
+    }
+
+    private class BoolColumn extends Column {
+
+        private final byte[] values = new byte[BATCH_ROWS / 8];
+
+        void append(boolean value) {
+            appendValid();
+            if(value) {
+                values[rows >> 3] |= 1 << (rows & 7);
+            }
+        }
+
+        @Override
+        void appendValue(boolean valid) {
+        }
+
+        @Override
+        void reset() {
+            super.reset();
+            Arrays.fill(values, (byte) 0);
+        }
+
+        @Override
+        int[] bufferLengths(int length) {
+            return new int[]{validityLength(length), (length + 7) / 8};
+        }
+
+        @Override
+        void writeBuffers(int length) throws IOException {
+            writeValidity(length);
+            writePadded(values, (length + 7) / 8);
+        }
+    }
+
+    private class Utf8Column extends Column {
+
+        private final ByteBuffer offsets = ByteBuffer.allocate((BATCH_ROWS + 1) * 4).order(ByteOrder.LITTLE_ENDIAN);
+        private byte[] data = new byte[BATCH_ROWS * 16];
+        private int dataLength = 0;
+
+        void append(String value) {
+            appendValid();
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            if(dataLength + bytes.length > data.length) {
+                data = Arrays.copyOf(data, Math.max(data.length * 2, dataLength + bytes.length));
+            }
+            System.arraycopy(bytes, 0, data, dataLength, bytes.length);
+            dataLength += bytes.length;
+            offsets.putInt((rows + 1) * 4, dataLength);
+        }
+
+        @Override
+        void appendValue(boolean valid) {
+            offsets.putInt((rows + 1) * 4, dataLength);
+        }
+
+        @Override
+        void reset() {
+            super.reset();
+            dataLength = 0;
+        }
+
+        @Override
+        int[] bufferLengths(int length) {
+            return new int[]{validityLength(length), (length + 1) * 4, dataLength};
+        }
+
+        @Override
+        void writeBuffers(int length) throws IOException {
+            writeValidity(length);
+            writePadded(offsets.array(), (length + 1) * 4);
+            writePadded(data, dataLength);
+        }
+    }
+
+    /**
+     * Minimal FlatBuffers builder, sufficient for the Arrow Schema, Message and Footer tables. The buffer is built
+     * back to front, as in the reference implementation, and vtables are not shared.
+     */
+    private static final class FlatBuilder {
+
+        private byte[] buf = new byte[1024];
+        private ByteBuffer bb = ByteBuffer.wrap(buf).order(ByteOrder.LITTLE_ENDIAN);
+        private int space = buf.length;
+        private int minAlign = 1;
+        private int[] vtable;
+        private int objectStart;
+
+        int offset() {
+            return buf.length - space;
+        }
+
+        void pad(int bytes) {
+            for(int i=0; i<bytes; i++) {
+                buf[--space] = 0;
+            }
+        }
+
+        void prep(int size, int additionalBytes) {
+            if(size > minAlign) {
+                minAlign = size;
+            }
+            int alignSize = (~(buf.length - space + additionalBytes) + 1) & (size - 1);
+            while(space < alignSize + size + additionalBytes) {
+                int oldLength = buf.length;
+                byte[] grown = new byte[oldLength * 2];
+                System.arraycopy(buf, 0, grown, oldLength, oldLength);
+                buf = grown;
+                bb = ByteBuffer.wrap(buf).order(ByteOrder.LITTLE_ENDIAN);
+                space += oldLength;
+            }
+            pad(alignSize);
+        }
+
+        void putByte(byte value) {
+            buf[--space] = value;
+        }
+
+        void putShort(short value) {
+            space -= 2;
+            bb.putShort(space, value);
+        }
+
+        void putInt(int value) {
+            space -= 4;
+            bb.putInt(space, value);
+        }
+
+        void putLong(long value) {
+            space -= 8;
+            bb.putLong(space, value);
+        }
+
+        void addOffset(int off) {
+            prep(4, 0);
+            putInt(offset() - off + 4);
+        }
+
+        int createString(String s) {
+            byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+            prep(1, 0);
+            putByte((byte) 0);
+            startVector(1, bytes.length, 1);
+            space -= bytes.length;
+            System.arraycopy(bytes, 0, buf, space, bytes.length);
+            return endVector(bytes.length);
+        }
+
+        void startVector(int elementSize, int count, int alignment) {
+            prep(4, elementSize * count);
+            prep(alignment, elementSize * count);
+        }
+
+        int endVector(int count) {
+            putInt(count);
+            return offset();
+        }
+
+        int createOffsetVector(int[] offsets) {
+            startVector(4, offsets.length, 4);
+            for(int i=offsets.length-1; i>=0; i--) {
+                addOffset(offsets[i]);
+            }
+            return endVector(offsets.length);
+        }
+
+        void startTable(int fields) {
+            vtable = new int[fields];
+            objectStart = offset();
+        }
+
+        void addByteField(int field, byte value) {
+            prep(1, 0);
+            putByte(value);
+            vtable[field] = offset();
+        }
+
+        void addShortField(int field, short value) {
+            prep(2, 0);
+            putShort(value);
+            vtable[field] = offset();
+        }
+
+        void addLongField(int field, long value) {
+            prep(8, 0);
+            putLong(value);
+            vtable[field] = offset();
+        }
+
+        void addOffsetField(int field, int off) {
+            addOffset(off);
+            vtable[field] = offset();
+        }
+
+        int endTable() {
+            prep(4, 0);
+            putInt(0);
+            int tableOffset = offset();
+            for(int i=vtable.length-1; i>=0; i--) {
+                prep(2, 0);
+                putShort((short) (vtable[i] != 0 ? tableOffset - vtable[i] : 0));
+            }
+            prep(2, 0);
+            putShort((short) (tableOffset - objectStart));
+            prep(2, 0);
+            putShort((short) ((vtable.length + 2) * 2));
+            bb.putInt(buf.length - tableOffset, offset() - tableOffset);
+            vtable = null;
+            return tableOffset;
+        }
+
+        byte[] finish(int root) {
+            prep(minAlign, 4);
+            addOffset(root);
+            return Arrays.copyOfRange(buf, space, buf.length);
+        }
+    }
+
+}
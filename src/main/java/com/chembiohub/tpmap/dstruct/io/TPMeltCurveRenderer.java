@@ -0,0 +1,803 @@
+/*
+ * Copyright (C) 2020 Felix Feyertag <felix.feyertag@ndm.ox.ac.uk>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.chembiohub.tpmap.dstruct.io;
+
+import com.chembiohub.tpmap.dstruct.Protein1D;
+import com.chembiohub.tpmap.scoring.TP1dDenaturationFunction;
+import javafx.geometry.VPos;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.paint.Color;
+import javafx.scene.text.Font;
+import javafx.scene.text.FontWeight;
+import javafx.scene.text.TextAlignment;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDPageContentStream;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+import org.apache.pdfbox.pdmodel.font.PDFont;
+import org.apache.pdfbox.pdmodel.font.PDType1Font;
+import org.apache.pdfbox.util.Matrix;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * TPMeltCurveRenderer
+ *
+ * Draws the melt curves of a 1D TP protein, fitted denaturation curves and observed temperature ratios for each
+ * condition, from primitive arrays. Drawing goes through a Surface, implementations are provided for a JavaFX
+ * canvas, SVG and PDF, so the same chart is shown in the user interface and exported as vector graphics.
+ *
+ * Renderers for recently shown proteins are kept in a small LRU cache, a renderer is rebuilt if the protein has been
+ * normalised or fitted again since it was cached.
+ *
+ * @author felixfeyertag
+ */
+public final class TPMeltCurveRenderer {
+
+    public static final double WIDTH = 640;
+    public static final double HEIGHT = 480;
+
+    private static final int CACHE_SIZE = 64;
+
+    private static final double MARGIN_LEFT = 60;
+    private static final double MARGIN_RIGHT = 15;
+    private static final double MARGIN_TOP = 35;
+    private static final double MARGIN_BOTTOM = 65;
+
+    private static final int BLUE = 0x0000FF;
+    private static final int RED = 0xFF0000;
+    private static final int GREY = 0x808080;
+    private static final int BLACK = 0x000000;
+
+    private static final Map<Protein1D,TPMeltCurveRenderer> cache = Collections.synchronizedMap(
+            new LinkedHashMap<Protein1D,TPMeltCurveRenderer>(CACHE_SIZE, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Protein1D,TPMeltCurveRenderer> eldest) {
+                    return size() > CACHE_SIZE;
+                }
+            });
+
+    private final String title;
+    private final String[] seriesLabels;
+    private final double[] temperatures;
+    private final double[][] observed;
+    private final double[][] fitParams;
+
+    private final double xMin;
+    private final double xMax;
+    private final double yMin;
+    private final double yMax;
+
+    private final Object ratioSource;
+    private final Object fitSource;
+
+    public TPMeltCurveRenderer(Protein1D protein, List<String> tempLabels, List<String> concLabels) {
+
+        String chartTitle = protein.getAccession();
+        if(protein.getGeneName() != null && !protein.getGeneName().isEmpty()) {
+            chartTitle += " (" + protein.getGeneName() + ")";
+        }
+        this.title = chartTitle;
+
+        this.temperatures = new double[tempLabels.size()];
+        for(int i=0; i<temperatures.length; i++) {
+            temperatures[i] = Double.parseDouble(tempLabels.get(i));
+        }
+
+        Double[][] ratios = protein.getAbundancesTempRatioNormalised();
+        double[][] params = protein.getCurveFitParams();
+        this.ratioSource = ratios;
+        this.fitSource = params;
+
+        int series = ratios == null ? 0 : ratios.length;
+        this.seriesLabels = new String[series];
+        this.observed = new double[series][];
+        this.fitParams = new double[series][];
+
+        double yLow = Double.POSITIVE_INFINITY;
+        double yHigh = Double.NEGATIVE_INFINITY;
+
+        for(int i=0; i<series; i++) {
+            seriesLabels[i] = i < concLabels.size() ? concLabels.get(i).toUpperCase() : "R" + i;
+            observed[i] = new double[temperatures.length];
+            for(int j=0; j<temperatures.length; j++) {
+                Double v = ratios[i] != null && j < ratios[i].length ? ratios[i][j] : null;
+                observed[i][j] = v == null ? Double.NaN : v;
+                if(Double.isFinite(observed[i][j])) {
+                    yLow = Math.min(yLow, observed[i][j]);
+                    yHigh = Math.max(yHigh, observed[i][j]);
+                }
+            }
+            if(params != null && i < params.length && params[i] != null && params[i].length == 3) {
+                fitParams[i] = params[i].clone();
+            }
+        }
+
+        double xLow = temperatures.length > 0 ? temperatures[0] : 0.0;
+        double xHigh = temperatures.length > 0 ? temperatures[temperatures.length - 1] : 1.0;
+        for(double t : temperatures) {
+            xLow = Math.min(xLow, t);
+            xHigh = Math.max(xHigh, t);
+        }
+
+        if(!(xHigh > xLow)) {
+            xHigh = xLow + 1.0;
+        }
+
+        for(double[] p : fitParams) {
+            if(p != null) {
+                TP1dDenaturationFunction curve = new TP1dDenaturationFunction(p[0], p[1], p[2]);
+                for(int k=0; k<=32; k++) {
+                    double y = curve.value(xLow + k * (xHigh - xLow) / 32);
+                    if(Double.isFinite(y)) {
+                        yLow = Math.min(yLow, y);
+                        yHigh = Math.max(yHigh, y);
+                    }
+                }
+            }
+        }
+
+        if(!(yHigh >= yLow)) {
+            yLow = 0.0;
+            yHigh = 1.0;
+        }
+        double yPad = Math.max(yHigh - yLow, 1e-6) * 0.05;
+        double xPad = (xHigh - xLow) * 0.02;
+
+        this.xMin = xLow - xPad;
+        this.xMax = xHigh + xPad;
+        this.yMin = yLow - yPad;
+        this.yMax = yHigh + yPad;
+    }
+
+    /**
+     * Renderer for a protein, taken from the cache if the protein has not changed since it was last drawn.
+     *
+     * @param protein 1D protein
+     * @param tempLabels temperature labels
+     * @param concLabels concentration labels
+     * @return renderer
+     */
+    public static TPMeltCurveRenderer forProtein(Protein1D protein, List<String> tempLabels, List<String> concLabels) {
+        TPMeltCurveRenderer renderer = cache.get(protein);
+        if(renderer == null || renderer.ratioSource != protein.getAbundancesTempRatioNormalised()
+                || renderer.fitSource != protein.getCurveFitParams() || renderer.temperatures.length != tempLabels.size()) {
+            renderer = new TPMeltCurveRenderer(protein, tempLabels, concLabels);
+            cache.put(protein, renderer);
+        }
+        return renderer;
+    }
+
+    /**
+     * Draw the chart into a WIDTH x HEIGHT area at the origin of the surface.
+     *
+     * @param s drawing surface
+     */
+    public void draw(Surface s) {
+        draw(s, WIDTH, HEIGHT);
+    }
+
+    /**
+     * Draw the chart into a width x height area at the origin of the surface.
+     *
+     * @param s drawing surface
+     * @param width chart width
+     * @param height chart height
+     */
+    public void draw(Surface s, double width, double height) {
+
+        final double left = MARGIN_LEFT;
+        final double right = width - MARGIN_RIGHT;
+        final double top = MARGIN_TOP;
+        final double bottom = height - MARGIN_BOTTOM;
+
+        s.setColor(BLACK);
+        s.fillText(title, width / 2, 22, 14, true, 0.5, false);
+
+        s.setColor(GREY);
+        s.setLineWidth(0.5);
+        s.setLineDashes();
+        s.strokeRect(left, top, right - left, bottom - top);
+
+        double xStep = tickStep(xMax - xMin);
+        for(double t = Math.ceil(xMin / xStep) * xStep; t <= xMax; t += xStep) {
+            double px = toX(t, left, right);
+            s.setColor(GREY);
+            s.strokeLine(px, bottom, px, bottom + 4);
+            s.setColor(BLACK);
+            s.fillText(tickLabel(t, xStep), px, bottom + 15, 9, false, 0.5, false);
+        }
+        double yStep = tickStep(yMax - yMin);
+        for(double t = Math.ceil(yMin / yStep) * yStep; t <= yMax; t += yStep) {
+            double py = toY(t, top, bottom);
+            s.setColor(GREY);
+            s.strokeLine(left - 4, py, left, py);
+            s.setColor(BLACK);
+            s.fillText(tickLabel(t, yStep), left - 6, py + 3, 9, false, 1.0, false);
+        }
+
+        s.fillText("Temperature (\u00B0C)", (left + right) / 2, bottom + 32, 10, false, 0.5, false);
+        s.fillText("Relative Abundance", 18, (top + bottom) / 2, 10, false, 0.5, true);
+
+        s.clip(left, top, right - left, bottom - top);
+
+        int samples = Math.max(2, (int) ((right - left) / 2));
+        double[] xs = new double[Math.max(samples, temperatures.length)];
+        double[] ys = new double[xs.length];
+
+        for(int i=0; i<observed.length; i++) {
+
+            s.setColor(seriesColour(i));
+
+            if(fitParams[i] != null && temperatures.length > 1) {
+                TP1dDenaturationFunction curve = new TP1dDenaturationFunction(fitParams[i][0], fitParams[i][1], fitParams[i][2]);
+                double from = temperatures[0];
+                double to = temperatures[temperatures.length - 1];
+                s.setLineWidth(1.0);
+                if(i % 2 == 1) {
+                    s.setLineDashes(2, 2);
+                }
+                else {
+                    s.setLineDashes();
+                }
+                int n = 0;
+                for(int k=0; k<samples; k++) {
+                    double x = from + (to - from) * k / (samples - 1);
+                    double y = curve.value(x);
+                    if(!Double.isFinite(y)) {
+                        s.strokePolyline(xs, ys, n);
+                        n = 0;
+                        continue;
+                    }
+                    xs[n] = toX(x, left, right);
+                    ys[n] = toY(y, top, bottom);
+                    n++;
+                }
+                s.strokePolyline(xs, ys, n);
+            }
+
+            for(int j=0; j<temperatures.length; j++) {
+                if(Double.isFinite(observed[i][j])) {
+                    double px = toX(temperatures[j], left, right);
+                    double py = toY(observed[i][j], top, bottom);
+                    if(i % 2 == 1) {
+                        s.fillOval(px - 3, py - 3, 6, 6);
+                    }
+                    else {
+                        s.fillRect(px - 3, py - 3, 6, 6);
+                    }
+                }
+            }
+        }
+
+        s.unclip();
+
+        double legendX = left;
+        double legendY = height - 12;
+        for(int i=0; i<observed.length; i++) {
+            s.setColor(seriesColour(i));
+            s.setLineWidth(1.0);
+            if(i % 2 == 1) {
+                s.setLineDashes(2, 2);
+                s.fillOval(legendX + 7, legendY - 6, 6, 6);
+            }
+            else {
+                s.setLineDashes();
+                s.fillRect(legendX + 7, legendY - 6, 6, 6);
+            }
+            s.strokeLine(legendX, legendY - 3, legendX + 20, legendY - 3);
+            s.setColor(BLACK);
+            s.fillText(seriesLabels[i], legendX + 25, legendY, 10, false, 0.0, false);
+            legendX += 70;
+        }
+        s.setLineDashes();
+    }
+
+    private double toX(double x, double left, double right) {
+        return left + (x - xMin) / (xMax - xMin) * (right - left);
+    }
+
+    private double toY(double y, double top, double bottom) {
+        return bottom - (y - yMin) / (yMax - yMin) * (bottom - top);
+    }
+
+    private static int seriesColour(int series) {
+        return series / 2 % 2 == 0 ? BLUE : RED;
+    }
+
+    private static double tickStep(double range) {
+        if(!(range > 0)) {
+            return 1.0;
+        }
+        double rough = range / 6;
+        double magnitude = Math.pow(10, Math.floor(Math.log10(rough)));
+        double residual = rough / magnitude;
+        if(residual > 5) {
+            return 10 * magnitude;
+        }
+        if(residual > 2) {
+            return 5 * magnitude;
+        }
+        if(residual > 1) {
+            return 2 * magnitude;
+        }
+        return magnitude;
+    }
+
+    private static String tickLabel(double value, double step) {
+        int decimals = Math.max(0, (int) -Math.floor(Math.log10(step) + 1e-9));
+        return String.format(Locale.ROOT, "%." + decimals + "f", Math.abs(value) < step * 1e-9 ? 0.0 : value);
+    }
+
+    /**
+     * Write the chart to an SVG file.
+     *
+     * @param f output file
+     * @throws IOException if the file cannot be written
+     */
+    public void writeSvg(File f) throws IOException {
+        SvgSurface svg = new SvgSurface();
+        draw(svg);
+        try (Writer w = Files.newBufferedWriter(f.toPath(), StandardCharsets.UTF_8)) {
+            w.write(svg.toSvg(WIDTH, HEIGHT));
+        }
+    }
+
+    /**
+     * Write the chart to a single page PDF file.
+     *
+     * @param f output file
+     * @throws IOException if the file cannot be written
+     */
+    public void writePdf(File f) throws IOException {
+        try (PDDocument doc = new PDDocument()) {
+            PDPage page = new PDPage(new PDRectangle((float) WIDTH, (float) HEIGHT));
+            doc.addPage(page);
+            try (PDPageContentStream cs = new PDPageContentStream(doc, page)) {
+                draw(new PdfSurface(cs, 0, (float) HEIGHT, 1f));
+            }
+            doc.save(f);
+        }
+    }
+
+    /**
+     * Drawing operations used by the renderer. Coordinates have their origin in the top left corner with y
+     * increasing downwards, text is positioned at its baseline.
+     */
+    public interface Surface {
+
+        void setColor(int rgb);
+
+        void setLineWidth(double width);
+
+        void setLineDashes(double... dashes);
+
+        void strokeLine(double x1, double y1, double x2, double y2);
+
+        void strokePolyline(double[] xs, double[] ys, int n);
+
+        void strokeRect(double x, double y, double w, double h);
+
+        void fillRect(double x, double y, double w, double h);
+
+        void fillOval(double x, double y, double w, double h);
+
+        /**
+         * @param align 0 for left, 0.5 for centre and 1 for right aligned text
+         * @param vertical rotate text 90 degrees counterclockwise around (x, y)
+         */
+        void fillText(String text, double x, double y, double size, boolean bold, double align, boolean vertical);
+
+        void clip(double x, double y, double w, double h);
+
+        void unclip();
+    }
+
+    /**
+     * Surface drawing on a JavaFX canvas
+     */
+    public static class CanvasSurface implements Surface {
+
+        private final GraphicsContext gc;
+
+        public CanvasSurface(GraphicsContext gc) {
+            this.gc = gc;
+        }
+
+        @Override
+        public void setColor(int rgb) {
+            Color c = Color.rgb((rgb >> 16) & 0xFF, (rgb >> 8) & 0xFF, rgb & 0xFF);
+            gc.setStroke(c);
+            gc.setFill(c);
+        }
+
+        @Override
+        public void setLineWidth(double width) {
+            gc.setLineWidth(width);
+        }
+
+        @Override
+        public void setLineDashes(double... dashes) {
+            gc.setLineDashes(dashes.length == 0 ? null : dashes);
+        }
+
+        @Override
+        public void strokeLine(double x1, double y1, double x2, double y2) {
+            gc.strokeLine(x1, y1, x2, y2);
+        }
+
+        @Override
+        public void strokePolyline(double[] xs, double[] ys, int n) {
+            if(n > 1) {
+                gc.strokePolyline(xs, ys, n);
+            }
+        }
+
+        @Override
+        public void strokeRect(double x, double y, double w, double h) {
+            gc.strokeRect(x, y, w, h);
+        }
+
+        @Override
+        public void fillRect(double x, double y, double w, double h) {
+            gc.fillRect(x, y, w, h);
+        }
+
+        @Override
+        public void fillOval(double x, double y, double w, double h) {
+            gc.fillOval(x, y, w, h);
+        }
+
+        @Override
+        public void fillText(String text, double x, double y, double size, boolean bold, double align, boolean vertical) {
+            gc.setFont(Font.font("SansSerif", bold ? FontWeight.BOLD : FontWeight.NORMAL, size));
+            gc.setTextAlign(align == 0.0 ? TextAlignment.LEFT : align == 1.0 ? TextAlignment.RIGHT : TextAlignment.CENTER);
+            gc.setTextBaseline(VPos.BASELINE);
+            if(vertical) {
+                gc.save();
+                gc.translate(x, y);
+                gc.rotate(-90);
+                gc.fillText(text, 0, 0);
+                gc.restore();
+            }
+            else {
+                gc.fillText(text, x, y);
+            }
+        }
+
+        @Override
+        public void clip(double x, double y, double w, double h) {
+            gc.save();
+            gc.beginPath();
+            gc.rect(x, y, w, h);
+            gc.clip();
+        }
+
+        @Override
+        public void unclip() {
+            gc.restore();
+        }
+    }
+
+    /**
+     * Surface recording SVG elements
+     */
+    public static class SvgSurface implements Surface {
+
+        private final StringBuilder svg = new StringBuilder();
+        private String colour = "#000000";
+        private double lineWidth = 1.0;
+        private String dashes = "";
+        private int clips = 0;
+
+        @Override
+        public void setColor(int rgb) {
+            colour = String.format("#%06X", rgb & 0xFFFFFF);
+        }
+
+        @Override
+        public void setLineWidth(double width) {
+            lineWidth = width;
+        }
+
+        @Override
+        public void setLineDashes(double... d) {
+            StringBuilder sb = new StringBuilder();
+            for(double v : d) {
+                sb.append(sb.length() == 0 ? "" : ",").append(num(v));
+            }
+            dashes = sb.length() == 0 ? "" : " stroke-dasharray=\"" + sb + "\"";
+        }
+
+        private String stroke() {
+            return " fill=\"none\" stroke=\"" + colour + "\" stroke-width=\"" + num(lineWidth) + "\"" + dashes;
+        }
+
+        @Override
+        public void strokeLine(double x1, double y1, double x2, double y2) {
+            svg.append("<line x1=\"").append(num(x1)).append("\" y1=\"").append(num(y1)).append("\" x2=\"").append(num(x2))
+                    .append("\" y2=\"").append(num(y2)).append('"').append(stroke()).append("/>\n");
+        }
+
+        @Override
+        public void strokePolyline(double[] xs, double[] ys, int n) {
+            if(n < 2) {
+                return;
+            }
+            svg.append("<polyline points=\"");
+            for(int i=0; i<n; i++) {
+                svg.append(i == 0 ? "" : " ").append(num(xs[i])).append(',').append(num(ys[i]));
+            }
+            svg.append('"').append(stroke()).append("/>\n");
+        }
+
+        @Override
+        public void strokeRect(double x, double y, double w, double h) {
+            svg.append("<rect x=\"").append(num(x)).append("\" y=\"").append(num(y)).append("\" width=\"").append(num(w))
+                    .append("\" height=\"").append(num(h)).append('"').append(stroke()).append("/>\n");
+        }
+
+        @Override
+        public void fillRect(double x, double y, double w, double h) {
+            svg.append("<rect x=\"").append(num(x)).append("\" y=\"").append(num(y)).append("\" width=\"").append(num(w))
+                    .append("\" height=\"").append(num(h)).append("\" fill=\"").append(colour).append("\"/>\n");
+        }
+
+        @Override
+        public void fillOval(double x, double y, double w, double h) {
+            svg.append("<ellipse cx=\"").append(num(x + w / 2)).append("\" cy=\"").append(num(y + h / 2)).append("\" rx=\"")
+                    .append(num(w / 2)).append("\" ry=\"").append(num(h / 2)).append("\" fill=\"").append(colour).append("\"/>\n");
+        }
+
+        @Override
+        public void fillText(String text, double x, double y, double size, boolean bold, double align, boolean vertical) {
+            svg.append("<text x=\"").append(num(x)).append("\" y=\"").append(num(y)).append("\" font-family=\"sans-serif\" font-size=\"")
+                    .append(num(size)).append('"').append(bold ? " font-weight=\"bold\"" : "")
+                    .append(" text-anchor=\"").append(align == 0.0 ? "start" : align == 1.0 ? "end" : "middle").append('"')
+                    .append(vertical ? " transform=\"rotate(-90 " + num(x) + " " + num(y) + ")\"" : "")
+                    .append(" fill=\"").append(colour).append("\">").append(escape(text)).append("</text>\n");
+        }
+
+        @Override
+        public void clip(double x, double y, double w, double h) {
+            clips++;
+            svg.append("<clipPath id=\"clip").append(clips).append("\"><rect x=\"").append(num(x)).append("\" y=\"").append(num(y))
+                    .append("\" width=\"").append(num(w)).append("\" height=\"").append(num(h)).append("\"/></clipPath>\n")
+                    .append("<g clip-path=\"url(#clip").append(clips).append(")\">\n");
+        }
+
+        @Override
+        public void unclip() {
+            svg.append("</g>\n");
+        }
+
+        /**
+         * @return SVG document of the recorded elements
+         */
+        public String toSvg(double width, double height) {
+            return "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+                    + "<svg xmlns=\"http://www.w3.org/2000/svg\" width=\"" + num(width) + "\" height=\"" + num(height)
+                    + "\" viewBox=\"0 0 " + num(width) + " " + num(height) + "\">\n"
+                    + "<rect width=\"100%\" height=\"100%\" fill=\"#FFFFFF\"/>\n"
+                    + svg
+                    + "</svg>\n";
+        }
+
+        private static String num(double v) {
+            return String.format(Locale.ROOT, "%.2f", v).replaceFirst("\\.?0+$", "");
+        }
+
+        private static String escape(String text) {
+            return text.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;");
+        }
+    }
+
+    /**
+     * Surface writing to a PDF content stream. Chart coordinates are scaled and translated so that the chart origin
+     * is at (x, y) on the page, with y measured from the bottom of the page to the top of the chart.
+     */
+    public static class PdfSurface implements Surface {
+
+        private final PDPageContentStream cs;
+        private final float x;
+        private final float y;
+        private final float scale;
+
+        public PdfSurface(PDPageContentStream cs, float x, float y, float scale) {
+            this.cs = cs;
+            this.x = x;
+            this.y = y;
+            this.scale = scale;
+        }
+
+        private float px(double u) {
+            return x + (float) u * scale;
+        }
+
+        private float py(double v) {
+            return y - (float) v * scale;
+        }
+
+        @Override
+        public void setColor(int rgb) {
+            try {
+                java.awt.Color c = new java.awt.Color(rgb);
+                cs.setStrokingColor(c);
+                cs.setNonStrokingColor(c);
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        }
+
+        @Override
+        public void setLineWidth(double width) {
+            try {
+                cs.setLineWidth((float) width * scale);
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        }
+
+        @Override
+        public void setLineDashes(double... dashes) {
+            float[] d = new float[dashes.length];
+            for(int i=0; i<d.length; i++) {
+                d[i] = (float) dashes[i] * scale;
+            }
+            try {
+                cs.setLineDashPattern(d, 0);
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        }
+
+        @Override
+        public void strokeLine(double x1, double y1, double x2, double y2) {
+            try {
+                cs.moveTo(px(x1), py(y1));
+                cs.lineTo(px(x2), py(y2));
+                cs.stroke();
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        }
+
+        @Override
+        public void strokePolyline(double[] xs, double[] ys, int n) {
+            if(n < 2) {
+                return;
+            }
+            try {
+                cs.moveTo(px(xs[0]), py(ys[0]));
+                for(int i=1; i<n; i++) {
+                    cs.lineTo(px(xs[i]), py(ys[i]));
+                }
+                cs.stroke();
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        }
+
+        @Override
+        public void strokeRect(double rx, double ry, double w, double h) {
+            try {
+                cs.addRect(px(rx), py(ry + h), (float) w * scale, (float) h * scale);
+                cs.stroke();
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        }
+
+        @Override
+        public void fillRect(double rx, double ry, double w, double h) {
+            try {
+                cs.addRect(px(rx), py(ry + h), (float) w * scale, (float) h * scale);
+                cs.fill();
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        }
+
+        @Override
+        public void fillOval(double ox, double oy, double w, double h) {
+            // four Bezier segments, k is the control point distance for a quarter circle
+            final float k = 0.5523f;
+            float cx = px(ox + w / 2);
+            float cy = py(oy + h / 2);
+            float rx = (float) w / 2 * scale;
+            float ry = (float) h / 2 * scale;
+            try {
+                cs.moveTo(cx + rx, cy);
+                cs.curveTo(cx + rx, cy + k * ry, cx + k * rx, cy + ry, cx, cy + ry);
+                cs.curveTo(cx - k * rx, cy + ry, cx - rx, cy + k * ry, cx - rx, cy);
+                cs.curveTo(cx - rx, cy - k * ry, cx - k * rx, cy - ry, cx, cy - ry);
+                cs.curveTo(cx + k * rx, cy - ry, cx + rx, cy - k * ry, cx + rx, cy);
+                cs.fill();
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        }
+
+        @Override
+        public void fillText(String text, double tx, double ty, double size, boolean bold, double align, boolean vertical) {
+
+            if(text == null || text.isEmpty()) {
+                return;
+            }
+
+            PDFont font = bold ? PDType1Font.HELVETICA_BOLD : PDType1Font.HELVETICA;
+            float fontSize = (float) size * scale;
+
+            try {
+                StringBuilder encodable = new StringBuilder();
+                for(char c : text.toCharArray()) {
+                    try {
+                        font.encode(String.valueOf(c));
+                        encodable.append(c);
+                    } catch (IllegalArgumentException ex) {
+                        // not in WinAnsiEncoding
+                    }
+                }
+                String encoded = encodable.toString();
+                float offset = font.getStringWidth(encoded) / 1000 * fontSize * (float) align;
+
+                cs.beginText();
+                cs.setFont(font, fontSize);
+                if(vertical) {
+                    cs.setTextMatrix(Matrix.getRotateInstance(Math.PI / 2, px(tx), py(ty) - offset));
+                }
+                else {
+                    cs.setTextMatrix(Matrix.getTranslateInstance(px(tx) - offset, py(ty)));
+                }
+                cs.showText(encoded);
+                cs.endText();
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        }
+
+        @Override
+        public void clip(double cx, double cy, double w, double h) {
+            try {
+                cs.saveGraphicsState();
+                cs.addRect(px(cx), py(cy + h), (float) w * scale, (float) h * scale);
+                cs.clip();
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        }
+
+        @Override
+        public void unclip() {
+            try {
+                cs.restoreGraphicsState();
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        }
+    }
+
+}
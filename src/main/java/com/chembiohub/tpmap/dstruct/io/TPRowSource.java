@@ -0,0 +1,73 @@
+/*
+ * Copyright (C) 2020 Felix Feyertag <felix.feyertag@ndm.ox.ac.uk>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.chembiohub.tpmap.dstruct.io;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * TPRowSource
+ *
+ * Producer of a tabular export, writing its header and rows directly to a TPRowWriter.
+ *
+ * @author felixfeyertag
+ */
+@FunctionalInterface
+public interface TPRowSource {
+
+    /**
+     * @param writer sink for header and rows
+     * @throws IOException if the output cannot be written
+     */
+    void writeRows(TPRowWriter writer) throws IOException;
+
+    /**
+     * Row source for tab delimited text. The first line is the header, the first column is always text and other
+     * cells are written as numbers if they contain a finite number.
+     *
+     * @param content tab delimited text
+     * @return row source
+     */
+    static TPRowSource fromText(String content) {
+        return writer -> {
+            String[] lines = content.split("\n");
+            if(lines.length == 0) {
+                return;
+            }
+            writer.writeHeader(Arrays.asList(lines[0].split("\t")));
+            for(int i=1; i<lines.length; i++) {
+                String[] cells = lines[i].split("\t");
+                for(int j=0; j<cells.length; j++) {
+                    if(j == 0) {
+                        writer.writeString(cells[j]);
+                        continue;
+                    }
+                    try {
+                        double value = Double.parseDouble(cells[j]);
+                        if(!Double.isFinite(value)) {
+                            throw new NumberFormatException();
+                        }
+                        writer.writeNumber(value);
+                    } catch (NumberFormatException e) {
+                        writer.writeString(cells[j]);
+                    }
+                }
+                writer.endRow();
+            }
+        };
+    }
+
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright (C) 2020 Felix Feyertag <felix.feyertag@ndm.ox.ac.uk>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.chembiohub.tpmap.dstruct.io;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * TPRowWriter
+ *
+ * Sink for tabular exports. A header is written once, followed by rows of typed cells, so that numbers reach the
+ * output format without being converted to and parsed from text.
+ *
+ * @author felixfeyertag
+ */
+public interface TPRowWriter extends Closeable {
+
+    /**
+     * @param columns column names
+     * @throws IOException if the output cannot be written
+     */
+    void writeHeader(List<String> columns) throws IOException;
+
+    /**
+     * Append a text cell to the current row.
+     *
+     * @param value cell value, null is written as an empty cell
+     * @throws IOException if the output cannot be written
+     */
+    void writeString(String value) throws IOException;
+
+    /**
+     * Append a numeric cell to the current row.
+     *
+     * @param value cell value
+     * @throws IOException if the output cannot be written
+     */
+    void writeNumber(double value) throws IOException;
+
+    /**
+     * Append a numeric cell to the current row.
+     *
+     * @param value cell value, null is written as an empty cell
+     * @throws IOException if the output cannot be written
+     */
+    default void writeNumber(Double value) throws IOException {
+        if(value == null) {
+            writeString(null);
+        }
+        else {
+            writeNumber(value.doubleValue());
+        }
+    }
+
+    /**
+     * Finish the current row.
+     *
+     * @throws IOException if the output cannot be written
+     */
+    void endRow() throws IOException;
+
+}
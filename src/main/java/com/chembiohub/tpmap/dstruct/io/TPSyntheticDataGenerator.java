@@ -0,0 +1,472 @@
+/*
+ * Copyright (C) 2020 Felix Feyertag <felix.feyertag@ndm.ox.ac.uk>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.chembiohub.tpmap.dstruct.io;
+
+import com.chembiohub.tpmap.dstruct.Proteome;
+import com.chembiohub.tpmap.scoring.TP1dDenaturationFunction;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * TPSyntheticDataGenerator
+ *
+ * Generates 1D and 2D thermal profiling datasets of arbitrary size for scale testing and for validating scores
+ * against a known ground truth.
+ *
+ * The soluble fraction of each protein is sampled from TP1dDenaturationFunction with a random melting point, slope
+ * and plateau. A fraction of the proteins is stabilised or destabilised by the compound, which shifts the melting
+ * point by a random amount between the minimum and maximum shift. In 1D datasets the second half of the replicates
+ * are treated and melt with the shifted melting point, values are given relative to the lowest temperature as in
+ * TPMAP 1D files. In 2D datasets the shift increases with the concentration as shift * c / (c + EC50) and values are
+ * given as reporter intensities. Multiplicative gaussian noise is added to every value, and values are removed at
+ * random, either individually or as the whole series of a replicate or concentration.
+ *
+ * Datasets are written in TPMAP format, which can be imported with GenericFileImporter, or with the same columns as
+ * an Arrow IPC file for analysis outside of TPMAP. The ground truth, the effect, melting point and shift of each
+ * protein, is returned by write and can be written as a tab delimited file.
+ *
+ * The generator can be run from the command line, e.g.
+ *
+ *   java -cp TP-MAP.jar com.chembiohub.tpmap.dstruct.io.TPSyntheticDataGenerator type=TP2D proteins=20000 out=synthetic.2D.tpmap.txt
+ *
+ * which also writes the ground truth to synthetic.2D.tpmap.truth.txt. Run without arguments for a list of options.
+ *
+ * @author felixfeyertag
+ */
+public class TPSyntheticDataGenerator {
+
+    public enum Effect { NONE, STABILISED, DESTABILISED }
+
+    public enum Format { TPMAP, ARROW }
+
+    /**
+     * Ground truth of a synthetic protein
+     */
+    public static class GroundTruth {
+
+        private final String accession;
+        private final Effect effect;
+        private final double meltingPoint;
+        private final double shift;
+
+        GroundTruth(String accession, Effect effect, double meltingPoint, double shift) {
+            this.accession = accession;
+            this.effect = effect;
+            this.meltingPoint = meltingPoint;
+            this.shift = shift;
+        }
+
+        public String getAccession() {
+            return accession;
+        }
+
+        public Effect getEffect() {
+            return effect;
+        }
+
+        /**
+         * @return melting point of the vehicle
+         */
+        public double getMeltingPoint() {
+            return meltingPoint;
+        }
+
+        /**
+         * @return melting point shift of the treated replicates or at saturating concentration
+         */
+        public double getShift() {
+            return shift;
+        }
+
+    }
+
+    private Proteome.ExpType expType = Proteome.ExpType.TP2D;
+    private int proteinCount = 1000;
+    private double[] temperatures = {37.0, 40.4, 44.0, 46.9, 49.8, 52.9, 55.5, 58.6, 62.0, 66.3};
+    private double[] concentrations = {0.0, 0.1, 0.5, 2.0, 10.0};
+    private String[] replicates = {"V1", "V2", "T1", "T2"};
+    private double minMeltingPoint = 42.0;
+    private double maxMeltingPoint = 60.0;
+    private double stabilisedFraction = 0.05;
+    private double destabilisedFraction = 0.05;
+    private double minShift = 2.0;
+    private double maxShift = 8.0;
+    private double ec50 = 1.0;
+    private double noise = 0.05;
+    private double missingValues = 0.0;
+    private double missingSeries = 0.0;
+    private long seed = 0L;
+
+    public TPSyntheticDataGenerator() {
+
+    }
+
+    public void setExpType(Proteome.ExpType expType) {
+        if(expType == Proteome.ExpType.PISA) {
+            throw new IllegalArgumentException("Synthetic PISA datasets are not supported");
+        }
+        this.expType = expType;
+    }
+
+    public Proteome.ExpType getExpType() {
+        return expType;
+    }
+
+    public void setProteinCount(int proteinCount) {
+        this.proteinCount = proteinCount;
+    }
+
+    public int getProteinCount() {
+        return proteinCount;
+    }
+
+    public void setTemperatures(double... temperatures) {
+        this.temperatures = temperatures.clone();
+    }
+
+    public double[] getTemperatures() {
+        return temperatures.clone();
+    }
+
+    /**
+     * @param concentrations compound concentrations of 2D datasets, the first is the vehicle
+     */
+    public void setConcentrations(double... concentrations) {
+        this.concentrations = concentrations.clone();
+    }
+
+    public double[] getConcentrations() {
+        return concentrations.clone();
+    }
+
+    /**
+     * @param replicates replicate labels of 1D datasets, the first half are vehicle and the second half treated
+     */
+    public void setReplicates(String... replicates) {
+        this.replicates = replicates.clone();
+    }
+
+    public String[] getReplicates() {
+        return replicates.clone();
+    }
+
+    public void setMeltingPointRange(double min, double max) {
+        this.minMeltingPoint = min;
+        this.maxMeltingPoint = max;
+    }
+
+    /**
+     * @param stabilised fraction of stabilised proteins
+     * @param destabilised fraction of destabilised proteins
+     */
+    public void setEffectFractions(double stabilised, double destabilised) {
+        if(stabilised < 0 || destabilised < 0 || stabilised + destabilised > 1) {
+            throw new IllegalArgumentException("Invalid stabilised and destabilised fractions " + stabilised + ", " + destabilised);
+        }
+        this.stabilisedFraction = stabilised;
+        this.destabilisedFraction = destabilised;
+    }
+
+    /**
+     * @param min minimum absolute melting point shift of affected proteins
+     * @param max maximum absolute melting point shift of affected proteins
+     */
+    public void setShiftRange(double min, double max) {
+        this.minShift = min;
+        this.maxShift = max;
+    }
+
+    /**
+     * @param ec50 concentration at which 2D datasets show half of the melting point shift
+     */
+    public void setEC50(double ec50) {
+        this.ec50 = ec50;
+    }
+
+    /**
+     * @param noise standard deviation of the multiplicative noise
+     */
+    public void setNoise(double noise) {
+        this.noise = noise;
+    }
+
+    /**
+     * @param missingValues fraction of values removed individually
+     */
+    public void setMissingValues(double missingValues) {
+        this.missingValues = missingValues;
+    }
+
+    /**
+     * @param missingSeries fraction of replicates (1D) or concentrations (2D) removed for all temperatures
+     */
+    public void setMissingSeries(double missingSeries) {
+        this.missingSeries = missingSeries;
+    }
+
+    public void setSeed(long seed) {
+        this.seed = seed;
+    }
+
+    /**
+     * @return column names of the dataset in TPMAP format
+     */
+    public List<String> getColumns() {
+        List<String> columns = new ArrayList<>(Arrays.asList("Accession", "Description"));
+        if(expType == Proteome.ExpType.TP1D) {
+            for(String replicate : replicates) {
+                for(double temperature : temperatures) {
+                    columns.add("Ref_" + label(temperature) + "_" + replicate);
+                }
+            }
+        }
+        else {
+            for(double temperature : temperatures) {
+                for(double concentration : concentrations) {
+                    columns.add("Ref_" + label(temperature) + "_" + label(concentration));
+                }
+            }
+        }
+        return columns;
+    }
+
+    /**
+     * Writes a dataset
+     *
+     * @param file output file
+     * @param format file format
+     * @return ground truth of the proteins in file order
+     * @throws IOException if the file cannot be written
+     */
+    public List<GroundTruth> write(File file, Format format) throws IOException {
+        if(format == Format.ARROW) {
+            List<TPArrowWriter.ColumnType> types = new ArrayList<>(Arrays.asList(TPArrowWriter.ColumnType.UTF8, TPArrowWriter.ColumnType.UTF8));
+            types.addAll(Collections.nCopies(getColumns().size() - 2, TPArrowWriter.ColumnType.FLOAT64));
+            try (TPArrowWriter writer = new TPArrowWriter(new BufferedOutputStream(new FileOutputStream(file)), types)) {
+                return write(writer);
+            }
+        }
+        try (TPTsvRowWriter writer = new TPTsvRowWriter(new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8)))) {
+            return write(writer);
+        }
+    }
+
+    /**
+     * Writes a dataset in TPMAP format to a row writer
+     *
+     * @param writer row writer
+     * @return ground truth of the proteins in row order
+     * @throws IOException if the rows cannot be written
+     */
+    public List<GroundTruth> write(TPRowWriter writer) throws IOException {
+
+        Random random = new Random(seed);
+        List<GroundTruth> groundTruth = new ArrayList<>(proteinCount);
+
+        writer.writeHeader(getColumns());
+
+        for(int i=0; i<proteinCount; i++) {
+
+            String accession = String.format(Locale.ROOT, "S%06d", i);
+            double meltingPoint = minMeltingPoint + (maxMeltingPoint - minMeltingPoint) * random.nextDouble();
+            double slope = 15.0 + 20.0 * random.nextDouble();
+            double plateau = 0.1 * random.nextDouble();
+
+            Effect effect = Effect.NONE;
+            double shift = 0.0;
+            double r = random.nextDouble();
+            if(r < stabilisedFraction) {
+                effect = Effect.STABILISED;
+                shift = minShift + (maxShift - minShift) * random.nextDouble();
+            }
+            else if(r < stabilisedFraction + destabilisedFraction) {
+                effect = Effect.DESTABILISED;
+                shift = -(minShift + (maxShift - minShift) * random.nextDouble());
+            }
+            groundTruth.add(new GroundTruth(accession, effect, meltingPoint, shift));
+
+            writer.writeString(accession);
+            writer.writeString("sp|" + accession + "|SYN" + i + "_HUMAN Synthetic protein " + i + " OS=Homo sapiens OX=9606 GN=SYN" + i + " PE=1 SV=1");
+
+            if(expType == Proteome.ExpType.TP1D) {
+                writeProtein1D(writer, random, meltingPoint, slope, plateau, shift);
+            }
+            else {
+                writeProtein2D(writer, random, meltingPoint, slope, plateau, shift);
+            }
+            writer.endRow();
+        }
+
+        return groundTruth;
+    }
+
+    private void writeProtein1D(TPRowWriter writer, Random random, double meltingPoint, double slope, double plateau, double shift) throws IOException {
+        for(int rep=0; rep<replicates.length; rep++) {
+            boolean treated = rep >= replicates.length / 2;
+            TP1dDenaturationFunction curve = curve(treated ? meltingPoint + shift : meltingPoint, slope, plateau);
+            double reference = curve.value(temperatures[0]);
+            boolean seriesMissing = random.nextDouble() < missingSeries;
+            for(int t=0; t<temperatures.length; t++) {
+                double value = t == 0 ? 1.0 : curve.value(temperatures[t]) / reference * noise(random);
+                writeValue(writer, random, seriesMissing, value);
+            }
+        }
+    }
+
+    private void writeProtein2D(TPRowWriter writer, Random random, double meltingPoint, double slope, double plateau, double shift) throws IOException {
+        double intensity = Math.exp(16.0 + 1.5 * random.nextGaussian());
+        TP1dDenaturationFunction[] curves = new TP1dDenaturationFunction[concentrations.length];
+        boolean[] seriesMissing = new boolean[concentrations.length];
+        for(int c=0; c<concentrations.length; c++) {
+            double concentration = concentrations[c];
+            curves[c] = curve(meltingPoint + shift * concentration / (concentration + ec50), slope, plateau);
+            seriesMissing[c] = random.nextDouble() < missingSeries;
+        }
+        for(double temperature : temperatures) {
+            for(int c=0; c<concentrations.length; c++) {
+                writeValue(writer, random, seriesMissing[c], intensity * curves[c].value(temperature) * noise(random));
+            }
+        }
+    }
+
+    private void writeValue(TPRowWriter writer, Random random, boolean seriesMissing, double value) throws IOException {
+        if(seriesMissing || random.nextDouble() < missingValues) {
+            writer.writeString(null);
+        }
+        else {
+            writer.writeNumber(Math.max(value, 0.0));
+        }
+    }
+
+    private double noise(Random random) {
+        return 1.0 + noise * random.nextGaussian();
+    }
+
+    /**
+     * Denaturation curve with the given melting point, the slope is the b parameter of the denaturation function
+     */
+    private static TP1dDenaturationFunction curve(double meltingPoint, double slope, double plateau) {
+        return new TP1dDenaturationFunction(slope * meltingPoint, slope, plateau);
+    }
+
+    private static String label(double value) {
+        return value == Math.rint(value) ? String.valueOf((long) value) : String.valueOf(value);
+    }
+
+    /**
+     * Writes the ground truth as a tab delimited file
+     *
+     * @param groundTruth ground truth returned by write
+     * @param file output file
+     * @throws IOException if the file cannot be written
+     */
+    public static void writeGroundTruth(List<GroundTruth> groundTruth, File file) throws IOException {
+        try (TPTsvRowWriter writer = new TPTsvRowWriter(new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8)))) {
+            writer.writeHeader(Arrays.asList("Accession", "Effect", "MeltingPoint", "Shift"));
+            for(GroundTruth truth : groundTruth) {
+                writer.writeString(truth.getAccession());
+                writer.writeString(truth.getEffect().name());
+                writer.writeNumber(truth.getMeltingPoint());
+                writer.writeNumber(truth.getShift());
+                writer.endRow();
+            }
+        }
+    }
+
+    /**
+     * Command line entry point, options are given as name=value
+     *
+     * @param args command line options
+     */
+    public static void main(String[] args) {
+
+        TPSyntheticDataGenerator generator = new TPSyntheticDataGenerator();
+        Format format = Format.TPMAP;
+        String out = null;
+        String truth = null;
+
+        try {
+            for(String arg : args) {
+                int eq = arg.indexOf('=');
+                if(eq < 0) {
+                    throw new IllegalArgumentException("Expected name=value, got " + arg);
+                }
+                String name = arg.substring(0, eq);
+                String value = arg.substring(eq + 1);
+                switch(name) {
+                    case "type": generator.setExpType(Proteome.ExpType.valueOf(value.toUpperCase())); break;
+                    case "proteins": generator.setProteinCount(Integer.parseInt(value)); break;
+                    case "temperatures": generator.setTemperatures(parseDoubles(value)); break;
+                    case "concentrations": generator.setConcentrations(parseDoubles(value)); break;
+                    case "replicates": generator.setReplicates(value.split(",")); break;
+                    case "meltingPoints": double[] tm = parseDoubles(value); generator.setMeltingPointRange(tm[0], tm[1]); break;
+                    case "effects": double[] effects = parseDoubles(value); generator.setEffectFractions(effects[0], effects[1]); break;
+                    case "shifts": double[] shifts = parseDoubles(value); generator.setShiftRange(shifts[0], shifts[1]); break;
+                    case "ec50": generator.setEC50(Double.parseDouble(value)); break;
+                    case "noise": generator.setNoise(Double.parseDouble(value)); break;
+                    case "missing": generator.setMissingValues(Double.parseDouble(value)); break;
+                    case "missingSeries": generator.setMissingSeries(Double.parseDouble(value)); break;
+                    case "seed": generator.setSeed(Long.parseLong(value)); break;
+                    case "format": format = Format.valueOf(value.toUpperCase()); break;
+                    case "out": out = value; break;
+                    case "truth": truth = value; break;
+                    default: throw new IllegalArgumentException("Unknown option " + name);
+                }
+            }
+            if(out == null) {
+                throw new IllegalArgumentException("No output file given");
+            }
+        }
+        catch (IllegalArgumentException | ArrayIndexOutOfBoundsException e) {
+            System.err.println(e.getMessage());
+            System.err.println("Usage: TPSyntheticDataGenerator out=FILE [type=TP1D|TP2D] [proteins=N] [format=TPMAP|ARROW] [truth=FILE]");
+            System.err.println("    [temperatures=T1,T2,...] [concentrations=C1,C2,...] [replicates=V1,V2,T1,T2] [meltingPoints=MIN,MAX]");
+            System.err.println("    [effects=STABILISED,DESTABILISED] [shifts=MIN,MAX] [ec50=C] [noise=SD] [missing=F] [missingSeries=F] [seed=N]");
+            System.exit(1);
+            return;
+        }
+
+        if(truth == null) {
+            truth = (out.endsWith(".txt") ? out.substring(0, out.length() - 4) : out) + ".truth.txt";
+        }
+
+        try {
+            List<GroundTruth> groundTruth = generator.write(new File(out), format);
+            writeGroundTruth(groundTruth, new File(truth));
+        }
+        catch (IOException e) {
+            System.err.println("Unable to write synthetic dataset: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    private static double[] parseDoubles(String value) {
+        return Arrays.stream(value.split(",")).mapToDouble(Double::parseDouble).toArray();
+    }
+
+}
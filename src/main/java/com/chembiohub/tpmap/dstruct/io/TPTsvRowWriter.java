@@ -0,0 +1,81 @@
+/*
+ * Copyright (C) 2020 Felix Feyertag <felix.feyertag@ndm.ox.ac.uk>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.chembiohub.tpmap.dstruct.io;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.List;
+
+/**
+ * TPTsvRowWriter
+ *
+ * Writes rows as tab delimited text to a Writer.
+ *
+ * @author felixfeyertag
+ */
+public class TPTsvRowWriter implements TPRowWriter {
+
+    private final Writer writer;
+    private boolean firstCell;
+
+    public TPTsvRowWriter(Writer writer) {
+        this.writer = writer;
+        this.firstCell = true;
+    }
+
+    @Override
+    public void writeHeader(List<String> columns) throws IOException {
+        for(String column : columns) {
+            writeString(column);
+        }
+        endRow();
+    }
+
+    @Override
+    public void writeString(String value) throws IOException {
+        separate();
+        if(value != null) {
+            writer.write(value);
+        }
+    }
+
+    @Override
+    public void writeNumber(double value) throws IOException {
+        separate();
+        writer.write(Double.toString(value));
+    }
+
+    @Override
+    public void endRow() throws IOException {
+        writer.write('\n');
+        firstCell = true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        writer.close();
+    }
+
+    private void separate() throws IOException {
+        if(firstCell) {
+            firstCell = false;
+        }
+        else {
+            writer.write('\t');
+        }
+    }
+
+}
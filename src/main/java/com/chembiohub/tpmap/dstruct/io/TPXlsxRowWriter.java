@@ -0,0 +1,180 @@
+/*
+ * Copyright (C) 2020 Felix Feyertag <felix.feyertag@ndm.ox.ac.uk>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.chembiohub.tpmap.dstruct.io;
+
+import org.apache.poi.ss.usermodel.*;
+import org.apache.poi.ss.util.CellRangeAddress;
+import org.apache.poi.ss.util.CellReference;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+
+/**
+ * TPXlsxRowWriter
+ *
+ * Writes rows to an Excel 2007 OOXML workbook. Numbers are written as numeric cells with four decimal places, the
+ * header row is bold on a blue background. For 2D proteome exports the fold change columns can be coloured with a
+ * colour scale.
+ *
+ * The workbook is streamed: only the last ROW_WINDOW rows are kept in memory, older rows are flushed to a compressed
+ * temporary file which is removed once the workbook has been written. All cells share the same two cell styles, so
+ * exports of whole proteomes are written in constant memory.
+ *
+ * @author felixfeyertag
+ */
+public class TPXlsxRowWriter implements TPRowWriter {
+
+    private static final int ROW_WINDOW = 100;
+
+    private final File file;
+    private final boolean conditionalFormatting2d;
+    private final int concVals2d;
+
+    private final SXSSFWorkbook wb;
+    private final Sheet sheet;
+    private final CellStyle numberStyle;
+    private final CellStyle headerStyle;
+
+    private Row row;
+    private int rowIndex;
+    private int cellIndex;
+    private int headerColumns;
+
+    /**
+     * @param file output file
+     * @param conditionalFormatting2d colour the last concVals2d columns with a colour scale
+     * @param concVals2d number of fold change columns
+     */
+    public TPXlsxRowWriter(File file, boolean conditionalFormatting2d, int concVals2d) {
+
+        this.file = file;
+        this.conditionalFormatting2d = conditionalFormatting2d;
+        this.concVals2d = concVals2d;
+
+        wb = new SXSSFWorkbook(ROW_WINDOW);
+        wb.setCompressTempFiles(true);
+        sheet = wb.createSheet();
+
+        Font headerFont = wb.createFont();
+        headerFont.setBold(true);
+
+        numberStyle = wb.createCellStyle();
+        numberStyle.setDataFormat(wb.createDataFormat().getFormat("0.0000"));
+
+        headerStyle = wb.createCellStyle();
+        headerStyle.setBorderRight(BorderStyle.THIN);
+        headerStyle.setRightBorderColor(IndexedColors.BLACK.getIndex());
+        headerStyle.setBorderTop(BorderStyle.THIN);
+        headerStyle.setTopBorderColor(IndexedColors.BLACK.getIndex());
+        headerStyle.setBorderLeft(BorderStyle.THIN);
+        headerStyle.setLeftBorderColor(IndexedColors.BLACK.getIndex());
+        headerStyle.setBorderBottom(BorderStyle.THIN);
+        headerStyle.setBottomBorderColor(IndexedColors.BLACK.getIndex());
+
+        headerStyle.setAlignment(HorizontalAlignment.CENTER);
+        headerStyle.setFillForegroundColor(IndexedColors.LIGHT_CORNFLOWER_BLUE.getIndex());
+        headerStyle.setFillPattern(FillPatternType.SOLID_FOREGROUND);
+        headerStyle.setFont(headerFont);
+
+        rowIndex = 0;
+        cellIndex = 0;
+    }
+
+    @Override
+    public void writeHeader(List<String> columns) throws IOException {
+        Row headerRow = sheet.createRow(rowIndex++);
+        for(int j=0; j<columns.size(); j++) {
+            Cell headerCell = headerRow.createCell(j);
+            headerCell.setCellValue(columns.get(j));
+            headerCell.setCellStyle(headerStyle);
+        }
+        headerColumns = columns.size();
+    }
+
+    @Override
+    public void writeString(String value) throws IOException {
+        Cell cell = currentRow().createCell(cellIndex++);
+        if(value != null) {
+            cell.setCellValue(value);
+        }
+    }
+
+    @Override
+    public void writeNumber(double value) throws IOException {
+        if(!Double.isFinite(value)) {
+            writeString(Double.toString(value));
+            return;
+        }
+        Cell cell = currentRow().createCell(cellIndex++);
+        cell.setCellValue(value);
+        cell.setCellStyle(numberStyle);
+    }
+
+    @Override
+    public void endRow() throws IOException {
+        currentRow();
+        row = null;
+        cellIndex = 0;
+    }
+
+    @Override
+    public void close() throws IOException {
+
+        try {
+            if (conditionalFormatting2d && concVals2d > 0 && headerColumns >= concVals2d && rowIndex > 1) {
+
+                SheetConditionalFormatting sheetCF = sheet.getSheetConditionalFormatting();
+                ConditionalFormattingRule rule1 = sheetCF.createConditionalFormattingColorScaleRule();
+                ColorScaleFormatting clrFmt = rule1.getColorScaleFormatting();
+                clrFmt.getThresholds()[0].setRangeType(ConditionalFormattingThreshold.RangeType.PERCENTILE);
+                clrFmt.getThresholds()[0].setValue(1d);
+                clrFmt.getThresholds()[1].setRangeType(ConditionalFormattingThreshold.RangeType.NUMBER);
+                clrFmt.getThresholds()[1].setValue(1d);
+                clrFmt.getThresholds()[2].setRangeType(ConditionalFormattingThreshold.RangeType.PERCENTILE);
+                clrFmt.getThresholds()[2].setValue(99d);
+                ((ExtendedColor) clrFmt.getColors()[0]).setARGBHex("FFF8696B");
+                ((ExtendedColor) clrFmt.getColors()[1]).setARGBHex("FFFFEB84");
+                ((ExtendedColor) clrFmt.getColors()[2]).setARGBHex("FF63BE7B");
+
+                String xlsColumnStart = CellReference.convertNumToColString(headerColumns - concVals2d);
+                String xlsColumnEnd = CellReference.convertNumToColString(headerColumns - 1);
+
+                CellRangeAddress[] regions = {CellRangeAddress.valueOf(xlsColumnStart + "2:" + xlsColumnEnd + rowIndex)};
+                sheetCF.addConditionalFormatting(regions, rule1);
+
+            }
+
+            try (OutputStream fos = new FileOutputStream(file.getAbsoluteFile())) {
+                wb.write(fos);
+            }
+        } finally {
+            wb.dispose();
+            wb.close();
+        }
+    }
+
+    private Row currentRow() {
+        if(row == null) {
+            row = sheet.createRow(rowIndex++);
+        }
+        return row;
+    }
+
+}
@@ -130,13 +130,7 @@ public class TP2DMedianNormalisation<T extends Protein> extends TPNormalisation
 
         if(protein instanceof Protein2D) {
             Protein2D protein2d = (Protein2D) protein;
-            Double[][] normalised = new Double[medians.length][medians[0].length];
-            for (int i = 0; i < normalised.length; i++) {
-                for (int j = 0; j < normalised[0].length; j++) {
-                    normalised[i][j] = protein2d.getAbundancesConcRatio()[i][j] / medians[i][j];
-                }
-            }
-            protein2d.setAbundancesConcRatioNormalised(normalised);
+            protein2d.setAbundancesConcRatioNormalised(normalisedRatios(protein2d));
             return protein2d;
         }
         else if(protein instanceof Protein1D) {
@@ -153,5 +147,27 @@ public class TP2DMedianNormalisation<T extends Protein> extends TPNormalisation
 
         return protein;
     }
+
+    /**
+     * normalisedRatios returns the median normalised abundance/concentration ratios of a 2D protein without setting
+     * them on the protein
+     *
+     * @param protein2d protein
+     * @return normalised ratios, or null if the normalisation is not initialised
+     */
+    public Double[][] normalisedRatios(Protein2D protein2d) {
+
+        if(!initialised) {
+            return null;
+        }
+
+        Double[][] normalised = new Double[medians.length][medians[0].length];
+        for (int i = 0; i < normalised.length; i++) {
+            for (int j = 0; j < normalised[0].length; j++) {
+                normalised[i][j] = protein2d.getAbundancesConcRatio()[i][j] / medians[i][j];
+            }
+        }
+        return normalised;
+    }
     
 }
@@ -0,0 +1,429 @@
+/*
+ * Copyright (C) 2020 Felix Feyertag <felix.feyertag@ndm.ox.ac.uk>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.chembiohub.tpmap.scoring;
+
+import com.chembiohub.tpmap.dstruct.Protein1D;
+import org.apache.commons.math3.util.FastMath;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * TP1dBatchCurveFitter
+ *
+ * Levenberg-Marquardt fit of TP1dDenaturationFunction curves for many melting curves at once. All curves share the
+ * temperatures of the experiment, missing values are masked. Curves are fitted in blocks of BLOCK_SIZE in lock-step:
+ * values, parameters and normal equations are held in arrays indexed by curve, and each pass over the temperatures
+ * updates all curves of a block in an inner loop without branches or object allocation, which the JIT can unroll and
+ * vectorise. The 3x3 normal equations of each curve are solved inline.
+ *
+ * Each curve starts from the estimate of TP1dCurveEstimator, or from given start parameters. The result of the fit is
+ * the first attempt of the curve fit in Protein1D, which makes further attempts if the fit failed. Curves without
+ * estimate, with fewer than three values or with infinite values are not fitted.
+ *
+ * The temperatures of a curve may repeat, e.g. to fit one curve to several replicates concatenated, as done by
+ * TP1dSharedCurveFitter. Such curves have to be given start parameters, as the estimate requires a single series of
+ * ascending temperatures.
+ *
+ * @author felixfeyertag
+ */
+public class TP1dBatchCurveFitter {
+
+    /**
+     * Number of curves fitted in lock-step
+     */
+    public static final int BLOCK_SIZE = 256;
+
+    private static final double INITIAL_LAMBDA = 1e-3;
+    private static final double MAX_LAMBDA = 1e16;
+    private static final double COST_RELATIVE_TOLERANCE = 1e-10;
+    private static final double PARAMETER_RELATIVE_TOLERANCE = 1e-10;
+
+    private final double[] temps;
+    private final double[] inverseTemps;
+    private final int maxIterations;
+
+    /**
+     * @param temps temperatures shared by all curves
+     * @param maxIterations maximum number of iterations of each fit
+     */
+    public TP1dBatchCurveFitter(Double[] temps, int maxIterations) {
+        this(unbox(temps), maxIterations);
+    }
+
+    /**
+     * @param temps temperatures shared by all curves
+     * @param maxIterations maximum number of iterations of each fit
+     */
+    public TP1dBatchCurveFitter(double[] temps, int maxIterations) {
+        this.temps = temps.clone();
+        this.inverseTemps = new double[temps.length];
+        for(int j=0; j<temps.length; j++) {
+            this.inverseTemps[j] = 1.0 / temps[j];
+        }
+        this.maxIterations = maxIterations;
+    }
+
+    private static double[] unbox(Double[] values) {
+        double[] unboxed = new double[values.length];
+        for(int j=0; j<values.length; j++) {
+            unboxed[j] = values[j];
+        }
+        return unboxed;
+    }
+
+    /**
+     * Fits all replicate curves of the given proteins
+     *
+     * @param proteins proteins, all with values at the temperatures of the fitter
+     * @param parallel fit blocks of curves in parallel
+     * @return results indexed by protein and replicate, null for curves that were not fitted
+     */
+    public TP1dCurveFitResult[][] fit(List<Protein1D> proteins, boolean parallel) {
+
+        int[] offsets = new int[proteins.size() + 1];
+        for(int i=0; i<proteins.size(); i++) {
+            offsets[i+1] = offsets[i] + proteins.get(i).getAbundancesTempRatioOL().size();
+        }
+
+        double[][] curves = new double[offsets[proteins.size()]][];
+        for(int i=0; i<proteins.size(); i++) {
+            List<? extends List<Double>> replicates = proteins.get(i).getAbundancesTempRatioOL();
+            for(int r=0; r<replicates.size(); r++) {
+                List<Double> replicate = replicates.get(r);
+                double[] values = new double[temps.length];
+                for(int j=0; j<values.length; j++) {
+                    Double value = j < replicate.size() ? replicate.get(j) : null;
+                    values[j] = value == null ? Double.NaN : value;
+                }
+                curves[offsets[i] + r] = values;
+            }
+        }
+
+        TP1dCurveFitResult[] fits = fit(curves, parallel);
+
+        TP1dCurveFitResult[][] results = new TP1dCurveFitResult[proteins.size()][];
+        for(int i=0; i<proteins.size(); i++) {
+            results[i] = new TP1dCurveFitResult[offsets[i+1] - offsets[i]];
+            System.arraycopy(fits, offsets[i], results[i], 0, results[i].length);
+        }
+        return results;
+    }
+
+    /**
+     * Fits curves
+     *
+     * @param curves values of each curve at the temperatures of the fitter, NaN for missing values
+     * @param parallel fit blocks of curves in parallel
+     * @return results indexed by curve, null for curves that were not fitted
+     */
+    public TP1dCurveFitResult[] fit(double[][] curves, boolean parallel) {
+        return fit(curves, new double[curves.length][], parallel);
+    }
+
+    /**
+     * Fits curves from start parameters
+     *
+     * @param curves values of each curve at the temperatures of the fitter, NaN for missing values
+     * @param starts start parameters a, b and plateau of each curve, null to start from the estimate of
+     *               TP1dCurveEstimator
+     * @param parallel fit blocks of curves in parallel
+     * @return results indexed by curve, null for curves that were not fitted
+     */
+    public TP1dCurveFitResult[] fit(double[][] curves, double[][] starts, boolean parallel) {
+
+        TP1dCurveFitResult[] results = new TP1dCurveFitResult[curves.length];
+        int blocks = (curves.length + BLOCK_SIZE - 1) / BLOCK_SIZE;
+
+        IntStream blockStream = IntStream.range(0, blocks);
+        if(parallel) {
+            blockStream = blockStream.parallel();
+        }
+        blockStream.forEach(block -> fitBlock(curves, starts, block * BLOCK_SIZE, FastMath.min((block + 1) * BLOCK_SIZE, curves.length), results));
+
+        return results;
+    }
+
+    private void fitBlock(double[][] curves, double[][] curveStarts, int from, int to, TP1dCurveFitResult[] results) {
+
+        int n = temps.length;
+
+        // Select curves with start parameters or an estimate
+        int[] index = new int[to - from];
+        double[][] starts = new double[to - from][];
+        int m = 0;
+        double[] t = new double[n];
+        double[] v = new double[n];
+        for(int c=from; c<to; c++) {
+            int points = 0;
+            boolean finite = true;
+            for(int j=0; j<n; j++) {
+                double value = curves[c][j];
+                if(Double.isInfinite(value)) {
+                    finite = false;
+                }
+                else if(!Double.isNaN(value)) {
+                    t[points] = temps[j];
+                    v[points] = value;
+                    points++;
+                }
+            }
+            double[] estimate = !finite ? null : curveStarts[c] != null ? curveStarts[c] : TP1dCurveEstimator.estimate(t, v, points);
+            if(estimate != null && points >= 3) {
+                index[m] = c;
+                starts[m] = estimate;
+                m++;
+            }
+        }
+
+        if(m == 0) {
+            return;
+        }
+
+        // Values and weights are laid out by temperature, then curve, weights mask missing values
+        Block block = new Block(n, m);
+        for(int k=0; k<m; k++) {
+            double[] curve = curves[index[k]];
+            for(int j=0; j<n; j++) {
+                boolean missing = Double.isNaN(curve[j]);
+                block.y[j * m + k] = missing ? 0.0 : curve[j];
+                block.w[j * m + k] = missing ? 0.0 : 1.0;
+                block.points[k] += missing ? 0 : 1;
+            }
+            block.index[k] = index[k];
+            block.a[k] = starts[k][0];
+            block.b[k] = starts[k][1];
+            block.p[k] = starts[k][2];
+            block.lambda[k] = INITIAL_LAMBDA;
+        }
+
+        cost(block, block.a, block.b, block.p, block.cost);
+
+        for(int iteration=0; iteration<maxIterations && block.active>0; iteration++) {
+
+            normalEquations(block);
+
+            for(int k=0; k<block.active; k++) {
+                block.ta[k] = block.a[k];
+                block.tb[k] = block.b[k];
+                block.tp[k] = block.p[k];
+
+                // Solve (H + lambda diag(H)) d = g by cofactor expansion, a singular system leaves the trial
+                // parameters unchanged, which is rejected and increases lambda
+                double l = 1.0 + block.lambda[k];
+                double h01 = block.h01[k], h02 = block.h02[k], h12 = block.h12[k];
+                double d00 = block.h00[k] * l, d11 = block.h11[k] * l, d22 = block.h22[k] * l;
+                double c00 = d11 * d22 - h12 * h12;
+                double c01 = h02 * h12 - h01 * d22;
+                double c02 = h01 * h12 - h02 * d11;
+                double det = d00 * c00 + h01 * c01 + h02 * c02;
+                if(!(det > 0) || !Double.isFinite(det)) {
+                    continue;
+                }
+                double c11 = d00 * d22 - h02 * h02;
+                double c12 = h01 * h02 - d00 * h12;
+                double c22 = d00 * d11 - h01 * h01;
+                double g0 = block.g0[k], g1 = block.g1[k], g2 = block.g2[k];
+                block.ta[k] += (c00 * g0 + c01 * g1 + c02 * g2) / det;
+                block.tb[k] += (c01 * g0 + c11 * g1 + c12 * g2) / det;
+                block.tp[k] += (c02 * g0 + c12 * g1 + c22 * g2) / det;
+            }
+
+            cost(block, block.ta, block.tb, block.tp, block.trialCost);
+
+            // Converged curves are replaced by the last active curve, which has already been updated
+            for(int k=block.active-1; k>=0; k--) {
+                block.iterations[k]++;
+                boolean converged;
+                if(block.trialCost[k] < block.cost[k]) {
+                    double costChange = (block.cost[k] - block.trialCost[k]) / block.cost[k];
+                    double parameterChange = FastMath.max(relativeChange(block.a[k], block.ta[k]),
+                            FastMath.max(relativeChange(block.b[k], block.tb[k]), relativeChange(block.p[k], block.tp[k])));
+                    block.a[k] = block.ta[k];
+                    block.b[k] = block.tb[k];
+                    block.p[k] = block.tp[k];
+                    block.cost[k] = block.trialCost[k];
+                    block.lambda[k] = FastMath.max(block.lambda[k] / 10.0, Double.MIN_NORMAL);
+                    converged = costChange < COST_RELATIVE_TOLERANCE || parameterChange < PARAMETER_RELATIVE_TOLERANCE;
+                }
+                else {
+                    // No step decreases the cost any further, the current parameters are a minimum
+                    block.lambda[k] *= 10.0;
+                    converged = block.lambda[k] > MAX_LAMBDA || !(block.cost[k] > 0);
+                }
+                if(converged) {
+                    results[block.index[k]] = result(block, k, true);
+                    block.remove(k);
+                }
+            }
+        }
+
+        // Curves still active after the loop did not converge within maxIterations
+        for(int k=0; k<block.active; k++) {
+            results[block.index[k]] = result(block, k, false);
+        }
+    }
+
+    /**
+     * @param converged false if the curve was still being fitted when the iteration limit was reached
+     */
+    private TP1dCurveFitResult result(Block block, int k, boolean converged) {
+        int[] failures = new int[TP1dCurveFitResult.Failure.values().length];
+        if(!converged) {
+            failures[TP1dCurveFitResult.Failure.TOO_MANY_ITERATIONS.ordinal()]++;
+        }
+        else if(!Double.isFinite(block.cost[k])) {
+            failures[TP1dCurveFitResult.Failure.NOT_FINITE.ordinal()]++;
+        }
+        else {
+            double rmse = FastMath.sqrt(block.cost[k] / (block.points[k] - 1.0));
+            return new TP1dCurveFitResult(new double[] { block.a[k], block.b[k], block.p[k] }, rmse, 1, 1, block.iterations[k], failures);
+        }
+        return new TP1dCurveFitResult(new double[0], Double.NaN, 1, 0, block.iterations[k], failures);
+    }
+
+    private static double relativeChange(double from, double to) {
+        return FastMath.abs(to - from) / (FastMath.abs(from) + PARAMETER_RELATIVE_TOLERANCE);
+    }
+
+    /**
+     * Sum of squared residuals of each active curve
+     */
+    private void cost(Block block, double[] a, double[] b, double[] p, double[] cost) {
+        int m = block.m;
+        int active = block.active;
+        double[] y = block.y;
+        double[] w = block.w;
+        Arrays.fill(cost, 0, active, 0.0);
+        for(int j=0; j<inverseTemps.length; j++) {
+            double u = inverseTemps[j];
+            int row = j * m;
+            for(int k=0; k<active; k++) {
+                double s = 1.0 / (1.0 + FastMath.exp(b[k] - a[k] * u));
+                double r = (y[row + k] - (1.0 - p[k]) * s - p[k]) * w[row + k];
+                cost[k] += r * r;
+            }
+        }
+    }
+
+    /**
+     * Normal equations J^T J and J^T r of each active curve, with residuals r = y - f and Jacobian J of f by a, b
+     * and p
+     */
+    private void normalEquations(Block block) {
+        int m = block.m;
+        int active = block.active;
+        double[] a = block.a, b = block.b, p = block.p, y = block.y, w = block.w;
+        double[] h00 = block.h00, h01 = block.h01, h02 = block.h02, h11 = block.h11, h12 = block.h12, h22 = block.h22;
+        double[] g0 = block.g0, g1 = block.g1, g2 = block.g2;
+        for(double[] sum : new double[][] { h00, h01, h02, h11, h12, h22, g0, g1, g2 }) {
+            Arrays.fill(sum, 0, active, 0.0);
+        }
+        for(int j=0; j<inverseTemps.length; j++) {
+            double u = inverseTemps[j];
+            int row = j * m;
+            for(int k=0; k<active; k++) {
+                double s = 1.0 / (1.0 + FastMath.exp(b[k] - a[k] * u));
+                double q = 1.0 - p[k];
+                double ds = s * (1.0 - s);
+                double weight = w[row + k];
+                double r = (y[row + k] - q * s - p[k]) * weight;
+                double ja = q * u * ds * weight;
+                double jb = -q * ds * weight;
+                double jp = (1.0 - s) * weight;
+                h00[k] += ja * ja;
+                h01[k] += ja * jb;
+                h02[k] += ja * jp;
+                h11[k] += jb * jb;
+                h12[k] += jb * jp;
+                h22[k] += jp * jp;
+                g0[k] += ja * r;
+                g1[k] += jb * r;
+                g2[k] += jp * r;
+            }
+        }
+    }
+
+    /**
+     * State of the curves of a block, indexed by curve. Curves 0 to active - 1 are still being fitted.
+     */
+    private static final class Block {
+
+        final int n;
+        final int m;
+        int active;
+
+        final double[] y;
+        final double[] w;
+        final int[] index;
+        final int[] points;
+        final int[] iterations;
+
+        final double[] a, b, p, cost, lambda;
+        final double[] ta, tb, tp, trialCost;
+        final double[] h00, h01, h02, h11, h12, h22, g0, g1, g2;
+
+        Block(int n, int m) {
+            this.n = n;
+            this.m = m;
+            this.active = m;
+            y = new double[n * m];
+            w = new double[n * m];
+            index = new int[m];
+            points = new int[m];
+            iterations = new int[m];
+            a = new double[m];
+            b = new double[m];
+            p = new double[m];
+            cost = new double[m];
+            lambda = new double[m];
+            ta = new double[m];
+            tb = new double[m];
+            tp = new double[m];
+            trialCost = new double[m];
+            h00 = new double[m];
+            h01 = new double[m];
+            h02 = new double[m];
+            h11 = new double[m];
+            h12 = new double[m];
+            h22 = new double[m];
+            g0 = new double[m];
+            g1 = new double[m];
+            g2 = new double[m];
+        }
+
+        /**
+         * Removes curve k from the active curves by moving the last active curve into its place
+         */
+        void remove(int k) {
+            int last = --active;
+            for(int j=0; j<n; j++) {
+                y[j * m + k] = y[j * m + last];
+                w[j * m + k] = w[j * m + last];
+            }
+            index[k] = index[last];
+            points[k] = points[last];
+            iterations[k] = iterations[last];
+            a[k] = a[last];
+            b[k] = b[last];
+            p[k] = p[last];
+            cost[k] = cost[last];
+            lambda[k] = lambda[last];
+        }
+    }
+
+}
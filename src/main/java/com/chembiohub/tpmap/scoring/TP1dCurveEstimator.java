@@ -0,0 +1,146 @@
+/*
+ * Copyright (C) 2020 Felix Feyertag <felix.feyertag@ndm.ox.ac.uk>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.chembiohub.tpmap.scoring;
+
+import org.apache.commons.math3.util.FastMath;
+
+/**
+ * TP1dCurveEstimator
+ *
+ * Deterministic start point for fitting a TP1dDenaturationFunction to a melting curve,
+ *
+ *   y = (1 - p) / (1 + exp(b - a/T)) + p
+ *
+ * The plateau p is estimated from the high temperature tail of the curve. With q = (y - p) / (1 - p), the curve is
+ * linear in 1/T after the logit transformation ln(1/q - 1) = b - a/T, so a and b are estimated by a weighted least
+ * squares line through the transformed points. Points are weighted by (q (1 - q))^2, which is largest around the
+ * observed midpoint, where the transformation amplifies noise least, and points close to the top or the plateau are
+ * left out. If fewer than two points are in the transition, a and b are derived from the temperature at which the
+ * curve crosses its midpoint and the slope of the curve there.
+ *
+ * @author felixfeyertag
+ */
+public class TP1dCurveEstimator {
+
+    /**
+     * Number of highest temperatures averaged for the plateau
+     */
+    private static final int TAIL = 2;
+
+    /**
+     * Points with q outside [QMIN, 1 - QMIN] are not used for the linear estimate
+     */
+    private static final double QMIN = 0.05;
+
+    /**
+     * Highest plateau estimate, curves with a higher tail do not melt in the measured range
+     */
+    private static final double MAX_PLATEAU = 0.9;
+
+    private TP1dCurveEstimator() {
+    }
+
+    /**
+     * Estimates the parameters of a melting curve
+     *
+     * @param temps temperatures in ascending order, without missing values
+     * @param values relative abundances at each temperature, without missing values
+     * @return estimates for a, b and plateau, or null if the curve has no transition from which a and b can be
+     *         estimated
+     */
+    public static double[] estimate(Double[] temps, Double[] values) {
+        if(values.length != temps.length) {
+            return null;
+        }
+        double[] t = new double[temps.length];
+        double[] v = new double[values.length];
+        for(int i=0; i<t.length; i++) {
+            t[i] = temps[i];
+            v[i] = values[i];
+        }
+        return estimate(t, v, t.length);
+    }
+
+    /**
+     * Estimates the parameters of a melting curve from the first n points
+     *
+     * @param temps temperatures in ascending order, without missing values
+     * @param values relative abundances at each temperature, without missing values
+     * @param n number of points
+     * @return estimates for a, b and plateau, or null if the curve has no transition from which a and b can be
+     *         estimated
+     */
+    public static double[] estimate(double[] temps, double[] values, int n) {
+
+        if(n < 3) {
+            return null;
+        }
+
+        double plateau = 0.0;
+        for(int i=n-TAIL; i<n; i++) {
+            plateau += values[i];
+        }
+        plateau = FastMath.min(FastMath.max(plateau / TAIL, 0.0), MAX_PLATEAU);
+
+        double sw = 0, su = 0, sz = 0, suu = 0, suz = 0;
+        int points = 0;
+        for(int i=0; i<n; i++) {
+            double q = (values[i] - plateau) / (1.0 - plateau);
+            if(q > QMIN && q < 1.0 - QMIN) {
+                double u = 1.0 / temps[i];
+                double z = FastMath.log(1.0 / q - 1.0);
+                double w = q * (1.0 - q) * q * (1.0 - q);
+                sw += w;
+                su += w * u;
+                sz += w * z;
+                suu += w * u * u;
+                suz += w * u * z;
+                points++;
+            }
+        }
+
+        double a = Double.NaN;
+        double b = Double.NaN;
+
+        double denominator = sw * suu - su * su;
+        if(points >= 2 && denominator > 0) {
+            double slope = (sw * suz - su * sz) / denominator;
+            a = -slope;
+            b = (sz - slope * su) / sw;
+        }
+        else {
+            // Midpoint crossing, where dq/dT = -a / (4 T^2)
+            for(int i=0; i<n-1; i++) {
+                double q0 = (values[i] - plateau) / (1.0 - plateau);
+                double q1 = (values[i+1] - plateau) / (1.0 - plateau);
+                if(q0 >= 0.5 && q1 < 0.5 && temps[i+1] > temps[i]) {
+                    double tm = temps[i] + (q0 - 0.5) / (q0 - q1) * (temps[i+1] - temps[i]);
+                    double dqdt = (q1 - q0) / (temps[i+1] - temps[i]);
+                    a = -4.0 * dqdt * tm * tm;
+                    b = a / tm;
+                    break;
+                }
+            }
+        }
+
+        if(!(a > 0) || !(b > 0) || !Double.isFinite(a) || !Double.isFinite(b)) {
+            return null;
+        }
+
+        return new double[] { a, b, plateau };
+    }
+
+}
@@ -0,0 +1,134 @@
+/*
+ * Copyright (C) 2020 Felix Feyertag <felix.feyertag@ndm.ox.ac.uk>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.chembiohub.tpmap.scoring;
+
+/**
+ * TP1dCurveFitResult
+ *
+ * Best fit of a melting curve over all attempts, with the number of attempts and optimizer iterations spent, the
+ * number of attempts that improved the best fit and the number of failed attempts by cause.
+ *
+ * @author felixfeyertag
+ */
+public class TP1dCurveFitResult {
+
+    /**
+     * Causes of failed curve fit attempts
+     */
+    public enum Failure {
+        /** the optimizer exceeded the maximum number of iterations */
+        TOO_MANY_ITERATIONS,
+        /** the optimizer exceeded the maximum number of function evaluations */
+        TOO_MANY_EVALUATIONS,
+        /** the optimizer could not converge, e.g. because the tolerances could not be met */
+        CONVERGENCE,
+        /** the fitted curve has a negative slope parameter b */
+        NEGATIVE_SLOPE,
+        /** the RMSE of the fitted curve is not finite */
+        NOT_FINITE,
+        /** the fitted curve is flat, its midpoint a/b lies outside the measured temperature range */
+        NO_TRANSITION,
+        /** any other exception thrown by the optimizer */
+        OTHER
+    }
+
+    private final double[] params;
+    private final double rmse;
+    private final int attempts;
+    private final int improvements;
+    private final int iterations;
+    private final int[] failures;
+
+    /**
+     * @param params parameters a, b and plateau of the best fit, or an empty array if no attempt succeeded
+     * @param rmse root mean square error of the best fit
+     * @param attempts number of attempts made
+     * @param iterations optimizer iterations summed over all attempts
+     */
+    public TP1dCurveFitResult(double[] params, double rmse, int attempts, int iterations) {
+        this(params, rmse, attempts, params.length == 3 ? 1 : 0, iterations, new int[Failure.values().length]);
+    }
+
+    /**
+     * @param params parameters a, b and plateau of the best fit, or an empty array if no attempt succeeded
+     * @param rmse root mean square error of the best fit
+     * @param attempts number of attempts made
+     * @param improvements number of attempts that improved the best fit
+     * @param iterations optimizer iterations summed over all attempts
+     * @param failures number of failed attempts, indexed by Failure ordinal
+     */
+    public TP1dCurveFitResult(double[] params, double rmse, int attempts, int improvements, int iterations, int[] failures) {
+        this.params = params;
+        this.rmse = rmse;
+        this.attempts = attempts;
+        this.improvements = improvements;
+        this.iterations = iterations;
+        this.failures = failures;
+    }
+
+    /**
+     * @return true if at least one attempt produced a fit
+     */
+    public boolean isSuccess() {
+        return params.length == 3;
+    }
+
+    /**
+     * @return parameters a, b and plateau, or an empty array if no attempt succeeded
+     */
+    public double[] getParams() {
+        return params;
+    }
+
+    public double getRMSE() {
+        return isSuccess() ? rmse : Double.NaN;
+    }
+
+    public int getAttempts() {
+        return attempts;
+    }
+
+    /**
+     * @return number of attempts that improved the best fit, including the first successful attempt
+     */
+    public int getImprovements() {
+        return improvements;
+    }
+
+    public int getIterations() {
+        return iterations;
+    }
+
+    /**
+     * @param failure cause
+     * @return number of attempts that failed with the given cause
+     */
+    public int getFailures(Failure failure) {
+        return failures[failure.ordinal()];
+    }
+
+    /**
+     * @return number of failed attempts
+     */
+    public int getFailures() {
+        int total = 0;
+        for(int f : failures) {
+            total += f;
+        }
+        return total;
+    }
+
+}
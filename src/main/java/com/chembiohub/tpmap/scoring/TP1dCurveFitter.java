@@ -0,0 +1,88 @@
+/*
+ * Copyright (C) 2020 Felix Feyertag <felix.feyertag@ndm.ox.ac.uk>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.chembiohub.tpmap.scoring;
+
+import org.apache.commons.math3.fitting.leastsquares.LeastSquaresBuilder;
+import org.apache.commons.math3.fitting.leastsquares.LeastSquaresOptimizer;
+import org.apache.commons.math3.fitting.leastsquares.LeastSquaresProblem;
+import org.apache.commons.math3.fitting.leastsquares.LevenbergMarquardtOptimizer;
+import org.apache.commons.math3.fitting.leastsquares.MultivariateJacobianFunction;
+import org.apache.commons.math3.linear.Array2DRowRealMatrix;
+import org.apache.commons.math3.linear.ArrayRealVector;
+import org.apache.commons.math3.util.Pair;
+
+/**
+ * TP1dCurveFitter
+ *
+ * Least squares fit of a TP1dDenaturationFunction curve from a single start point, as SimpleCurveFitter, but
+ * returning the optimum of the Levenberg-Marquardt optimizer, so that the number of iterations and evaluations used
+ * by the fit can be reported.
+ *
+ * The curve is evaluated with a TP1dDenaturationKernel on the temperatures of the observed values, which computes
+ * the curve and its Jacobian together in one pass over the temperatures instead of point by point.
+ *
+ * @author felixfeyertag
+ */
+public class TP1dCurveFitter {
+
+    private final TP1dDenaturationKernel kernel;
+    private final double[] initialGuess;
+    private final int maxIterations;
+
+    /**
+     * @param kernel TP1dDenaturationFunction curve on the temperatures of the observed values
+     * @param initialGuess start point of the optimizer
+     * @param maxIterations maximum number of optimizer iterations
+     */
+    public TP1dCurveFitter(TP1dDenaturationKernel kernel, double[] initialGuess, int maxIterations) {
+        this.kernel = kernel;
+        this.initialGuess = initialGuess.clone();
+        this.maxIterations = maxIterations;
+    }
+
+    /**
+     * Fits the curve of the kernel to the observations
+     *
+     * @param values observed values at each temperature of the kernel, without missing values
+     * @return optimum with the fitted parameters, iterations and evaluations
+     */
+    public LeastSquaresOptimizer.Optimum optimize(double[] values) {
+
+        if(values.length != kernel.size()) {
+            throw new IllegalArgumentException("Expected " + kernel.size() + " values, got " + values.length);
+        }
+
+        final int len = values.length;
+
+        MultivariateJacobianFunction model = point -> {
+            double[] curve = new double[len];
+            double[][] jacobian = new double[len][3];
+            kernel.values(point.toArray(), curve, jacobian);
+            return new Pair<>(new ArrayRealVector(curve, false), new Array2DRowRealMatrix(jacobian, false));
+        };
+
+        LeastSquaresProblem problem = new LeastSquaresBuilder().
+                maxEvaluations(Integer.MAX_VALUE).
+                maxIterations(maxIterations).
+                start(initialGuess).
+                target(values).
+                model(model).
+                build();
+
+        return new LevenbergMarquardtOptimizer().optimize(problem);
+    }
+
+}
@@ -0,0 +1,215 @@
+/*
+ * Copyright (C) 2020 Felix Feyertag <felix.feyertag@ndm.ox.ac.uk>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.chembiohub.tpmap.scoring;
+
+import org.apache.commons.math3.util.FastMath;
+
+import java.util.Arrays;
+
+/**
+ * TP1dDenaturationKernel
+ *
+ * Evaluates TP1dDenaturationFunction curves on a fixed grid of temperatures,
+ *
+ *   y = (1 - p) / (1 + exp(b - a/T)) + p
+ *
+ * The reciprocals of the temperatures are computed once when the kernel is created, so that curve values, residuals
+ * and the Jacobian by a, b and p are computed in a single loop over the grid with one exp() per temperature. All
+ * proteins of an experiment share the temperatures of the experiment, so a Proteome creates one kernel for fitting
+ * and one for drawing curves and passes them to each protein.
+ *
+ * @author felixfeyertag
+ */
+public class TP1dDenaturationKernel {
+
+    /**
+     * Temperature step of curves drawn in charts
+     */
+    public static final double CHART_STEP = 0.2;
+
+    private final double[] temps;
+    private final double[] inverseTemps;
+
+    /**
+     * @param temps temperatures of the grid
+     */
+    public TP1dDenaturationKernel(double[] temps) {
+        this.temps = temps.clone();
+        this.inverseTemps = new double[temps.length];
+        for(int j=0; j<temps.length; j++) {
+            inverseTemps[j] = 1.0 / temps[j];
+        }
+    }
+
+    /**
+     * @param temps temperatures of the grid
+     */
+    public TP1dDenaturationKernel(Double[] temps) {
+        this(Arrays.stream(temps).mapToDouble(Double::doubleValue).toArray());
+    }
+
+    /**
+     * Grid sampling a temperature range in steps, to draw curves
+     *
+     * @param from lowest temperature
+     * @param to temperature at which sampling stops, not included
+     * @param step temperature step
+     * @return kernel on the temperatures from, from + step, ... below to
+     */
+    public static TP1dDenaturationKernel sampled(double from, double to, double step) {
+        int n = 0;
+        for(double x = from; x < to; x += step) {
+            n++;
+        }
+        double[] temps = new double[n];
+        int j = 0;
+        for(double x = from; x < to; x += step) {
+            temps[j++] = x;
+        }
+        return new TP1dDenaturationKernel(temps);
+    }
+
+    /**
+     * Kernel on the temperatures at which a value is present
+     *
+     * @param values values at the temperatures of this kernel, NaN for missing values
+     * @return this kernel if no value is missing, otherwise a kernel on the temperatures without missing values
+     */
+    public TP1dDenaturationKernel select(double[] values) {
+        int present = 0;
+        for(double value : values) {
+            if(!Double.isNaN(value)) {
+                present++;
+            }
+        }
+        if(present == temps.length) {
+            return this;
+        }
+        double[] selected = new double[present];
+        int k = 0;
+        for(int j=0; j<temps.length; j++) {
+            if(!Double.isNaN(values[j])) {
+                selected[k++] = temps[j];
+            }
+        }
+        return new TP1dDenaturationKernel(selected);
+    }
+
+    /**
+     * @return number of temperatures of the grid
+     */
+    public int size() {
+        return temps.length;
+    }
+
+    public double getTemp(int j) {
+        return temps[j];
+    }
+
+    /**
+     * Evaluates a curve at all temperatures of the grid
+     *
+     * @param params parameters a, b and plateau
+     * @param curve values of the curve at each temperature, to be written
+     */
+    public void values(double[] params, double[] curve) {
+        evaluate(params, null, curve, null, null);
+    }
+
+    /**
+     * Evaluates a curve and its Jacobian at all temperatures of the grid
+     *
+     * @param params parameters a, b and plateau
+     * @param curve values of the curve at each temperature, to be written
+     * @param jacobian derivatives of the curve by a, b and plateau at each temperature, to be written
+     */
+    public void values(double[] params, double[] curve, double[][] jacobian) {
+        evaluate(params, null, curve, null, jacobian);
+    }
+
+    /**
+     * @param params parameters a, b and plateau
+     * @param values observed values at the temperatures of the grid, NaN for missing values
+     * @return sum of squared residuals of the observed values
+     */
+    public double sumOfSquares(double[] params, double[] values) {
+        return evaluate(params, values, null, null, null);
+    }
+
+    /**
+     * Root mean square error of a curve, with the number of observed values minus one as denominator
+     *
+     * @param params parameters a, b and plateau
+     * @param values observed values at the temperatures of the grid, non-finite values are left out
+     * @return RMSE, NaN if fewer than two values are finite
+     */
+    public double rmse(double[] params, double[] values) {
+        double a = params[0], b = params[1], p = params[2];
+        double q = 1.0 - p;
+        double sum = 0.0;
+        int count = 0;
+        for(int j=0; j<inverseTemps.length; j++) {
+            double value = values[j];
+            if(Double.isFinite(value)) {
+                double r = value - (q / (1.0 + FastMath.exp(b - a * inverseTemps[j])) + p);
+                sum += r * r;
+                count++;
+            }
+        }
+        return count < 2 ? Double.NaN : FastMath.sqrt(sum / (count - 1.0));
+    }
+
+    /**
+     * Evaluates a curve, its residuals and its Jacobian at all temperatures of the grid in one pass. Outputs that are
+     * null are not computed.
+     *
+     * @param params parameters a, b and plateau
+     * @param values observed values at the temperatures of the grid, NaN for missing values, or null
+     * @param curve values of the curve at each temperature, to be written, or null
+     * @param residuals observed values minus the curve at each temperature, 0 for missing values, to be written, or
+     *                  null
+     * @param jacobian derivatives of the curve by a, b and plateau at each temperature, to be written, or null
+     * @return sum of squared residuals, 0 if values is null
+     */
+    public double evaluate(double[] params, double[] values, double[] curve, double[] residuals, double[][] jacobian) {
+        double a = params[0], b = params[1], p = params[2];
+        double q = 1.0 - p;
+        double sum = 0.0;
+        for(int j=0; j<inverseTemps.length; j++) {
+            double u = inverseTemps[j];
+            double s = 1.0 / (1.0 + FastMath.exp(b - a * u));
+            double f = q * s + p;
+            if(curve != null) {
+                curve[j] = f;
+            }
+            if(values != null) {
+                double r = Double.isNaN(values[j]) ? 0.0 : values[j] - f;
+                sum += r * r;
+                if(residuals != null) {
+                    residuals[j] = r;
+                }
+            }
+            if(jacobian != null) {
+                double ds = q * s * (1.0 - s);
+                jacobian[j][0] = u * ds;
+                jacobian[j][1] = -ds;
+                jacobian[j][2] = 1.0 - s;
+            }
+        }
+        return sum;
+    }
+
+}
@@ -21,33 +21,32 @@ import javafx.beans.property.SimpleDoubleProperty;
 import javafx.collections.ObservableList;
 import org.apache.commons.math3.util.FastMath;
 
-import java.util.ArrayList;
-import java.util.Collections;
+import java.util.Arrays;
 import java.util.List;
+import java.util.function.ToDoubleFunction;
+import java.util.stream.IntStream;
 
 /**
  * TP1dScorer
  *
  * Score for 1D TP datasets based on thermal shift and quality of curve fit.
  *
- * Rank for each protein is calculated for highest TM shift among two replicates, smallest RMSE fit for all
- * conditions, and highest similarity between replicates. The weight between Tm shift and curve fit quality
- * can be adjusted by setting tmPercentage. The resulting score is scaled between 0 and 10.
+ * Rank for each protein is calculated for the Tm shift of each pair of a vehicle and a treatment replicate, smallest
+ * RMSE fit for each replicate, and highest similarity between the replicates of each condition. Tm shifts are ranked
+ * from the top if the protein is stabilised and from the bottom if it is destabilised, the direction is taken from the
+ * pair with the best rank, so that contradicting shifts are penalised. The weight between Tm shift and curve fit
+ * quality can be adjusted by setting tmPercentage. The resulting score is scaled between 0 and 10.
+ *
+ * The finite values of each pair, replicate and condition are sorted once for all proteins, in parallel, and ranks
+ * are found by binary search.
  *
  */
 public class TP1dScorer {
 
-    private final List<Double> tmShiftV1T1List = new ArrayList<>();
-    private final List<Double> tmShiftV2T2List = new ArrayList<>();
-    private final List<Double> meanTmShiftList = new ArrayList<>();
-
-    private final List<Double> rmseV1List = new ArrayList<>();
-    private final List<Double> rmseV2List = new ArrayList<>();
-    private final List<Double> rmseT1List = new ArrayList<>();
-    private final List<Double> rmseT2List = new ArrayList<>();
-
-    private final List<Double> vRepList = new ArrayList<>();
-    private final List<Double> tRepList = new ArrayList<>();
+    private final double[][] tmShifts;
+    private final double[][] rmse;
+    private final double[][] replication;
+    private final int[] replicationConditions;
 
     private final DoubleProperty tmPercentage = new SimpleDoubleProperty(80.0);
 
@@ -55,206 +54,127 @@ public class TP1dScorer {
 
         this.tmPercentage.set(tmPercentage);
 
-        proteins.forEach(p -> {
-            if (Double.isFinite(p.getMeanTM())) {
-                meanTmShiftList.add(Math.abs(p.getMeanTM()));
-            }
-            if (Double.isFinite(p.getTmVT1())) {
-                tmShiftV1T1List.add(p.getTmVT1());
-            }
-            if (Double.isFinite(p.getTmVT2())) {
-                tmShiftV2T2List.add(p.getTmVT2());
-            }
-            if (Double.isFinite(p.getRmsev1())) {
-                rmseV1List.add(p.getRmsev1());
-            }
-            if (Double.isFinite(p.getRmsev2())) {
-                rmseV2List.add(p.getRmsev2());
+        Protein1D first = proteins.isEmpty() ? new Protein1D() : proteins.get(0);
+
+        tmShifts = IntStream.range(0, first.getTmShiftCount()).parallel()
+                .mapToObj(pair -> sortedValues(proteins, p -> p.getTmShift(pair)))
+                .toArray(double[][]::new);
+        rmse = IntStream.range(0, first.getReplicateCount()).parallel()
+                .mapToObj(replicate -> sortedValues(proteins, p -> p.getRmse(replicate)))
+                .toArray(double[][]::new);
+        // Replication is only defined for conditions with more than one replicate
+        replicationConditions = IntStream.of(Protein1D.VEHICLE, Protein1D.TREATMENT)
+                .filter(condition -> first.getReplicates(condition).length > 1)
+                .toArray();
+        replication = Arrays.stream(replicationConditions).parallel()
+                .mapToObj(condition -> sortedValues(proteins, p -> p.getReplication(condition)))
+                .toArray(double[][]::new);
+    }
+
+    private static double[] sortedValues(List<Protein1D> proteins, ToDoubleFunction<Protein1D> value) {
+        double[] values = new double[proteins.size()];
+        int n = 0;
+        for(Protein1D p : proteins) {
+            double v = value.applyAsDouble(p);
+            if(Double.isFinite(v)) {
+                values[n++] = v;
             }
-            if (Double.isFinite(p.getRmset1())) {
-                rmseT1List.add(p.getRmset1());
+        }
+        values = Arrays.copyOf(values, n);
+        Arrays.sort(values);
+        return values;
+    }
+
+    /**
+     * @return 1 + number of values greater than value
+     */
+    private static int rankFromTop(double[] values, double value) {
+        int lo = 0;
+        int hi = values.length;
+        while(lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if(values[mid] <= value) {
+                lo = mid + 1;
             }
-            if (Double.isFinite(p.getRmset2())) {
-                rmseT2List.add(p.getRmset2());
+            else {
+                hi = mid;
             }
-            if (Double.isFinite(p.getVRep())) {
-                vRepList.add(p.getVRep());
+        }
+        return 1 + values.length - lo;
+    }
+
+    /**
+     * @return 1 + number of values less than value
+     */
+    private static int rankFromBottom(double[] values, double value) {
+        int lo = 0;
+        int hi = values.length;
+        while(lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if(values[mid] < value) {
+                lo = mid + 1;
             }
-            if (Double.isFinite(p.getTRep())) {
-                tRepList.add(p.getTRep());
+            else {
+                hi = mid;
             }
-        });
+        }
+        return 1 + lo;
+    }
 
-        Collections.sort(meanTmShiftList);
-        Collections.sort(tmShiftV1T1List);
-        Collections.sort(tmShiftV2T2List);
-        Collections.sort(rmseV1List);
-        Collections.sort(rmseV2List);
-        Collections.sort(rmseT1List);
-        Collections.sort(rmseT2List);
-        Collections.sort(vRepList);
-        Collections.sort(tRepList);
+    /**
+     * Rank of a value scaled between 0 for the lowest and 1 for the highest rank
+     */
+    private static double score(int rank, double[] values) {
+        return FastMath.abs((double)rank-(double)values.length) / (double)values.length;
     }
 
     public double calculateScore(Protein1D p) {
 
-        // Determine ranks for TM shifts and RMSE fits
-        Integer rankTmVT1 = 1;
-        Integer rankTmVT2 = 1;
-        Integer rankMeanTm = 1;
-        int rankRMSEV1 = 1;
-        int rankRMSEV2 = 1;
-        int rankRMSET1 = 1;
-        int rankRMSET2 = 1;
-        int rankVRep = 1;
-        int rankTRep = 1;
-
-        if(Double.isFinite(p.getMeanTM())) {
-            int i=meanTmShiftList.size();
-            while(meanTmShiftList.get(--i) > Math.abs(p.getMeanTM())) rankMeanTm++;
-        } else {
-            rankMeanTm = meanTmShiftList.size();
-        }
-
-        // Calculate Tm ranking
-        if(Double.isFinite(p.getTmVT1()) && Double.isFinite(p.getTmVT2())) {
-            // If both Tm shifts are positive then the rank is counted from the top of the list
-            if(p.getTmVT1()>=0.0 && p.getTmVT2()>=0.0) {
-                int i = tmShiftV1T1List.size();
-                while (tmShiftV1T1List.get(--i)>p.getTmVT1()) rankTmVT1++;
-                i = tmShiftV2T2List.size();
-                while (tmShiftV2T2List.get(--i)>p.getTmVT2()) rankTmVT2++;
-            }
-            // If both Tm shifts are negative then the rank is counted from the bottom of the list
-            else if(p.getTmVT1()<=0.0 && p.getTmVT2()<=0.0) {
-                int i = 0;
-                while (tmShiftV1T1List.get(i++)<p.getTmVT1()) rankTmVT1++;
-                i = 0;
-                while (tmShiftV2T2List.get(i++)<p.getTmVT2()) rankTmVT2++;
-            }
-            // If Tm shift directions contradict then the ranks are calculated for the positive and negative shifts
-            // and the higher rank is used to determine the direction (this ensures that a penalty is applied to
-            // large discrepancies)
-            else if(p.getTmVT1()>=0.0 && p.getTmVT2()<=0.0) {
-                int i = tmShiftV1T1List.size();
-                while (tmShiftV1T1List.get(--i)>p.getTmVT1()) rankTmVT1++;
-                i = 0;
-                while (tmShiftV2T2List.get(i++)<p.getTmVT2()) rankTmVT2++;
-                if(rankTmVT1>rankTmVT2) {
-                    rankTmVT1 = 1;
-                    i = 0;
-                    while (tmShiftV1T1List.get(i++)<p.getTmVT1()) rankTmVT1++;
-                }
-                else {
-                    rankTmVT2 = 1;
-                    i = tmShiftV2T2List.size();
-                    while (tmShiftV2T2List.get(--i)>p.getTmVT2()) rankTmVT2++;
-                }
-            }
-            else if(p.getTmVT1()<=0.0 && p.getTmVT2()>=0.0) {
-                int i = 0;
-                while (tmShiftV1T1List.get(i++)<p.getTmVT1()) rankTmVT1++;
-                i = tmShiftV2T2List.size();
-                while (tmShiftV2T2List.get(--i)>p.getTmVT2()) rankTmVT2++;
-
-                if(rankTmVT1>rankTmVT2) {
-                    rankTmVT1 = 1;
-                    i = tmShiftV1T1List.size();
-                    while (tmShiftV1T1List.get(--i)>p.getTmVT1()) rankTmVT1++;
-                }
-                else {
-                    rankTmVT2 = 1;
-                    i = 0;
-                    while (tmShiftV2T2List.get(i++)<p.getTmVT2()) rankTmVT2++;
+        // Calculate Tm ranking, the direction of the shift is taken from the pair with the best rank in the
+        // direction of its own shift, shifts without value are set to the lowest rank
+        boolean stabilised = true;
+        int bestRank = Integer.MAX_VALUE;
+        for(int pair=0; pair<tmShifts.length; pair++) {
+            double shift = p.getTmShift(pair);
+            if(Double.isFinite(shift)) {
+                int rank = shift>=0.0 ? rankFromTop(tmShifts[pair], shift) : rankFromBottom(tmShifts[pair], shift);
+                if(rank<bestRank) {
+                    bestRank = rank;
+                    stabilised = shift>=0.0;
                 }
             }
-        } else if (Double.isFinite(p.getTmVT1())) {
-            if(p.getTmVT1()>0.0) {
-                int i = tmShiftV1T1List.size();
-                while (tmShiftV1T1List.get(--i)>p.getTmVT1()) rankTmVT1++;
-            }
-            else {
-                int i = 0;
-                while (tmShiftV1T1List.get(i++)<p.getTmVT1()) rankTmVT1++;
-            }
-            rankTmVT2 = tmShiftV2T2List.size();
-        } else if (Double.isFinite(p.getTmVT2())) {
-            if(p.getTmVT2()>0.0) {
-                int i = tmShiftV2T2List.size();
-                while (tmShiftV2T2List.get(--i)>p.getTmVT2()) rankTmVT2++;
+        }
+        double scoreTm = 0.0;
+        for(int pair=0; pair<tmShifts.length; pair++) {
+            double shift = p.getTmShift(pair);
+            int rank;
+            if(Double.isFinite(shift)) {
+                rank = stabilised ? rankFromTop(tmShifts[pair], shift) : rankFromBottom(tmShifts[pair], shift);
             }
             else {
-                int i = 0;
-                while (tmShiftV2T2List.get(i++)<p.getTmVT2()) rankTmVT2++;
+                rank = tmShifts[pair].length;
             }
-            rankTmVT1 = tmShiftV1T1List.size();
-        }
-        // Tm shift set to lowest rank if NaN
-        else {
-            rankTmVT1 = tmShiftV1T1List.size();
-            rankTmVT2 = tmShiftV2T2List.size();
+            scoreTm += score(rank, tmShifts[pair]);
         }
 
         // Calculate RMSE ranking
-        if(Double.isFinite(p.getRmsev1())) {
-            int i=0;
-            while(rmseV1List.get(i++)<p.getRmsev1()) rankRMSEV1++;
-        }
-        else {
-            rankRMSEV1 = rmseV1List.size();
-        }
-        if(Double.isFinite(p.getRmsev2())) {
-            int i=0;
-            while(rmseV2List.get(i++)<p.getRmsev2()) rankRMSEV2++;
-        }
-        else {
-            rankRMSEV2 = rmseV2List.size();
-        }
-        if(Double.isFinite(p.getRmset1())) {
-            int i=0;
-            while(rmseT1List.get(i++)<p.getRmset1()) rankRMSET1++;
-        }
-        else {
-            rankRMSET1 = rmseT1List.size();
-        }
-        if(Double.isFinite(p.getRmset2())) {
-            int i=0;
-            while(rmseT2List.get(i++)<p.getRmset2()) rankRMSET2++;
-        }
-        else {
-            rankRMSET2 = rmseT2List.size();
+        double scoreFit = 0.0;
+        for(int replicate=0; replicate<rmse.length; replicate++) {
+            double value = p.getRmse(replicate);
+            int rank = Double.isFinite(value) ? rankFromBottom(rmse[replicate], value) : rmse[replicate].length;
+            scoreFit += score(rank, rmse[replicate]);
         }
 
-        //calculate replicate ranking
-        if(Double.isFinite(p.getVRep())) {
-            int i=0;
-            while(vRepList.get(i++)<p.getVRep()) rankVRep++;
-        }
-        else {
-            rankVRep = vRepList.size();
-        }
-        if(Double.isFinite(p.getTRep())) {
-            int i=0;
-            while(tRepList.get(i++)<p.getTRep()) rankTRep++;
-        }
-        else {
-            rankTRep = tRepList.size();
+        // Calculate replicate ranking
+        for(int i=0; i<replicationConditions.length; i++) {
+            double value = p.getReplication(replicationConditions[i]);
+            int rank = Double.isFinite(value) ? rankFromBottom(replication[i], value) : replication[i].length;
+            scoreFit += score(rank, replication[i]);
         }
 
-        double scoreMeanTm = FastMath.abs((double)rankMeanTm-(double)meanTmShiftList.size()) / (double)meanTmShiftList.size();
-        double scoreTmVT1  = FastMath.abs((double)rankTmVT1-(double)tmShiftV1T1List.size())  / (double)tmShiftV1T1List.size();
-        double scoreTmVT2  = FastMath.abs((double)rankTmVT2-(double)tmShiftV2T2List.size())  / (double)tmShiftV2T2List.size();
-        double scoreRMSEV1 = FastMath.abs((double)rankRMSEV1-(double)rmseV1List.size())      / (double)rmseV1List.size();
-        double scoreRMSEV2 = FastMath.abs((double)rankRMSEV2-(double)rmseV2List.size())      / (double)rmseV2List.size();
-        double scoreRMSET1 = FastMath.abs((double)rankRMSET1-(double)rmseT1List.size())      / (double)rmseT1List.size();
-        double scoreRMSET2 = FastMath.abs((double)rankRMSET2-(double)rmseT2List.size())      / (double)rmseT2List.size();
-        double scoreVRep   = FastMath.abs((double)rankVRep-(double)vRepList.size())          / (double)vRepList.size();
-        double scoreTRep   = FastMath.abs((double)rankTRep-(double)tRepList.size())          / (double)tRepList.size();
-
-        //return (2.0 * scoreTmVT1 + 2.0 * scoreTmVT2 + scoreRMSEV1 + scoreRMSEV2 + scoreRMSET1 + scoreRMSET2 + scoreVRep + scoreTRep);
-        return ( (tmPercentage.getValue()/100.0) * (3.0 * scoreTmVT1 + 3.0 * scoreTmVT2) + (1.0-tmPercentage.getValue()/100.0) * (scoreRMSEV1 + scoreRMSEV2 + scoreRMSET1 + scoreRMSET2 + scoreVRep + scoreTRep) ) / 6.0 * 10.0;
-        //return ( (tmPercentage.getValue()/100.0) * (6.0 * scoreMeanTm) + (1.0-tmPercentage.getValue()/100.0) * (scoreRMSEV1 + scoreRMSEV2 + scoreRMSET1 + scoreRMSET2 + scoreVRep + scoreTRep) ) / 6.0 * 10.0;
+        double tmWeight = tmPercentage.getValue()/100.0;
+        int fitTerms = rmse.length + replication.length;
+        return ( tmWeight * (tmShifts.length > 0 ? scoreTm / tmShifts.length : 0.0) + (1.0-tmWeight) * (fitTerms > 0 ? scoreFit / fitTerms : 0.0) ) * 10.0;
     }
 
 }
-
@@ -0,0 +1,105 @@
+/*
+ * Copyright (C) 2020 Felix Feyertag <felix.feyertag@ndm.ox.ac.uk>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.chembiohub.tpmap.scoring;
+
+/**
+ * TP1dSharedCurveFitResult
+ *
+ * Comparison of a null model, one melting curve shared by all replicates, with an alternative model, one melting
+ * curve for the vehicle and one for the treatment replicates, by an F-test on the residual sums of squares of both
+ * models. A small p-value indicates that treatment changes the melting behaviour of the protein.
+ *
+ * @author felixfeyertag
+ */
+public class TP1dSharedCurveFitResult {
+
+    private final double[] nullParams;
+    private final double[][] alternativeParams;
+    private final double rssNull;
+    private final double rssAlternative;
+    private final int points;
+    private final int df1;
+    private final int df2;
+    private final double fStatistic;
+    private final double pValue;
+
+    /**
+     * @param nullParams parameters a, b and plateau of the curve shared by all replicates
+     * @param rssNull residual sum of squares of the null model
+     * @param alternativeParams parameters a, b and plateau of the curve of each condition, indexed by condition
+     * @param rssAlternative residual sum of squares of the alternative model, summed over conditions
+     * @param points number of values fitted by both models
+     * @param df1 number of parameters of the alternative model minus those of the null model
+     * @param df2 number of values minus the number of parameters of the alternative model
+     * @param fStatistic F-statistic
+     * @param pValue p-value of the F-statistic
+     */
+    public TP1dSharedCurveFitResult(double[] nullParams, double rssNull, double[][] alternativeParams, double rssAlternative, int points, int df1, int df2, double fStatistic, double pValue) {
+        this.nullParams = nullParams;
+        this.rssNull = rssNull;
+        this.alternativeParams = alternativeParams;
+        this.rssAlternative = rssAlternative;
+        this.points = points;
+        this.df1 = df1;
+        this.df2 = df2;
+        this.fStatistic = fStatistic;
+        this.pValue = pValue;
+    }
+
+    /**
+     * @return parameters a, b and plateau of the curve shared by all replicates
+     */
+    public double[] getNullParams() {
+        return nullParams;
+    }
+
+    /**
+     * @param condition Protein1D.VEHICLE or Protein1D.TREATMENT
+     * @return parameters a, b and plateau of the curve of the condition
+     */
+    public double[] getAlternativeParams(int condition) {
+        return alternativeParams[condition];
+    }
+
+    public double getRSSNull() {
+        return rssNull;
+    }
+
+    public double getRSSAlternative() {
+        return rssAlternative;
+    }
+
+    public int getPoints() {
+        return points;
+    }
+
+    public int getDF1() {
+        return df1;
+    }
+
+    public int getDF2() {
+        return df2;
+    }
+
+    public double getFStatistic() {
+        return fStatistic;
+    }
+
+    public double getPValue() {
+        return pValue;
+    }
+
+}
@@ -0,0 +1,271 @@
+/*
+ * Copyright (C) 2020 Felix Feyertag <felix.feyertag@ndm.ox.ac.uk>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.chembiohub.tpmap.scoring;
+
+import com.chembiohub.tpmap.dstruct.Protein1D;
+import org.apache.commons.math3.special.Beta;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * TP1dSharedCurveFitter
+ *
+ * Non-parametric analysis of response curves (NPARC) style test for 1D experiments. For each protein, a null model
+ * with one TP1dDenaturationFunction curve shared by all replicates and an alternative model with one curve for the
+ * vehicle and one for the treatment replicates are fitted to the values of all replicates at once. The models are
+ * compared by an F-test,
+ *
+ *   F = ((RSS0 - RSS1) / df1) / (RSS1 / df2)
+ *
+ * with df1 = 3 parameters added by the alternative model and df2 = values - 6 parameters of the alternative model.
+ *
+ * Shared curves are fitted by TP1dBatchCurveFitter with the replicate series of a protein concatenated, so all
+ * proteins are fitted in blocks and in parallel. Each shared curve starts from the mean parameters of the replicate
+ * curves already fitted by Protein1D.updateScores, or from the estimate of the mean curve of the replicates if none
+ * of them could be fitted.
+ *
+ * @author felixfeyertag
+ */
+public class TP1dSharedCurveFitter {
+
+    private static final int PARAMETERS = 3;
+
+    private final double[] temps;
+    private final int maxIterations;
+
+    /**
+     * @param temps temperatures of the experiment
+     * @param maxIterations maximum number of iterations of each fit
+     */
+    public TP1dSharedCurveFitter(Double[] temps, int maxIterations) {
+        this.temps = new double[temps.length];
+        for(int j=0; j<temps.length; j++) {
+            this.temps[j] = temps[j];
+        }
+        this.maxIterations = maxIterations;
+    }
+
+    /**
+     * Fits null and alternative models of the given proteins, whose replicate curves must have been fitted
+     *
+     * @param proteins proteins of an experiment, all with the same replicates
+     * @param parallel fit blocks of curves in parallel
+     * @return results indexed by protein, null for proteins for which either model could not be fitted
+     */
+    public TP1dSharedCurveFitResult[] fit(List<Protein1D> proteins, boolean parallel) {
+
+        TP1dSharedCurveFitResult[] results = new TP1dSharedCurveFitResult[proteins.size()];
+        if(proteins.isEmpty()) {
+            return results;
+        }
+
+        // The null model is fitted to the vehicle followed by the treatment replicates
+        int[] vehicle = proteins.get(0).getReplicates(Protein1D.VEHICLE);
+        int[] treatment = proteins.get(0).getReplicates(Protein1D.TREATMENT);
+        if(vehicle.length == 0 || treatment.length == 0) {
+            return results;
+        }
+        int[] all = new int[vehicle.length + treatment.length];
+        System.arraycopy(vehicle, 0, all, 0, vehicle.length);
+        System.arraycopy(treatment, 0, all, vehicle.length, treatment.length);
+
+        double[][] nullCurves = curves(proteins, all);
+        double[][] vehicleCurves = curves(proteins, vehicle);
+        double[][] treatmentCurves = curves(proteins, treatment);
+
+        TP1dCurveFitResult[] nullFits = fit(proteins, all, nullCurves, parallel);
+        TP1dCurveFitResult[] vehicleFits = fit(proteins, vehicle, vehicleCurves, parallel);
+        TP1dCurveFitResult[] treatmentFits = fit(proteins, treatment, treatmentCurves, parallel);
+
+        TP1dDenaturationKernel nullKernel = new TP1dDenaturationKernel(repeat(all.length));
+        TP1dDenaturationKernel vehicleKernel = new TP1dDenaturationKernel(repeat(vehicle.length));
+        TP1dDenaturationKernel treatmentKernel = new TP1dDenaturationKernel(repeat(treatment.length));
+
+        for(int i=0; i<results.length; i++) {
+            if(nullCurves[i] == null || !isSuccess(nullFits[i]) || !isSuccess(vehicleFits[i]) || !isSuccess(treatmentFits[i])) {
+                continue;
+            }
+            double[] nullParams = nullFits[i].getParams();
+            double[][] alternativeParams = new double[2][];
+            alternativeParams[Protein1D.VEHICLE] = vehicleFits[i].getParams();
+            alternativeParams[Protein1D.TREATMENT] = treatmentFits[i].getParams();
+
+            double rssNull = nullKernel.sumOfSquares(nullParams, nullCurves[i]);
+            double rssAlternative = vehicleKernel.sumOfSquares(alternativeParams[Protein1D.VEHICLE], vehicleCurves[i])
+                    + treatmentKernel.sumOfSquares(alternativeParams[Protein1D.TREATMENT], treatmentCurves[i]);
+            int points = points(nullCurves[i]);
+            int df1 = PARAMETERS;
+            int df2 = points - 2 * PARAMETERS;
+            if(df2 <= 0) {
+                continue;
+            }
+
+            // The alternative model nests the null model, a higher RSS means its fit stopped in a worse minimum
+            double fStatistic = rssAlternative < rssNull ? ((rssNull - rssAlternative) / df1) / (rssAlternative / df2) : 0.0;
+            results[i] = new TP1dSharedCurveFitResult(nullParams, rssNull, alternativeParams, rssAlternative, points, df1, df2, fStatistic, pValue(fStatistic, df1, df2));
+        }
+
+        return results;
+    }
+
+    /**
+     * @param f F-statistic
+     * @param df1 numerator degrees of freedom
+     * @param df2 denominator degrees of freedom
+     * @return probability of an F-statistic of at least f, computed from the regularized incomplete beta function to
+     *         keep small p-values accurate
+     */
+    public static double pValue(double f, int df1, int df2) {
+        if(Double.isNaN(f)) {
+            return Double.NaN;
+        }
+        if(Double.isInfinite(f)) {
+            return 0.0;
+        }
+        return Beta.regularizedBeta(df2 / (df2 + df1 * f), 0.5 * df2, 0.5 * df1);
+    }
+
+    /**
+     * Fits one curve to the given replicates of each protein
+     */
+    private TP1dCurveFitResult[] fit(List<Protein1D> proteins, int[] replicates, double[][] curves, boolean parallel) {
+
+        // Curves without start parameters are left out, the batch fitter cannot estimate concatenated curves
+        double[][] fitCurves = new double[proteins.size()][];
+        double[][] fitStarts = new double[proteins.size()][];
+        int[] index = new int[proteins.size()];
+        int m = 0;
+        for(int i=0; i<proteins.size(); i++) {
+            double[] start = curves[i] == null ? null : start(proteins.get(i), replicates, curves[i]);
+            if(start != null) {
+                fitCurves[m] = curves[i];
+                fitStarts[m] = start;
+                index[m] = i;
+                m++;
+            }
+        }
+
+        TP1dCurveFitResult[] fits = new TP1dBatchCurveFitter(repeat(replicates.length), maxIterations).fit(Arrays.copyOf(fitCurves, m), Arrays.copyOf(fitStarts, m), parallel);
+
+        TP1dCurveFitResult[] results = new TP1dCurveFitResult[proteins.size()];
+        for(int k=0; k<m; k++) {
+            results[index[k]] = fits[k];
+        }
+        return results;
+    }
+
+    /**
+     * @return mean parameters of the fitted replicate curves, or the estimate of the mean curve if no replicate
+     *         curve was fitted
+     */
+    private double[] start(Protein1D protein, int[] replicates, double[] curve) {
+
+        double[][] curveFitParams = protein.getCurveFitParams();
+        double[] start = new double[PARAMETERS];
+        int fitted = 0;
+        for(int r : replicates) {
+            if(curveFitParams != null && r < curveFitParams.length && curveFitParams[r].length == PARAMETERS) {
+                for(int k=0; k<PARAMETERS; k++) {
+                    start[k] += curveFitParams[r][k];
+                }
+                fitted++;
+            }
+        }
+        if(fitted > 0) {
+            for(int k=0; k<PARAMETERS; k++) {
+                start[k] /= fitted;
+            }
+            return start;
+        }
+
+        int n = temps.length;
+        double[] t = new double[n];
+        double[] v = new double[n];
+        int points = 0;
+        for(int j=0; j<n; j++) {
+            double sum = 0.0;
+            int values = 0;
+            for(int r=0; r<replicates.length; r++) {
+                double value = curve[r * n + j];
+                if(!Double.isNaN(value)) {
+                    sum += value;
+                    values++;
+                }
+            }
+            if(values > 0) {
+                t[points] = temps[j];
+                v[points] = sum / values;
+                points++;
+            }
+        }
+        return TP1dCurveEstimator.estimate(t, v, points);
+    }
+
+    /**
+     * @return replicate series of each protein concatenated, NaN for missing values, or null for proteins with other
+     *         replicates
+     */
+    private double[][] curves(List<Protein1D> proteins, int[] replicates) {
+
+        int n = temps.length;
+        int replicateCount = proteins.get(0).getReplicateCount();
+        double[][] curves = new double[proteins.size()][];
+        for(int i=0; i<proteins.size(); i++) {
+            Protein1D protein = proteins.get(i);
+            List<? extends List<Double>> series = protein.getAbundancesTempRatioOL();
+            if(protein.getReplicateCount() != replicateCount || series.size() != replicateCount) {
+                continue;
+            }
+            double[] curve = new double[n * replicates.length];
+            for(int r=0; r<replicates.length; r++) {
+                List<Double> replicate = series.get(replicates[r]);
+                for(int j=0; j<n; j++) {
+                    Double value = j < replicate.size() ? replicate.get(j) : null;
+                    curve[r * n + j] = value == null ? Double.NaN : value;
+                }
+            }
+            curves[i] = curve;
+        }
+        return curves;
+    }
+
+    /**
+     * @return temperatures of the experiment repeated for the given number of replicates
+     */
+    private double[] repeat(int replicates) {
+        double[] repeated = new double[temps.length * replicates];
+        for(int r=0; r<replicates; r++) {
+            System.arraycopy(temps, 0, repeated, r * temps.length, temps.length);
+        }
+        return repeated;
+    }
+
+    private static boolean isSuccess(TP1dCurveFitResult fit) {
+        return fit != null && fit.isSuccess();
+    }
+
+    private static int points(double[] curve) {
+        int points = 0;
+        for(double value : curve) {
+            if(!Double.isNaN(value)) {
+                points++;
+            }
+        }
+        return points;
+    }
+
+}
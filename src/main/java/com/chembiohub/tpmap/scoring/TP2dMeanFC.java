@@ -27,8 +27,11 @@ import com.chembiohub.tpmap.dstruct.Protein2D;
 public class TP2dMeanFC {
         
     public static Double TPP2dMeanFC(Protein2D prot) {
+        return TPP2dMeanFC(prot.getAbundancesConcRatioNormalised());
+    }
+
+    public static Double TPP2dMeanFC(Double[][] abundances) {
         
-        Double[][] abundances = prot.getAbundancesConcRatioNormalised();
         Double fc = 0.0;
         
         int counter = 0;
@@ -16,27 +16,29 @@
 package com.chembiohub.tpmap.scoring;
 
 import com.chembiohub.tpmap.dstruct.Protein2D;
-import javafx.collections.FXCollections;
-import javafx.collections.ObservableList;
+
+import java.util.List;
 
 /**
  * TPMeanDifference
  *
- * Calculates the mean difference between a selected protein and all other proteins in a list.
+ * Calculates the mean difference between a selected protein and all other proteins in a list. The distances are
+ * returned instead of being added to the proteins, so that they can be calculated in the background.
  *
  * @author felixfeyertag
  */
 public class TPMeanDifference {
     
-    public static void TPPMeanDifference(ObservableList<Protein2D> proteins, Protein2D selectedProtein)
+    public static double[] TPPMeanDifference(List<Protein2D> proteins, Protein2D selectedProtein)
             throws TPPNoneSelectedException {
-        ObservableList<Double> distances = FXCollections.observableArrayList();
+        double[] distances = new double[proteins.size()];
 
         if(null==selectedProtein) {
             throw new TPPNoneSelectedException("No selected proteins");
         }
         
-        proteins.forEach((p) -> {
+        for(int k=0;k<distances.length;k++) {
+            Protein2D p = proteins.get(k);
             double dist = 0.0;
             int counter = 0;
             for(int i=0;i<p.getAbundancesConcRatioNormalised().length;i++) {
@@ -55,8 +57,10 @@ public class TPMeanDifference {
                     }
                 }
             }
-            p.addMeanDifference(dist/counter);
-        });
+            distances[k] = dist/counter;
+        }
+
+        return distances;
     }
 
     /*
@@ -15,9 +15,13 @@
  */
 package com.chembiohub.tpmap.ui;
 
+import java.io.File;
+import java.io.IOException;
 import java.text.DecimalFormat;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.atomic.AtomicReference;
-import java.util.regex.PatternSyntaxException;
+import java.util.function.Function;
 
 import com.chembiohub.tpmap.analysis.analysispane.*;
 import com.chembiohub.tpmap.dstruct.Protein1D;
@@ -42,8 +46,11 @@ import javafx.scene.text.FontWeight;
 import javafx.stage.Stage;
 import javafx.util.Callback;
 import com.chembiohub.tpmap.dstruct.Proteome;
-import org.jfree.chart.JFreeChart;
-import org.jfree.chart.fx.ChartViewer;
+import com.chembiohub.tpmap.dstruct.io.TPMeltCurveRenderer;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.paint.Color;
+import javafx.stage.FileChooser;
 
 
 /**
@@ -109,25 +116,7 @@ public class TP1DUserInterface extends TPUserInterface {
 
         filterTextField = new TextField();
 
-        proteinFilteredList.setPredicate(p -> true);
-
-        filterTextField.textProperty().addListener((observable, oldVal, newVal) -> proteinFilteredList.setPredicate(protein -> {
-            if(newVal == null || newVal.isEmpty()) {
-                return true;
-            }
-
-            String lcFilter = ".*" + newVal.toLowerCase() + ".*";
-
-            try {
-                return protein.getDescription() .toLowerCase().matches(lcFilter) ||
-                       protein.getAccession()   .toLowerCase().matches(lcFilter) ||
-                       protein.getGeneName()    .toLowerCase().matches(lcFilter) ||
-                       protein.getOrganismName().toLowerCase().matches(lcFilter);
-            } catch(PatternSyntaxException e) {
-                return false;
-            }
-
-        }));
+        new TPTableFilter<>(tppExp, proteinFilteredList, filterTextField);
 
         proteinSortedFilteredList.comparatorProperty().bind(table.comparatorProperty());
 
@@ -149,34 +138,44 @@ public class TP1DUserInterface extends TPUserInterface {
         //filter --end
 
         //checkbox column --start
-        TableColumn selectColumn = new TableColumn();
+        TableColumn<Protein1D,Boolean> selectColumn = new TableColumn<>();
         selectColumn.setMinWidth(30);
         selectColumn.setMaxWidth(30);
-        selectColumn.setCellValueFactory(new PropertyValueFactory<Protein1D,Boolean>("selected"));
+        selectColumn.setCellValueFactory(cd -> tppExp.getSelectionModel().selectedProperty(cd.getValue()));
 
         selectColumn.setCellFactory(column -> new CheckBoxTableCell<Protein1D,Boolean>());
 
         CheckBox headerCheckBox = new CheckBox();
         headerCheckBox.setUserData(selectColumn);
-        headerCheckBox.setOnAction((ActionEvent e) -> {
-            CheckBox cb = (CheckBox)e.getSource();
-            TableColumn col = (TableColumn) cb.getUserData();
-            if(cb.isSelected()){
-                int count = 0;
-                for (Protein1D p : table.getSelectionModel().getSelectedItems()) {
-                    if(!p.getSelected()) count++;
-                    p.setSelected(true);
+        headerCheckBox.setOnAction((ActionEvent event) -> {
+
+            CheckBox cb = (CheckBox)event.getSource();
+            List<Protein1D> items = new ArrayList<>(table.getSelectionModel().getSelectedItems());
+
+            if(items.isEmpty()) {
+                return;
+            }
+
+            // toggle back if the checked rows are already all (de)selected
+            if(cb.isSelected()) {
+                if(items.stream().allMatch(Protein1D::getSelected)) {
+                    headerCheckBox.fire();
                 }
-                if(count==0) headerCheckBox.fire();
-            } else {
-                int count = 0;
-                for(Protein1D p : table.getSelectionModel().getSelectedItems()) {
-                    if(p.getSelected()) count++;
-                    p.setSelected(false);
+                else {
+                    tppExp.getSelectionModel().setSelected(items, true);
                 }
-                if(count==0) headerCheckBox.fire();
             }
+            else {
+                if(items.stream().noneMatch(Protein1D::getSelected)) {
+                    headerCheckBox.fire();
+                }
+                else {
+                    tppExp.getSelectionModel().setSelected(items, false);
+                }
+            }
+
         });
+
         selectColumn.setGraphic(headerCheckBox);
 
         TableColumn<Protein1D,StringProperty> accessionCol = new TableColumn<>("Accession");
@@ -189,95 +188,20 @@ public class TP1DUserInterface extends TPUserInterface {
         descriptionCol.setCellValueFactory(new PropertyValueFactory("description"));
         descriptionCol.setPrefWidth(400);
 
-        TableColumn<Protein1D,Double> tmv1Col = new TableColumn<>("TM V1");
-        tmv1Col.setCellValueFactory(new PropertyValueFactory("tmv1"));
-        tmv1Col.setCellFactory(tc -> new TableCell<Protein1D,Double>() {
-                    @Override
-                    protected void updateItem(Double value, boolean empty) {
-                        super.updateItem(value, empty);
-                        if (empty || !Double.isFinite(value)) {
-                            setText("");
-                        } else {
-                            DecimalFormat format = new DecimalFormat("0.0000");
-                            setText(format.format(value));
-                        }
-                    }
-                });
-
-        TableColumn<Protein1D,Double> tmv2Col = new TableColumn<>("TM V2");
-        tmv2Col.setCellValueFactory(new PropertyValueFactory("tmv2"));
-        tmv2Col.setCellFactory(tc -> new TableCell<Protein1D,Double>() {
-            @Override
-            protected void updateItem(Double value, boolean empty) {
-                super.updateItem(value, empty);
-                if (empty || !Double.isFinite(value)) {
-                    setText("");
-                } else {
-                    DecimalFormat format = new DecimalFormat("0.0000");
-                    setText(format.format(value));
-                }
-            }
-        });
-
-        TableColumn<Protein1D,Double> tmt1Col = new TableColumn<>("TM T1");
-        tmt1Col.setCellValueFactory(new PropertyValueFactory("tmt1"));
-        tmt1Col.setCellFactory(tc -> new TableCell<Protein1D,Double>() {
-            @Override
-            protected void updateItem(Double value, boolean empty) {
-                super.updateItem(value, empty);
-                if (empty || !Double.isFinite(value)) {
-                    setText("");
-                } else {
-                    DecimalFormat format = new DecimalFormat("0.0000");
-                    setText(format.format(value));
-                }
-            }
-        });
-
-        TableColumn<Protein1D,Double> tmt2Col = new TableColumn<>("TM T2");
-        tmt2Col.setCellValueFactory(new PropertyValueFactory("tmt2"));
-        tmt2Col.setCellFactory(tc -> new TableCell<Protein1D,Double>() {
-            @Override
-            protected void updateItem(Double value, boolean empty) {
-                super.updateItem(value, empty);
-                if (empty || !Double.isFinite(value)) {
-                    setText("");
-                } else {
-                    DecimalFormat format = new DecimalFormat("0.0000");
-                    setText(format.format(value));
-                }
-            }
-        });
-
-        TableColumn<Protein1D,Double> tmvt1Col = new TableColumn<>("TM shift (V1T1)" );
-        tmvt1Col.setCellValueFactory(new PropertyValueFactory("tmVT1"));
-        tmvt1Col.setCellFactory(tc -> new TableCell<Protein1D,Double>() {
-            @Override
-            protected void updateItem(Double value, boolean empty) {
-                super.updateItem(value, empty);
-                if (empty || !Double.isFinite(value)) {
-                    setText("");
-                } else {
-                    DecimalFormat format = new DecimalFormat("0.0000");
-                    setText(format.format(value));
-                }
-            }
-        });
-
-        TableColumn<Protein1D,Double> tmvt2Col = new TableColumn<>("TM shift (V2T2)");
-        tmvt2Col.setCellValueFactory(new PropertyValueFactory("tmVT2"));
-        tmvt2Col.setCellFactory(tc -> new TableCell<Protein1D,Double>() {
-            @Override
-            protected void updateItem(Double value, boolean empty) {
-                super.updateItem(value, empty);
-                if (empty || !Double.isFinite(value)) {
-                    setText("");
-                } else {
-                    DecimalFormat format = new DecimalFormat("0.0000");
-                    setText(format.format(value));
-                }
-            }
-        });
+        // Tm, Tm shift and RMSE columns for each vehicle and treatment replicate
+        List<String> repLabels = new ArrayList<>(tppExp.getConcLabels());
+        List<TableColumn<Protein1D,Double>> tmCols = new ArrayList<>();
+        List<TableColumn<Protein1D,Double>> tmShiftCols = new ArrayList<>();
+        List<TableColumn<Protein1D,Double>> rmseCols = new ArrayList<>();
+        for(int replicate : Protein1D.getReplicateOrder(repLabels)) {
+            tmCols.add(numberColumn("TM " + repLabels.get(replicate), p -> p.getTm(replicate)));
+            rmseCols.add(numberColumn("RMSE " + repLabels.get(replicate), p -> p.getRmse(replicate)));
+        }
+        List<String> tmShiftLabels = Protein1D.getTmShiftLabels(repLabels);
+        for(int i=0; i<tmShiftLabels.size(); i++) {
+            int pair = i;
+            tmShiftCols.add(numberColumn("TM shift (" + tmShiftLabels.get(pair) + ")", p -> p.getTmShift(pair)));
+        }
 
         TableColumn<Protein1D,Double> tmvvCol = new TableColumn<>("TM shift (V1V2)");
         tmvvCol.setCellValueFactory(new PropertyValueFactory("tmVV"));
@@ -309,66 +233,6 @@ public class TP1DUserInterface extends TPUserInterface {
             }
         });
 
-        TableColumn<Protein1D,Double> rmsev1Col = new TableColumn<>("RMSE V1");
-        rmsev1Col.setCellValueFactory(new PropertyValueFactory("rmsev1"));
-        rmsev1Col.setCellFactory(tc -> new TableCell<Protein1D,Double>() {
-            @Override
-            protected void updateItem(Double value, boolean empty) {
-                super.updateItem(value,empty);
-                if(empty || !Double.isFinite(value)) {
-                    setText("");
-                } else {
-                    DecimalFormat format = new DecimalFormat("0.0000");
-                    setText(format.format(value));
-                }
-            }
-        });
-
-        TableColumn<Protein1D,Double> rmsev2Col = new TableColumn<>("RMSE V2");
-        rmsev2Col.setCellValueFactory(new PropertyValueFactory("rmsev2"));
-        rmsev2Col.setCellFactory(tc -> new TableCell<Protein1D,Double>() {
-            @Override
-            protected void updateItem(Double value, boolean empty) {
-                super.updateItem(value,empty);
-                if(empty||!Double.isFinite(value)) {
-                    setText("");
-                } else {
-                    DecimalFormat format = new DecimalFormat("0.0000");
-                    setText(format.format(value));
-                }
-            }
-        });
-
-        TableColumn<Protein1D,Double> rmset1Col = new TableColumn<>("RMSE T1");
-        rmset1Col.setCellValueFactory(new PropertyValueFactory("rmset1"));
-        rmset1Col.setCellFactory(tc -> new TableCell<Protein1D,Double>() {
-            @Override
-            protected void updateItem(Double value, boolean empty) {
-                super.updateItem(value,empty);
-                if(empty||!Double.isFinite(value)) {
-                    setText("");
-                } else {
-                    DecimalFormat format = new DecimalFormat("0.0000");
-                    setText(format.format(value));
-                }
-            }
-        });
-
-        TableColumn<Protein1D,Double> rmset2Col = new TableColumn<>("RMSE T2");
-        rmset2Col.setCellValueFactory(new PropertyValueFactory("rmset2"));
-        rmset2Col.setCellFactory(tc -> new TableCell<Protein1D,Double>() {
-            @Override
-            protected void updateItem(Double value, boolean empty) {
-                super.updateItem(value,empty);
-                if(empty||!Double.isFinite(value)) {
-                    setText("");
-                } else {
-                    DecimalFormat format = new DecimalFormat("0.0000");
-                    setText(format.format(value));
-                }
-            }
-        });
-
         /*TableColumn<Protein1D,Double> rmsev1meanCol = new TableColumn<>("RMSE V1 mean");
         rmsev1meanCol.setCellValueFactory(new PropertyValueFactory("rmsevM1"));
         rmsev1meanCol.setCellFactory(tc -> new TableCell<Protein1D,Double>() {
@@ -470,7 +334,16 @@ public class TP1DUserInterface extends TPUserInterface {
         indexColumn.setSortable(false);
         indexColumn.setCellValueFactory(column -> new ReadOnlyObjectWrapper<>(table.getItems().indexOf(column.getValue())+1));
 
-        table.getColumns().addAll(indexColumn,selectColumn,accessionCol,organismCol,descriptionCol, tmv1Col, tmv2Col, tmt1Col, tmt2Col, tmvt1Col, tmvt2Col, tmvvCol, meanTMCol, rmsev1Col, rmsev2Col, rmset1Col, rmset2Col, rmseMeanCol, curveShiftSameDirectionCol, detlaVTgtDeltaVVCol, scoreCol);
+        table.getColumns().addAll(indexColumn,selectColumn,accessionCol,organismCol,descriptionCol);
+        table.getColumns().addAll(tmCols);
+        table.getColumns().addAll(tmShiftCols);
+        table.getColumns().addAll(tmvvCol, meanTMCol);
+        table.getColumns().addAll(rmseCols);
+        table.getColumns().addAll(rmseMeanCol, curveShiftSameDirectionCol, detlaVTgtDeltaVVCol, scoreCol);
+        if(tppExp.getSharedCurveFit()) {
+            table.getColumns().add(numberColumn("Shared Fit F", p -> p.getFStatistic()));
+            table.getColumns().add(numberColumn("Shared Fit p-value", p -> p.getFPValue(), "0.00E0"));
+        }
         table.setEditable(false);
 
         final HBox abundanceBox = new HBox();
@@ -482,6 +355,14 @@ public class TP1DUserInterface extends TPUserInterface {
 
         final HBox lineChartBox = new HBox();
 
+        final Canvas meltCurveCanvas = new Canvas(600, 400);
+        final AtomicReference<TPMeltCurveRenderer> meltCurveRenderer = new AtomicReference<>();
+        meltCurveCanvas.setOnContextMenuRequested(event -> {
+            if(meltCurveRenderer.get() != null) {
+                meltCurveContextMenu(stage, meltCurveRenderer.get()).show(meltCurveCanvas, event.getScreenX(), event.getScreenY());
+            }
+        });
+
         abundanceBox.getChildren().add(lineChartBox);
 
         final KeyCodeCombination keyCodeCopy = new KeyCodeCombination(KeyCode.C, KeyCombination.CONTROL_ANY);
@@ -492,12 +373,9 @@ public class TP1DUserInterface extends TPUserInterface {
             }
             if(event.getCode().equals(KeyCode.SPACE)) {
                 headerCheckBox.fire();
-                tppExp.updateProteinCount();
             }
         });
 
-        table.setOnMouseClicked(event -> tppExp.updateProteinCount());
-
         table.getSelectionModel().selectedItemProperty().addListener((ObservableValue<? extends Protein1D> observable, Protein1D unselectedProtein, Protein1D selectedProtein) -> {
 
             // this fixes a JavaFX bug causing a NPE every time the abundance table gets updated 100 times
@@ -538,13 +416,15 @@ public class TP1DUserInterface extends TPUserInterface {
 
                     // Melting curves
 
-                    JFreeChart chart = selectedProtein.createChart(tppExp.getTempLabels(), tppExp.getConcLabels());
+                    TPMeltCurveRenderer renderer = TPMeltCurveRenderer.forProtein(selectedProtein, tppExp.getTempLabels(), tppExp.getConcLabels());
+                    meltCurveRenderer.set(renderer);
 
-                    ChartViewer viewer = new ChartViewer(chart);
-                    viewer.setPrefHeight(400);
-                    viewer.setPrefWidth(600);
+                    GraphicsContext gc = meltCurveCanvas.getGraphicsContext2D();
+                    gc.setFill(Color.WHITE);
+                    gc.fillRect(0, 0, meltCurveCanvas.getWidth(), meltCurveCanvas.getHeight());
+                    renderer.draw(new TPMeltCurveRenderer.CanvasSurface(gc), meltCurveCanvas.getWidth(), meltCurveCanvas.getHeight());
 
-                    lineChartBox.getChildren().add(viewer);
+                    lineChartBox.getChildren().add(meltCurveCanvas);
 
 
                 } catch (NullPointerException e) {
@@ -564,6 +444,59 @@ public class TP1DUserInterface extends TPUserInterface {
         centerPane.getChildren().add(centerBorderPane);
     }
 
+    private static TableColumn<Protein1D,Double> numberColumn(String name, Function<Protein1D,Double> value) {
+        return numberColumn(name, value, "0.0000");
+    }
+
+    private static TableColumn<Protein1D,Double> numberColumn(String name, Function<Protein1D,Double> value, String pattern) {
+        TableColumn<Protein1D,Double> column = new TableColumn<>(name);
+        column.setCellValueFactory(p -> new ReadOnlyObjectWrapper<>(value.apply(p.getValue())));
+        column.setCellFactory(tc -> new TableCell<Protein1D,Double>() {
+            @Override
+            protected void updateItem(Double value, boolean empty) {
+                super.updateItem(value, empty);
+                if (empty || !Double.isFinite(value)) {
+                    setText("");
+                } else {
+                    DecimalFormat format = new DecimalFormat(pattern);
+                    setText(format.format(value));
+                }
+            }
+        });
+        return column;
+    }
+
+    private ContextMenu meltCurveContextMenu(Stage stage, TPMeltCurveRenderer renderer) {
+
+        MenuItem saveItem = new MenuItem("Save As...");
+        saveItem.setOnAction(evt -> {
+            FileChooser fc = new FileChooser();
+            FileChooser.ExtensionFilter fcefsvg = new FileChooser.ExtensionFilter("Scalable Vector Graphics (SVG)", "*.svg");
+            FileChooser.ExtensionFilter fcefpdf = new FileChooser.ExtensionFilter("Portable Document Format (PDF)", "*.pdf");
+            fc.getExtensionFilters().addAll(fcefsvg, fcefpdf);
+            File f = fc.showSaveDialog(stage);
+            if(f != null) {
+                try {
+                    if(f.getName().toLowerCase().endsWith(".pdf")) {
+                        renderer.writePdf(f);
+                    }
+                    else {
+                        renderer.writeSvg(f);
+                    }
+                } catch (IOException ex) {
+                    Alert alert = new Alert(Alert.AlertType.ERROR);
+                    alert.initOwner(stage);
+                    alert.setTitle("File IO Exception");
+                    alert.setHeaderText("File IO Exception");
+                    alert.setContentText("Could not write file: " + f.getPath());
+                    alert.showAndWait();
+                }
+            }
+        });
+
+        return new ContextMenu(saveItem);
+    }
+
     private void setLeftPane(Stage stage, Proteome tppExp) {
 
         Label fileNameLabel1 = new Label("File Name");
@@ -597,13 +530,14 @@ public class TP1DUserInterface extends TPUserInterface {
         TPStringFunctionalEnrichmentPane stringFunctionalEnrichmentPane = new TPStringFunctionalEnrichmentPane(tppExp);
         //TPUniProtPane uniProtPane = new TPUniProtPane(table);
         TPCorumAnalysisPane corumAnalysisPane = new TPCorumAnalysisPane(tppExp,filterTextField);
+        TPSetEnrichmentPane setEnrichmentPane = new TPSetEnrichmentPane(tppExp);
         //TPMeanDifferencePane euclideanDistancePane = new TPMeanDifferencePane(tppExp,table,fcPane);
         //TPClusterPane clusterPane = new TPClusterPane(tppExp);
         //TPBootstrapPane bsPane = new TPBootstrapPane(tppExp,fcPane);
         TPExportPane1D exportPane = new TPExportPane1D(tppExp,stage,table);
 
         rightPane.getChildren().addAll(tmPane, new Separator(), new Separator(), stringNetworkPane,
-                stringFunctionalEnrichmentPane, corumAnalysisPane, new Separator(), new Separator(), exportPane);
+                stringFunctionalEnrichmentPane, corumAnalysisPane, setEnrichmentPane, new Separator(), new Separator(), exportPane);
     }
 
     private TableCell<ObservableList<Double>, Double> call(TableColumn<ObservableList<Double>, Double> c) {
@@ -620,14 +554,15 @@ public class TP1DUserInterface extends TPUserInterface {
                     setText("");
                 }
                 if (!empty && Double.isFinite(item)) {
-                    int r = (int) (tppExp.getColour(item).getRed() * 255.0);
-                    int g = (int) (tppExp.getColour(item).getGreen() * 255.0);
-                    int b = (int) (tppExp.getColour(item).getBlue() * 255.0);
+                    int rgb = tppExp.getColourRGB(item);
+                    int r = (rgb >> 16) & 0xFF;
+                    int g = (rgb >> 8) & 0xFF;
+                    int b = rgb & 0xFF;
                     String col = "rgb(" + r + "," + g + "," + b + ")";
                     this.setStyle("-fx-background-color: " + col);
-                    int r2 = (int) (255.00 - tppExp.getColour(item).getRed() * 255.00);
-                    int g2 = (int) (255.00 - tppExp.getColour(item).getGreen() * 255.00);
-                    int b2 = (int) (255.00 - tppExp.getColour(item).getBlue() * 255.00);
+                    int r2 = 255 - r;
+                    int g2 = 255 - g;
+                    int b2 = 255 - b;
                     String col2 = "rgb(" + r2 + "," + g2 + "," + b2 + ")";
                     this.setStyle("-fx-text-fill: " + col2);
                 } else {
@@ -18,8 +18,9 @@ package com.chembiohub.tpmap.ui;
 import com.chembiohub.tpmap.analysis.analysispane.*;
 
 import java.text.DecimalFormat;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.atomic.AtomicReference;
-import java.util.regex.PatternSyntaxException;
 
 import javafx.beans.property.IntegerProperty;
 import javafx.beans.property.ReadOnlyObjectWrapper;
@@ -109,25 +110,7 @@ public class TP2DUserInterface extends TPUserInterface {
 
         filterTextField = new TextField();
 
-        proteinFilteredList.setPredicate((Protein2D p) -> true);
-
-        filterTextField.textProperty().addListener((observable, oldValue, newValue) -> proteinFilteredList.setPredicate(protein -> {
-            if (newValue == null || newValue.isEmpty()) {
-                return true;
-            }
-
-            String lowerCaseFilter = ".*" + newValue.toLowerCase() + ".*";
-
-            try {
-                return protein.getDescription().toLowerCase().matches(lowerCaseFilter) ||
-                        protein.getAccession().toLowerCase().matches(lowerCaseFilter) ||
-                        protein.getGeneName().toLowerCase().matches(lowerCaseFilter) ||
-                        protein.getOrganismName().toLowerCase().matches(lowerCaseFilter);
-            }
-            catch(PatternSyntaxException e) {
-                return false;
-            }
-        }));
+        new TPTableFilter<>(tppExp, proteinFilteredList, filterTextField);
 
         proteinSortedFilteredList.comparatorProperty().bind(table.comparatorProperty());
         table.setItems(proteinSortedFilteredList);
@@ -149,10 +132,10 @@ public class TP2DUserInterface extends TPUserInterface {
 
         //Checkbox column --start
 
-        TableColumn selectColumn = new TableColumn();
+        TableColumn<Protein2D,Boolean> selectColumn = new TableColumn<>();
         selectColumn.setMinWidth(30);
         selectColumn.setMaxWidth(30);
-        selectColumn.setCellValueFactory(new PropertyValueFactory<Protein2D,Boolean>("selected"));
+        selectColumn.setCellValueFactory(cd -> tppExp.getSelectionModel().selectedProperty(cd.getValue()));
 
 
         selectColumn.setCellFactory(column -> new CheckBoxTableCell<Protein2D,Boolean>());
@@ -163,29 +146,29 @@ public class TP2DUserInterface extends TPUserInterface {
         headerCheckBox.setOnAction((ActionEvent event) -> {
 
             CheckBox cb = (CheckBox)event.getSource();
-            TableColumn column = (TableColumn) cb.getUserData();
-
-            if (cb.isSelected()) {
-                int count = 0;
-                for(Protein2D p : table.getSelectionModel().getSelectedItems()) {
-                    if(!p.getSelected()) count++;
-                    p.setSelected(true);
-                }
-                if(count==0) headerCheckBox.fire();
+            List<Protein2D> items = new ArrayList<>(table.getSelectionModel().getSelectedItems());
 
-            } else {
+            if(items.isEmpty()) {
+                return;
+            }
 
-                int count=0;
-                for(Protein2D p : table.getSelectionModel().getSelectedItems()) {
-                    if(p.getSelected()) count++;
-                    p.setSelected(false);
+            // toggle back if the checked rows are already all (de)selected
+            if(cb.isSelected()) {
+                if(items.stream().allMatch(Protein2D::getSelected)) {
+                    headerCheckBox.fire();
                 }
-                if(count==0) {
+                else {
+                    tppExp.getSelectionModel().setSelected(items, true);
+                }
+            }
+            else {
+                if(items.stream().noneMatch(Protein2D::getSelected)) {
                     headerCheckBox.fire();
                 }
-
+                else {
+                    tppExp.getSelectionModel().setSelected(items, false);
+                }
             }
-            tppExp.updateProteinCount();
 
         });
 
@@ -437,10 +420,8 @@ public class TP2DUserInterface extends TPUserInterface {
             }
             if(event.getCode().equals(KeyCode.SPACE)) {
                headerCheckBox.fire();
-               tppExp.updateProteinCount();
             }
         });
-        table.setOnMouseClicked(event -> tppExp.updateProteinCount());
         
 
 
@@ -612,14 +593,15 @@ public class TP2DUserInterface extends TPUserInterface {
                                     setText("");
                                 }
                                 if(!empty && Double.isFinite(item)) {
-                                    int r = (int)(tppExp.getColour(item).getRed() * 255.00);
-                                    int g = (int)(tppExp.getColour(item).getGreen() * 255.00);
-                                    int b = (int)(tppExp.getColour(item).getBlue() * 255.00);
+                                    int rgb = tppExp.getColourRGB(item);
+                                    int r = (rgb >> 16) & 0xFF;
+                                    int g = (rgb >> 8) & 0xFF;
+                                    int b = rgb & 0xFF;
                                     String col = "rgb(" + r + "," + g + "," + b + ")";
                                     this.setStyle("-fx-background-color: " + col);
-                                    int r2 = (int)(255.00 - tppExp.getColour(item).getRed() * 255.00);
-                                    int g2 = (int)(255.00 - tppExp.getColour(item).getGreen() * 255.00);
-                                    int b2 = (int)(255.00 - tppExp.getColour(item).getBlue() * 255.00);
+                                    int r2 = 255 - r;
+                                    int g2 = 255 - g;
+                                    int b2 = 255 - b;
                                     String col2 = "rgb(" + r2 + "," + g2 + "," + b2 + ")";
                                     this.setStyle("-fx-text-fill: " + col2 + "; -fx-background-color: " + col);
                                 }
@@ -642,10 +624,19 @@ public class TP2DUserInterface extends TPUserInterface {
         //Abundance ratio table --end
 
 
+        TPHeatmapOverview heatmapOverview = new TPHeatmapOverview(tppExp, table);
+
+        TabPane centerTabPane = new TabPane();
+        centerTabPane.setTabClosingPolicy(TabPane.TabClosingPolicy.UNAVAILABLE);
+        centerTabPane.getTabs().add(new Tab("Proteins", table));
+        Tab heatmapOverviewTab = new Tab("Heatmap Overview", heatmapOverview);
+        heatmapOverviewTab.setOnSelectionChanged(event -> heatmapOverview.requestRedraw());
+        centerTabPane.getTabs().add(heatmapOverviewTab);
+
         BorderPane borderPane = new BorderPane();
 
         borderPane.setTop(filterHBox);
-        borderPane.setCenter(table);
+        borderPane.setCenter(centerTabPane);
         borderPane.setBottom(abundanceBox);
 
         centerPane.getChildren().add(borderPane);
@@ -688,6 +679,7 @@ public class TP2DUserInterface extends TPUserInterface {
         TPStringFunctionalEnrichmentPane stringFunctionalEnrichmentPane = new TPStringFunctionalEnrichmentPane(tppExp);
         TPUniProtPane uniProtPane = new TPUniProtPane(table, tppExp);
         TPCorumAnalysisPane corumAnalysisPane = new TPCorumAnalysisPane(tppExp,filterTextField);
+        TPSetEnrichmentPane setEnrichmentPane = new TPSetEnrichmentPane(tppExp);
         TPMeanDifferencePane meanDifferencePane = new TPMeanDifferencePane(tppExp,table,fcPane);
         /* TPClusterPane clusterPane = new TPClusterPane(tppExp); */
         /* TPBootstrapPane bsPane = new TPBootstrapPane(tppExp,fcPane); */
@@ -701,6 +693,7 @@ public class TP2DUserInterface extends TPUserInterface {
         rightPane.getChildren().add(stringFunctionalEnrichmentPane);
         rightPane.getChildren().add(uniProtPane);
         rightPane.getChildren().add(corumAnalysisPane);
+        rightPane.getChildren().add(setEnrichmentPane);
         rightPane.getChildren().add(meanDifferencePane);
         //rightPane.getChildren().add(clusterPane);
         rightPane.getChildren().add(new Separator());
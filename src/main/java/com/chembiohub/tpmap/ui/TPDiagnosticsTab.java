@@ -0,0 +1,196 @@
+/*
+ * Copyright (C) 2020 Felix Feyertag <felix.feyertag@ndm.ox.ac.uk>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.chembiohub.tpmap.ui;
+
+import com.chembiohub.tpmap.diagnostics.TPCurveFitStatistics;
+import com.chembiohub.tpmap.diagnostics.TPDiagnostics;
+import com.chembiohub.tpmap.diagnostics.TPStageStatistics;
+import com.chembiohub.tpmap.scoring.TP1dCurveFitResult;
+import javafx.animation.KeyFrame;
+import javafx.animation.Timeline;
+import javafx.beans.property.ReadOnlyObjectWrapper;
+import javafx.beans.property.ReadOnlyStringWrapper;
+import javafx.geometry.Insets;
+import javafx.scene.control.Alert;
+import javafx.scene.control.Button;
+import javafx.scene.control.Label;
+import javafx.scene.control.Tab;
+import javafx.scene.control.TableCell;
+import javafx.scene.control.TableColumn;
+import javafx.scene.control.TableView;
+import javafx.scene.layout.BorderPane;
+import javafx.scene.layout.HBox;
+import javafx.scene.layout.VBox;
+import javafx.stage.FileChooser;
+import javafx.stage.Stage;
+import javafx.util.Duration;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Locale;
+import java.util.function.Function;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * TPDiagnosticsTab
+ *
+ * Shows the time, CPU time, allocations and throughput of each import and analysis stage recorded by TPDiagnostics.
+ * Below the table, the telemetry of 1D curve fits is summarised, with the number of fits by attempts made and by
+ * attempts that improved the fit. The table is refreshed every second while the tab is selected, the statistics can
+ * be reset and exported as JSON.
+ *
+ * @author felixfeyertag
+ */
+public class TPDiagnosticsTab {
+
+    private final Tab diagnosticsTab;
+    private final TableView<TPStageStatistics> stageTable;
+    private final Label curveFitLabel;
+
+    public TPDiagnosticsTab(Stage stage) {
+
+        diagnosticsTab = new Tab("Diagnostics");
+
+        stageTable = new TableView<>();
+        stageTable.setColumnResizePolicy(TableView.CONSTRAINED_RESIZE_POLICY_FLEX_LAST_COLUMN);
+
+        TableColumn<TPStageStatistics,String> stageColumn = new TableColumn<>("Stage");
+        stageColumn.setCellValueFactory(p -> new ReadOnlyStringWrapper(p.getValue().getStage()));
+
+        stageTable.getColumns().add(stageColumn);
+        stageTable.getColumns().add(numberColumn("Calls", s -> (double) s.getCalls(), "%.0f"));
+        stageTable.getColumns().add(numberColumn("Items", s -> (double) s.getItems(), "%.0f"));
+        stageTable.getColumns().add(numberColumn("Wall Time (ms)", s -> s.getWallTime() / 1e6, "%.1f"));
+        stageTable.getColumns().add(numberColumn("CPU Time (ms)", s -> s.getCpuTime() / 1e6, "%.1f"));
+        stageTable.getColumns().add(numberColumn("Allocated (MB)", s -> s.getAllocatedBytes() / 1048576.0, "%.1f"));
+        stageTable.getColumns().add(numberColumn("Items/s", TPStageStatistics::getThroughput, "%.1f"));
+        stageTable.setPlaceholder(new Label("No stages recorded yet, import a dataset to record import and analysis times."));
+
+        Button refreshButton = new Button("Refresh");
+        refreshButton.setPrefWidth(200);
+        refreshButton.setOnAction(event -> refresh());
+
+        Button resetButton = new Button("Reset");
+        resetButton.setPrefWidth(200);
+        resetButton.setOnAction(event -> {
+            TPDiagnostics.reset();
+            refresh();
+        });
+
+        Button exportButton = new Button("Export JSON");
+        exportButton.setPrefWidth(200);
+        exportButton.setOnAction(event -> {
+            FileChooser fileChooser = new FileChooser();
+            fileChooser.setTitle("Export Diagnostics");
+            fileChooser.setInitialFileName("tpmap-diagnostics.json");
+            fileChooser.getExtensionFilters().add(new FileChooser.ExtensionFilter("JSON", "*.json"));
+            File file = fileChooser.showSaveDialog(stage);
+            if(file != null) {
+                try {
+                    TPDiagnostics.writeJson(file);
+                }
+                catch (IOException e) {
+                    Logger.getLogger(TPDiagnosticsTab.class.getName()).log(Level.SEVERE, null, e);
+                    Alert alert = new Alert(Alert.AlertType.ERROR);
+                    alert.initOwner(stage);
+                    alert.setHeaderText("Unable to export diagnostics");
+                    alert.setContentText(e.getMessage());
+                    alert.show();
+                }
+            }
+        });
+
+        HBox buttonBox = new HBox(10, refreshButton, resetButton, exportButton);
+        buttonBox.setPadding(new Insets(10));
+
+        curveFitLabel = new Label();
+        curveFitLabel.setWrapText(true);
+        curveFitLabel.setPadding(new Insets(10, 10, 0, 10));
+
+        BorderPane pane = new BorderPane();
+        pane.setCenter(stageTable);
+        pane.setBottom(new VBox(curveFitLabel, buttonBox));
+        diagnosticsTab.setContent(pane);
+
+        Timeline timeline = new Timeline(new KeyFrame(Duration.seconds(1), event -> refresh()));
+        timeline.setCycleCount(Timeline.INDEFINITE);
+        diagnosticsTab.selectedProperty().addListener((observable, oldValue, newValue) -> {
+            if(newValue) {
+                refresh();
+                timeline.play();
+            }
+            else {
+                timeline.stop();
+            }
+        });
+        diagnosticsTab.setOnClosed(event -> timeline.stop());
+
+        refresh();
+    }
+
+    private void refresh() {
+        stageTable.getItems().setAll(TPDiagnostics.getStages());
+        stageTable.refresh();
+        curveFitLabel.setText(curveFitSummary(TPDiagnostics.getCurveFits()));
+    }
+
+    private static String curveFitSummary(TPCurveFitStatistics curveFits) {
+        long fits = curveFits.getFits();
+        if(fits == 0) {
+            return "No curve fits recorded yet.";
+        }
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format(Locale.ROOT, "Curve fits: %d (%d successful), %.2f attempts, %.2f improving attempts and %.0f iterations per fit",
+                fits, curveFits.getSuccesses(), (double) curveFits.getAttempts() / fits, (double) curveFits.getImprovements() / fits, (double) curveFits.getIterations() / fits));
+        sb.append("\nFailed attempts:");
+        for(TP1dCurveFitResult.Failure failure : TP1dCurveFitResult.Failure.values()) {
+            sb.append(" ").append(failure.name()).append(" ").append(curveFits.getFailures(failure));
+        }
+        sb.append("\nFits by attempts made:").append(histogram(curveFits.getAttemptsHistogram()));
+        sb.append("\nFits by improving attempts:").append(histogram(curveFits.getImprovementsHistogram()));
+        return sb.toString();
+    }
+
+    private static String histogram(long[] counts) {
+        StringBuilder sb = new StringBuilder();
+        for(int i=0; i<counts.length; i++) {
+            if(counts[i] > 0) {
+                sb.append(" ").append(i).append(i == counts.length - 1 ? "+" : "").append(": ").append(counts[i]);
+            }
+        }
+        return sb.toString();
+    }
+
+    private static TableColumn<TPStageStatistics,Double> numberColumn(String name, Function<TPStageStatistics,Double> value, String format) {
+        TableColumn<TPStageStatistics,Double> column = new TableColumn<>(name);
+        column.setCellValueFactory(p -> new ReadOnlyObjectWrapper<>(value.apply(p.getValue())));
+        column.setCellFactory(c -> new TableCell<TPStageStatistics,Double>() {
+            @Override
+            protected void updateItem(Double item, boolean empty) {
+                super.updateItem(item, empty);
+                setText(empty || item == null ? null : String.format(format, item));
+            }
+        });
+        column.setStyle("-fx-alignment: CENTER-RIGHT;");
+        return column;
+    }
+
+    public Tab getDiagnosticsTab() {
+        return diagnosticsTab;
+    }
+
+}
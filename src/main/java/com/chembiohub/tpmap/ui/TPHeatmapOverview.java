@@ -0,0 +1,395 @@
+/*
+ * Copyright (C) 2020 Felix Feyertag <felix.feyertag@ndm.ox.ac.uk>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.chembiohub.tpmap.ui;
+
+import com.chembiohub.tpmap.dstruct.Protein2D;
+import com.chembiohub.tpmap.dstruct.Proteome;
+import javafx.application.Platform;
+import javafx.collections.ListChangeListener;
+import javafx.geometry.Insets;
+import javafx.scene.Node;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.control.Button;
+import javafx.scene.control.Label;
+import javafx.scene.control.TableView;
+import javafx.scene.image.PixelFormat;
+import javafx.scene.image.WritableImage;
+import javafx.scene.input.MouseButton;
+import javafx.scene.layout.BorderPane;
+import javafx.scene.layout.HBox;
+import javafx.scene.layout.Pane;
+import javafx.scene.paint.Color;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * TPHeatmapOverview
+ *
+ * Proteome-wide overview of a 2D experiment. The normalised temperature by concentration matrix of every protein in
+ * the table is drawn as a small heatmap thumbnail, laid out row by row in the current table order.
+ *
+ * The thumbnails are rasterised once into a mosaic of packed ARGB pixels using the proteome colour lookup table.
+ * Reduced resolution copies of the mosaic are kept as a mipmap pyramid, and each level is cut into fixed size tiles
+ * that are uploaded as images on demand, so that a redraw only draws the handful of tiles visible at the current
+ * zoom level regardless of the number of proteins.
+ *
+ * Scrolling zooms around the mouse pointer, dragging pans and clicking a thumbnail selects the protein in the table.
+ *
+ * @author felixfeyertag
+ */
+public class TPHeatmapOverview extends BorderPane {
+
+    private static final int TILE_SIZE = 256;
+    private static final int MAX_TILES = 512;
+    private static final int GAP = 1;
+    private static final int BACKGROUND = 0xFFD3D3D3;
+    private static final int MISSING = 0xFFFFFFFF;
+    private static final double MAX_ZOOM = 32.0;
+
+    private final Proteome<Protein2D> tppExp;
+    private final TableView<Protein2D> table;
+
+    private final Canvas canvas = new Canvas();
+    private final Label statusLabel = new Label();
+
+    private List<Protein2D> proteins = Collections.emptyList();
+    private final Map<Protein2D,Integer> proteinIndex = new IdentityHashMap<>();
+    private int thumbnailWidth;
+    private int thumbnailHeight;
+    private int columns;
+
+    private final List<int[]> levels = new ArrayList<>();
+    private final List<int[]> levelSizes = new ArrayList<>();
+    private final Map<Long,WritableImage> tiles = new LinkedHashMap<Long,WritableImage>(64, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long,WritableImage> eldest) {
+            return size() > MAX_TILES;
+        }
+    };
+
+    private double zoom = 1.0;
+    private double offsetX = 0.0;
+    private double offsetY = 0.0;
+    private double dragX;
+    private double dragY;
+
+    private boolean dirty = true;
+    private boolean fitted = false;
+    private boolean redrawPending = false;
+
+    public TPHeatmapOverview(Proteome<Protein2D> tppExp, TableView<Protein2D> table) {
+        this.tppExp = tppExp;
+        this.table = table;
+
+        Pane canvasPane = new Pane(canvas);
+        canvasPane.setMinSize(0, 0);
+        canvas.widthProperty().bind(canvasPane.widthProperty());
+        canvas.heightProperty().bind(canvasPane.heightProperty());
+        canvas.widthProperty().addListener(observable -> requestRedraw());
+        canvas.heightProperty().addListener(observable -> requestRedraw());
+
+        Button fitButton = new Button("Fit");
+        fitButton.setOnAction(event -> {
+            fitted = false;
+            requestRedraw();
+        });
+
+        Label hintLabel = new Label("Scroll to zoom, drag to pan, click to select");
+        hintLabel.setPadding(new Insets(5,5,5,5));
+        statusLabel.setPadding(new Insets(5,5,5,5));
+
+        HBox toolBox = new HBox();
+        toolBox.getChildren().addAll(fitButton, hintLabel, statusLabel);
+
+        setTop(toolBox);
+        setCenter(canvasPane);
+
+        table.getItems().addListener((ListChangeListener<Protein2D>) c -> {
+            dirty = true;
+            requestRedraw();
+        });
+        table.getSelectionModel().selectedItemProperty().addListener((observable, oldValue, newValue) -> requestRedraw());
+
+        canvas.setOnScroll(event -> {
+            if(event.getDeltaY() != 0) {
+                zoomAt(Math.pow(1.0025, event.getDeltaY()), event.getX(), event.getY());
+            }
+        });
+
+        canvas.setOnMousePressed(event -> {
+            dragX = event.getX();
+            dragY = event.getY();
+        });
+
+        canvas.setOnMouseDragged(event -> {
+            offsetX -= (event.getX() - dragX) / zoom;
+            offsetY -= (event.getY() - dragY) / zoom;
+            dragX = event.getX();
+            dragY = event.getY();
+            requestRedraw();
+        });
+
+        canvas.setOnMouseClicked(event -> {
+            if(event.getButton() == MouseButton.PRIMARY && event.isStillSincePress()) {
+                Protein2D protein = proteinAt(event.getX(), event.getY());
+                if(protein != null) {
+                    table.getSelectionModel().clearSelection();
+                    table.getSelectionModel().select(protein);
+                    table.scrollTo(protein);
+                }
+            }
+        });
+
+        canvas.setOnMouseMoved(event -> {
+            Protein2D protein = proteinAt(event.getX(), event.getY());
+            statusLabel.setText(protein == null ? "" : protein.getAccession() + " " + protein.getGeneName());
+        });
+
+        canvas.setOnMouseExited(event -> statusLabel.setText(""));
+    }
+
+    /**
+     * Schedules a redraw on the JavaFX application thread, several requests before the redraw are merged into one
+     */
+    public void requestRedraw() {
+        if(!redrawPending) {
+            redrawPending = true;
+            Platform.runLater(() -> {
+                redrawPending = false;
+                redraw();
+            });
+        }
+    }
+
+    /**
+     * Rasterises the thumbnails of all proteins in table order into the base mosaic and builds the mipmap pyramid,
+     * halving the resolution at each level by averaging 2x2 pixel blocks
+     */
+    private void rebuild() {
+
+        proteins = new ArrayList<>(table.getItems());
+        proteinIndex.clear();
+        for(int i=0; i<proteins.size(); i++) {
+            proteinIndex.put(proteins.get(i), i);
+        }
+        levels.clear();
+        levelSizes.clear();
+        tiles.clear();
+
+        int temps = tppExp.getTempLabels().size();
+        int concs = tppExp.getConcLabels().size();
+        thumbnailWidth = concs + GAP;
+        thumbnailHeight = temps + GAP;
+
+        double aspect = canvas.getWidth() > 0 && canvas.getHeight() > 0 ? canvas.getWidth() / canvas.getHeight() : 1.0;
+        columns = Math.max(1, (int) Math.ceil(Math.sqrt(proteins.size() * aspect * thumbnailHeight / thumbnailWidth)));
+        int rows = Math.max(1, (proteins.size() + columns - 1) / columns);
+
+        int width = columns * thumbnailWidth + GAP;
+        int height = rows * thumbnailHeight + GAP;
+        int[] base = new int[width * height];
+        Arrays.fill(base, BACKGROUND);
+
+        for(int i=0; i<proteins.size(); i++) {
+            Double[][] ratios = proteins.get(i).getAbundancesConcRatioNormalised();
+            int x0 = GAP + (i % columns) * thumbnailWidth;
+            int y0 = GAP + (i / columns) * thumbnailHeight;
+            for(int t=0; t<temps; t++) {
+                for(int c=0; c<concs; c++) {
+                    Double ratio = ratios != null && t < ratios.length && ratios[t] != null && c < ratios[t].length ? ratios[t][c] : null;
+                    base[(y0 + t) * width + x0 + c] = ratio != null && Double.isFinite(ratio) ? 0xFF000000 | tppExp.getColourRGB(ratio) : MISSING;
+                }
+            }
+        }
+
+        levels.add(base);
+        levelSizes.add(new int[]{width, height});
+
+        while(width > TILE_SIZE || height > TILE_SIZE) {
+            int[] source = levels.get(levels.size() - 1);
+            int sourceWidth = width;
+            int sourceHeight = height;
+            width = (width + 1) / 2;
+            height = (height + 1) / 2;
+            int[] level = new int[width * height];
+            for(int y=0; y<height; y++) {
+                int y1 = 2 * y;
+                int y2 = Math.min(y1 + 1, sourceHeight - 1);
+                for(int x=0; x<width; x++) {
+                    int x1 = 2 * x;
+                    int x2 = Math.min(x1 + 1, sourceWidth - 1);
+                    level[y * width + x] = average(source[y1 * sourceWidth + x1], source[y1 * sourceWidth + x2],
+                            source[y2 * sourceWidth + x1], source[y2 * sourceWidth + x2]);
+                }
+            }
+            levels.add(level);
+            levelSizes.add(new int[]{width, height});
+        }
+
+        dirty = false;
+        fitted = false;
+    }
+
+    private static int average(int p1, int p2, int p3, int p4) {
+        int r = (((p1 >> 16) & 0xFF) + ((p2 >> 16) & 0xFF) + ((p3 >> 16) & 0xFF) + ((p4 >> 16) & 0xFF) + 2) >> 2;
+        int g = (((p1 >> 8) & 0xFF) + ((p2 >> 8) & 0xFF) + ((p3 >> 8) & 0xFF) + ((p4 >> 8) & 0xFF) + 2) >> 2;
+        int b = ((p1 & 0xFF) + (p2 & 0xFF) + (p3 & 0xFF) + (p4 & 0xFF) + 2) >> 2;
+        return 0xFF000000 | r << 16 | g << 8 | b;
+    }
+
+    private WritableImage getTile(int level, int tileX, int tileY) {
+        long key = (long) level << 48 | (long) tileY << 24 | tileX;
+        WritableImage tile = tiles.get(key);
+        if(tile == null) {
+            int[] pixels = levels.get(level);
+            int levelWidth = levelSizes.get(level)[0];
+            int levelHeight = levelSizes.get(level)[1];
+            int width = Math.min(TILE_SIZE, levelWidth - tileX * TILE_SIZE);
+            int height = Math.min(TILE_SIZE, levelHeight - tileY * TILE_SIZE);
+            tile = new WritableImage(width, height);
+            tile.getPixelWriter().setPixels(0, 0, width, height, PixelFormat.getIntArgbInstance(), pixels,
+                    tileY * TILE_SIZE * levelWidth + tileX * TILE_SIZE, levelWidth);
+            tiles.put(key, tile);
+        }
+        return tile;
+    }
+
+    private double getMinZoom() {
+        int[] size = levelSizes.get(0);
+        return Math.min(1.0, Math.min(canvas.getWidth() / size[0], canvas.getHeight() / size[1])) / 2.0;
+    }
+
+    private void fit() {
+        int[] size = levelSizes.get(0);
+        zoom = Math.min(MAX_ZOOM, Math.min(canvas.getWidth() / size[0], canvas.getHeight() / size[1]));
+        offsetX = (size[0] - canvas.getWidth() / zoom) / 2.0;
+        offsetY = (size[1] - canvas.getHeight() / zoom) / 2.0;
+        fitted = true;
+    }
+
+    private void zoomAt(double factor, double x, double y) {
+        if(levelSizes.isEmpty()) {
+            return;
+        }
+        double mosaicX = offsetX + x / zoom;
+        double mosaicY = offsetY + y / zoom;
+        zoom = Math.max(getMinZoom(), Math.min(MAX_ZOOM, zoom * factor));
+        offsetX = mosaicX - x / zoom;
+        offsetY = mosaicY - y / zoom;
+        requestRedraw();
+    }
+
+    private Protein2D proteinAt(double x, double y) {
+        if(dirty || proteins.isEmpty()) {
+            return null;
+        }
+        double mosaicX = offsetX + x / zoom - GAP;
+        double mosaicY = offsetY + y / zoom - GAP;
+        if(mosaicX < 0 || mosaicY < 0) {
+            return null;
+        }
+        int column = (int) (mosaicX / thumbnailWidth);
+        int row = (int) (mosaicY / thumbnailHeight);
+        int index = row * columns + column;
+        if(column >= columns || index >= proteins.size()) {
+            return null;
+        }
+        return proteins.get(index);
+    }
+
+    private boolean isShowing() {
+        if(getScene() == null) {
+            return false;
+        }
+        for(Node node = this; node != null; node = node.getParent()) {
+            if(!node.isVisible()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void redraw() {
+
+        if(!isShowing() || canvas.getWidth() <= 0 || canvas.getHeight() <= 0) {
+            return;
+        }
+        if(dirty) {
+            rebuild();
+        }
+        if(!fitted) {
+            fit();
+        }
+
+        GraphicsContext gc = canvas.getGraphicsContext2D();
+        gc.setFill(Color.WHITE);
+        gc.fillRect(0, 0, canvas.getWidth(), canvas.getHeight());
+
+        if(proteins.isEmpty()) {
+            return;
+        }
+
+        // choose the coarsest mipmap level that still has at least one pixel per screen pixel
+        int level = 0;
+        double scale = zoom;
+        while(scale * 2.0 <= 1.0 && level < levels.size() - 1) {
+            scale *= 2.0;
+            level++;
+        }
+        double factor = 1 << level;
+        int levelWidth = levelSizes.get(level)[0];
+        int levelHeight = levelSizes.get(level)[1];
+        double levelX = offsetX / factor;
+        double levelY = offsetY / factor;
+
+        int firstTileX = Math.max(0, (int) Math.floor(levelX / TILE_SIZE));
+        int firstTileY = Math.max(0, (int) Math.floor(levelY / TILE_SIZE));
+        int lastTileX = Math.min((levelWidth - 1) / TILE_SIZE, (int) Math.floor((levelX + canvas.getWidth() / scale) / TILE_SIZE));
+        int lastTileY = Math.min((levelHeight - 1) / TILE_SIZE, (int) Math.floor((levelY + canvas.getHeight() / scale) / TILE_SIZE));
+
+        gc.setImageSmoothing(zoom < 1.0);
+        for(int tileY=firstTileY; tileY<=lastTileY; tileY++) {
+            for(int tileX=firstTileX; tileX<=lastTileX; tileX++) {
+                WritableImage tile = getTile(level, tileX, tileY);
+                double x1 = Math.floor((tileX * TILE_SIZE - levelX) * scale);
+                double y1 = Math.floor((tileY * TILE_SIZE - levelY) * scale);
+                double x2 = Math.floor((tileX * TILE_SIZE + tile.getWidth() - levelX) * scale);
+                double y2 = Math.floor((tileY * TILE_SIZE + tile.getHeight() - levelY) * scale);
+                gc.drawImage(tile, x1, y1, x2 - x1, y2 - y1);
+            }
+        }
+
+        Protein2D selected = table.getSelectionModel().getSelectedItem();
+        Integer index = selected == null ? null : proteinIndex.get(selected);
+        if(index != null) {
+            double x = (GAP + (index % columns) * thumbnailWidth - offsetX) * zoom;
+            double y = (GAP + (index / columns) * thumbnailHeight - offsetY) * zoom;
+            double w = (thumbnailWidth - GAP) * zoom;
+            double h = (thumbnailHeight - GAP) * zoom;
+            gc.setStroke(Color.BLUE);
+            gc.setLineWidth(2.0);
+            gc.strokeRect(x - 1, y - 1, Math.max(w, 1) + 2, Math.max(h, 1) + 2);
+        }
+    }
+
+}
@@ -0,0 +1,300 @@
+/*
+ * Copyright (C) 2020 Felix Feyertag <felix.feyertag@ndm.ox.ac.uk>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.chembiohub.tpmap.ui;
+
+import com.chembiohub.tpmap.dstruct.Protein;
+import com.chembiohub.tpmap.dstruct.Proteome;
+import com.chembiohub.tpmap.dstruct.TPProteinQuery;
+import com.chembiohub.tpmap.dstruct.TPProteinTextIndex;
+import javafx.animation.PauseTransition;
+import javafx.application.Platform;
+import javafx.collections.ListChangeListener;
+import javafx.collections.ObservableList;
+import javafx.collections.transformation.FilteredList;
+import javafx.concurrent.Task;
+import javafx.scene.control.TextField;
+import javafx.scene.control.Tooltip;
+import javafx.util.Duration;
+
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * TPTableFilter
+ *
+ * Filters a protein table by the text of a filter field. Keystrokes are debounced, the filter is evaluated on a
+ * background thread against a TPProteinTextIndex of the proteome and the result is applied to the FilteredList as a
+ * single predicate, so the FX thread never scans the protein text itself.
+ *
+ * The filter text is interpreted as follows:
+ *
+ * - plain text matches proteins with the text in the accession, gene name, organism or description
+ * - a list of terms separated by | (as set by the CORUM panes) matches proteins whose accession or gene name equals
+ *   one of the terms, terms without an exact match are matched as plain text
+ * - text containing other regular expression characters is matched as a regular expression against each field, as
+ *   in previous versions of TPMAP
+ * - text containing a comparison operator (< > = ~) is parsed as a TPProteinQuery, e.g. "score > 0.3 AND
+ *   pValue < 0.01". Query results are cached by query text until the data version of the proteome changes, i.e. the
+ *   proteins are replaced or their values are updated in place, or the filter is cleared. The filter is evaluated
+ *   again whenever the data version changes, queries on the selection state are always evaluated. If the query
+ *   cannot be parsed the error is shown as a tooltip on the filter field and the text is searched instead.
+ *
+ * @author felixfeyertag
+ */
+public class TPTableFilter<T extends Protein> {
+
+    private static final Duration DEBOUNCE = Duration.millis(150);
+    private static final int QUERY_CACHE_SIZE = 32;
+    private static final Pattern REGEX_CHARACTERS = Pattern.compile("[\\\\\\[\\]{}()*+?^$]");
+
+    private static final ExecutorService executor = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "TPTableFilter");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final Proteome<T> tppExp;
+    private final ObservableList<T> proteins;
+    private final FilteredList<T> filteredList;
+    private final TextField filterTextField;
+    private final PauseTransition debounce = new PauseTransition(DEBOUNCE);
+
+    // the index is rebuilt on the filter thread from a snapshot of the proteins taken by the list listener, and only
+    // installed if no newer snapshot was taken in the meantime
+    private volatile TPProteinTextIndex<T> index;
+    private final AtomicLong indexGeneration = new AtomicLong(0);
+    private long generation = 0;
+
+    // data version of the proteome, read by the filter thread, and the version the cached query results were
+    // calculated from, guarded by queryCache
+    private volatile long dataVersion;
+    private long queryCacheVersion = -1;
+    private final Map<String,BitSet> queryCache = new LinkedHashMap<String,BitSet>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String,BitSet> eldest) {
+            return size() > QUERY_CACHE_SIZE;
+        }
+    };
+
+    public TPTableFilter(Proteome<T> tppExp, FilteredList<T> filteredList, TextField filterTextField) {
+        this.tppExp = tppExp;
+        this.proteins = tppExp.getProteins();
+        this.filteredList = filteredList;
+        this.filterTextField = filterTextField;
+
+        filteredList.setPredicate(p -> true);
+
+        filterTextField.textProperty().addListener((observable, oldValue, newValue) -> update(newValue));
+        debounce.setOnFinished(event -> evaluate(filterTextField.getText()));
+
+        proteins.addListener((ListChangeListener<T>) c -> {
+            rebuildIndex();
+            if(Platform.isFxApplicationThread()) {
+                update(filterTextField.getText());
+            }
+            else {
+                Platform.runLater(() -> update(filterTextField.getText()));
+            }
+        });
+
+        dataVersion = tppExp.dataVersionProperty().get();
+        tppExp.dataVersionProperty().addListener((observable, oldValue, newValue) -> {
+            dataVersion = newValue.longValue();
+            if(Platform.isFxApplicationThread()) {
+                update(filterTextField.getText());
+            }
+            else {
+                Platform.runLater(() -> update(filterTextField.getText()));
+            }
+        });
+
+        rebuildIndex();
+    }
+
+    /**
+     * Takes a snapshot of the proteins on the thread that changed them and builds the text index from it on the filter
+     * thread
+     */
+    private void rebuildIndex() {
+        final List<T> snapshot = new ArrayList<>(proteins);
+        final long snapshotGeneration = indexGeneration.incrementAndGet();
+        executor.submit(() -> {
+            TPProteinTextIndex<T> textIndex = new TPProteinTextIndex<>(snapshot);
+            if(indexGeneration.get() == snapshotGeneration) {
+                // cached query results are positions in the previous snapshot
+                synchronized (queryCache) {
+                    queryCache.clear();
+                }
+                index = textIndex;
+            }
+        });
+    }
+
+    private void update(String text) {
+        generation++;
+        if(text == null || text.trim().isEmpty()) {
+            debounce.stop();
+            showQueryError(null);
+            filteredList.setPredicate(p -> true);
+            executor.submit(() -> {
+                synchronized (queryCache) {
+                    queryCache.clear();
+                }
+            });
+        }
+        else {
+            debounce.playFromStart();
+        }
+    }
+
+    private void evaluate(String text) {
+
+        final long taskGeneration = generation;
+
+        final String[] queryError = new String[1];
+
+        Task<Predicate<T>> task = new Task<Predicate<T>>() {
+            @Override
+            protected Predicate<T> call() {
+                TPProteinTextIndex<T> textIndex = index;
+                BitSet matches = null;
+                if(TPProteinQuery.isQuery(text)) {
+                    try {
+                        matches = matchQuery(textIndex, text);
+                    }
+                    catch (ParseException e) {
+                        queryError[0] = e.getMessage() + " at position " + (e.getErrorOffset() + 1);
+                    }
+                }
+                if(matches == null) {
+                    matches = match(textIndex, text);
+                }
+                Set<T> matched = Collections.newSetFromMap(new IdentityHashMap<>());
+                for(int i = matches.nextSetBit(0); i >= 0; i = matches.nextSetBit(i + 1)) {
+                    matched.add(textIndex.getProteins().get(i));
+                }
+                return matched::contains;
+            }
+        };
+
+        task.setOnSucceeded(event -> {
+            if(taskGeneration == generation) {
+                showQueryError(queryError[0]);
+                filteredList.setPredicate(task.getValue());
+            }
+        });
+
+        task.setOnFailed(event -> Logger.getLogger(TPTableFilter.class.getName()).log(Level.SEVERE, null, task.getException()));
+
+        executor.submit(task);
+    }
+
+    private BitSet matchQuery(TPProteinTextIndex<T> textIndex, String text) throws ParseException {
+        String key = text.trim();
+        long version = dataVersion;
+        synchronized (queryCache) {
+            if(queryCacheVersion != version) {
+                queryCache.clear();
+                queryCacheVersion = version;
+            }
+            BitSet cached = queryCache.get(key);
+            if(cached != null) {
+                return cached;
+            }
+        }
+        TPProteinQuery query = TPProteinQuery.parse(key, tppExp);
+        BitSet matches = query.evaluate(textIndex.getProteins());
+        if(!query.usesSelection()) {
+            synchronized (queryCache) {
+                // results are only cached if the data did not change while the query was evaluated
+                if(queryCacheVersion == version && dataVersion == version) {
+                    queryCache.put(key, matches);
+                }
+            }
+        }
+        return matches;
+    }
+
+    private void showQueryError(String message) {
+        if(message == null) {
+            filterTextField.setStyle("");
+            filterTextField.setTooltip(null);
+        }
+        else {
+            filterTextField.setStyle("-fx-text-fill: red;");
+            filterTextField.setTooltip(new Tooltip(message));
+        }
+    }
+
+    /**
+     * @param textIndex index of the proteome
+     * @param text filter text
+     * @return indices of matching proteins
+     */
+    static BitSet match(TPProteinTextIndex<?> textIndex, String text) {
+
+        if(REGEX_CHARACTERS.matcher(text).find()) {
+            try {
+                return textIndex.matchPattern(Pattern.compile(".*" + text.toLowerCase() + ".*"));
+            }
+            catch (PatternSyntaxException e) {
+                return new BitSet();
+            }
+        }
+
+        List<String> terms = new ArrayList<>();
+        for(String term : text.split("\\|")) {
+            if(!term.trim().isEmpty()) {
+                terms.add(term.trim());
+            }
+        }
+
+        if(terms.isEmpty()) {
+            BitSet all = new BitSet(textIndex.size());
+            all.set(0, textIndex.size());
+            return all;
+        }
+        else if(terms.size() == 1) {
+            return textIndex.matchSubstring(terms.get(0));
+        }
+
+        BitSet matches = new BitSet(textIndex.size());
+        for(String term : terms) {
+            BitSet termMatches = textIndex.matchIdentifier(term);
+            if(termMatches.isEmpty()) {
+                termMatches = textIndex.matchSubstring(term);
+            }
+            matches.or(termMatches);
+        }
+        return matches;
+    }
+
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright (C) 2020 Felix Feyertag <felix.feyertag@ndm.ox.ac.uk>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.chembiohub.tpmap.analysis;
+
+import org.apache.commons.math3.distribution.HypergeometricDistribution;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * TPCorumEnrichmentTest
+ *
+ * Hypergeometric tail, rank sum and Benjamini-Hochberg statistics of the CORUM and functional enrichment.
+ *
+ * @author felixfeyertag
+ */
+public class TPCorumEnrichmentTest {
+
+    private static final double EPSILON = 1e-12;
+
+    @Test
+    public void hypergeometricUpperTailSmallPopulation() {
+        double[] lf = TPCorumEnrichment.logFactorial(10);
+        // P(X >= 2) = (C(4,2) C(6,1) + C(4,3) C(6,0)) / C(10,3) = (36 + 4) / 120
+        assertEquals(1.0 / 3.0, TPCorumEnrichment.hypergeometricUpperTail(lf, 10, 4, 3, 2), EPSILON);
+        assertEquals(4.0 / 120.0, TPCorumEnrichment.hypergeometricUpperTail(lf, 10, 4, 3, 3), EPSILON);
+        assertEquals(1.0, TPCorumEnrichment.hypergeometricUpperTail(lf, 10, 4, 3, 0), 0.0);
+        assertEquals(0.0, TPCorumEnrichment.hypergeometricUpperTail(lf, 10, 4, 3, 4), 0.0);
+    }
+
+    @Test
+    public void hypergeometricUpperTailMatchesDistribution() {
+        int population = 2000;
+        int successes = 150;
+        int draws = 40;
+        double[] lf = TPCorumEnrichment.logFactorial(population);
+        HypergeometricDistribution distribution = new HypergeometricDistribution(null, population, successes, draws);
+        for(int k=1; k<=draws; k++) {
+            double expected = distribution.upperCumulativeProbability(k);
+            double actual = TPCorumEnrichment.hypergeometricUpperTail(lf, population, successes, draws, k);
+            assertEquals("k=" + k, expected, actual, 1e-9 * Math.max(expected, 1e-300) + 1e-15);
+        }
+    }
+
+    @Test
+    public void benjaminiHochberg() {
+        double[] q = TPCorumEnrichment.benjaminiHochberg(new double[] {0.01, 0.04, 0.03, 0.005});
+        assertArrayEquals(new double[] {0.02, 0.04, 0.04, 0.02}, q, EPSILON);
+    }
+
+    @Test
+    public void benjaminiHochbergIgnoresNaN() {
+        double[] q = TPCorumEnrichment.benjaminiHochberg(new double[] {0.01, Double.NaN, 0.04, 0.03, 0.005});
+        assertArrayEquals(new double[] {0.02, Double.NaN, 0.04, 0.04, 0.02}, q, EPSILON);
+    }
+
+    @Test
+    public void benjaminiHochbergCapsAtOne() {
+        double[] q = TPCorumEnrichment.benjaminiHochberg(new double[] {0.9, 0.8});
+        assertArrayEquals(new double[] {0.9, 0.9}, q, EPSILON);
+    }
+
+    @Test
+    public void rankAveragesTies() {
+        double[] ranks = TPCorumEnrichment.rank(new double[] {3, 1, Double.NaN, 2, 2, 3, 3});
+        assertArrayEquals(new double[] {5, 1, Double.NaN, 2.5, 2.5, 5, 5}, ranks, EPSILON);
+    }
+
+    @Test
+    public void mannWhitneyZWithTies() {
+        double[] values = {1, 2, 2, 3, 3, 3, 4, 5, 5, 6};
+        double[] ranks = TPCorumEnrichment.rank(values);
+        double tieSum = TPCorumEnrichment.tieSum(ranks);
+        // tie groups of 2, 3 and 2 values
+        assertEquals(6 + 24 + 6, tieSum, EPSILON);
+
+        double rankSum = ranks[0] + ranks[3] + ranks[7];
+        assertEquals(1 + 5 + 8.5, rankSum, EPSILON);
+
+        // U = 14.5 - 6, mean 10.5, variance 3 * 7 / 12 * (11 - 36 / 90)
+        double expected = (8.5 - 10.5) / Math.sqrt(1.75 * 10.6);
+        assertEquals(expected, TPCorumEnrichment.mannWhitneyZ(rankSum, 3, 10, tieSum), EPSILON);
+    }
+
+    @Test
+    public void mannWhitneyZUndefined() {
+        assertTrue(Double.isNaN(TPCorumEnrichment.mannWhitneyZ(1, 0, 10, 0)));
+        assertTrue(Double.isNaN(TPCorumEnrichment.mannWhitneyZ(55, 10, 10, 0)));
+        // all values tied
+        assertTrue(Double.isNaN(TPCorumEnrichment.mannWhitneyZ(5.5, 2, 4, 60)));
+    }
+
+}
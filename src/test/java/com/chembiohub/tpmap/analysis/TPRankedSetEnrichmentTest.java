@@ -0,0 +1,219 @@
+/*
+ * Copyright (C) 2020 Felix Feyertag <felix.feyertag@ndm.ox.ac.uk>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.chembiohub.tpmap.analysis;
+
+import com.chembiohub.tpmap.dstruct.Protein2D;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * TPRankedSetEnrichmentTest
+ *
+ * Running-sum enrichment score, permutation null distribution and normalised enrichment score of the ranked set
+ * enrichment.
+ *
+ * @author felixfeyertag
+ */
+public class TPRankedSetEnrichmentTest {
+
+    private static final double EPSILON = 1e-12;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void enrichmentScoreAtTop() {
+        // hit weights 4 + 2, miss step 1/3: 4/6, then 4/6 - 1/3 + 2/6
+        double[] es = TPRankedSetEnrichment.enrichmentScore(new int[] {0, 2}, 2, new double[] {4, 3, 2, 1, 0.5}, 5);
+        assertArrayEquals(new double[] {2.0 / 3.0, 0}, es, EPSILON);
+    }
+
+    @Test
+    public void enrichmentScoreAtBottom() {
+        // three misses of 1/3 before the first hit
+        double[] es = TPRankedSetEnrichment.enrichmentScore(new int[] {3, 4}, 2, new double[] {5, 4, 3, 2, 1}, 5);
+        assertArrayEquals(new double[] {-1.0, 3}, es, EPSILON);
+    }
+
+    @Test
+    public void enrichmentScoreUnweighted() {
+        // zero weights fall back to equal hit steps of 1/2
+        double[] es = TPRankedSetEnrichment.enrichmentScore(new int[] {1, 2}, 2, new double[4], 4);
+        assertArrayEquals(new double[] {1.0 - 1.0 / 2.0, 2}, es, EPSILON);
+    }
+
+    @Test
+    public void enrichmentScoreMatchesFullWalk() {
+        SplittableRandom random = new SplittableRandom(42);
+        int n = 200;
+        double[] weights = new double[n];
+        for(int i=0; i<n; i++) {
+            weights[i] = Math.abs(random.nextDouble() * 4.0 - 2.0);
+        }
+        Arrays.sort(weights);
+        for(int i=0; i<n/2; i++) {
+            double w = weights[i];
+            weights[i] = weights[n - 1 - i];
+            weights[n - 1 - i] = w;
+        }
+
+        for(int trial=0; trial<200; trial++) {
+            int size = 3 + random.nextInt(40);
+            int[] hits = random.ints(0, n).distinct().limit(size).sorted().toArray();
+            double[] es = TPRankedSetEnrichment.enrichmentScore(hits, size, weights, n);
+            double[] walk = fullWalk(hits, weights, n);
+
+            assertEquals("trial " + trial, walk[0], es[0], EPSILON);
+            int peak = (int) es[1];
+            if(es[0] >= 0) {
+                assertEquals("trial " + trial, walk[1], peak, 0.0);
+            }
+            else {
+                // the minimum is reached on the last miss before the hit reported as peak
+                assertEquals("trial " + trial, walk[1], peak - 1, 0.0);
+            }
+        }
+    }
+
+    /**
+     * Running sum over every rank position, as in the original GSEA description
+     */
+    private static double[] fullWalk(int[] hits, double[] weights, int n) {
+        boolean[] isHit = new boolean[n];
+        double hitWeight = 0.0;
+        for(int r : hits) {
+            isHit[r] = true;
+            hitWeight += weights[r];
+        }
+        double missStep = 1.0 / (n - hits.length);
+        double running = 0.0;
+        double es = 0.0;
+        int position = 0;
+        for(int r=0; r<n; r++) {
+            running += isHit[r] ? weights[r] / hitWeight : -missStep;
+            if(Math.abs(running) > Math.abs(es)) {
+                es = running;
+                position = r;
+            }
+        }
+        assertEquals(0.0, running, 1e-9);
+        return new double[] {es, position};
+    }
+
+    @Test
+    public void nullDistribution() {
+        int n = 100;
+        int permutations = 500;
+        double[] weights = new double[n];
+        for(int i=0; i<n; i++) {
+            weights[i] = (n - i) / 10.0;
+        }
+        TPRankedSetEnrichment.NullDistribution nullDistribution =
+                new TPRankedSetEnrichment.NullDistribution(10, permutations, weights, n, () -> false);
+
+        double[] positive = nullDistribution.positive;
+        double[] negative = nullDistribution.negative;
+        assertEquals(permutations, positive.length + negative.length);
+        assertTrue(positive.length > 0 && negative.length > 0);
+        for(int i=1; i<positive.length; i++) {
+            assertTrue(positive[i - 1] <= positive[i]);
+        }
+        for(int i=1; i<negative.length; i++) {
+            assertTrue(negative[i - 1] <= negative[i]);
+        }
+        assertTrue(positive[0] >= 0.0);
+        assertTrue(negative[0] > 0.0);
+
+        assertEquals(Arrays.stream(positive).average().getAsDouble(), nullDistribution.positiveMean, EPSILON);
+        assertEquals(Arrays.stream(negative).average().getAsDouble(), nullDistribution.negativeMean, EPSILON);
+        assertEquals(1.0, nullDistribution.normalise(nullDistribution.positiveMean), EPSILON);
+        assertEquals(-1.0, nullDistribution.normalise(-nullDistribution.negativeMean), EPSILON);
+        assertEquals(0.5 / nullDistribution.positiveMean, nullDistribution.normalise(0.5), EPSILON);
+
+        // every null score of the same sign is at least as extreme as 0, none is as extreme as 2
+        assertEquals(1.0, nullDistribution.pValue(0.0), EPSILON);
+        assertEquals(1.0 / (positive.length + 1), nullDistribution.pValue(2.0), EPSILON);
+        assertEquals(1.0 / (negative.length + 1), nullDistribution.pValue(-2.0), EPSILON);
+
+        // ties with the observed score count as at least as extreme
+        double median = positive[positive.length / 2];
+        long atLeast = Arrays.stream(positive).filter(s -> s >= median).count();
+        assertEquals((atLeast + 1.0) / (positive.length + 1.0), nullDistribution.pValue(median), EPSILON);
+    }
+
+    @Test
+    public void nullDistributionIsReproducible() {
+        double[] weights = new double[50];
+        Arrays.fill(weights, 1.0);
+        TPRankedSetEnrichment.NullDistribution a = new TPRankedSetEnrichment.NullDistribution(5, 100, weights, 50, () -> false);
+        TPRankedSetEnrichment.NullDistribution b = new TPRankedSetEnrichment.NullDistribution(5, 100, weights, 50, () -> false);
+        assertArrayEquals(a.positive, b.positive, 0.0);
+        assertArrayEquals(a.negative, b.negative, 0.0);
+    }
+
+    @Test
+    public void runEnrichment() throws IOException {
+        int proteinCount = 60;
+        List<Protein2D> proteins = new ArrayList<>();
+        for(int i=0; i<proteinCount; i++) {
+            Protein2D protein = new Protein2D();
+            protein.setAccession("P" + i);
+            protein.setGeneName("G" + i);
+            protein.setScore(proteinCount - i);
+            proteins.add(protein);
+        }
+
+        File gmt = folder.newFile("sets.gmt");
+        Files.write(gmt.toPath(), Arrays.asList(
+                "TOP\tTop ranked\tP0\tP1\tP2\tP3\tP4",
+                "BOTTOM\tBottom ranked\tG55\tG56\tG57\tG58\tG59",
+                "SMALL\tToo small\tP10\tP11"), StandardCharsets.UTF_8);
+        TPAnnotationIndex index = TPAnnotationIndex.load(gmt);
+
+        List<TPRankedSetEnrichment.SetEnrichment> results = new TPRankedSetEnrichment().runEnrichment(index, proteins, 1000, false, () -> false);
+        assertEquals(2, results.size());
+
+        TPRankedSetEnrichment.SetEnrichment top = results.stream().filter(r -> r.getSetId().equals("TOP")).findFirst().get();
+        assertEquals(5, top.getSize());
+        assertEquals(1.0, top.getEs(), EPSILON);
+        assertTrue(top.getNes() > 1.0);
+        assertTrue(top.getPValue() < 0.01);
+        assertEquals("G0;G1;G2;G3;G4", top.getLeadingEdge());
+
+        TPRankedSetEnrichment.SetEnrichment bottom = results.stream().filter(r -> r.getSetId().equals("BOTTOM")).findFirst().get();
+        assertEquals(-1.0, bottom.getEs(), EPSILON);
+        assertTrue(bottom.getNes() < -1.0);
+        assertTrue(bottom.getPValue() < 0.01);
+        assertEquals("G55;G56;G57;G58;G59", bottom.getLeadingEdge());
+
+        assertTrue(new TPRankedSetEnrichment().runEnrichment(index, proteins, 1000, false, () -> true).isEmpty());
+    }
+
+}
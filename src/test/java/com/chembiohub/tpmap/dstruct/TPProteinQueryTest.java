@@ -0,0 +1,187 @@
+/*
+ * Copyright (C) 2020 Felix Feyertag <felix.feyertag@ndm.ox.ac.uk>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.chembiohub.tpmap.dstruct;
+
+import org.junit.Test;
+
+import java.text.ParseException;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * TPProteinQueryTest
+ *
+ * Parsing and evaluation of protein table filter queries.
+ *
+ * @author felixfeyertag
+ */
+public class TPProteinQueryTest {
+
+    private static Protein2D protein(String accession, String gene, String description, double score, double pValue, boolean selected) {
+        Protein2D protein = new Protein2D();
+        protein.setAccession(accession);
+        protein.setGeneName(gene);
+        protein.setDescription(description);
+        protein.setOrganismName("Homo sapiens");
+        protein.setScore(score);
+        protein.setPValue(pValue);
+        protein.setSelected(selected);
+        return protein;
+    }
+
+    private static final List<Protein2D> proteins = Arrays.asList(
+            protein("P0DMV8", "HSPA1A", "Heat shock 70 kDa protein 1A", 0.5, 0.001, false),
+            protein("P04637", "TP53", "Cellular tumor antigen p53", -0.8, 0.2, true),
+            protein("P07900-2", "HSP90AA1", "Heat shock protein HSP 90-alpha", Double.NaN, Double.NaN, false));
+
+    /**
+     * @return indices of the proteins matching a 2D query
+     */
+    private static BitSet matches(String query) throws ParseException {
+        return TPProteinQuery.parse(query, Proteome.ExpType.TP2D).evaluate(proteins);
+    }
+
+    private static BitSet indices(int... indices) {
+        BitSet bits = new BitSet();
+        for(int i : indices) {
+            bits.set(i);
+        }
+        return bits;
+    }
+
+    private static void assertError(String query, int offset) {
+        try {
+            TPProteinQuery.parse(query, Proteome.ExpType.TP2D);
+            fail("Expected a parse error for " + query);
+        }
+        catch (ParseException e) {
+            assertEquals(query, offset, e.getErrorOffset());
+        }
+    }
+
+    @Test
+    public void numericComparisons() throws ParseException {
+        assertEquals(indices(0), matches("score > 0.3 AND pValue < 0.01"));
+        assertEquals(indices(0, 1), matches("score >= -0.8"));
+        assertEquals(indices(1), matches("score <= -0.8"));
+        assertEquals(indices(0), matches("pvalue = 1e-3"));
+        assertEquals(indices(0), matches("pvalue == 0.001"));
+    }
+
+    @Test
+    public void andBindsTighterThanOr() throws ParseException {
+        assertEquals(indices(1), matches("score < 0 OR score > 0 AND pvalue > 0.5"));
+        assertEquals(indices(), matches("(score < 0 OR score > 0) AND pvalue > 0.5"));
+        assertEquals(indices(1), matches("score < 0 || score > 0 && pvalue > 0.5"));
+    }
+
+    @Test
+    public void arithmetic() throws ParseException {
+        // 0.5 * 2 + 1 = 2, whereas 0.5 * (2 + 1) = 1.5
+        assertEquals(indices(0), matches("score * 2 + 1 > 1.9"));
+        assertEquals(indices(0), matches("(score + 1) * 2 > 2.5"));
+        assertEquals(indices(1), matches("-score > 0.5"));
+        assertEquals(indices(0), matches("score - 0.25 - 0.25 = 0"));
+        assertEquals(indices(0), matches("score / 2 / 0.5 = 0.5"));
+    }
+
+    @Test
+    public void functions() throws ParseException {
+        assertEquals(indices(1), matches("abs(score) > 0.6"));
+        assertEquals(indices(0), matches("log10(pvalue) < -2"));
+        assertEquals(indices(0), matches("log2(pvalue * 8) < -6"));
+        assertEquals(indices(0, 1), matches("ln(pvalue) < ln(0.5)"));
+        assertEquals(indices(1), matches("abs(log10(pValue) + 1) < 0.5"));
+    }
+
+    @Test
+    public void textComparisons() throws ParseException {
+        assertEquals(indices(0, 2), matches("gene ~ hsp"));
+        assertEquals(indices(1), matches("gene = tp53"));
+        assertEquals(indices(0, 2), matches("gene != TP53"));
+        assertEquals(indices(0), matches("description ~ \"heat shock 70\""));
+        assertEquals(indices(0), matches("description ~ 'heat shock 70'"));
+        assertEquals(indices(0), matches("description ~ heat shock AND score > 0"));
+        assertEquals(indices(2), matches("accession = P07900-2"));
+        assertEquals(indices(0, 1, 2), matches("organism = \"homo sapiens\""));
+    }
+
+    @Test
+    public void selection() throws ParseException {
+        assertEquals(indices(0, 2), matches("(gene ~ HSP OR description ~ \"tumor\") AND NOT selected"));
+        assertEquals(indices(0, 2), matches("!selected"));
+        assertEquals(indices(1), matches("selected = true"));
+        assertEquals(indices(0, 2), matches("selected != true"));
+        assertEquals(indices(1), matches("selected && gene ~ tp"));
+
+        assertTrue(TPProteinQuery.parse("NOT selected", Proteome.ExpType.TP2D).usesSelection());
+        assertFalse(TPProteinQuery.parse("score > 0", Proteome.ExpType.TP2D).usesSelection());
+    }
+
+    @Test
+    public void missingValuesDoNotMatch() throws ParseException {
+        assertEquals(indices(1), matches("score != 0.5"));
+        assertEquals(indices(0, 1), matches("score = score"));
+        assertEquals(indices(), matches("score > 1 OR score < -1"));
+        // negation of a comparison with a missing value matches
+        assertEquals(indices(1, 2), matches("NOT score > 0"));
+    }
+
+    @Test
+    public void columnsDependOnExperimentType() throws ParseException {
+        TPProteinQuery query = TPProteinQuery.parse("meantm > 1", Proteome.ExpType.TP1D);
+        assertFalse(query.test(proteins.get(0)));
+        // proteins without scores have no effect
+        assertEquals(indices(), matches("effect = Stabilised"));
+        try {
+            TPProteinQuery.parse("effect = Stabilised", Proteome.ExpType.TP1D);
+            fail();
+        }
+        catch (ParseException e) {
+            assertEquals(0, e.getErrorOffset());
+        }
+    }
+
+    @Test
+    public void errorOffsets() {
+        assertError("scor > 1", 0);
+        assertError("score > 1 AND foo < 2", 14);
+        assertError("score > ", 8);
+        assertError("score 1", 6);
+        assertError("score > 1)", 9);
+        assertError("gene ~ \"heat", 7);
+        assertError("gene < 1", 5);
+        assertError("selected = maybe", 11);
+        assertError("abs(score > 1", 10);
+        assertError("score > 1.2.3", 8);
+    }
+
+    @Test
+    public void isQuery() {
+        assertTrue(TPProteinQuery.isQuery("score > 1"));
+        assertTrue(TPProteinQuery.isQuery("gene ~ HSP"));
+        assertTrue(TPProteinQuery.isQuery("gene = TP53"));
+        assertFalse(TPProteinQuery.isQuery("HSP90"));
+        assertFalse(TPProteinQuery.isQuery(null));
+    }
+
+}
@@ -0,0 +1,354 @@
+/*
+ * Copyright (C) 2020 Felix Feyertag <felix.feyertag@ndm.ox.ac.uk>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.chembiohub.tpmap.dstruct.io;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * TPArrowWriterTest
+ *
+ * Reads back Arrow IPC files written by TPArrowWriter: the file framing, the footer, the schema and the values of
+ * every record batch.
+ *
+ * @author felixfeyertag
+ */
+public class TPArrowWriterTest {
+
+    private static final byte[] MAGIC = "ARROW1".getBytes(StandardCharsets.US_ASCII);
+
+    private static final int ROWS = 8192 + 1000;
+
+    private static final String[] NAMES = {"score", "gene", "value", "flag"};
+    private static final TPArrowWriter.ColumnType[] TYPES = {TPArrowWriter.ColumnType.FLOAT64,
+            TPArrowWriter.ColumnType.UTF8, TPArrowWriter.ColumnType.FLOAT64, TPArrowWriter.ColumnType.BOOL};
+
+    /**
+     * Rows with i divisible by 17 end after the gene, leaving value and flag missing
+     */
+    private static String gene(int i) {
+        return i % 7 == 0 ? null : i % 13 == 0 ? "Ab\u00e9" + i : "G" + i;
+    }
+
+    private static Double value(int i) {
+        return i % 5 == 0 || i % 17 == 0 ? null : i * 0.5;
+    }
+
+    private static Boolean flag(int i) {
+        return i % 11 == 0 || i % 17 == 0 ? null : i % 3 == 0;
+    }
+
+    private static byte[] write() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (TPArrowWriter writer = new TPArrowWriter(out, Arrays.asList(TYPES))) {
+            writer.writeHeader(Arrays.asList(NAMES));
+            for(int i=0; i<ROWS; i++) {
+                writer.writeNumber(i);
+                writer.writeString(gene(i));
+                if(i % 17 != 0) {
+                    writer.writeNumber(value(i));
+                    if(flag(i) == null) {
+                        writer.writeString(null);
+                    }
+                    else {
+                        writer.writeBoolean(flag(i));
+                    }
+                }
+                writer.endRow();
+            }
+        }
+        return out.toByteArray();
+    }
+
+    @Test
+    public void fileFraming() throws IOException {
+        byte[] file = write();
+        assertArrayEquals(MAGIC, Arrays.copyOfRange(file, 0, 6));
+        assertArrayEquals(new byte[2], Arrays.copyOfRange(file, 6, 8));
+        assertArrayEquals(MAGIC, Arrays.copyOfRange(file, file.length - 6, file.length));
+
+        ByteBuffer bb = ByteBuffer.wrap(file).order(ByteOrder.LITTLE_ENDIAN);
+
+        // schema message directly after the magic
+        assertEquals(0xFFFFFFFF, bb.getInt(8));
+        int schemaLength = bb.getInt(12);
+        assertEquals(0, schemaLength % 8);
+        Table schemaMessage = Table.root(slice(bb, 16, schemaLength));
+        assertEquals(4, schemaMessage.getShort(0, (short) 0));
+        assertEquals(1, schemaMessage.getByte(1, (byte) 0));
+        assertEquals(0, schemaMessage.getLong(3, 0));
+        assertSchema(schemaMessage.getTable(2));
+
+        // end of stream marker directly before the footer
+        int footerLength = bb.getInt(file.length - 10);
+        int footerStart = file.length - 10 - footerLength;
+        assertEquals(0xFFFFFFFF, bb.getInt(footerStart - 8));
+        assertEquals(0, bb.getInt(footerStart - 4));
+
+        Table footer = Table.root(slice(bb, footerStart, footerLength));
+        assertEquals(4, footer.getShort(0, (short) 0));
+        assertSchema(footer.getTable(1));
+        assertEquals(0, footer.getVectorLength(2));
+
+        // the first batch starts after the schema message, the end of stream marker follows the last
+        assertEquals(2, footer.getVectorLength(3));
+        int blocks = footer.getVector(3);
+        assertEquals(16 + schemaLength, footer.bb.getLong(blocks));
+        long lastOffset = footer.bb.getLong(blocks + 24);
+        long lastEnd = lastOffset + footer.bb.getInt(blocks + 24 + 8) + footer.bb.getLong(blocks + 24 + 16);
+        assertEquals(footerStart - 8, lastEnd);
+    }
+
+    @Test
+    public void recordBatches() throws IOException {
+        byte[] file = write();
+        ByteBuffer bb = ByteBuffer.wrap(file).order(ByteOrder.LITTLE_ENDIAN);
+        int footerLength = bb.getInt(file.length - 10);
+        Table footer = Table.root(slice(bb, file.length - 10 - footerLength, footerLength));
+        int blocks = footer.getVector(3);
+
+        int row = 0;
+        for(int b=0; b<footer.getVectorLength(3); b++) {
+            int offset = (int) footer.bb.getLong(blocks + b * 24);
+            int metadataLength = footer.bb.getInt(blocks + b * 24 + 8);
+            long bodyLength = footer.bb.getLong(blocks + b * 24 + 16);
+
+            assertEquals(0, offset % 8);
+            assertEquals(0xFFFFFFFF, bb.getInt(offset));
+            assertEquals(metadataLength, 8 + bb.getInt(offset + 4));
+
+            Table message = Table.root(slice(bb, offset + 8, metadataLength - 8));
+            assertEquals(4, message.getShort(0, (short) 0));
+            assertEquals(3, message.getByte(1, (byte) 0));
+            assertEquals(bodyLength, message.getLong(3, 0));
+
+            Table batch = message.getTable(2);
+            int length = (int) batch.getLong(0, 0);
+            assertEquals(b == 0 ? 8192 : ROWS - 8192, length);
+
+            ByteBuffer body = slice(bb, offset + metadataLength, (int) bodyLength);
+            int nodes = batch.getVector(1);
+            int buffers = batch.getVector(2);
+            assertEquals(NAMES.length, batch.getVectorLength(1));
+            assertEquals(4 * 2 + 1, batch.getVectorLength(2));
+
+            int buffer = 0;
+            for(int c=0; c<NAMES.length; c++) {
+                assertEquals(length, batch.bb.getLong(nodes + c * 16));
+                long nullCount = batch.bb.getLong(nodes + c * 16 + 8);
+                int validityOffset = (int) batch.bb.getLong(buffers + buffer * 16);
+                int validityLength = (int) batch.bb.getLong(buffers + buffer * 16 + 8);
+                buffer++;
+                assertEquals(nullCount == 0 ? 0 : (length + 7) / 8, validityLength);
+                assertEquals(0, validityOffset % 8);
+
+                int expectedNulls = 0;
+                if(TYPES[c] == TPArrowWriter.ColumnType.UTF8) {
+                    int offsets = (int) batch.bb.getLong(buffers + buffer * 16);
+                    assertEquals((length + 1) * 4, batch.bb.getLong(buffers + buffer * 16 + 8));
+                    int data = (int) batch.bb.getLong(buffers + (buffer + 1) * 16);
+                    buffer += 2;
+                    for(int i=0; i<length; i++) {
+                        String expected = gene(row + i);
+                        if(expected == null) {
+                            expectedNulls++;
+                            assertEquals(false, valid(body, validityOffset, validityLength, i));
+                            continue;
+                        }
+                        assertEquals(true, valid(body, validityOffset, validityLength, i));
+                        int from = body.getInt(offsets + i * 4);
+                        int to = body.getInt(offsets + i * 4 + 4);
+                        byte[] bytes = new byte[to - from];
+                        for(int k=0; k<bytes.length; k++) {
+                            bytes[k] = body.get(data + from + k);
+                        }
+                        assertEquals(expected, new String(bytes, StandardCharsets.UTF_8));
+                    }
+                }
+                else {
+                    int values = (int) batch.bb.getLong(buffers + buffer * 16);
+                    int valuesLength = (int) batch.bb.getLong(buffers + buffer * 16 + 8);
+                    buffer++;
+                    if(TYPES[c] == TPArrowWriter.ColumnType.FLOAT64) {
+                        assertEquals(length * 8, valuesLength);
+                    }
+                    else {
+                        assertEquals((length + 7) / 8, valuesLength);
+                    }
+                    for(int i=0; i<length; i++) {
+                        int r = row + i;
+                        Object expected = c == 0 ? Double.valueOf(r) : c == 2 ? value(r) : flag(r);
+                        if(expected == null) {
+                            expectedNulls++;
+                            assertEquals(false, valid(body, validityOffset, validityLength, i));
+                            continue;
+                        }
+                        assertEquals(true, valid(body, validityOffset, validityLength, i));
+                        Object actual = TYPES[c] == TPArrowWriter.ColumnType.FLOAT64 ? (Object) body.getDouble(values + i * 8)
+                                : (Object) ((body.get(values + (i >> 3)) >> (i & 7) & 1) == 1);
+                        assertEquals("row " + r + " column " + NAMES[c], expected, actual);
+                    }
+                }
+                assertEquals(NAMES[c], expectedNulls, nullCount);
+            }
+            assertEquals(batch.getVectorLength(2), buffer);
+            row += length;
+        }
+        assertEquals(ROWS, row);
+    }
+
+    @Test
+    public void emptyFile() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new TPArrowWriter(out, Arrays.asList(TPArrowWriter.ColumnType.UTF8, TPArrowWriter.ColumnType.BOOL)).close();
+        byte[] file = out.toByteArray();
+        ByteBuffer bb = ByteBuffer.wrap(file).order(ByteOrder.LITTLE_ENDIAN);
+        int footerLength = bb.getInt(file.length - 10);
+        Table footer = Table.root(slice(bb, file.length - 10 - footerLength, footerLength));
+        assertEquals(0, footer.getVectorLength(3));
+
+        Table fields = footer.getTable(1);
+        int vector = fields.getVector(1);
+        assertEquals(2, fields.getVectorLength(1));
+        assertEquals("f0", fields.indirect(vector).getString(0));
+        assertEquals("f1", fields.indirect(vector + 4).getString(0));
+    }
+
+    /**
+     * Schema with one nullable field per column, of the column type
+     */
+    private static void assertSchema(Table schema) {
+        assertEquals(0, schema.getShort(0, (short) 0));
+        int fields = schema.getVector(1);
+        assertEquals(NAMES.length, schema.getVectorLength(1));
+        for(int c=0; c<NAMES.length; c++) {
+            Table field = schema.indirect(fields + c * 4);
+            assertEquals(NAMES[c], field.getString(0));
+            assertEquals(1, field.getByte(1, (byte) 0));
+            assertEquals(0, field.getVectorLength(5));
+            byte typeType = field.getByte(2, (byte) 0);
+            Table type = field.getTable(3);
+            switch(TYPES[c]) {
+                case FLOAT64:
+                    assertEquals(3, typeType);
+                    assertEquals(2, type.getShort(0, (short) 0));
+                    break;
+                case UTF8:
+                    assertEquals(5, typeType);
+                    break;
+                default:
+                    assertEquals(6, typeType);
+            }
+        }
+    }
+
+    private static boolean valid(ByteBuffer body, int validityOffset, int validityLength, int i) {
+        return validityLength == 0 || (body.get(validityOffset + (i >> 3)) >> (i & 7) & 1) == 1;
+    }
+
+    private static ByteBuffer slice(ByteBuffer bb, int offset, int length) {
+        return ByteBuffer.wrap(bb.array(), offset, length).slice().order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /**
+     * Minimal FlatBuffers table reader
+     */
+    private static final class Table {
+
+        final ByteBuffer bb;
+        final int position;
+
+        Table(ByteBuffer bb, int position) {
+            this.bb = bb;
+            this.position = position;
+        }
+
+        static Table root(ByteBuffer bb) {
+            return new Table(bb, bb.getInt(0));
+        }
+
+        Table indirect(int offset) {
+            return new Table(bb, offset + bb.getInt(offset));
+        }
+
+        /**
+         * @return position of a field, 0 if the field is not present
+         */
+        int field(int field) {
+            int vtable = position - bb.getInt(position);
+            int vtableLength = bb.getShort(vtable);
+            int entry = 4 + field * 2;
+            int offset = entry < vtableLength ? bb.getShort(vtable + entry) : 0;
+            return offset == 0 ? 0 : position + offset;
+        }
+
+        byte getByte(int field, byte defaultValue) {
+            int p = field(field);
+            return p == 0 ? defaultValue : bb.get(p);
+        }
+
+        short getShort(int field, short defaultValue) {
+            int p = field(field);
+            return p == 0 ? defaultValue : bb.getShort(p);
+        }
+
+        long getLong(int field, long defaultValue) {
+            int p = field(field);
+            return p == 0 ? defaultValue : bb.getLong(p);
+        }
+
+        Table getTable(int field) {
+            int p = field(field);
+            return p == 0 ? null : indirect(p);
+        }
+
+        /**
+         * @return position of the first element of a vector
+         */
+        int getVector(int field) {
+            int p = field(field);
+            return p + bb.getInt(p) + 4;
+        }
+
+        int getVectorLength(int field) {
+            int p = field(field);
+            return p == 0 ? 0 : bb.getInt(p + bb.getInt(p));
+        }
+
+        String getString(int field) {
+            int p = field(field);
+            if(p == 0) {
+                return null;
+            }
+            int start = p + bb.getInt(p);
+            byte[] bytes = new byte[bb.getInt(start)];
+            for(int k=0; k<bytes.length; k++) {
+                bytes[k] = bb.get(start + 4 + k);
+            }
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+    }
+
+}
@@ -0,0 +1,174 @@
+/*
+ * Copyright (C) 2020 Felix Feyertag <felix.feyertag@ndm.ox.ac.uk>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.chembiohub.tpmap.scoring;
+
+import org.apache.commons.math3.fitting.leastsquares.LeastSquaresOptimizer;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * TP1dBatchCurveFitterTest
+ *
+ * Fits of the batch Levenberg-Marquardt solver compared to TP1dCurveFitter from the same start point.
+ *
+ * @author felixfeyertag
+ */
+public class TP1dBatchCurveFitterTest {
+
+    private static final double[] TEMPS = {37, 41, 44, 47, 50, 53, 56, 59, 63, 67};
+
+    private static final int MAX_ITERATIONS = 1000;
+
+    /**
+     * Noisy melting curves with random midpoints, slopes and plateaus, every seventh with a missing value
+     */
+    private static double[][] curves(int count, long seed) {
+        SplittableRandom random = new SplittableRandom(seed);
+        double[][] curves = new double[count][TEMPS.length];
+        for(int c=0; c<count; c++) {
+            double tm = 45.0 + random.nextDouble() * 15.0;
+            double b = 20.0 + random.nextDouble() * 60.0;
+            double a = b * tm;
+            double p = random.nextDouble() * 0.3;
+            for(int j=0; j<TEMPS.length; j++) {
+                curves[c][j] = TP1dCurveEstimatorTest.curve(a, b, p, TEMPS[j]) + (random.nextDouble() - 0.5) * 0.04;
+            }
+            if(c % 7 == 3) {
+                curves[c][1 + c % (TEMPS.length - 2)] = Double.NaN;
+            }
+        }
+        return curves;
+    }
+
+    @Test
+    public void matchesSingleCurveFitter() {
+        double[][] curves = curves(300, 7);
+        TP1dCurveFitResult[] results = new TP1dBatchCurveFitter(TEMPS, MAX_ITERATIONS).fit(curves, false);
+        assertEquals(curves.length, results.length);
+
+        TP1dDenaturationKernel kernel = new TP1dDenaturationKernel(TEMPS);
+        int fitted = 0;
+        for(int c=0; c<curves.length; c++) {
+            TP1dDenaturationKernel selected = kernel.select(curves[c]);
+            double[] t = new double[selected.size()];
+            double[] v = new double[selected.size()];
+            for(int j=0, k=0; j<TEMPS.length; j++) {
+                if(!Double.isNaN(curves[c][j])) {
+                    t[k] = TEMPS[j];
+                    v[k++] = curves[c][j];
+                }
+            }
+            double[] start = TP1dCurveEstimator.estimate(t, v, t.length);
+            if(start == null) {
+                assertNull("curve " + c, results[c]);
+                continue;
+            }
+
+            LeastSquaresOptimizer.Optimum optimum = new TP1dCurveFitter(selected, start, MAX_ITERATIONS).optimize(v);
+            double[] expected = optimum.getPoint().toArray();
+            double expectedRMSE = selected.rmse(expected, v);
+
+            TP1dCurveFitResult result = results[c];
+            assertNotNull("curve " + c, result);
+            assertTrue("curve " + c, result.isSuccess());
+            assertEquals("curve " + c, expectedRMSE, result.getRMSE(), expectedRMSE * 1e-6);
+            assertEquals("curve " + c, kernel.rmse(result.getParams(), curves[c]), result.getRMSE(), 1e-12);
+
+            // very steep curves are determined only up to the position of the step between two temperatures, so
+            // the fitted curves are compared at the temperatures rather than the parameters
+            double[] expectedCurve = new double[TEMPS.length];
+            double[] curve = new double[TEMPS.length];
+            kernel.values(expected, expectedCurve);
+            kernel.values(result.getParams(), curve);
+            assertArrayEquals("curve " + c, expectedCurve, curve, 1e-4);
+            fitted++;
+        }
+        assertTrue(fitted > curves.length * 9 / 10);
+    }
+
+    @Test
+    public void parallelMatchesSequential() {
+        double[][] curves = curves(600, 11);
+        TP1dBatchCurveFitter fitter = new TP1dBatchCurveFitter(TEMPS, MAX_ITERATIONS);
+        TP1dCurveFitResult[] sequential = fitter.fit(curves, false);
+        TP1dCurveFitResult[] parallel = fitter.fit(curves, true);
+        for(int c=0; c<curves.length; c++) {
+            if(sequential[c] == null) {
+                assertNull(parallel[c]);
+            }
+            else {
+                assertArrayEquals(sequential[c].getParams(), parallel[c].getParams(), 0.0);
+                assertEquals(sequential[c].getIterations(), parallel[c].getIterations());
+            }
+        }
+    }
+
+    @Test
+    public void convergedOnLastIteration() {
+        double[][] curve = { curves(1, 3)[0] };
+        TP1dCurveFitResult unlimited = new TP1dBatchCurveFitter(TEMPS, MAX_ITERATIONS).fit(curve, false)[0];
+        assertTrue(unlimited.isSuccess());
+        int iterations = unlimited.getIterations();
+        assertTrue(iterations > 1);
+
+        TP1dCurveFitResult exact = new TP1dBatchCurveFitter(TEMPS, iterations).fit(curve, false)[0];
+        assertTrue(exact.isSuccess());
+        assertEquals(0, exact.getFailures());
+        assertArrayEquals(unlimited.getParams(), exact.getParams(), 0.0);
+
+        TP1dCurveFitResult limited = new TP1dBatchCurveFitter(TEMPS, iterations - 1).fit(curve, false)[0];
+        assertFalse(limited.isSuccess());
+        assertEquals(1, limited.getFailures(TP1dCurveFitResult.Failure.TOO_MANY_ITERATIONS));
+        assertEquals(iterations - 1, limited.getIterations());
+    }
+
+    @Test
+    public void curvesThatAreNotFitted() {
+        double[] infinite = curves(1, 5)[0].clone();
+        infinite[4] = Double.POSITIVE_INFINITY;
+        double[] sparse = new double[TEMPS.length];
+        Arrays.fill(sparse, Double.NaN);
+        sparse[0] = 1.0;
+        sparse[5] = 0.5;
+        double[] flat = new double[TEMPS.length];
+        Arrays.fill(flat, 1.0);
+
+        TP1dCurveFitResult[] results = new TP1dBatchCurveFitter(TEMPS, MAX_ITERATIONS).fit(new double[][] {infinite, sparse, flat}, false);
+        assertNull(results[0]);
+        assertNull(results[1]);
+        assertNull(results[2]);
+    }
+
+    @Test
+    public void givenStartParameters() {
+        double[][] curves = curves(2, 13);
+        double[] start = TP1dCurveEstimator.estimate(TEMPS, curves[0], TEMPS.length);
+        TP1dBatchCurveFitter fitter = new TP1dBatchCurveFitter(TEMPS, MAX_ITERATIONS);
+        TP1dCurveFitResult estimated = fitter.fit(new double[][] {curves[0]}, false)[0];
+        TP1dCurveFitResult started = fitter.fit(new double[][] {curves[0]}, new double[][] {start}, false)[0];
+        assertArrayEquals(estimated.getParams(), started.getParams(), 0.0);
+    }
+
+}
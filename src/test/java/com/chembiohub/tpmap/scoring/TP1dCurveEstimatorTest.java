@@ -0,0 +1,125 @@
+/*
+ * Copyright (C) 2020 Felix Feyertag <felix.feyertag@ndm.ox.ac.uk>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.chembiohub.tpmap.scoring;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+/**
+ * TP1dCurveEstimatorTest
+ *
+ * Start points estimated from noise free melting curves, and curves without a transition.
+ *
+ * @author felixfeyertag
+ */
+public class TP1dCurveEstimatorTest {
+
+    static double curve(double a, double b, double plateau, double t) {
+        return (1.0 - plateau) / (1.0 + Math.exp(b - a / t)) + plateau;
+    }
+
+    @Test
+    public void recoversNoiseFreeCurve() {
+        double a = 5000.0;
+        double b = 100.0;
+        double plateau = 0.3;
+        int n = 25;
+        double[] temps = new double[n];
+        double[] values = new double[n];
+        for(int i=0; i<n; i++) {
+            temps[i] = 40.0 + i;
+            values[i] = curve(a, b, plateau, temps[i]);
+        }
+
+        double[] estimate = TP1dCurveEstimator.estimate(temps, values, n);
+        assertNotNull(estimate);
+        assertEquals(a, estimate[0], a * 1e-6);
+        assertEquals(b, estimate[1], b * 1e-6);
+        assertEquals(plateau, estimate[2], 1e-6);
+    }
+
+    @Test
+    public void boxedValuesMatchPrimitive() {
+        Double[] temps = {37.0, 41.0, 44.0, 47.0, 50.0, 53.0, 56.0, 59.0, 63.0, 67.0};
+        Double[] values = new Double[temps.length];
+        double[] t = new double[temps.length];
+        double[] v = new double[temps.length];
+        for(int i=0; i<temps.length; i++) {
+            values[i] = curve(2000.0, 40.0, 0.1, temps[i]);
+            t[i] = temps[i];
+            v[i] = values[i];
+        }
+        double[] expected = TP1dCurveEstimator.estimate(t, v, t.length);
+        assertNotNull(expected);
+        double[] estimate = TP1dCurveEstimator.estimate(temps, values);
+        assertEquals(expected[0], estimate[0], 0.0);
+        assertEquals(expected[1], estimate[1], 0.0);
+        assertEquals(expected[2], estimate[2], 0.0);
+    }
+
+    @Test
+    public void usesOnlyFirstPoints() {
+        double[] temps = {40, 44, 48, 52, 56, 60, 64, 0, 0};
+        double[] values = new double[temps.length];
+        for(int i=0; i<7; i++) {
+            values[i] = curve(3000.0, 60.0, 0.0, temps[i]);
+        }
+        values[7] = 5.0;
+        values[8] = 5.0;
+        double[] estimate = TP1dCurveEstimator.estimate(temps, values, 7);
+        assertNotNull(estimate);
+        assertEquals(3000.0, estimate[0], 3000.0 * 1e-2);
+        assertEquals(60.0, estimate[1], 60.0 * 1e-2);
+    }
+
+    @Test
+    public void midpointCrossingWithoutTransitionPoints() {
+        double[] temps = {37, 40, 43, 46, 49, 52, 55};
+        double[] values = {1, 1, 1, 1, 0, 0, 0};
+
+        // crosses 0.5 half way between 46 and 49 with slope -1/3
+        double tm = 47.5;
+        double a = 4.0 / 3.0 * tm * tm;
+
+        double[] estimate = TP1dCurveEstimator.estimate(temps, values, temps.length);
+        assertNotNull(estimate);
+        assertEquals(a, estimate[0], 1e-9);
+        assertEquals(a / tm, estimate[1], 1e-9);
+        assertEquals(0.0, estimate[2], 0.0);
+    }
+
+    @Test
+    public void plateauIsClamped() {
+        double[] temps = {37, 40, 43, 46, 49, 52, 55};
+        double[] values = {1.2, 1.1, 0.8, 0.3, 0.0, -0.1, -0.1};
+        double[] estimate = TP1dCurveEstimator.estimate(temps, values, temps.length);
+        assertNotNull(estimate);
+        assertEquals(0.0, estimate[2], 0.0);
+    }
+
+    @Test
+    public void noTransition() {
+        double[] temps = {37, 40, 43, 46, 49, 52, 55};
+        assertNull(TP1dCurveEstimator.estimate(temps, new double[] {1, 1, 1, 1, 1, 1, 1}, temps.length));
+        assertNull(TP1dCurveEstimator.estimate(temps, new double[] {0.1, 0.2, 0.4, 0.6, 0.8, 0.9, 1.0}, temps.length));
+        assertNull(TP1dCurveEstimator.estimate(temps, new double[] {1, 0.5, 0}, 2));
+        assertNull(TP1dCurveEstimator.estimate(new Double[] {37.0, 40.0, 43.0}, new Double[] {1.0, 0.5}));
+    }
+
+}
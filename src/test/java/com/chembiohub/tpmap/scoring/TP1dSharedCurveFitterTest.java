@@ -0,0 +1,83 @@
+/*
+ * Copyright (C) 2020 Felix Feyertag <felix.feyertag@ndm.ox.ac.uk>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.chembiohub.tpmap.scoring;
+
+import org.apache.commons.math3.distribution.FDistribution;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * TP1dSharedCurveFitterTest
+ *
+ * P-values of the F-test comparing the shared and the separate curve fits.
+ *
+ * @author felixfeyertag
+ */
+public class TP1dSharedCurveFitterTest {
+
+    @Test
+    public void limits() {
+        assertEquals(1.0, TP1dSharedCurveFitter.pValue(0.0, 3, 54), 1e-15);
+        assertEquals(0.0, TP1dSharedCurveFitter.pValue(Double.POSITIVE_INFINITY, 3, 54), 0.0);
+        assertTrue(Double.isNaN(TP1dSharedCurveFitter.pValue(Double.NaN, 3, 54)));
+    }
+
+    @Test
+    public void equalDegreesOfFreedomAtOne() {
+        // F(d, d) is symmetric in log f, so its median is 1
+        for(int df=1; df<=40; df++) {
+            assertEquals(0.5, TP1dSharedCurveFitter.pValue(1.0, df, df), 1e-12);
+        }
+    }
+
+    @Test
+    public void twoNumeratorDegreesOfFreedom() {
+        // P(F(2, d) >= f) = (1 + 2 f / d)^(-d / 2)
+        int[] dfs = {1, 4, 14, 54};
+        double[] fs = {0.01, 0.5, 1.0, 3.7, 25.0, 1e4};
+        for(int df2 : dfs) {
+            for(double f : fs) {
+                double expected = Math.pow(1.0 + 2.0 * f / df2, -df2 / 2.0);
+                assertEquals("f=" + f + " df2=" + df2, expected, TP1dSharedCurveFitter.pValue(f, 2, df2), expected * 1e-9);
+            }
+        }
+    }
+
+    @Test
+    public void matchesFDistribution() {
+        int[][] dfs = {{3, 14}, {3, 24}, {3, 54}, {1, 10}, {5, 7}};
+        double[] fs = {0.1, 0.8, 1.5, 2.9, 4.2, 8.0};
+        for(int[] df : dfs) {
+            FDistribution distribution = new FDistribution(null, df[0], df[1]);
+            for(double f : fs) {
+                double expected = 1.0 - distribution.cumulativeProbability(f);
+                assertEquals("f=" + f + " df=" + df[0] + "," + df[1], expected, TP1dSharedCurveFitter.pValue(f, df[0], df[1]), 1e-10);
+            }
+        }
+    }
+
+    @Test
+    public void smallPValuesKeepPrecision() {
+        // 1 - cdf underflows to 0 long before the p-value does
+        double p = TP1dSharedCurveFitter.pValue(1e4, 3, 54);
+        assertTrue(p > 0.0);
+        assertTrue(p < 1e-60);
+        assertTrue(TP1dSharedCurveFitter.pValue(2e4, 3, 54) < p);
+    }
+
+}